@@ -0,0 +1,647 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A compact backup format for groceries and recipes, written and read as a stream.
+ * Names and units are dictionary-encoded: the first time a string is seen it is written out,
+ * and after that only its number in the dictionary. Groceries are written earliest-expiring
+ * first, and every best-before date is written as the difference from the one before it.
+ * Recipes are written in blocks, and the descriptions of each block are compressed together.
+ * Memory use does not grow with the size of the backup: only one block of recipes and
+ * a dictionary of at most {@value #MAX_DICTIONARY} strings are held at a time.
+ * All numbers are written as variable-length integers, so small numbers take one byte.
+ * The same encoding is used for the batches of changes that replicated pantries exchange,
+ * and for the traces of operations written by a {@link TraceRecorder}.
+ */
+public final class BackupFormat {
+  private static final int GROCERY_MAGIC = 0x574C4742;
+  private static final int RECIPE_MAGIC = 0x574C5242;
+  private static final int DELTA_MAGIC = 0x574C4442;
+  private static final int TRACE_MAGIC = 0x574C5452;
+  private static final int FORMAT_VERSION = 1;
+  private static final int RECIPES_PER_BLOCK = 256;
+  private static final int MAX_DICTIONARY = 65536;
+
+  private BackupFormat() {
+  }
+
+  /**
+   * Writes groceries to a backup.
+   * The groceries should come earliest-expiring first, for the smallest date differences.
+   *
+   * @param groceries the groceries to write.
+   * @param out the stream to write to. It is flushed, but not closed.
+   * @return the number of groceries written.
+   * @throws IOException if the backup could not be written.
+   */
+  public static long exportGroceries(Iterable<Grocery> groceries, OutputStream out)
+      throws IOException {
+    Encoder encoder = new Encoder(out, GROCERY_MAGIC);
+    long count = 0;
+    long previousFirst = 0;
+    for (Grocery grocery : groceries) {
+      List<Lot> lots = grocery.getLots();
+      encoder.writeVarLong(lots.size() + 1L);
+      encoder.writeString(grocery.getName());
+      encoder.writeString(grocery.getUnit());
+      encoder.out.writeDouble(grocery.getPricePerUnit());
+      long previous = previousFirst;
+      for (Lot lot : lots) {
+        long time = lot.getBestBeforeDate().getTime();
+        encoder.writeZigZag(time - previous);
+        encoder.out.writeDouble(lot.getAmount());
+        encoder.out.writeDouble(lot.getPricePerUnit());
+        previous = time;
+      }
+      if (!lots.isEmpty()) {
+        previousFirst = lots.get(0).getBestBeforeDate().getTime();
+      }
+      count++;
+    }
+    encoder.writeVarLong(0);
+    encoder.out.flush();
+    return count;
+  }
+
+  /**
+   * Reads groceries from a backup. Lots are restored as they were, even if they have expired.
+   *
+   * @param in the stream to read from. It is not closed.
+   * @param sink is given every grocery as soon as it has been read.
+   * @return the number of groceries read.
+   * @throws IOException if the backup could not be read or is not a grocery backup.
+   */
+  public static long importGroceries(InputStream in, Consumer<Grocery> sink) throws IOException {
+    Decoder decoder = new Decoder(in, GROCERY_MAGIC);
+    long count = 0;
+    long previousFirst = 0;
+    for (long header = decoder.readVarLong(); header != 0; header = decoder.readVarLong()) {
+      String name = decoder.readString();
+      String unit = decoder.readString();
+      double pricePerUnit = decoder.in.readDouble();
+      int lotCount = (int) (header - 1);
+      List<Lot> lots = new ArrayList<>(lotCount);
+      long previous = previousFirst;
+      for (int i = 0; i < lotCount; i++) {
+        long time = previous + decoder.readZigZag();
+        lots.add(Lot.restore(decoder.in.readDouble(), new Date(time), decoder.in.readDouble()));
+        previous = time;
+        if (i == 0) {
+          previousFirst = time;
+        }
+      }
+      sink.accept(Grocery.restore(name, unit, pricePerUnit, lots));
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Writes recipes to a backup, in blocks of {@value #RECIPES_PER_BLOCK} recipes.
+   *
+   * @param recipes the recipes to write.
+   * @param out the stream to write to. It is flushed, but not closed.
+   * @return the number of recipes written.
+   * @throws IOException if the backup could not be written.
+   */
+  public static long exportRecipes(Iterable<Recipe> recipes, OutputStream out)
+      throws IOException {
+    Encoder encoder = new Encoder(out, RECIPE_MAGIC);
+    List<Recipe> block = new ArrayList<>(RECIPES_PER_BLOCK);
+    long count = 0;
+    for (Recipe recipe : recipes) {
+      block.add(recipe);
+      if (block.size() == RECIPES_PER_BLOCK) {
+        writeBlock(encoder, block);
+        count += block.size();
+        block.clear();
+      }
+    }
+    if (!block.isEmpty()) {
+      writeBlock(encoder, block);
+      count += block.size();
+    }
+    encoder.writeVarLong(0);
+    encoder.out.flush();
+    return count;
+  }
+
+  /**
+   * Reads recipes from a backup. The recipes keep the ids they had when they were written.
+   *
+   * @param in the stream to read from. It is not closed.
+   * @param sink is given every recipe as soon as its block has been read.
+   * @return the number of recipes read.
+   * @throws IOException if the backup could not be read or is not a recipe backup.
+   */
+  public static long importRecipes(InputStream in, Consumer<Recipe> sink) throws IOException {
+    Decoder decoder = new Decoder(in, RECIPE_MAGIC);
+    long count = 0;
+    for (int size = (int) decoder.readVarLong(); size != 0; size = (int) decoder.readVarLong()) {
+      List<Recipe> block = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        int id = (int) decoder.readVarLong();
+        Recipe recipe = new Recipe(decoder.readString());
+        recipe.setId(id);
+        recipe.setServings((int) decoder.readVarLong());
+        int ingredients = (int) decoder.readVarLong();
+        for (int j = 0; j < ingredients; j++) {
+          String name = decoder.readString();
+          double amount = decoder.in.readDouble();
+          recipe.addIngredient(new Ingredient(name, amount, decoder.readString()));
+        }
+        block.add(recipe);
+      }
+      byte[] compressed = new byte[(int) decoder.readVarLong()];
+      decoder.in.readFully(compressed);
+      Decoder descriptions = new Decoder(
+          new InflaterInputStream(new ByteArrayInputStream(compressed)));
+      for (Recipe recipe : block) {
+        recipe.setDescription(descriptions.readLiteral());
+        sink.accept(recipe);
+      }
+      count += size;
+    }
+    return count;
+  }
+
+  /**
+   * Writes a batch of operations made on one device, for the other devices to read.
+   * Times and best-before dates are written as the difference from the operation before.
+   *
+   * @param ops the operations, all from the same device and in sequence order.
+   * @param out the stream to write to. It is flushed, but not closed.
+   * @throws IOException if the batch could not be written.
+   */
+  static void writeDeltaBatch(List<ReplicaOp> ops, OutputStream out) throws IOException {
+    Encoder encoder = new Encoder(out, DELTA_MAGIC);
+    encoder.writeString(ops.get(0).origin);
+    encoder.writeVarLong(ops.get(0).seq);
+    encoder.writeVarLong(ops.size());
+    long previousTime = 0;
+    long previousExpiry = 0;
+    for (ReplicaOp op : ops) {
+      encoder.writeVarLong(op.kind.ordinal());
+      encoder.writeZigZag(op.time - previousTime);
+      previousTime = op.time;
+      if (op.kind == ReplicaOp.Kind.ADD) {
+        encoder.writeString(op.name);
+        encoder.writeString(op.unit);
+        encoder.out.writeDouble(op.amount);
+        encoder.out.writeDouble(op.price);
+      } else {
+        encoder.writeString(op.lotOrigin);
+        encoder.writeVarLong(op.lotSeq);
+      }
+      switch (op.kind) {
+        case AMOUNT -> encoder.out.writeDouble(op.amount);
+        case PRICE -> encoder.out.writeDouble(op.price);
+        default -> {
+        }
+      }
+      if (op.kind == ReplicaOp.Kind.ADD || op.kind == ReplicaOp.Kind.EXPIRY) {
+        encoder.writeZigZag(op.expiry - previousExpiry);
+        previousExpiry = op.expiry;
+      }
+    }
+    encoder.out.flush();
+  }
+
+  /**
+   * Reads a batch of operations written by {@link #writeDeltaBatch}.
+   *
+   * @param in the stream to read from. It is not closed.
+   * @return the operations, in sequence order.
+   * @throws IOException if the batch could not be read or is not a batch of operations.
+   */
+  static List<ReplicaOp> readDeltaBatch(InputStream in) throws IOException {
+    Decoder decoder = new Decoder(in, DELTA_MAGIC);
+    String origin = decoder.readString();
+    long firstSeq = decoder.readVarLong();
+    long count = decoder.readVarLong();
+    ReplicaOp.Kind[] kinds = ReplicaOp.Kind.values();
+    List<ReplicaOp> ops = new ArrayList<>();
+    long previousTime = 0;
+    long previousExpiry = 0;
+    for (long seq = firstSeq; seq < firstSeq + count; seq++) {
+      long kindIndex = decoder.readVarLong();
+      if (kindIndex >= kinds.length) {
+        throw new IOException("Unknown operation in batch");
+      }
+      ReplicaOp.Kind kind = kinds[(int) kindIndex];
+      long time = previousTime + decoder.readZigZag();
+      previousTime = time;
+      String name = null;
+      String unit = null;
+      double amount = 0;
+      double price = 0;
+      long expiry = 0;
+      String lotOrigin = origin;
+      long lotSeq = seq;
+      if (kind == ReplicaOp.Kind.ADD) {
+        name = decoder.readString();
+        unit = decoder.readString();
+        amount = decoder.in.readDouble();
+        price = decoder.in.readDouble();
+      } else {
+        lotOrigin = decoder.readString();
+        lotSeq = decoder.readVarLong();
+      }
+      switch (kind) {
+        case AMOUNT -> amount = decoder.in.readDouble();
+        case PRICE -> price = decoder.in.readDouble();
+        default -> {
+        }
+      }
+      if (kind == ReplicaOp.Kind.ADD || kind == ReplicaOp.Kind.EXPIRY) {
+        expiry = previousExpiry + decoder.readZigZag();
+        previousExpiry = expiry;
+      }
+      ops.add(new ReplicaOp(kind, origin, seq, time, lotOrigin, lotSeq, name, unit, amount,
+          price, expiry));
+    }
+    return ops;
+  }
+
+  /**
+   * Writes a trace of operations one at a time, as they are made.
+   * Each operation is written as its kind, the microseconds since the operation before,
+   * and its arguments. Dates are written as the difference from the date before.
+   * The trace ends with a 0, but a trace cut short, as when the app is killed,
+   * can still be read up to the last whole operation.
+   */
+  static final class TraceWriter {
+    private final Encoder encoder;
+    private long previousMicros;
+    private long previousDate;
+
+    TraceWriter(OutputStream out) throws IOException {
+      this.encoder = new Encoder(out, TRACE_MAGIC);
+    }
+
+    void write(TraceOp op) throws IOException {
+      encoder.writeVarLong(op.kind.ordinal() + 1L);
+      encoder.writeVarLong(op.micros - previousMicros);
+      previousMicros = op.micros;
+      switch (op.kind.shape) {
+        case TEXT -> encoder.writeString(op.text);
+        case TEXT_NUMBER -> {
+          encoder.writeString(op.text);
+          encoder.out.writeDouble(op.number);
+        }
+        case TEXT_COUNT -> {
+          encoder.writeString(op.text);
+          encoder.writeVarLong(op.count);
+        }
+        case INGREDIENT -> {
+          encoder.writeString(op.text);
+          encoder.out.writeDouble(op.number);
+          encoder.writeString(op.unit);
+        }
+        case DATE -> writeDate(op.date);
+        case GROCERY -> writeGrocery(op.grocery);
+        case RECIPE -> {
+          writeRecipe(op.recipe);
+          encoder.writeVarLong(op.count);
+        }
+        default -> {
+        }
+      }
+    }
+
+    /**
+     * Ends the trace and writes out what is buffered. The stream is not closed.
+     */
+    void finish() throws IOException {
+      encoder.writeVarLong(0);
+      encoder.out.flush();
+    }
+
+    void flush() throws IOException {
+      encoder.out.flush();
+    }
+
+    private void writeDate(long date) throws IOException {
+      encoder.writeZigZag(date - previousDate);
+      previousDate = date;
+    }
+
+    private void writeGrocery(Grocery grocery) throws IOException {
+      encoder.writeString(grocery.getName());
+      encoder.writeString(grocery.getUnit());
+      encoder.out.writeDouble(grocery.getPricePerUnit());
+      encoder.writeVarLong(grocery.getLots().size());
+      for (Lot lot : grocery.getLots()) {
+        encoder.out.writeDouble(lot.getAmount());
+        encoder.out.writeDouble(lot.getPricePerUnit());
+        writeDate(lot.getBestBeforeDate().getTime());
+      }
+    }
+
+    private void writeRecipe(Recipe recipe) throws IOException {
+      encoder.writeString(recipe.getName());
+      encoder.writeLiteral(recipe.getDescription());
+      encoder.writeVarLong(recipe.getServings());
+      encoder.writeVarLong(recipe.getIngredients().size());
+      for (Ingredient ingredient : recipe.getIngredients()) {
+        encoder.writeString(ingredient.getName());
+        encoder.out.writeDouble(ingredient.getAmount());
+        encoder.writeString(ingredient.getUnit());
+      }
+    }
+  }
+
+  /**
+   * Reads what a {@link TraceWriter} has written.
+   */
+  static final class TraceReader {
+    private final Decoder decoder;
+    private final TraceOp.Kind[] kinds = TraceOp.Kind.values();
+    private long previousMicros;
+    private long previousDate;
+
+    TraceReader(InputStream in) throws IOException {
+      this.decoder = new Decoder(in, TRACE_MAGIC);
+    }
+
+    /**
+     * Reads the next operation.
+     *
+     * @return the operation, or null at the end of the trace.
+     * @throws IOException if the trace could not be read or holds an unknown operation.
+     */
+    TraceOp read() throws IOException {
+      long kindIndex;
+      try {
+        kindIndex = decoder.readVarLong();
+      } catch (EOFException e) {
+        return null;
+      }
+      if (kindIndex == 0) {
+        return null;
+      }
+      if (kindIndex > kinds.length) {
+        throw new IOException("Unknown operation in trace");
+      }
+      TraceOp.Kind kind = kinds[(int) kindIndex - 1];
+      try {
+        long micros = previousMicros + decoder.readVarLong();
+        previousMicros = micros;
+        String text = null;
+        String unit = null;
+        double number = 0;
+        int count = 0;
+        long date = 0;
+        Grocery grocery = null;
+        Recipe recipe = null;
+        switch (kind.shape) {
+          case TEXT -> text = decoder.readString();
+          case TEXT_NUMBER -> {
+            text = decoder.readString();
+            number = decoder.in.readDouble();
+          }
+          case TEXT_COUNT -> {
+            text = decoder.readString();
+            count = (int) decoder.readVarLong();
+          }
+          case INGREDIENT -> {
+            text = decoder.readString();
+            number = decoder.in.readDouble();
+            unit = decoder.readString();
+          }
+          case DATE -> date = readDate();
+          case GROCERY -> grocery = readGrocery();
+          case RECIPE -> {
+            recipe = readRecipe();
+            count = (int) decoder.readVarLong();
+          }
+          default -> {
+          }
+        }
+        return new TraceOp(kind, micros, text, unit, number, count, date, grocery, recipe);
+      } catch (EOFException e) {
+        return null;
+      }
+    }
+
+    private long readDate() throws IOException {
+      previousDate += decoder.readZigZag();
+      return previousDate;
+    }
+
+    private Grocery readGrocery() throws IOException {
+      String name = decoder.readString();
+      String unit = decoder.readString();
+      double pricePerUnit = decoder.in.readDouble();
+      int lotCount = (int) decoder.readVarLong();
+      List<Lot> lots = new ArrayList<>(lotCount);
+      for (int i = 0; i < lotCount; i++) {
+        double amount = decoder.in.readDouble();
+        double price = decoder.in.readDouble();
+        lots.add(Lot.restore(amount, new Date(readDate()), price));
+      }
+      return Grocery.restore(name, unit, pricePerUnit, lots);
+    }
+
+    private Recipe readRecipe() throws IOException {
+      Recipe recipe = new Recipe(decoder.readString());
+      recipe.setDescription(decoder.readLiteral());
+      recipe.setServings((int) decoder.readVarLong());
+      int ingredients = (int) decoder.readVarLong();
+      for (int i = 0; i < ingredients; i++) {
+        String name = decoder.readString();
+        double amount = decoder.in.readDouble();
+        recipe.addIngredient(new Ingredient(name, amount, decoder.readString()));
+      }
+      return recipe;
+    }
+  }
+
+  /**
+   * Writes one block of recipes: first the recipes without their descriptions,
+   * then all descriptions of the block compressed together.
+   *
+   * @param encoder the encoder to write with.
+   * @param block the recipes of the block.
+   * @throws IOException if the block could not be written.
+   */
+  private static void writeBlock(Encoder encoder, List<Recipe> block) throws IOException {
+    encoder.writeVarLong(block.size());
+    for (Recipe recipe : block) {
+      encoder.writeVarLong(recipe.getId());
+      encoder.writeString(recipe.getName());
+      encoder.writeVarLong(recipe.getServings());
+      encoder.writeVarLong(recipe.getIngredients().size());
+      for (Ingredient ingredient : recipe.getIngredients()) {
+        encoder.writeString(ingredient.getName());
+        encoder.out.writeDouble(ingredient.getAmount());
+        encoder.writeString(ingredient.getUnit());
+      }
+    }
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed)) {
+      Encoder descriptions = new Encoder(deflater);
+      for (Recipe recipe : block) {
+        descriptions.writeLiteral(recipe.getDescription());
+      }
+      descriptions.out.flush();
+    }
+    encoder.writeVarLong(compressed.size());
+    compressed.writeTo(encoder.out);
+  }
+
+  /**
+   * Writes variable-length numbers and dictionary-encoded strings.
+   * A string is written as 0 for null, 1 followed by the text the first time it is seen,
+   * or its number in the dictionary plus 2 after that.
+   */
+  private static final class Encoder {
+    private final DataOutputStream out;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+
+    private Encoder(OutputStream out, int magic) throws IOException {
+      this.out = new DataOutputStream(new BufferedOutputStream(out));
+      this.out.writeInt(magic);
+      writeVarLong(FORMAT_VERSION);
+    }
+
+    private Encoder(OutputStream out) {
+      this.out = new DataOutputStream(out);
+    }
+
+    private void writeVarLong(long value) throws IOException {
+      while ((value & ~0x7FL) != 0) {
+        out.writeByte((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      out.writeByte((int) value);
+    }
+
+    private void writeZigZag(long value) throws IOException {
+      writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    private void writeString(String value) throws IOException {
+      if (value == null) {
+        writeVarLong(0);
+        return;
+      }
+      Integer index = dictionary.get(value);
+      if (index != null) {
+        writeVarLong(index + 2L);
+        return;
+      }
+      if (dictionary.size() < MAX_DICTIONARY) {
+        dictionary.put(value, dictionary.size());
+      }
+      writeVarLong(1);
+      writeText(value);
+    }
+
+    private void writeLiteral(String value) throws IOException {
+      if (value == null) {
+        writeVarLong(0);
+      } else {
+        writeVarLong(1);
+        writeText(value);
+      }
+    }
+
+    private void writeText(String value) throws IOException {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeVarLong(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * Reads what an {@link Encoder} has written.
+   */
+  private static final class Decoder {
+    private final DataInputStream in;
+    private final List<String> dictionary = new ArrayList<>();
+
+    private Decoder(InputStream in, int magic) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(in));
+      if (this.in.readInt() != magic) {
+        throw new IOException("Not a backup of the expected kind");
+      }
+      long version = readVarLong();
+      if (version != FORMAT_VERSION) {
+        throw new IOException("Unsupported backup format version " + version);
+      }
+    }
+
+    private Decoder(InputStream in) {
+      this.in = new DataInputStream(in);
+    }
+
+    private long readVarLong() throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = in.readUnsignedByte();
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IOException("Malformed number in backup");
+    }
+
+    private long readZigZag() throws IOException {
+      long value = readVarLong();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    private String readString() throws IOException {
+      long code = readVarLong();
+      if (code == 0) {
+        return null;
+      }
+      if (code == 1) {
+        String value = readText();
+        if (dictionary.size() < MAX_DICTIONARY) {
+          dictionary.add(value);
+        }
+        return value;
+      }
+      if (code - 2 >= dictionary.size()) {
+        throw new IOException("Unknown dictionary entry in backup");
+      }
+      return dictionary.get((int) (code - 2));
+    }
+
+    private String readLiteral() throws IOException {
+      return readVarLong() == 0 ? null : readText();
+    }
+
+    private String readText() throws IOException {
+      long length = readVarLong();
+      if (length > Integer.MAX_VALUE) {
+        throw new IOException("Malformed text in backup");
+      }
+      byte[] bytes = new byte[(int) length];
+      in.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,163 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps how much of every item has been used, per item, in a {@link ConsumptionSeries}.
+ * Each use updates only the series of its item, and right after it the expected stock-out
+ * time of the item is compared with the next shopping day. If the item runs out first,
+ * a {@link ReorderAlert} is returned, so alerts are raised as items are used and never
+ * need a scan over all items.
+ * The shopping day is a day of the week, Saturday unless another day is set.
+ */
+public class ConsumptionHistory {
+  private static final int DAYS_BETWEEN_SHOPPING = 7;
+  private static final double DAY_MILLIS = 24 * 60 * 60 * 1000.0;
+  private Map<String, ConsumptionSeries> series = new HashMap<>();
+  private int shoppingDay = Calendar.SATURDAY;
+  private final PersistenceService persistence;
+  private final Path filePath;
+
+  /**
+   * Constructs a new ConsumptionHistory and loads earlier use from file if available.
+   *
+   * @param persistence the PersistenceService used to save the history.
+   * @param filePath the file the history is kept in.
+   */
+  public ConsumptionHistory(PersistenceService persistence, Path filePath) {
+    this.persistence = persistence;
+    this.filePath = filePath;
+    loadFromFile();
+  }
+
+  /**
+   * Records a use of an item and saves the history, then checks whether the stock left
+   * runs out before the next shopping day at the estimated rate.
+   *
+   * @param name the name of the item.
+   * @param unit the unit of the amounts.
+   * @param amount the amount used.
+   * @param stock the amount left after the use.
+   * @param time the time of the use, in milliseconds since the epoch.
+   * @return a ReorderAlert if the item is expected to run out before the next shopping day,
+   *     or null otherwise.
+   * @throws IllegalArgumentException if the amount is not greater than 0.
+   */
+  public synchronized ReorderAlert record(String name, String unit, double amount, double stock,
+      long time) {
+    if (amount <= 0) {
+      throw new IllegalArgumentException("Amount must be greater than 0");
+    }
+    ConsumptionSeries used =
+        series.computeIfAbsent(StorageSnapshot.key(name), k -> new ConsumptionSeries());
+    used.append(time, amount);
+    persistence.requestSave(filePath, this::copySeries);
+    double rate = used.dailyRate(time);
+    long shopping = nextShoppingDay(time);
+    double daysLeft = stock / rate;
+    double daysToShopping = (shopping - time) / DAY_MILLIS;
+    if (daysLeft >= daysToShopping) {
+      return null;
+    }
+    double reorderAmount =
+        Math.ceil((rate * (daysToShopping + DAYS_BETWEEN_SHOPPING) - stock) * 10) / 10;
+    return new ReorderAlert(name, unit, stock, rate, time + (long) (daysLeft * DAY_MILLIS),
+        shopping, reorderAmount);
+  }
+
+  /**
+   * Gets the recorded use of an item.
+   *
+   * @param name the name of the item.
+   * @return a copy of the ConsumptionSeries, or null if the item has not been used.
+   */
+  public synchronized ConsumptionSeries getSeries(String name) {
+    ConsumptionSeries found = series.get(StorageSnapshot.key(name));
+    return found != null ? found.copy() : null;
+  }
+
+  /**
+   * Estimates the amount of an item used per day.
+   *
+   * @param name the name of the item.
+   * @param time the time to estimate the rate at, in milliseconds since the epoch.
+   * @return the amount per day, or 0 if the item has not been used.
+   */
+  public synchronized double dailyRate(String name, long time) {
+    ConsumptionSeries found = series.get(StorageSnapshot.key(name));
+    return found != null ? found.dailyRate(time) : 0;
+  }
+
+  /**
+   * Sets the day of the week of the weekly shopping.
+   *
+   * @param day the day, from Calendar.SUNDAY to Calendar.SATURDAY.
+   * @throws IllegalArgumentException if the day is not a day of the week.
+   */
+  public synchronized void setShoppingDay(int day) {
+    if (day < Calendar.SUNDAY || day > Calendar.SATURDAY) {
+      throw new IllegalArgumentException("Shopping day must be a day of the week");
+    }
+    shoppingDay = day;
+  }
+
+  /**
+   * Gets the day of the week of the weekly shopping.
+   *
+   * @return the day, from Calendar.SUNDAY to Calendar.SATURDAY.
+   */
+  public synchronized int getShoppingDay() {
+    return shoppingDay;
+  }
+
+  /**
+   * Finds the start of the next shopping day after the day of a time.
+   *
+   * @param time the time in milliseconds since the epoch.
+   * @return the midnight starting the next shopping day, in milliseconds since the epoch.
+   */
+  public synchronized long nextShoppingDay(long time) {
+    Calendar cal = Calendar.getInstance();
+    cal.setTimeInMillis(time);
+    cal.set(Calendar.HOUR_OF_DAY, 0);
+    cal.set(Calendar.MINUTE, 0);
+    cal.set(Calendar.SECOND, 0);
+    cal.set(Calendar.MILLISECOND, 0);
+    int days = Math.floorMod(shoppingDay - cal.get(Calendar.DAY_OF_WEEK) - 1, 7) + 1;
+    cal.add(Calendar.DAY_OF_MONTH, days);
+    return cal.getTimeInMillis();
+  }
+
+  /**
+   * Copies every series so they can be written while new use is recorded.
+   *
+   * @return a map from key to a copy of each ConsumptionSeries.
+   */
+  private synchronized HashMap<String, ConsumptionSeries> copySeries() {
+    HashMap<String, ConsumptionSeries> copy = new HashMap<>();
+    series.forEach((key, value) -> copy.put(key, value.copy()));
+    return copy;
+  }
+
+  /**
+   * Loads the history from file if it exists.
+   */
+  @SuppressWarnings("unchecked")
+  private void loadFromFile() {
+    if (!Files.exists(filePath)) {
+      return;
+    }
+    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filePath.toFile()))) {
+      series = (Map<String, ConsumptionSeries>) ois.readObject();
+    } catch (IOException | ClassNotFoundException e) {
+      System.out.println("Error loading consumption: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.Serializable;
+
+/**
+ * The consumption of one item: the latest uses in a fixed-size ring buffer, and an
+ * exponentially weighted estimate of how much is used per day.
+ * Each use is the time it happened and the amount used. The total of the uses in the buffer
+ * is kept as they are appended and overwritten, so the rate over the window needs no loop.
+ * The estimate is a sum of all uses that decays with a time constant of {@value #TAU_DAYS}
+ * days, so older uses count less and the rate falls when the item is no longer used.
+ * Until the item has been used for that long, the sum is divided by the time since the first
+ * use instead, so a new item gets a fair rate from its first few uses.
+ * Every append costs the same, however long the item has been used.
+ */
+public final class ConsumptionSeries implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final int CAPACITY = 32;
+  private static final double TAU_DAYS = 7;
+  private static final double DAY_MILLIS = 24 * 60 * 60 * 1000.0;
+  private final long[] times = new long[CAPACITY];
+  private final double[] amounts = new double[CAPACITY];
+  private int next;
+  private int size;
+  private double windowTotal;
+  private double decayedTotal;
+  private long decayedAt;
+  private long firstTime;
+
+  /**
+   * Appends a use, overwriting the oldest use in the window if the buffer is full,
+   * and adds it to the decayed total.
+   *
+   * @param time the time of the use, in milliseconds since the epoch.
+   * @param amount the amount used.
+   */
+  void append(long time, double amount) {
+    if (size == CAPACITY) {
+      windowTotal -= amounts[next];
+    }
+    times[next] = time;
+    amounts[next] = amount;
+    next = (next + 1) % CAPACITY;
+    size = Math.min(size + 1, CAPACITY);
+    windowTotal += amount;
+    if (firstTime == 0) {
+      firstTime = time;
+      decayedAt = time;
+    }
+    decayedTotal = decayedTotal(time) + amount;
+    decayedAt = Math.max(decayedAt, time);
+  }
+
+  /**
+   * Gets the number of uses kept in the window.
+   *
+   * @return the number of uses, at most the capacity of the buffer.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Gets the time of a use.
+   *
+   * @param index the position, from 0 (oldest) to size() - 1 (newest).
+   * @return the time in milliseconds since the epoch.
+   */
+  public long timeAt(int index) {
+    return times[slot(index)];
+  }
+
+  /**
+   * Gets the amount of a use.
+   *
+   * @param index the position, from 0 (oldest) to size() - 1 (newest).
+   * @return the amount used.
+   */
+  public double amountAt(int index) {
+    return amounts[slot(index)];
+  }
+
+  /**
+   * Gets the total amount of the uses in the window.
+   *
+   * @return the total amount.
+   */
+  public double getWindowTotal() {
+    return windowTotal;
+  }
+
+  /**
+   * Gets the average amount used per day over the window, from the oldest use in it
+   * to the newest, counting at least one day.
+   *
+   * @return the amount per day, or 0 if nothing has been used.
+   */
+  public double windowRate() {
+    if (size == 0) {
+      return 0;
+    }
+    double days = Math.max(1, (timeAt(size - 1) - timeAt(0)) / DAY_MILLIS);
+    return windowTotal / days;
+  }
+
+  /**
+   * Estimates the amount used per day at a time, weighting recent uses the most.
+   *
+   * @param time the time to estimate the rate at, in milliseconds since the epoch.
+   * @return the amount per day, or 0 if nothing has been used.
+   */
+  public double dailyRate(long time) {
+    if (size == 0) {
+      return 0;
+    }
+    double days = Math.min(TAU_DAYS, Math.max(1, (time - firstTime) / DAY_MILLIS));
+    return decayedTotal(time) / days;
+  }
+
+  /**
+   * Copies the series.
+   *
+   * @return a new ConsumptionSeries with the same uses and estimate.
+   */
+  ConsumptionSeries copy() {
+    ConsumptionSeries copy = new ConsumptionSeries();
+    System.arraycopy(times, 0, copy.times, 0, CAPACITY);
+    System.arraycopy(amounts, 0, copy.amounts, 0, CAPACITY);
+    copy.next = next;
+    copy.size = size;
+    copy.windowTotal = windowTotal;
+    copy.decayedTotal = decayedTotal;
+    copy.decayedAt = decayedAt;
+    copy.firstTime = firstTime;
+    return copy;
+  }
+
+  /**
+   * Decays the total of all uses to a time. Times before the last use are treated
+   * as the time of the last use.
+   */
+  private double decayedTotal(long time) {
+    double days = Math.max(0, time - decayedAt) / DAY_MILLIS;
+    return decayedTotal * Math.exp(-days / TAU_DAYS);
+  }
+
+  /**
+   * Finds the slot in the buffer of a use.
+   *
+   * @param index the position, from 0 (oldest) to size() - 1 (newest).
+   * @return the index in the arrays.
+   */
+  private int slot(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+    }
+    return (next - size + index + CAPACITY) % CAPACITY;
+  }
+}
@@ -0,0 +1,109 @@
+package edu.ntnu.iir.bidata;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically moves expired lots out of the food storage and into the waste ledger.
+ * The sweep runs on a background thread, so expired groceries are recorded
+ * even if nobody looks at them in the menu.
+ * A sweep that removes anything also drops the undo steps of a {@link FoodStorage}:
+ * undoing back past the sweep would bring back lots that are already counted as waste
+ * in the ledger, so they would be wasted twice.
+ */
+public class ExpirySweeper {
+  private static final long SWEEP_INTERVAL_MINUTES = 60;
+  private final GroceryStore storage;
+  private final WasteLedger ledger;
+  private final ScheduledExecutorService scheduler;
+
+  /**
+   * Constructs a new ExpirySweeper for the given storage and ledger.
+   *
+   * @param storage the GroceryStore to remove expired lots from.
+   * @param ledger the WasteLedger to record expired lots in.
+   */
+  public ExpirySweeper(GroceryStore storage, WasteLedger ledger) {
+    this.storage = storage;
+    this.ledger = ledger;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "expiry-sweeper");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Starts sweeping right away and then once every hour.
+   */
+  public void start() {
+    scheduler.scheduleAtFixedRate(this::runSweep, 0, SWEEP_INTERVAL_MINUTES, TimeUnit.MINUTES);
+  }
+
+  /**
+   * Stops the background sweeping.
+   */
+  public void stop() {
+    scheduler.shutdown();
+  }
+
+  /**
+   * Moves every lot that expired before today into the waste ledger,
+   * and saves both the storage and the ledger if anything was removed.
+   *
+   * @return the number of lots that were moved.
+   */
+  public int sweep() {
+    return sweep(startOfToday());
+  }
+
+  /**
+   * Moves every lot that expired before the given date into the waste ledger, recorded on
+   * that date, and saves both the storage and the ledger if anything was removed.
+   * Changes made to the storage before a sweep that removed anything can no longer be undone.
+   *
+   * @param date the date to compare against.
+   * @return the number of lots that were moved.
+   */
+  public int sweep(Date date) {
+    List<WasteEntry> wasted = storage.removeExpired(date);
+    if (wasted.isEmpty()) {
+      return 0;
+    }
+    for (WasteEntry entry : wasted) {
+      ledger.record(entry);
+    }
+    storage.saveToFile();
+    ledger.saveToFile();
+    return wasted.size();
+  }
+
+  /**
+   * Runs a scheduled sweep, making sure a failure does not stop later sweeps.
+   */
+  private void runSweep() {
+    try {
+      sweep();
+    } catch (RuntimeException e) {
+      System.out.println("Expiry sweep failed: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Gets today's date at midnight.
+   *
+   * @return the start of today.
+   */
+  private static Date startOfToday() {
+    Calendar todayCal = Calendar.getInstance();
+    todayCal.set(Calendar.HOUR_OF_DAY, 0);
+    todayCal.set(Calendar.MINUTE, 0);
+    todayCal.set(Calendar.SECOND, 0);
+    todayCal.set(Calendar.MILLISECOND, 0);
+    return todayCal.getTime();
+  }
+}
@@ -0,0 +1,31 @@
+package edu.ntnu.iir.bidata;
+
+import java.nio.file.Path;
+
+/**
+ * The default backend, keeping the groceries in memory as immutable snapshots and the
+ * recipes in an append-only store, with everything saved to files in the data directory.
+ * Its storages also support replication and tracing, which are not part of the
+ * {@link GroceryStore} interface.
+ */
+public final class FileBackend implements StorageBackend {
+  /**
+   * The name of the file backend.
+   */
+  public static final String NAME = "files";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public GroceryStore openGroceryStore(PersistenceService persistence, Path directory) {
+    return new FoodStorage(persistence, directory);
+  }
+
+  @Override
+  public RecipeCatalogue openRecipeCatalogue(PersistenceService persistence, Path directory) {
+    return new RecipeBook(persistence, directory);
+  }
+}
@@ -2,42 +2,338 @@ package edu.ntnu.iir.bidata;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Manages grocery storage, including adding, removing, clearing,
  * and saving groceries for data persistence.
+ * The groceries are held in an immutable {@link StorageSnapshot}, indexed by name and by
+ * the best-before date of their earliest-expiring lot. Every change copies the changed
+ * grocery, publishes a new snapshot and leaves the old one untouched, so readers never
+ * lock and always see a consistent view. Changes are synchronized, as the storage is
+ * also updated by the {@link ExpirySweeper}. After every change, the registered
+ * {@link StockListener}s are told which ingredient changed.
+ * The price paid for every added lot is recorded in the storage's {@link PriceHistory}.
+ * Every amount used or removed is recorded in its {@link ConsumptionHistory}, and if the item
+ * is then expected to run out before the next shopping day, the registered
+ * {@link ReorderListener}s are given a {@link ReorderAlert}.
+ * When replication is started, every change is also recorded by a {@link Replicator},
+ * which shares it with the pantries of other devices.
+ * Earlier snapshots are kept in a {@link StorageHistory}, so changes made through this class
+ * can be undone and redone by making another snapshot current, and the storage can be looked
+ * at as it was at an earlier time.
+ * Calls to the public methods can be recorded by a {@link TraceRecorder}, to be played back
+ * later against another storage.
  */
-public class FoodStorage {
-  private List<Grocery> groceries = new ArrayList<>();
-  private static final String FILE_PATH = "groceries.dat";
+public class FoodStorage implements VersionedStore {
+  private volatile StorageSnapshot current = StorageSnapshot.empty(0);
+  private final PersistenceService persistence;
+  private final List<StockListener> listeners = new CopyOnWriteArrayList<>();
+  private final List<ReorderListener> reorderListeners = new CopyOnWriteArrayList<>();
+  private final PriceHistory prices;
+  private final ConsumptionHistory consumption;
+  private final Path filePath;
+  private Replicator replicator;
+  private final StorageHistory history;
+  private volatile TraceRecorder trace;
+  private final long id = NEXT_ID.incrementAndGet();
+  /**
+   * The last id given to a storage. Shared by every GroceryStore in the package,
+   * as query caches tell storages apart by their id.
+   */
+  static final AtomicLong NEXT_ID = new AtomicLong();
+  private static final String FILE_NAME = "groceries.dat";
+  private static final String PRICES_FILE_NAME = "prices.dat";
+  private static final String CONSUMPTION_FILE_NAME = "consumption.dat";
+  private static final String REPLICA_FILE_NAME = "replica.dat";
+  private static final String HISTORY_DIRECTORY = "history";
+  private static final LatencyHistogram SEARCH = Metrics.histogram("storage.searchGrocery");
+  private static final LatencyHistogram HAS_INGREDIENTS =
+      Metrics.histogram("storage.hasIngredients");
+  private static final LatencyHistogram LOAD = Metrics.histogram("storage.loadFromFile");
 
   /**
    * Constructs a new FoodStorage object and loads existing groceries from file if available.
+   * The data files are kept in the working directory.
+   *
+   * @param persistence the PersistenceService used to save the groceries.
+   */
+  public FoodStorage(PersistenceService persistence) {
+    this(persistence, Path.of(""));
+  }
+
+  /**
+   * Constructs a new FoodStorage object keeping its data files in the given directory,
+   * and loads existing groceries from there if available.
+   *
+   * @param persistence the PersistenceService used to save the groceries.
+   * @param directory the directory holding the data files of the storage.
    */
-  public FoodStorage() {
+  public FoodStorage(PersistenceService persistence, Path directory) {
+    this.persistence = persistence;
+    this.filePath = directory.resolve(FILE_NAME);
+    this.prices = new PriceHistory(persistence, directory.resolve(PRICES_FILE_NAME));
+    this.consumption =
+        new ConsumptionHistory(persistence, directory.resolve(CONSUMPTION_FILE_NAME));
+    this.history = new StorageHistory(directory.resolve(HISTORY_DIRECTORY), persistence);
     loadFromFile();
+    history.record(current);
+    Metrics.gauge("storage.groceries", this, storage -> storage.current.size());
   }
 
   /**
-   * Adds a grocery to the storage.
-   * If a grocery with the same name already exists, it updates the amount.
+   * Gets the current snapshot of the storage.
+   * The snapshot never changes, so it can be used for long reports
+   * without holding up changes to the storage.
    *
-   * @param grocery the Grocery object to add.
+   * @return the current StorageSnapshot.
+   */
+  @Override
+  public StorageSnapshot snapshot() {
+    return current;
+  }
+
+  /**
+   * Registers a listener that is told whenever the stock of an ingredient changes.
+   *
+   * @param listener the StockListener to add.
    */
-  public void addGrocery(Grocery grocery) {
-    for (Grocery g : groceries) {
-      if (g.getName().equalsIgnoreCase(grocery.getName())) {
-        g.setAmount(g.getAmount() + grocery.getAmount());
-        return;
+  @Override
+  public void addStockListener(StockListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Registers a listener that is given an alert whenever a used item is expected to run out
+   * before the next shopping day.
+   *
+   * @param listener the ReorderListener to add.
+   */
+  @Override
+  public void addReorderListener(ReorderListener listener) {
+    reorderListeners.add(listener);
+  }
+
+  /**
+   * Gets the id of this storage, which is different for every storage in the process.
+   * Together with the version, it identifies the contents of the storage.
+   *
+   * @return the id of the storage.
+   */
+  @Override
+  public long getId() {
+    return id;
+  }
+
+  /**
+   * Gets the modification counter of the storage, which increases with every change.
+   *
+   * @return the version of the current snapshot.
+   */
+  @Override
+  public long getVersion() {
+    return current.getVersion();
+  }
+
+  /**
+   * Gets the prices paid for groceries added to this storage.
+   *
+   * @return the PriceHistory of the storage.
+   */
+  @Override
+  public PriceHistory getPriceHistory() {
+    return prices;
+  }
+
+  /**
+   * Gets the amounts used from this storage over time.
+   *
+   * @return the ConsumptionHistory of the storage.
+   */
+  @Override
+  public ConsumptionHistory getConsumptionHistory() {
+    return consumption;
+  }
+
+  /**
+   * Starts recording calls to the public methods of this storage.
+   * Calls are recorded until the recorder is closed.
+   *
+   * @param recorder the TraceRecorder to record the calls with.
+   */
+  public void setTraceRecorder(TraceRecorder recorder) {
+    this.trace = Objects.requireNonNull(recorder);
+  }
+
+  /**
+   * Starts sharing this pantry with other devices through a drop folder they all can reach.
+   * The replicated state is kept in a file next to the groceries. The first time,
+   * every grocery in storage is added to it. After that, the storage is rebuilt from it,
+   * and only groceries added while replication was off are added.
+   * Calling this again returns the Replicator that was already started.
+   *
+   * @param dropDirectory the folder shared by all devices.
+   * @return the Replicator, used to sync with the other devices.
+   */
+  @Override
+  public synchronized Replicator startReplication(Path dropDirectory) {
+    if (replicator == null) {
+      replicator = new Replicator(this, persistence,
+          filePath.resolveSibling(REPLICA_FILE_NAME), dropDirectory);
+      refresh(replicator.attach(current.getGroceries()));
+    }
+    return replicator;
+  }
+
+  /**
+   * Gets the Replicator sharing this pantry with other devices.
+   *
+   * @return the Replicator, or null if replication has not been started.
+   */
+  @Override
+  public synchronized Replicator getReplicator() {
+    return replicator;
+  }
+
+  /**
+   * Undoes the latest change made through this class that has not been undone.
+   * The snapshot from before the change becomes current again, under a new version.
+   *
+   * @return true if a change was undone, false if there was nothing to undo.
+   */
+  @Override
+  public synchronized boolean undo() {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.UNDO);
+    }
+    return restore(history.undo(current));
+  }
+
+  /**
+   * Redoes the latest change that was undone.
+   *
+   * @return true if a change was redone, false if there was nothing to redo.
+   */
+  @Override
+  public synchronized boolean redo() {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.REDO);
+    }
+    return restore(history.redo(current));
+  }
+
+  /**
+   * Gets the number of changes that can be undone.
+   *
+   * @return the number of undo steps.
+   */
+  @Override
+  public synchronized int getUndoCount() {
+    return history.getUndoCount();
+  }
+
+  /**
+   * Gets the number of undone changes that can be redone.
+   *
+   * @return the number of redo steps.
+   */
+  @Override
+  public synchronized int getRedoCount() {
+    return history.getRedoCount();
+  }
+
+  /**
+   * Gets the storage as it was at an earlier time.
+   * Times before this session are answered from the newest checkpoint before them,
+   * so they can be up to an hour behind. Looking up groceries in the returned snapshot
+   * costs O(log n), as in the current one.
+   *
+   * @param time the time to look at.
+   * @return the snapshot from that time, or null if the history does not go back that far.
+   */
+  @Override
+  public StorageSnapshot snapshotAt(Date time) {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.SNAPSHOT_AT, time.getTime());
+    }
+    return history.snapshotAt(time.getTime());
+  }
+
+  /**
+   * Makes the snapshot of an undo or redo step current, and tells the listeners about
+   * the groceries the step touched. When replicated, the change is recorded like any other.
+   *
+   * @param step the step, or null if there was none.
+   * @return true if a step was made current, false if there was none.
+   */
+  private boolean restore(StorageHistory.Step step) {
+    if (step == null) {
+      return false;
+    }
+    StorageSnapshot target = step.getSnapshot();
+    if (replicator != null) {
+      for (String key : step.getNames()) {
+        replicator.record(current.searchGrocery(key), target.searchGrocery(key));
       }
     }
-    groceries.add(grocery);
+    current = target.withVersion(current.getVersion() + 1);
+    for (String key : step.getNames()) {
+      if (replicator != null) {
+        current = current.replace(current.searchGrocery(key), replicator.grocery(key));
+      }
+      notifyListeners(key);
+    }
+    history.record(current);
+    return true;
+  }
+
+  /**
+   * Adds a grocery to the storage, and records the price paid for each of its lots.
+   * If a grocery with the same name already exists, its lots are added to the
+   * existing grocery, each keeping its own amount, price and best-before date.
+   *
+   * @param grocery the Grocery object to add.
+   */
+  @Override
+  public synchronized void addGrocery(Grocery grocery) {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.ADD_GROCERY, grocery);
+    }
+    history.begin(current);
+    merge(grocery);
+    history.end(current);
+    long now = System.currentTimeMillis();
+    for (Lot lot : grocery.getLots()) {
+      prices.record(grocery.getName(), grocery.getUnit(), lot.getAmount(),
+          lot.calculateTotalValue(), now);
+    }
+  }
+
+  /**
+   * Adds the lots of a grocery to the storage without recording prices.
+   *
+   * @param grocery the Grocery object to add.
+   */
+  private void merge(Grocery grocery) {
+    Grocery existing = current.searchGrocery(grocery.getName());
+    Grocery updated = grocery.copy();
+    if (existing != null) {
+      updated = existing.copy();
+      updated.addLots(grocery);
+    }
+    publish(existing, updated);
   }
 
   /**
@@ -46,59 +342,217 @@ public class FoodStorage {
    * @param name the name of the grocery to search for.
    * @return the Grocery object if found, null otherwise.
    */
+  @Override
   public Grocery searchGrocery(String name) {
-    return groceries.stream()
-            .filter(g -> g.getName().equalsIgnoreCase(name))
-            .findFirst()
-            .orElse(null);
+    if (trace != null) {
+      trace.record(TraceOp.Kind.SEARCH_GROCERY, name);
+    }
+    return find(name);
   }
 
   /**
-   * Removes a specified amount from a grocery.
-   * If the grocery amount becomes zero or less, it is removed from the list.
+   * Looks up a grocery by name, without recording the call.
+   *
+   * @param name the name of the grocery.
+   * @return the Grocery object if found, null otherwise.
+   */
+  private Grocery find(String name) {
+    long start = Metrics.start();
+    Grocery grocery = current.searchGrocery(name);
+    SEARCH.stop(start);
+    return grocery;
+  }
+
+  /**
+   * Removes a specified amount from a grocery, taking from the earliest-expiring lots first,
+   * and records it as used.
+   * If the grocery amount becomes zero or less, it is removed from the storage.
    *
    * @param name the name of the grocery to update.
    * @param amount the amount to remove.
    * @return true if the grocery was found and updated, false otherwise.
    */
-  public boolean removeGrocery(String name, double amount) {
-    Grocery grocery = searchGrocery(name);
+  @Override
+  public synchronized boolean removeGrocery(String name, double amount) {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.REMOVE_GROCERY, name, amount);
+    }
+    Grocery grocery = find(name);
     if (grocery != null) {
-      double newAmount = grocery.getAmount() - amount;
-      if (newAmount <= 0) {
-        groceries.remove(grocery);
-      } else {
-        grocery.setAmount(newAmount);
-      }
+      history.begin(current);
+      consume(grocery, amount);
+      history.end(current);
+      recordUse(grocery);
       return true;
     }
     return false;
   }
 
   /**
-   * Retrieves the list of all groceries in storage.
+   * Retrieves the list of all groceries in storage, in alphabetical order.
    *
    * @return List of Grocery objects.
    */
+  @Override
   public List<Grocery> getGroceries() {
-    return groceries;
+    if (trace != null) {
+      trace.record(TraceOp.Kind.GET_GROCERIES);
+    }
+    return current.getGroceries();
+  }
+
+  /**
+   * Retrieves one page of groceries in alphabetical order.
+   * Cursors are grocery keys, so they stay valid while the storage changes.
+   *
+   * @param cursor the cursor from the previous page, or null for the first page.
+   * @param limit the largest number of groceries on the page.
+   * @return the Page of Grocery objects.
+   */
+  @Override
+  public Page<Grocery> listGroceries(String cursor, int limit) {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.LIST_GROCERIES, cursor, limit);
+    }
+    return current.listGroceries(cursor, limit);
+  }
+
+  /**
+   * Retrieves the groceries that have at least one lot expiring before the given date,
+   * earliest-expiring first.
+   *
+   * @param date the date to compare against, usually the start of today.
+   * @return List of Grocery objects with expired lots.
+   */
+  @Override
+  public List<Grocery> getExpiredGroceries(Date date) {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.GET_EXPIRED, date.getTime());
+    }
+    return current.getExpiredGroceries(date);
+  }
+
+  /**
+   * Retrieves the groceries whose earliest lot has not expired before the given date,
+   * earliest-expiring first.
+   *
+   * @param date the date to compare against, usually the start of today.
+   * @return List of Grocery objects that have not yet expired.
+   */
+  @Override
+  public List<Grocery> getGroceriesExpiringFrom(Date date) {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.GET_EXPIRING_FROM, date.getTime());
+    }
+    return current.getGroceriesExpiringFrom(date);
+  }
+
+  /**
+   * Removes every lot that expired before the given date.
+   * Groceries left without any lots are removed from the storage.
+   * The removed lots are recorded as waste, so earlier changes can no longer be undone.
+   *
+   * @param date the date to compare against, usually the start of today.
+   * @return a WasteEntry for each removed lot, recorded on the given date.
+   */
+  @Override
+  public synchronized List<WasteEntry> removeExpired(Date date) {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.REMOVE_EXPIRED, date.getTime());
+    }
+    List<WasteEntry> wasted = new ArrayList<>();
+    for (Grocery grocery : current.getExpiredGroceries(date)) {
+      Grocery updated = grocery.copy();
+      for (Lot lot : updated.removeExpiredLots(date)) {
+        wasted.add(new WasteEntry(grocery, lot, date));
+      }
+      publish(grocery, updated);
+    }
+    if (!wasted.isEmpty()) {
+      history.clearUndo();
+      history.record(current);
+    }
+    return wasted;
   }
 
   /**
-   * Clears all groceries from the storage.
+   * Calculates the total value of all groceries in storage.
+   *
+   * @return the total value in NOK.
    */
-  public void clearAllGroceries() {
-    groceries.clear();
+  @Override
+  public double getTotalValue() {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.TOTAL_VALUE);
+    }
+    return current.getTotalValue();
+  }
+
+  /**
+   * Clears all groceries from the storage. This can be undone.
+   */
+  @Override
+  public synchronized void clearAllGroceries() {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.CLEAR);
+    }
+    List<Grocery> cleared = current.getGroceries();
+    history.begin(current);
+    current = StorageSnapshot.empty(current.getVersion() + 1);
+    for (Grocery grocery : cleared) {
+      if (replicator != null) {
+        replicator.record(grocery, null);
+      }
+      history.touched(grocery.getName());
+      notifyListeners(grocery.getName());
+    }
+    history.end(current);
   }
 
   /**
    * Saves the list of groceries to a file to ensure data is retained across sessions.
+   * The file is written in the background from the newest snapshot at the time of writing,
+   * so several saves close together become a single write.
+   * At most once an hour, a checkpoint of the storage is also saved to its history.
    */
+  @Override
   public void saveToFile() {
-    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(FILE_PATH))) {
-      oos.writeObject(groceries);
-    } catch (IOException e) {
-      e.printStackTrace();
+    if (trace != null) {
+      trace.record(TraceOp.Kind.SAVE);
+    }
+    persistence.requestSave(filePath, () -> current.getGroceries());
+    history.checkpoint(current, System.currentTimeMillis());
+  }
+
+  /**
+   * Writes all groceries to a compact backup, earliest-expiring first.
+   * The backup is written from the current snapshot while changes go on.
+   *
+   * @param out the stream to write to.
+   * @return the number of groceries written.
+   * @throws IOException if the backup could not be written.
+   * @see BackupFormat
+   */
+  @Override
+  public long exportBackup(OutputStream out) throws IOException {
+    return BackupFormat.exportGroceries(current.groceriesByExpiry(), out);
+  }
+
+  /**
+   * Adds the groceries in a backup to the storage, merging their lots into groceries
+   * with the same name. Prices from the backup are not recorded in the price history.
+   *
+   * @param in the stream to read from.
+   * @return the number of groceries read.
+   * @throws IOException if the backup could not be read.
+   */
+  @Override
+  public synchronized long importBackup(InputStream in) throws IOException {
+    history.begin(current);
+    try {
+      return BackupFormat.importGroceries(in, this::merge);
+    } finally {
+      history.end(current);
     }
   }
 
@@ -106,13 +560,18 @@ public class FoodStorage {
    * Loads the list of groceries from a file if it exists.
    */
   private void loadFromFile() {
-    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(FILE_PATH))) {
-      groceries = (List<Grocery>) ois.readObject();
+    long start = Metrics.start();
+    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filePath.toFile()))) {
+      for (Grocery grocery : (List<Grocery>) ois.readObject()) {
+        merge(grocery);
+      }
+      history.checkpointLoaded(current, Files.getLastModifiedTime(filePath).toMillis());
     } catch (FileNotFoundException e) {
       System.out.println("No saved groceries found. Starting with an empty list.");
     } catch (IOException | ClassNotFoundException e) {
       e.printStackTrace();
     }
+    LOAD.stop(start);
   }
 
   /**
@@ -121,14 +580,33 @@ public class FoodStorage {
    * @param recipe the Recipe object to check.
    * @return true if all ingredients are available, false otherwise.
    */
+  @Override
   public boolean hasIngredients(Recipe recipe) {
-    for (Ingredient ingredient : recipe.getIngredients()) {
-      Grocery grocery = searchGrocery(ingredient.getName());
-      if (grocery == null || grocery.getAmount() < ingredient.getAmount()) {
-        return false;
-      }
+    if (trace != null) {
+      trace.record(TraceOp.Kind.HAS_INGREDIENTS, recipe, 0);
     }
-    return true;
+    long start = Metrics.start();
+    boolean available = current.pantry().covers(recipe.getVector());
+    HAS_INGREDIENTS.stop(start);
+    return available;
+  }
+
+  /**
+   * Checks if there are enough ingredients to make a recipe for a number of servings.
+   *
+   * @param recipe the Recipe object to check.
+   * @param servings the number of servings wanted.
+   * @return true if all ingredients are available for that many servings, false otherwise.
+   */
+  @Override
+  public boolean hasIngredients(Recipe recipe, int servings) {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.HAS_INGREDIENTS, recipe, servings);
+    }
+    long start = Metrics.start();
+    boolean available = current.pantry().covers(recipe.getVector(), servings);
+    HAS_INGREDIENTS.stop(start);
+    return available;
   }
 
   /**
@@ -145,19 +623,115 @@ public class FoodStorage {
   }
 
   /**
-   * Deducts the amount of an ingredient after use in a recipe.
+   * Deducts the amount of an ingredient after use in a recipe, and records it as used.
    *
    * @param ingredient the Ingredient object to deduct.
    */
-  public void useIngredient(Ingredient ingredient) {
-    Grocery grocery = searchGrocery(ingredient.getName());
+  @Override
+  public synchronized void useIngredient(Ingredient ingredient) {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.USE_INGREDIENT, ingredient);
+    }
+    Grocery grocery = find(ingredient.getName());
     if (grocery != null) {
-      double newAmount = grocery.getAmount() - ingredient.getAmount();
-      if (newAmount <= 0) {
-        groceries.remove(grocery);
-      } else {
-        grocery.setAmount(newAmount);
+      history.begin(current);
+      consume(grocery, ingredient.getAmount());
+      history.end(current);
+      recordUse(grocery);
+    }
+  }
+
+  /**
+   * Consumes an amount of a grocery, earliest-expiring lots first,
+   * and publishes a new snapshot with the updated grocery.
+   *
+   * @param grocery the Grocery to consume from.
+   * @param amount the amount to consume.
+   */
+  private void consume(Grocery grocery, double amount) {
+    Grocery updated = grocery.copy();
+    updated.consume(amount);
+    publish(grocery, updated);
+  }
+
+  /**
+   * Records the amount taken from a grocery in the consumption history, and gives the
+   * reorder listeners an alert if the rest is expected to run out before the next shopping day.
+   * Only the grocery that was used is looked at.
+   *
+   * @param before the grocery as it was before it was used.
+   */
+  private void recordUse(Grocery before) {
+    Grocery after = current.searchGrocery(before.getName());
+    double stock = after != null ? after.getAmount() : 0;
+    double used = before.getAmount() - stock;
+    if (used <= 0) {
+      return;
+    }
+    ReorderAlert alert = consumption.record(before.getName(), before.getUnit(), used, stock,
+        System.currentTimeMillis());
+    if (alert != null) {
+      Metrics.increment("storage.reorderAlerts", 1);
+      for (ReorderListener listener : reorderListeners) {
+        listener.reorderNeeded(alert);
+      }
+    }
+  }
+
+  /**
+   * Publishes a new snapshot with one grocery replaced, and tells the listeners.
+   * When replicated, the grocery is rebuilt from the replicated state after the change
+   * is recorded, so this device holds exactly what the other devices will compute.
+   *
+   * @param previous the grocery as it was, or null if it is new.
+   * @param updated the grocery as it is now. Null or empty groceries are removed.
+   */
+  private void publish(Grocery previous, Grocery updated) {
+    String name = updated != null ? updated.getName() : previous.getName();
+    if (replicator != null) {
+      replicator.record(previous, updated);
+      updated = replicator.grocery(StorageSnapshot.key(name));
+    }
+    current = current.replace(previous, updated);
+    history.touched(name);
+    notifyListeners(name);
+  }
+
+  /**
+   * Replaces groceries with the ones built from the replicated state, without recording
+   * the change again. Changes from other devices can not be undone here, so the undo
+   * history is dropped. Called while holding the storage lock.
+   *
+   * @param keys the keys of the groceries to replace.
+   */
+  void refresh(Collection<String> keys) {
+    boolean changed = false;
+    for (String key : keys) {
+      Grocery previous = current.searchGrocery(key);
+      Grocery updated = replicator.grocery(key);
+      if (previous != null || updated != null) {
+        current = current.replace(previous, updated);
+        notifyListeners(updated != null ? updated.getName() : previous.getName());
+        changed = true;
+      }
+    }
+    if (changed) {
+      history.clearUndo();
+      history.record(current);
+    }
+  }
+
+  /**
+   * Tells the listeners that the stock of a grocery has changed.
+   *
+   * @param name the name of the grocery.
+   */
+  private void notifyListeners(String name) {
+    if (!listeners.isEmpty()) {
+      int id = IngredientDictionary.idOf(name);
+      for (StockListener listener : listeners) {
+        listener.stockChanged(id);
       }
     }
   }
-}
\ No newline at end of file
+}
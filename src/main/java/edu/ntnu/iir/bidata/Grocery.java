@@ -1,15 +1,28 @@
 package edu.ntnu.iir.bidata;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
 
 /**
  * Represents a grocery item stored in the Wasteless app.
  * This class validates input data and ensures grocery items have valid properties.
  * Key features:
  * - Validates name, amount, unit, best-before date, and price per unit.
+ * - Keeps every purchase as a separate {@link Lot} in a min-heap ordered by
+ *   best-before date, so the earliest-expiring lot is always consumed first.
  * - Provides methods for calculating total value and formatting output.
+ * The amount, best-before date, price and total value are kept up to date
+ * as lots are added and consumed, so reading them never scans the lots.
+ * A grocery is frozen when it is put in a {@link StorageSnapshot}, and can not be changed
+ * after that, so the snapshot and its indexes stay as they were published. To change a
+ * grocery from a storage, change a {@link #copy()} of it.
  */
 public class Grocery implements Serializable {
   private static final long serialVersionUID = 1L;
@@ -18,6 +31,9 @@ public class Grocery implements Serializable {
   private String unit;
   private Date bestBeforeDate;
   private double pricePerUnit;
+  private double totalValue;
+  private PriorityQueue<Lot> lots = new PriorityQueue<>();
+  private transient boolean frozen;
   private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("dd.MM.yyyy");
 
   /**
@@ -33,10 +49,97 @@ public class Grocery implements Serializable {
   public Grocery(String name, double amount, String unit,
                  Date bestBeforeDate, double pricePerUnit) {
     setName(name);
-    setAmount(amount);
+    Lot lot = new Lot(amount, bestBeforeDate, pricePerUnit);
     setUnit(unit);
-    setBestBeforeDate(bestBeforeDate);
-    setPricePerUnit(pricePerUnit);
+    addLot(lot);
+  }
+
+  /**
+   * Constructs a copy of another grocery, including copies of all its lots.
+   *
+   * @param other the Grocery to copy
+   */
+  private Grocery(Grocery other) {
+    this.name = other.name;
+    this.amount = other.amount;
+    this.unit = other.unit;
+    this.bestBeforeDate = other.bestBeforeDate;
+    this.pricePerUnit = other.pricePerUnit;
+    this.totalValue = other.totalValue;
+    for (Lot lot : other.lots) {
+      lots.add(lot.copy());
+    }
+  }
+
+  /**
+   * Constructs a grocery without any lots, used when restoring groceries from a backup.
+   *
+   * @param name the name of the grocery item
+   * @param unit the unit of measurement
+   */
+  private Grocery(String name, String unit) {
+    this.name = name;
+    this.unit = unit;
+  }
+
+  /**
+   * Restores a grocery from a backup, without checking that its lots have not expired.
+   *
+   * @param name the name of the grocery item
+   * @param unit the unit of measurement
+   * @param pricePerUnit the price per unit of the most recently added lot
+   * @param lots the lots of the grocery
+   * @return the restored Grocery
+   */
+  static Grocery restore(String name, String unit, double pricePerUnit, List<Lot> lots) {
+    Grocery grocery = new Grocery(name, unit);
+    for (Lot lot : lots) {
+      grocery.addLot(lot);
+    }
+    grocery.pricePerUnit = pricePerUnit;
+    return grocery;
+  }
+
+  /**
+   * Creates a copy of this grocery that can be changed without affecting this one.
+   * The copy is not frozen, even if this grocery is.
+   *
+   * @return a new Grocery with copies of all lots
+   */
+  public Grocery copy() {
+    return new Grocery(this);
+  }
+
+  /**
+   * Freezes this grocery, so any later change throws IllegalStateException.
+   * Called when the grocery is put in a snapshot.
+   *
+   * @return this grocery
+   */
+  Grocery freeze() {
+    frozen = true;
+    return this;
+  }
+
+  /**
+   * Checks whether this grocery is frozen.
+   *
+   * @return true if the grocery is in a snapshot and can not be changed, false otherwise
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * Makes sure this grocery can be changed.
+   *
+   * @throws IllegalStateException if the grocery is frozen
+   */
+  private void checkNotFrozen() {
+    if (frozen) {
+      throw new IllegalStateException(
+          "Grocery " + name + " is part of a storage snapshot; change a copy instead");
+    }
   }
 
   /**
@@ -53,8 +156,10 @@ public class Grocery implements Serializable {
    *
    * @param name the name to set
    * @throws IllegalArgumentException if the name is null or blank
+   * @throws IllegalStateException if the grocery is frozen
    */
   public void setName(String name) {
+    checkNotFrozen();
     if (name == null || name.isBlank()) {
       throw new IllegalArgumentException("Name cannot be null or blank");
     }
@@ -62,7 +167,7 @@ public class Grocery implements Serializable {
   }
 
   /**
-   * Gets the amount of the grocery item.
+   * Gets the total amount of the grocery item across all lots.
    *
    * @return the amount of the grocery item
    */
@@ -71,16 +176,18 @@ public class Grocery implements Serializable {
   }
 
   /**
-   * Sets the amount of the grocery item.
+   * Sets the amount of a grocery item that has a single lot, keeping its date and price.
    *
    * @param amount the amount to set
-   * @throws IllegalArgumentException if the amount is less than or equal to 0
+   * @throws IllegalArgumentException if the amount is not greater than 0
+   * @throws IllegalStateException if the grocery is frozen or does not have exactly one lot
    */
   public void setAmount(double amount) {
+    Lot lot = singleLot();
     if (amount <= 0) {
       throw new IllegalArgumentException("Amount must be greater than 0");
     }
-    this.amount = amount;
+    replaceSingleLot(Lot.restore(amount, lot.getBestBeforeDate(), lot.getPricePerUnit()), lot);
   }
 
   /**
@@ -97,8 +204,10 @@ public class Grocery implements Serializable {
    *
    * @param unit the unit to set
    * @throws IllegalArgumentException if the unit is null or blank
+   * @throws IllegalStateException if the grocery is frozen
    */
   public void setUnit(String unit) {
+    checkNotFrozen();
     if (unit == null || unit.isBlank()) {
       throw new IllegalArgumentException("Unit cannot be null or blank");
     }
@@ -106,29 +215,29 @@ public class Grocery implements Serializable {
   }
 
   /**
-   * Gets the best-before date of the grocery item.
+   * Gets the best-before date of the earliest-expiring lot.
    *
-   * @return the best-before date
+   * @return a copy of the best-before date
    */
   public Date getBestBeforeDate() {
-    return bestBeforeDate;
+    return new Date(bestBeforeDate.getTime());
   }
 
   /**
-   * Sets the best-before date of the grocery item.
+   * Sets the best-before date of a grocery item that has a single lot,
+   * keeping its amount and price.
    *
    * @param bestBeforeDate the best-before date to set
-   * @throws IllegalArgumentException if the date is null or not in the future
+   * @throws IllegalArgumentException if the date is null or in the past
+   * @throws IllegalStateException if the grocery is frozen or does not have exactly one lot
    */
   public void setBestBeforeDate(Date bestBeforeDate) {
-    if (bestBeforeDate == null || bestBeforeDate.before(new Date())) {
-      throw new IllegalArgumentException("Best before date must be a valid future date");
-    }
-    this.bestBeforeDate = bestBeforeDate;
+    Lot lot = singleLot();
+    replaceSingleLot(new Lot(lot.getAmount(), bestBeforeDate, lot.getPricePerUnit()), lot);
   }
 
   /**
-   * Gets the price per unit of the grocery item.
+   * Gets the price per unit paid for the most recently added lot.
    *
    * @return the price per unit
    */
@@ -137,16 +246,155 @@ public class Grocery implements Serializable {
   }
 
   /**
-   * Sets the price per unit of the grocery item.
+   * Sets the price per unit of a grocery item that has a single lot,
+   * keeping its amount and date.
    *
    * @param pricePerUnit the price per unit to set
-   * @throws IllegalArgumentException if the price is less than or equal to 0
+   * @throws IllegalArgumentException if the price is not greater than 0
+   * @throws IllegalStateException if the grocery is frozen or does not have exactly one lot
    */
   public void setPricePerUnit(double pricePerUnit) {
+    Lot lot = singleLot();
     if (pricePerUnit <= 0) {
       throw new IllegalArgumentException("Price per unit must be greater than 0");
     }
-    this.pricePerUnit = pricePerUnit;
+    replaceSingleLot(Lot.restore(lot.getAmount(), lot.getBestBeforeDate(), pricePerUnit), lot);
+  }
+
+  /**
+   * Gets the only lot of this grocery, for the setters that change one property of it.
+   * With several lots it is not clear which one to change, so they have to be changed
+   * through {@link #consume(double)} and {@link #addLot(Lot)} instead.
+   *
+   * @return the single Lot
+   * @throws IllegalStateException if the grocery is frozen or does not have exactly one lot
+   */
+  private Lot singleLot() {
+    checkNotFrozen();
+    if (lots.size() != 1) {
+      throw new IllegalStateException("Grocery " + name + " has " + lots.size()
+          + " lots; add or consume lots instead");
+    }
+    return lots.peek();
+  }
+
+  /**
+   * Replaces the single lot of this grocery, keeping its id in the replicated pantry.
+   *
+   * @param lot the new Lot
+   * @param old the Lot it replaces
+   */
+  private void replaceSingleLot(Lot lot, Lot old) {
+    lot.setReplicaId(old.getReplicaId());
+    lots.clear();
+    amount = 0;
+    totalValue = 0;
+    addLot(lot);
+  }
+
+  /**
+   * Adds a lot to this grocery.
+   *
+   * @param lot the Lot to add
+   * @throws IllegalStateException if the grocery is frozen
+   */
+  public void addLot(Lot lot) {
+    checkNotFrozen();
+    lots.add(lot);
+    amount += lot.getAmount();
+    totalValue += lot.calculateTotalValue();
+    pricePerUnit = lot.getPricePerUnit();
+    bestBeforeDate = lots.peek().getBestBeforeDate();
+  }
+
+  /**
+   * Adds copies of all lots of another grocery to this one.
+   *
+   * @param other the Grocery whose lots should be added
+   * @throws IllegalStateException if the grocery is frozen
+   */
+  public void addLots(Grocery other) {
+    checkNotFrozen();
+    for (Lot lot : other.lots) {
+      addLot(lot.copy());
+    }
+  }
+
+  /**
+   * Consumes an amount of this grocery, taking from the earliest-expiring lots first.
+   * Lots that are used up are removed.
+   *
+   * @param requested the amount to consume
+   * @return the amount actually consumed, which is less than requested if
+   *         there was not enough left
+   * @throws IllegalStateException if the grocery is frozen
+   */
+  public double consume(double requested) {
+    checkNotFrozen();
+    double remaining = requested;
+    while (remaining > 0 && !lots.isEmpty()) {
+      Lot lot = lots.peek();
+      double taken = lot.take(remaining);
+      remaining -= taken;
+      totalValue -= taken * lot.getPricePerUnit();
+      if (lot.getAmount() <= 0) {
+        lots.poll();
+      }
+    }
+    double consumed = requested - remaining;
+    amount -= consumed;
+    if (lots.isEmpty()) {
+      amount = 0;
+      totalValue = 0;
+    } else {
+      bestBeforeDate = lots.peek().getBestBeforeDate();
+    }
+    return consumed;
+  }
+
+  /**
+   * Removes every lot that expires before the given date.
+   *
+   * @param date the date to compare against, usually the start of today
+   * @return the removed lots, earliest-expiring first
+   * @throws IllegalStateException if the grocery is frozen
+   */
+  public List<Lot> removeExpiredLots(Date date) {
+    checkNotFrozen();
+    List<Lot> expired = new ArrayList<>();
+    while (!lots.isEmpty() && lots.peek().getBestBeforeDate().before(date)) {
+      Lot lot = lots.poll();
+      amount -= lot.getAmount();
+      totalValue -= lot.calculateTotalValue();
+      expired.add(lot);
+    }
+    if (lots.isEmpty()) {
+      amount = 0;
+      totalValue = 0;
+    } else {
+      bestBeforeDate = lots.peek().getBestBeforeDate();
+    }
+    return expired;
+  }
+
+  /**
+   * Checks whether all lots of this grocery have been used up.
+   *
+   * @return true if there are no lots left, false otherwise
+   */
+  public boolean isEmpty() {
+    return lots.isEmpty();
+  }
+
+  /**
+   * Gets the lots of this grocery, earliest-expiring first.
+   *
+   * @return an unmodifiable list of Lot objects
+   */
+  public List<Lot> getLots() {
+    List<Lot> sorted = new ArrayList<>(lots);
+    Collections.sort(sorted);
+    return Collections.unmodifiableList(sorted);
   }
 
   /**
@@ -155,7 +403,30 @@ public class Grocery implements Serializable {
    * @return the total value as a double
    */
   public double calculateTotalValue() {
-    return amount * pricePerUnit;
+    return totalValue;
+  }
+
+  /**
+   * Restores the grocery from saved data.
+   * Groceries saved before lots were introduced are turned into a single lot.
+   */
+  private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+    ois.defaultReadObject();
+    if (lots == null) {
+      lots = new PriorityQueue<>();
+      lots.add(Lot.restore(amount, bestBeforeDate, pricePerUnit));
+      totalValue = amount * pricePerUnit;
+    }
+  }
+
+  /**
+   * Returns a short, one-line summary of the grocery item for use in listings.
+   *
+   * @return the name, amount and earliest best-before date
+   */
+  public String toSummary() {
+    return String.format("%s: %.2f %s, Best Before: %s",
+        name, amount, unit, DATE_FORMAT.format(bestBeforeDate));
   }
 
   /**
@@ -166,8 +437,8 @@ public class Grocery implements Serializable {
   @Override
   public String toString() {
     return String.format(
-        "Grocery: %s, Amount: %.2f %s, Best Before: %s, Price: %.2f NOK, Total: %.2f NOK",
+        "Grocery: %s, Amount: %.2f %s, Best Before: %s, Price: %.2f NOK, Total: %.2f NOK, Lots: %d",
         name, amount, unit, DATE_FORMAT.format(bestBeforeDate),
-        pricePerUnit, calculateTotalValue());
+        pricePerUnit, calculateTotalValue(), lots.size());
   }
 }
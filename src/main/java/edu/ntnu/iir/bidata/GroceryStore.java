@@ -0,0 +1,232 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The groceries of one household, as seen by the user interface and the rest of the app.
+ * Every {@link StorageBackend} has its own implementation; {@link FoodStorage} is the one
+ * keeping the groceries in memory and in files.
+ * Reads are answered from an immutable {@link StorageSnapshot}, so a backend publishes
+ * a new snapshot after every change, with a higher version, and tells its
+ * {@link StockListener}s which ingredient changed. Implementations must be safe to use from
+ * several threads, as the storage is also changed by the {@link ExpirySweeper}.
+ * Backends that keep their earlier versions also implement {@link VersionedStore}.
+ */
+public interface GroceryStore {
+
+  /**
+   * Gets the current snapshot of the storage. The snapshot never changes.
+   *
+   * @return the current StorageSnapshot.
+   */
+  StorageSnapshot snapshot();
+
+  /**
+   * Gets the id of this storage, which is different for every storage in the process.
+   * Together with the version, it identifies the contents of the storage.
+   *
+   * @return the id of the storage.
+   */
+  long getId();
+
+  /**
+   * Gets the modification counter of the storage, which increases with every change.
+   *
+   * @return the version of the current snapshot.
+   */
+  long getVersion();
+
+  /**
+   * Registers a listener that is told whenever the stock of an ingredient changes.
+   *
+   * @param listener the StockListener to add.
+   */
+  void addStockListener(StockListener listener);
+
+  /**
+   * Registers a listener that is given an alert whenever a used item is expected to run out
+   * before the next shopping day.
+   *
+   * @param listener the ReorderListener to add.
+   */
+  void addReorderListener(ReorderListener listener);
+
+  /**
+   * Gets the prices paid for groceries added to this storage.
+   *
+   * @return the PriceHistory of the storage.
+   */
+  PriceHistory getPriceHistory();
+
+  /**
+   * Gets the amounts used from this storage over time.
+   *
+   * @return the ConsumptionHistory of the storage.
+   */
+  ConsumptionHistory getConsumptionHistory();
+
+  /**
+   * Adds a grocery to the storage, merging its lots into a grocery with the same name,
+   * and records the price paid for each of its lots.
+   *
+   * @param grocery the Grocery object to add.
+   */
+  void addGrocery(Grocery grocery);
+
+  /**
+   * Searches for a grocery by name, ignoring case.
+   *
+   * @param name the name of the grocery to search for.
+   * @return the Grocery object if found, null otherwise.
+   */
+  Grocery searchGrocery(String name);
+
+  /**
+   * Removes an amount from a grocery, earliest-expiring lots first, and records it as used.
+   * A grocery left without any amount is removed.
+   *
+   * @param name the name of the grocery to update.
+   * @param amount the amount to remove.
+   * @return true if the grocery was found and updated, false otherwise.
+   */
+  boolean removeGrocery(String name, double amount);
+
+  /**
+   * Retrieves all groceries in alphabetical order.
+   *
+   * @return List of Grocery objects.
+   */
+  List<Grocery> getGroceries();
+
+  /**
+   * Retrieves one page of groceries in alphabetical order.
+   *
+   * @param cursor the cursor from the previous page, or null for the first page.
+   * @param limit the largest number of groceries on the page.
+   * @return the Page of Grocery objects.
+   */
+  Page<Grocery> listGroceries(String cursor, int limit);
+
+  /**
+   * Retrieves the groceries that have at least one lot expiring before the given date,
+   * earliest-expiring first.
+   *
+   * @param date the date to compare against.
+   * @return List of Grocery objects with expired lots.
+   */
+  List<Grocery> getExpiredGroceries(Date date);
+
+  /**
+   * Retrieves the groceries whose earliest lot has not expired before the given date,
+   * earliest-expiring first.
+   *
+   * @param date the date to compare against.
+   * @return List of Grocery objects that have not yet expired.
+   */
+  List<Grocery> getGroceriesExpiringFrom(Date date);
+
+  /**
+   * Removes every lot that expired before the given date. The removed lots are recorded as
+   * waste, so a backend that keeps undo steps drops them when anything is removed.
+   *
+   * @param date the date to compare against.
+   * @return a WasteEntry for each removed lot, recorded on the given date.
+   */
+  List<WasteEntry> removeExpired(Date date);
+
+  /**
+   * Calculates the total value of all groceries in storage.
+   *
+   * @return the total value in NOK.
+   */
+  double getTotalValue();
+
+  /**
+   * Clears all groceries from the storage.
+   */
+  void clearAllGroceries();
+
+  /**
+   * Checks if the ingredients for a recipe are available in the storage.
+   *
+   * @param recipe the Recipe object to check.
+   * @return true if all ingredients are available, false otherwise.
+   */
+  boolean hasIngredients(Recipe recipe);
+
+  /**
+   * Checks if the ingredients for a number of servings of a recipe are available.
+   *
+   * @param recipe the Recipe object to check.
+   * @param servings the number of servings to make.
+   * @return true if all ingredients are available, false otherwise.
+   */
+  boolean hasIngredients(Recipe recipe, int servings);
+
+  /**
+   * Deducts the amount of an ingredient after use in a recipe, and records it as used.
+   *
+   * @param ingredient the Ingredient object to deduct.
+   */
+  void useIngredient(Ingredient ingredient);
+
+  /**
+   * Undoes the latest change that has not been undone.
+   *
+   * @return true if a change was undone, false if there was nothing to undo
+   *     or the backend keeps no history.
+   */
+  boolean undo();
+
+  /**
+   * Redoes the latest change that was undone.
+   *
+   * @return true if a change was redone, false if there was nothing to redo.
+   */
+  boolean redo();
+
+  /**
+   * Gets the number of changes that can be undone.
+   *
+   * @return the number of undo steps.
+   */
+  int getUndoCount();
+
+  /**
+   * Gets the number of undone changes that can be redone.
+   *
+   * @return the number of redo steps.
+   */
+  int getRedoCount();
+
+  /**
+   * Makes sure the groceries are kept across sessions. The backend may write in the
+   * background, but pending writes must be finished when the PersistenceService it was
+   * opened with is flushed or shut down.
+   */
+  void saveToFile();
+
+  /**
+   * Writes all groceries to a compact backup, earliest-expiring first.
+   *
+   * @param out the stream to write to.
+   * @return the number of groceries written.
+   * @throws IOException if the backup could not be written.
+   * @see BackupFormat
+   */
+  long exportBackup(OutputStream out) throws IOException;
+
+  /**
+   * Adds the groceries in a backup to the storage, merging their lots into groceries
+   * with the same name.
+   *
+   * @param in the stream to read from.
+   * @return the number of groceries read.
+   * @throws IOException if the backup could not be read.
+   */
+  long importBackup(InputStream in) throws IOException;
+}
@@ -0,0 +1,66 @@
+package edu.ntnu.iir.bidata;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gives every ingredient name a small, dense integer id, shared by recipes and storages.
+ * Names are compared ignoring case, the same way groceries are looked up by name.
+ * Ids let recipes and the pantry be compared as arrays and bit sets instead of by name.
+ * The dictionary is shared by every storage and catalogue in the process, and a name keeps
+ * its id for as long as the process runs, also after the storages that used it are closed,
+ * because recipe vectors and pantries hold on to the ids. It is therefore capped at
+ * {@value #MAX_SIZE} names, which bounds it to a few tens of megabytes. The arrays and bit
+ * sets indexed by id are sized by the largest id they hold, not by the size of the dictionary.
+ */
+public final class IngredientDictionary {
+  private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+  private static final Map<Integer, String> KEYS = new ConcurrentHashMap<>();
+  private static final AtomicInteger NEXT_ID = new AtomicInteger();
+  /** The largest number of names that are given ids. */
+  public static final int MAX_SIZE = 1 << 18;
+
+  private IngredientDictionary() {
+  }
+
+  /**
+   * Gets the id of an ingredient name, giving it a new id the first time it is seen.
+   *
+   * @param name the name of the ingredient or grocery.
+   * @return the id of the name.
+   * @throws IllegalStateException if the name is new and {@value #MAX_SIZE} names already
+   *     have ids.
+   */
+  public static int idOf(String name) {
+    return IDS.computeIfAbsent(StorageSnapshot.key(name), key -> {
+      int id = NEXT_ID.getAndUpdate(next -> next < MAX_SIZE ? next + 1 : next);
+      if (id >= MAX_SIZE) {
+        throw new IllegalStateException(
+            "Too many ingredient names; at most " + MAX_SIZE + " can be told apart");
+      }
+      KEYS.put(id, key);
+      return id;
+    });
+  }
+
+  /**
+   * Gets the name an id was given to, in lower case.
+   *
+   * @param id the id of the ingredient.
+   * @return the lower-case name, or null if the id has not been given out.
+   */
+  static String keyOf(int id) {
+    return KEYS.get(id);
+  }
+
+  /**
+   * Gets the number of ids given out so far.
+   * Every id is smaller than this number.
+   *
+   * @return the number of known ingredient names.
+   */
+  public static int size() {
+    return NEXT_ID.get();
+  }
+}
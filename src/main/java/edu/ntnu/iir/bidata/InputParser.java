@@ -0,0 +1,428 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.text.DecimalFormatSymbols;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads lines typed or piped into the app, and parses numbers and dates from them.
+ * Lines are read into a buffer that is reused, and numbers and dates are parsed straight
+ * from that buffer, so a line is only turned into a String when it is text, such as a name.
+ * Invalid input is not reported with an exception: the parse methods return
+ * {@link #INVALID_NUMBER}, {@link #INVALID_DAY} or NaN, and {@link #getError()} tells why.
+ * Decimals may use a point or a comma, as well as the decimal separator of the locale,
+ * and may have the locale's grouping separator when that is neither, such as the space
+ * in "1 250,50". Dates are read as dd.MM.yyyy, with one or two digits for the day and
+ * month, and must be real dates: 31.04.2025 is rejected rather than moved to May.
+ * Not thread-safe: one parser reads one input.
+ */
+public final class InputParser {
+  /** Returned for a whole number that could not be parsed. */
+  public static final int INVALID_NUMBER = Integer.MIN_VALUE;
+  /** Returned for a date that could not be parsed. */
+  public static final long INVALID_DAY = Long.MIN_VALUE;
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+  private static final long EXACT_MANTISSA = 1L << 53;
+  private static final String EMPTY = "Nothing was entered.";
+  private static final String NOT_A_NUMBER = "Not a number.";
+  private static final String NOT_A_WHOLE_NUMBER = "Not a whole number.";
+  private static final String NOT_A_DATE = "Not a date in the format dd.MM.yyyy.";
+  private static final String NO_SUCH_DATE = "There is no such date.";
+  private final Reader in;
+  private final char decimalSeparator;
+  private final char groupingSeparator;
+  private final char[] buffer = new char[8192];
+  private int position;
+  private int limit;
+  private char[] line = new char[256];
+  private int length;
+  private String error;
+
+  /**
+   * Constructs an InputParser reading from a stream, in the default charset and locale.
+   *
+   * @param in the stream to read lines from, usually System.in.
+   */
+  public InputParser(InputStream in) {
+    this(new InputStreamReader(in, Charset.defaultCharset()), Locale.getDefault());
+  }
+
+  /**
+   * Constructs an InputParser reading from a reader, parsing decimals for a locale.
+   *
+   * @param in the reader to read lines from.
+   * @param locale the locale whose decimal and grouping separators are accepted.
+   */
+  public InputParser(Reader in, Locale locale) {
+    this.in = in;
+    DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+    this.decimalSeparator = symbols.getDecimalSeparator();
+    char grouping = symbols.getGroupingSeparator();
+    this.groupingSeparator = grouping == '.' || grouping == ',' ? 0 : grouping;
+  }
+
+  /**
+   * Reads the next line as text.
+   *
+   * @return the line, without the line break.
+   * @throws NoSuchElementException if the input has ended.
+   */
+  public String nextLine() {
+    readLine();
+    return new String(line, 0, length);
+  }
+
+  /**
+   * Reads the next line as a decimal number.
+   *
+   * @return the number, or NaN if the line is not a number.
+   * @throws NoSuchElementException if the input has ended.
+   */
+  public double nextDecimal() {
+    readLine();
+    return parseDecimal(line, 0, length);
+  }
+
+  /**
+   * Reads the next line as a whole number.
+   *
+   * @return the number, or {@link #INVALID_NUMBER} if the line is not a whole number.
+   * @throws NoSuchElementException if the input has ended.
+   */
+  public int nextWholeNumber() {
+    readLine();
+    return parseWholeNumber(line, 0, length);
+  }
+
+  /**
+   * Reads the next line as a date in the format dd.MM.yyyy.
+   *
+   * @return the number of days since 1 January 1970, or {@link #INVALID_DAY} if the line is
+   *     not a date.
+   * @throws NoSuchElementException if the input has ended.
+   */
+  public long nextEpochDay() {
+    readLine();
+    return parseEpochDay(line, 0, length);
+  }
+
+  /**
+   * Tells whether the last line read was empty or only spaces.
+   *
+   * @return true if the last line was blank, false otherwise.
+   */
+  public boolean isBlank() {
+    for (int i = 0; i < length; i++) {
+      if (!Character.isWhitespace(line[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets why the last number or date could not be parsed.
+   *
+   * @return the reason, or null if the last parse succeeded.
+   */
+  public String getError() {
+    return error;
+  }
+
+  /**
+   * Parses a decimal number, such as "2.5", "2,5" or "-0.75".
+   *
+   * @param text the text to parse.
+   * @return the number, or NaN if the text is not a number.
+   */
+  public double parseDecimal(CharSequence text) {
+    return parseDecimal(toChars(text), 0, text.length());
+  }
+
+  /**
+   * Parses a whole number, such as "12".
+   *
+   * @param text the text to parse.
+   * @return the number, or {@link #INVALID_NUMBER} if the text is not a whole number.
+   */
+  public int parseWholeNumber(CharSequence text) {
+    return parseWholeNumber(toChars(text), 0, text.length());
+  }
+
+  /**
+   * Parses a date in the format dd.MM.yyyy.
+   *
+   * @param text the text to parse.
+   * @return the number of days since 1 January 1970, or {@link #INVALID_DAY} if the text is
+   *     not a date.
+   */
+  public long parseEpochDay(CharSequence text) {
+    return parseEpochDay(toChars(text), 0, text.length());
+  }
+
+  /**
+   * Gets the start of a day in the default time zone.
+   *
+   * @param epochDay the number of days since 1 January 1970.
+   * @return the Date at midnight at the start of that day.
+   */
+  public static Date startOfDay(long epochDay) {
+    return Date.from(LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneId.systemDefault())
+        .toInstant());
+  }
+
+  /**
+   * Gets today's date in the default time zone.
+   *
+   * @return the number of days since 1 January 1970.
+   */
+  public static long today() {
+    return LocalDate.now().toEpochDay();
+  }
+
+  /**
+   * Parses a decimal number. Up to 15 significant digits are parsed exactly by dividing
+   * the digits by a power of ten; longer numbers are handed to {@link Double#parseDouble}.
+   */
+  private double parseDecimal(char[] chars, int start, int end) {
+    error = null;
+    while (start < end && Character.isWhitespace(chars[start])) {
+      start++;
+    }
+    while (end > start && Character.isWhitespace(chars[end - 1])) {
+      end--;
+    }
+    if (start == end) {
+      error = EMPTY;
+      return Double.NaN;
+    }
+    boolean negative = chars[start] == '-';
+    int i = chars[start] == '-' || chars[start] == '+' ? start + 1 : start;
+    long mantissa = 0;
+    int digits = 0;
+    int scale = -1;
+    boolean exact = true;
+    for (; i < end; i++) {
+      char c = chars[i];
+      if (c >= '0' && c <= '9') {
+        if (mantissa >= EXACT_MANTISSA / 10) {
+          exact = false;
+        }
+        mantissa = mantissa * 10 + (c - '0');
+        digits++;
+        if (scale >= 0) {
+          scale++;
+        }
+      } else if ((c == '.' || c == ',' || c == decimalSeparator) && scale < 0) {
+        scale = 0;
+      } else if (!isGrouping(c) || scale >= 0 || digits == 0) {
+        error = NOT_A_NUMBER;
+        return Double.NaN;
+      }
+    }
+    if (digits == 0) {
+      error = NOT_A_NUMBER;
+      return Double.NaN;
+    }
+    scale = Math.max(scale, 0);
+    double value;
+    if (exact && scale < POWERS_OF_TEN.length) {
+      value = mantissa / POWERS_OF_TEN[scale];
+    } else {
+      value = Double.parseDouble(normalize(chars, start, end));
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Copies a number with its separators made plain, for the rare numbers too long to parse
+   * exactly here.
+   */
+  private String normalize(char[] chars, int start, int end) {
+    StringBuilder sb = new StringBuilder(end - start);
+    for (int i = start; i < end; i++) {
+      char c = chars[i];
+      if (c == ',' || c == decimalSeparator) {
+        sb.append('.');
+      } else if (!isGrouping(c)) {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Checks for the grouping separator of the locale. A plain space is also accepted where
+   * the locale groups digits with a non-breaking space, as it is what people type.
+   */
+  private boolean isGrouping(char c) {
+    return groupingSeparator != 0
+        && (c == groupingSeparator || c == ' ' && Character.isSpaceChar(groupingSeparator));
+  }
+
+  private int parseWholeNumber(char[] chars, int start, int end) {
+    error = null;
+    while (start < end && Character.isWhitespace(chars[start])) {
+      start++;
+    }
+    while (end > start && Character.isWhitespace(chars[end - 1])) {
+      end--;
+    }
+    if (start == end) {
+      error = EMPTY;
+      return INVALID_NUMBER;
+    }
+    boolean negative = chars[start] == '-';
+    int i = chars[start] == '-' || chars[start] == '+' ? start + 1 : start;
+    if (i == end) {
+      error = NOT_A_WHOLE_NUMBER;
+      return INVALID_NUMBER;
+    }
+    long value = 0;
+    for (; i < end; i++) {
+      char c = chars[i];
+      if (c < '0' || c > '9') {
+        error = NOT_A_WHOLE_NUMBER;
+        return INVALID_NUMBER;
+      }
+      value = value * 10 + (c - '0');
+      if (value > Integer.MAX_VALUE) {
+        error = NOT_A_WHOLE_NUMBER;
+        return INVALID_NUMBER;
+      }
+    }
+    return (int) (negative ? -value : value);
+  }
+
+  private long parseEpochDay(char[] chars, int start, int end) {
+    error = null;
+    while (start < end && Character.isWhitespace(chars[start])) {
+      start++;
+    }
+    while (end > start && Character.isWhitespace(chars[end - 1])) {
+      end--;
+    }
+    int day = 0;
+    int month = 0;
+    int year = 0;
+    int field = 0;
+    int fieldDigits = 0;
+    for (int i = start; i < end; i++) {
+      char c = chars[i];
+      if (c >= '0' && c <= '9') {
+        int digit = c - '0';
+        switch (field) {
+          case 0 -> day = day * 10 + digit;
+          case 1 -> month = month * 10 + digit;
+          default -> year = year * 10 + digit;
+        }
+        fieldDigits++;
+        if (fieldDigits > (field == 2 ? 4 : 2)) {
+          error = NOT_A_DATE;
+          return INVALID_DAY;
+        }
+      } else if (c == '.' && field < 2 && fieldDigits > 0) {
+        field++;
+        fieldDigits = 0;
+      } else {
+        error = NOT_A_DATE;
+        return INVALID_DAY;
+      }
+    }
+    if (field != 2 || fieldDigits != 4) {
+      error = start == end ? EMPTY : NOT_A_DATE;
+      return INVALID_DAY;
+    }
+    if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+      error = NO_SUCH_DATE;
+      return INVALID_DAY;
+    }
+    return epochDay(year, month, day);
+  }
+
+  private static int daysInMonth(int year, int month) {
+    return switch (month) {
+      case 2 -> year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+      case 4, 6, 9, 11 -> 30;
+      default -> 31;
+    };
+  }
+
+  /**
+   * Counts the days from 1 January 1970 to a date in the proleptic Gregorian calendar,
+   * counting years from March so that the leap day comes last.
+   */
+  static long epochDay(int year, int month, int day) {
+    long y = month <= 2 ? year - 1 : year;
+    long era = Math.floorDiv(y, 400);
+    long yearOfEra = y - era * 400;
+    int shiftedMonth = month > 2 ? month - 3 : month + 9;
+    long dayOfYear = (153L * shiftedMonth + 2) / 5 + day - 1;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+
+  /**
+   * Reads the next line into the line buffer.
+   *
+   * @throws NoSuchElementException if the input has ended.
+   */
+  private void readLine() {
+    length = 0;
+    boolean any = false;
+    while (true) {
+      if (position == limit && !fill()) {
+        if (!any) {
+          throw new NoSuchElementException("No line found");
+        }
+        return;
+      }
+      any = true;
+      char c = buffer[position++];
+      if (c == '\n') {
+        if (length > 0 && line[length - 1] == '\r') {
+          length--;
+        }
+        return;
+      }
+      if (length == line.length) {
+        line = Arrays.copyOf(line, line.length * 2);
+      }
+      line[length++] = c;
+    }
+  }
+
+  private boolean fill() {
+    try {
+      int read = in.read(buffer);
+      if (read <= 0) {
+        return false;
+      }
+      position = 0;
+      limit = read;
+      return true;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static char[] toChars(CharSequence text) {
+    char[] chars = new char[text.length()];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = text.charAt(i);
+    }
+    return chars;
+  }
+}
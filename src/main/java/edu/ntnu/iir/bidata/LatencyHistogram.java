@@ -0,0 +1,148 @@
+package edu.ntnu.iir.bidata;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records how long an operation takes, in a fixed set of log-linear buckets.
+ * Like an HDR histogram, every power of two is split into 16 buckets, so any latency
+ * from nanoseconds to hours is kept within about 6% without storing single values.
+ * Recording is lock-free and does not allocate.
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private final String name;
+  private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /**
+   * Constructs a new, empty LatencyHistogram.
+   *
+   * @param name the name of the operation being measured.
+   */
+  public LatencyHistogram(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Gets the name of the operation being measured.
+   *
+   * @return the name of the operation.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Records the time since a start time from {@link Metrics#start()}.
+   * Does nothing if the start time is 0, which is what
+   * {@link Metrics#start()} returns when metrics are turned off.
+   *
+   * @param start the start time in nanoseconds.
+   */
+  public void stop(long start) {
+    if (start != 0) {
+      long elapsed = System.nanoTime() - start;
+      record(elapsed);
+      Metrics.emitEvent(name, elapsed);
+    }
+  }
+
+  /**
+   * Records one latency.
+   *
+   * @param nanos the latency in nanoseconds.
+   */
+  public void record(long nanos) {
+    long value = Math.max(nanos, 0);
+    counts.incrementAndGet(bucketIndex(value));
+    count.increment();
+    totalNanos.add(value);
+    maxNanos.accumulateAndGet(value, Math::max);
+  }
+
+  /**
+   * Gets the number of recorded latencies.
+   *
+   * @return the count.
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * Gets the mean of the recorded latencies.
+   *
+   * @return the mean in nanoseconds, or 0 if nothing has been recorded.
+   */
+  public double getMeanNanos() {
+    long n = count.sum();
+    return n == 0 ? 0 : (double) totalNanos.sum() / n;
+  }
+
+  /**
+   * Gets the largest recorded latency.
+   *
+   * @return the maximum in nanoseconds.
+   */
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * Gets the latency below which the given share of the recorded latencies fall.
+   *
+   * @param percentile the percentile, from 0 to 100.
+   * @return the latency in nanoseconds, rounded down to the start of its bucket,
+   *         or 0 if nothing has been recorded.
+   */
+  public long getPercentileNanos(double percentile) {
+    long n = count.sum();
+    if (n == 0) {
+      return 0;
+    }
+    long wanted = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= wanted) {
+        return Math.min(bucketLowerBound(i), getMaxNanos());
+      }
+    }
+    return getMaxNanos();
+  }
+
+  /**
+   * Finds the bucket for a latency.
+   *
+   * @param value the latency in nanoseconds, not negative.
+   * @return the index of the bucket.
+   */
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  /**
+   * Finds the smallest latency that falls in a bucket.
+   *
+   * @param index the index of the bucket.
+   * @return the latency in nanoseconds.
+   */
+  static long bucketLowerBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int block = index / SUB_BUCKETS;
+    int sub = index % SUB_BUCKETS;
+    return (long) (SUB_BUCKETS + sub) << (block - 1);
+  }
+}
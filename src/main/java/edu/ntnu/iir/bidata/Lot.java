@@ -0,0 +1,153 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.Serializable;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Represents a single purchase (lot) of a grocery item.
+ * Each lot keeps its own amount, price per unit and best-before date,
+ * so several purchases of the same grocery can expire at different times.
+ * Lots are ordered by best-before date, earliest first.
+ */
+public class Lot implements Serializable, Comparable<Lot> {
+  private static final long serialVersionUID = 1L;
+  private double amount;
+  private final Date bestBeforeDate;
+  private final double pricePerUnit;
+  private String replicaId;
+  private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("dd.MM.yyyy");
+
+  /**
+   * Constructs a new Lot with the specified properties.
+   *
+   * @param amount the quantity bought in this lot
+   * @param bestBeforeDate the expiration date of this lot
+   * @param pricePerUnit the cost per unit paid for this lot
+   * @throws IllegalArgumentException if any parameter is invalid
+   */
+  public Lot(double amount, Date bestBeforeDate, double pricePerUnit) {
+    if (amount <= 0) {
+      throw new IllegalArgumentException("Amount must be greater than 0");
+    }
+    if (bestBeforeDate == null || bestBeforeDate.before(new Date())) {
+      throw new IllegalArgumentException("Best before date must be a valid future date");
+    }
+    if (pricePerUnit <= 0) {
+      throw new IllegalArgumentException("Price per unit must be greater than 0");
+    }
+    this.amount = amount;
+    this.bestBeforeDate = new Date(bestBeforeDate.getTime());
+    this.pricePerUnit = pricePerUnit;
+  }
+
+  /**
+   * Constructs a Lot without checking that the best-before date is in the future.
+   * Used when restoring lots from saved data, where they may already have expired.
+   */
+  private Lot(Date bestBeforeDate, double amount, double pricePerUnit) {
+    this.amount = amount;
+    this.bestBeforeDate = bestBeforeDate;
+    this.pricePerUnit = pricePerUnit;
+  }
+
+  /**
+   * Restores a lot from saved data.
+   *
+   * @param amount the remaining quantity of the lot.
+   * @param bestBeforeDate the expiration date, which may be in the past.
+   * @param pricePerUnit the cost per unit.
+   * @return the restored Lot.
+   */
+  static Lot restore(double amount, Date bestBeforeDate, double pricePerUnit) {
+    return new Lot(bestBeforeDate, amount, pricePerUnit);
+  }
+
+  /**
+   * Creates a copy of this lot.
+   *
+   * @return a new Lot with the same amount, date and price.
+   */
+  Lot copy() {
+    Lot copy = new Lot(bestBeforeDate, amount, pricePerUnit);
+    copy.replicaId = replicaId;
+    return copy;
+  }
+
+  /**
+   * Gets the id of this lot in the replicated pantry, which is the same on every device.
+   *
+   * @return the replica id, or null if the lot has not been replicated.
+   */
+  String getReplicaId() {
+    return replicaId;
+  }
+
+  /**
+   * Sets the id of this lot in the replicated pantry.
+   *
+   * @param replicaId the replica id.
+   */
+  void setReplicaId(String replicaId) {
+    this.replicaId = replicaId;
+  }
+
+  /**
+   * Gets the remaining amount of this lot.
+   *
+   * @return the remaining amount
+   */
+  public double getAmount() {
+    return amount;
+  }
+
+  /**
+   * Gets the best-before date of this lot.
+   *
+   * @return a copy of the best-before date
+   */
+  public Date getBestBeforeDate() {
+    return new Date(bestBeforeDate.getTime());
+  }
+
+  /**
+   * Gets the price per unit paid for this lot.
+   *
+   * @return the price per unit
+   */
+  public double getPricePerUnit() {
+    return pricePerUnit;
+  }
+
+  /**
+   * Calculates the value of what is left of this lot.
+   *
+   * @return the remaining value as a double
+   */
+  public double calculateTotalValue() {
+    return amount * pricePerUnit;
+  }
+
+  /**
+   * Takes up to the requested amount from this lot.
+   *
+   * @param requested the amount wanted.
+   * @return the amount actually taken, never more than what is left.
+   */
+  double take(double requested) {
+    double taken = Math.min(amount, requested);
+    amount -= taken;
+    return taken;
+  }
+
+  @Override
+  public int compareTo(Lot other) {
+    return bestBeforeDate.compareTo(other.bestBeforeDate);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Lot: %.2f, Best Before: %s, Price: %.2f NOK",
+        amount, DATE_FORMAT.format(bestBeforeDate), pricePerUnit);
+  }
+}
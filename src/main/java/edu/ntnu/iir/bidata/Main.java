@@ -1,5 +1,9 @@
 package edu.ntnu.iir.bidata;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+
 /**
  * The main entry point of the Waste_Less application.
  * This class is responsible for creating an instance of the UserInterface
@@ -13,16 +17,137 @@ public class Main {
    * @param args command-line arguments (not used)
    */
   public static void main(String[] args) {
-    // Create a FoodStorage instance
-    FoodStorage storage = new FoodStorage();
+    // Make the performance metrics available through JMX
+    Metrics.registerMBean();
+
+    // Create the PersistenceService that saves all data files in the background
+    PersistenceService persistence = new PersistenceService();
+
+    // Add shutdown hook to write pending saves on exit, also when the app is interrupted
+    Runtime.getRuntime().addShutdownHook(new Thread(persistence::shutdown, "save-on-exit"));
+
+    // Open the groceries and recipes with the backend given by -Dwasteless.backend,
+    // or with the file backend
+    StorageBackend backend = selectBackend(System.getProperty("wasteless.backend"));
+    GroceryStore storage = backend.openGroceryStore(persistence, Path.of(""));
+    RecipeCatalogue recipeBook = backend.openRecipeCatalogue(persistence, Path.of(""));
+
+    // Warn about groceries running out before the weekly shopping day, if one is given
+    String shoppingDay = System.getProperty("wasteless.shoppingDay");
+    if (shoppingDay != null) {
+      setShoppingDay(storage, shoppingDay);
+    }
+
+    // Record every call to the storage and recipe book to a trace file, if one is given
+    TraceRecorder trace = startTrace(storage, recipeBook);
+
+    // Share the pantry with other devices through a drop folder, if one is given
+    String syncFolder = System.getProperty("wasteless.sync");
+    if (syncFolder != null) {
+      if (storage instanceof VersionedStore versioned) {
+        sync(versioned.startReplication(Path.of(syncFolder)));
+      } else {
+        System.out.println("Syncing is only supported by the " + FileBackend.NAME + " backend.");
+      }
+    }
 
-    // Add shutdown hook to save groceries on exit
-    // FoodStorage.addShutdownHook();
+    // Create a WasteLedger and start moving expired groceries into it
+    WasteLedger wasteLedger = new WasteLedger(persistence);
+    ExpirySweeper sweeper = new ExpirySweeper(storage, wasteLedger);
+    sweeper.start();
 
     // Create a UserInterface instance to manage interactions
-    UserInterface ui = new UserInterface(storage);
+    UserInterface ui = new UserInterface(storage, recipeBook, wasteLedger);
 
     // Start the application by calling the start method
     ui.start();
+    sweeper.stop();
+    if (storage instanceof VersionedStore versioned && versioned.getReplicator() != null) {
+      sync(versioned.getReplicator());
+    }
+    if (trace != null) {
+      try {
+        trace.close();
+        System.out.println("Recorded " + trace.getCount() + " calls to the trace.");
+      } catch (IOException e) {
+        System.out.println("Couldn't finish the trace: " + e.getMessage());
+      }
+    }
+    persistence.shutdown();
+  }
+
+  /**
+   * Finds the backend with a name, falling back to the file backend if there is no name
+   * or no backend with it.
+   *
+   * @param name the name of the backend, or null for the file backend.
+   * @return the StorageBackend.
+   */
+  private static StorageBackend selectBackend(String name) {
+    if (name == null) {
+      return new FileBackend();
+    }
+    try {
+      return StorageBackend.find(name);
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage() + ". Using the " + FileBackend.NAME + " backend.");
+      return new FileBackend();
+    }
+  }
+
+  /**
+   * Starts recording a trace to the file given by {@code -Dwasteless.trace}.
+   * Only the storage and recipe book of the file backend can be traced.
+   *
+   * @param storage the GroceryStore to record.
+   * @param recipeBook the RecipeCatalogue to record.
+   * @return the TraceRecorder, or null if no trace file is given or it could not be created.
+   */
+  private static TraceRecorder startTrace(GroceryStore storage, RecipeCatalogue recipeBook) {
+    String traceFile = System.getProperty("wasteless.trace");
+    if (traceFile == null) {
+      return null;
+    }
+    if (!(storage instanceof FoodStorage files && recipeBook instanceof RecipeBook book)) {
+      System.out.println("Tracing is only supported by the " + FileBackend.NAME + " backend.");
+      return null;
+    }
+    try {
+      TraceRecorder trace = new TraceRecorder(Path.of(traceFile));
+      files.setTraceRecorder(trace);
+      book.setTraceRecorder(trace);
+      return trace;
+    } catch (IOException e) {
+      System.out.println("Couldn't start the trace: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Sets the weekly shopping day used for reorder alerts, from a day name such as "friday".
+   *
+   * @param storage the GroceryStore to set the shopping day of.
+   * @param day the name of the day.
+   */
+  private static void setShoppingDay(GroceryStore storage, String day) {
+    try {
+      int calendarDay = DayOfWeek.valueOf(day.trim().toUpperCase()).getValue() % 7 + 1;
+      storage.getConsumptionHistory().setShoppingDay(calendarDay);
+    } catch (IllegalArgumentException e) {
+      System.out.println("Unknown shopping day " + day + ", using Saturday.");
+    }
+  }
+
+  /**
+   * Syncs the pantry with the other devices, reporting but not stopping on errors.
+   *
+   * @param replicator the Replicator of the pantry.
+   */
+  private static void sync(Replicator replicator) {
+    try {
+      replicator.sync();
+    } catch (IOException e) {
+      System.out.println("Couldn't sync with other devices: " + e.getMessage());
+    }
   }
 }
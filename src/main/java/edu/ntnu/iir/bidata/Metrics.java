@@ -0,0 +1,292 @@
+package edu.ntnu.iir.bidata;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Keeps lightweight metrics for storage, matching and persistence operations:
+ * latency histograms per operation, counters, and gauges such as collection sizes.
+ * Metrics are on by default, and can be turned off with {@code -Dwasteless.metrics=false}
+ * or through JMX. When they are off, {@link #start()} returns 0 and recording is skipped,
+ * so measured code pays only for reading one flag.
+ * Gauges of objects there can be many of, such as the pantries of a {@link PantryRegistry},
+ * are added up over the live instances, which are only weakly held, so a gauge never keeps
+ * an evicted pantry in memory.
+ * With {@code -Dwasteless.metrics.jfr=true}, every measured operation is also
+ * emitted as a Java Flight Recorder {@link OperationEvent}.
+ */
+public final class Metrics {
+  private static final String OBJECT_NAME = "edu.ntnu.iir.bidata:type=Metrics";
+  private static volatile boolean enabled =
+      Boolean.parseBoolean(System.getProperty("wasteless.metrics", "true"));
+  private static final boolean JFR_EVENTS = Boolean.getBoolean("wasteless.metrics.jfr");
+  private static final Map<String, LatencyHistogram> HISTOGRAMS = new ConcurrentHashMap<>();
+  private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+  private static final Map<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+
+  private Metrics() {
+  }
+
+  /**
+   * Gets the histogram for an operation, creating it the first time.
+   * Callers keep the histogram in a field, so the lookup happens only once.
+   *
+   * @param name the name of the operation.
+   * @return the LatencyHistogram for the operation.
+   */
+  public static LatencyHistogram histogram(String name) {
+    return HISTOGRAMS.computeIfAbsent(name, LatencyHistogram::new);
+  }
+
+  /**
+   * Gets the start time for measuring an operation.
+   *
+   * @return the current time in nanoseconds, or 0 if metrics are off.
+   */
+  public static long start() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Adds to a counter, if metrics are on.
+   *
+   * @param name the name of the counter.
+   * @param delta the amount to add.
+   */
+  public static void increment(String name, long delta) {
+    if (enabled) {
+      COUNTERS.computeIfAbsent(name, n -> new LongAdder()).add(delta);
+    }
+  }
+
+  /**
+   * Registers a gauge for the whole process, read only when the metrics are shown.
+   * A gauge with the same name replaces the earlier one.
+   *
+   * @param name the name of the gauge.
+   * @param value gives the current value of the gauge.
+   */
+  public static void gauge(String name, LongSupplier value) {
+    GAUGES.put(name, value);
+  }
+
+  /**
+   * Registers the part of one instance in a gauge that is added up over all instances
+   * registered under the same name. The instance is only weakly held, so the value function
+   * must not hold on to it; its part is dropped when it is garbage collected, or by
+   * {@link #removeGauges(Object)}.
+   *
+   * @param name the name of the gauge.
+   * @param owner the instance the part belongs to.
+   * @param value gives the part of the instance.
+   * @param <T> the type of the instance.
+   */
+  public static <T> void gauge(String name, T owner, ToLongFunction<? super T> value) {
+    GAUGES.compute(name, (key, existing) -> {
+      SummedGauge gauge = existing instanceof SummedGauge summed ? summed : new SummedGauge();
+      gauge.parts.add(new GaugePart<>(owner, value));
+      return gauge;
+    });
+  }
+
+  /**
+   * Removes the parts of an instance from every gauge, as when a pantry is evicted.
+   * A gauge left without any parts is removed.
+   *
+   * @param owner the instance whose parts are removed.
+   */
+  public static void removeGauges(Object owner) {
+    for (String name : GAUGES.keySet()) {
+      GAUGES.computeIfPresent(name, (key, gauge) -> {
+        if (!(gauge instanceof SummedGauge summed)) {
+          return gauge;
+        }
+        summed.parts.removeIf(part -> part.owner.get() == owner || part.owner.get() == null);
+        return summed.parts.isEmpty() ? null : summed;
+      });
+    }
+  }
+
+  /**
+   * Reads the current value of a counter or gauge.
+   *
+   * @param name the name of the counter or gauge.
+   * @return the value, or null if there is no counter or gauge with the name.
+   */
+  public static Long getValue(String name) {
+    LongSupplier gauge = GAUGES.get(name);
+    if (gauge != null) {
+      return gauge.getAsLong();
+    }
+    LongAdder counter = COUNTERS.get(name);
+    return counter != null ? counter.sum() : null;
+  }
+
+  /**
+   * Checks whether metrics are being recorded.
+   *
+   * @return true if metrics are on, false otherwise.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Turns recording of metrics on or off.
+   *
+   * @param on true to record metrics, false to stop.
+   */
+  public static void setEnabled(boolean on) {
+    enabled = on;
+  }
+
+  /**
+   * Emits a JFR event for a measured operation, if JFR events are turned on.
+   *
+   * @param operation the name of the operation.
+   * @param nanos the latency in nanoseconds.
+   */
+  static void emitEvent(String operation, long nanos) {
+    if (JFR_EVENTS) {
+      OperationEvent event = new OperationEvent();
+      if (event.isEnabled()) {
+        event.operation = operation;
+        event.latency = nanos;
+        event.commit();
+      }
+    }
+  }
+
+  /**
+   * Makes the metrics available through JMX, under {@value #OBJECT_NAME}.
+   */
+  public static void registerMBean() {
+    try {
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), name);
+      }
+    } catch (JMException e) {
+      System.out.println("Couldn't register metrics with JMX: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Writes all metrics as a text table.
+   *
+   * @return the text dump.
+   */
+  public static String dump() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("Metrics are ").append(enabled ? "on" : "off").append('\n');
+    sb.append(String.format("%-34s %8s %10s %10s %10s %10s%n",
+        "Operation", "Count", "Mean us", "P50 us", "P99 us", "Max us"));
+    for (LatencyHistogram h : new TreeMap<>(HISTOGRAMS).values()) {
+      sb.append(String.format("%-34s %8d %10.1f %10.1f %10.1f %10.1f%n",
+          h.getName(), h.getCount(), h.getMeanNanos() / 1000.0,
+          h.getPercentileNanos(50) / 1000.0, h.getPercentileNanos(99) / 1000.0,
+          h.getMaxNanos() / 1000.0));
+    }
+    sb.append(String.format("%-34s %8s%n", "Counter or gauge", "Value"));
+    values().forEach((name, value) -> sb.append(String.format("%-34s %8d%n", name, value)));
+    return sb.toString();
+  }
+
+  /**
+   * Reads every counter and gauge.
+   *
+   * @return a sorted map from name to value.
+   */
+  private static Map<String, Long> values() {
+    Map<String, Long> values = new TreeMap<>();
+    COUNTERS.forEach((name, counter) -> values.put(name, counter.sum()));
+    GAUGES.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+    return values;
+  }
+
+  /**
+   * A gauge adding up the parts of the live instances registered under its name.
+   */
+  private static final class SummedGauge implements LongSupplier {
+    private final List<GaugePart<?>> parts = new CopyOnWriteArrayList<>();
+
+    @Override
+    public long getAsLong() {
+      long sum = 0;
+      for (GaugePart<?> part : parts) {
+        sum += part.read();
+      }
+      parts.removeIf(part -> part.owner.get() == null);
+      return sum;
+    }
+  }
+
+  /**
+   * The part of one weakly held instance in a {@link SummedGauge}.
+   *
+   * @param <T> the type of the instance.
+   */
+  private static final class GaugePart<T> {
+    private final WeakReference<T> owner;
+    private final ToLongFunction<? super T> value;
+
+    private GaugePart(T owner, ToLongFunction<? super T> value) {
+      this.owner = new WeakReference<>(owner);
+      this.value = value;
+    }
+
+    private long read() {
+      T instance = owner.get();
+      return instance != null ? value.applyAsLong(instance) : 0;
+    }
+  }
+
+  /**
+   * The JMX bean, reading from the static registry.
+   */
+  private static final class Bean implements MetricsMXBean {
+    @Override
+    public boolean isEnabled() {
+      return Metrics.isEnabled();
+    }
+
+    @Override
+    public void setEnabled(boolean on) {
+      Metrics.setEnabled(on);
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+      Map<String, Long> counts = new TreeMap<>();
+      HISTOGRAMS.forEach((name, h) -> counts.put(name, h.getCount()));
+      return counts;
+    }
+
+    @Override
+    public Map<String, Double> getP99Micros() {
+      Map<String, Double> p99 = new TreeMap<>();
+      HISTOGRAMS.forEach((name, h) -> p99.put(name, h.getPercentileNanos(99) / 1000.0));
+      return p99;
+    }
+
+    @Override
+    public Map<String, Long> getValues() {
+      return Metrics.values();
+    }
+
+    @Override
+    public String dump() {
+      return Metrics.dump();
+    }
+  }
+}
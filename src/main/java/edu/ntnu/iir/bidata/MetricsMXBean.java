@@ -0,0 +1,51 @@
+package edu.ntnu.iir.bidata;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the application {@link Metrics}.
+ */
+public interface MetricsMXBean {
+
+  /**
+   * Checks whether metrics are being recorded.
+   *
+   * @return true if metrics are on, false otherwise.
+   */
+  boolean isEnabled();
+
+  /**
+   * Turns recording of metrics on or off.
+   *
+   * @param enabled true to record metrics, false to stop.
+   */
+  void setEnabled(boolean enabled);
+
+  /**
+   * Gets the number of calls to each measured operation.
+   *
+   * @return a map from operation name to call count.
+   */
+  Map<String, Long> getOperationCounts();
+
+  /**
+   * Gets the 99th percentile latency of each measured operation.
+   *
+   * @return a map from operation name to latency in microseconds.
+   */
+  Map<String, Double> getP99Micros();
+
+  /**
+   * Gets the current value of every counter and gauge.
+   *
+   * @return a map from counter or gauge name to its value.
+   */
+  Map<String, Long> getValues();
+
+  /**
+   * Gets all metrics as text.
+   *
+   * @return the text dump.
+   */
+  String dump();
+}
@@ -0,0 +1,76 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.Serializable;
+
+/**
+ * The energy and macronutrients in one unit of an ingredient, in the unit the ingredient
+ * is measured in, such as one gram of flour or one piece of egg.
+ */
+public class NutritionFacts implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private final double kcal;
+  private final double protein;
+  private final double carbohydrates;
+  private final double fat;
+
+  /**
+   * Constructs a new NutritionFacts.
+   *
+   * @param kcal the energy per unit, in kilocalories.
+   * @param protein the protein per unit, in grams.
+   * @param carbohydrates the carbohydrates per unit, in grams.
+   * @param fat the fat per unit, in grams.
+   * @throws IllegalArgumentException if any amount is negative or not a number.
+   */
+  public NutritionFacts(double kcal, double protein, double carbohydrates, double fat) {
+    if (!(kcal >= 0 && protein >= 0 && carbohydrates >= 0 && fat >= 0)) {
+      throw new IllegalArgumentException("Nutrition amounts cannot be negative");
+    }
+    this.kcal = kcal;
+    this.protein = protein;
+    this.carbohydrates = carbohydrates;
+    this.fat = fat;
+  }
+
+  /**
+   * Gets the energy per unit.
+   *
+   * @return the energy in kilocalories.
+   */
+  public double getKcal() {
+    return kcal;
+  }
+
+  /**
+   * Gets the protein per unit.
+   *
+   * @return the protein in grams.
+   */
+  public double getProtein() {
+    return protein;
+  }
+
+  /**
+   * Gets the carbohydrates per unit.
+   *
+   * @return the carbohydrates in grams.
+   */
+  public double getCarbohydrates() {
+    return carbohydrates;
+  }
+
+  /**
+   * Gets the fat per unit.
+   *
+   * @return the fat in grams.
+   */
+  public double getFat() {
+    return fat;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%.1f kcal, %.1f g protein, %.1f g carbohydrates, %.1f g fat",
+        kcal, protein, carbohydrates, fat);
+  }
+}
@@ -0,0 +1,136 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntConsumer;
+
+/**
+ * The nutrition facts of every ingredient, one entry per ingredient name, ignoring case,
+ * the same way ingredients are matched against groceries.
+ * Listeners are told the {@link IngredientDictionary} id of every ingredient whose facts
+ * are set, so totals that depend on them can be updated for that ingredient only.
+ */
+public class NutritionTable {
+  private Map<String, NutritionFacts> facts = new HashMap<>();
+  private final List<IntConsumer> listeners = new CopyOnWriteArrayList<>();
+  private final PersistenceService persistence;
+  private final Path filePath;
+  private volatile long version;
+
+  /**
+   * Constructs a new NutritionTable and loads earlier facts from file if available.
+   *
+   * @param persistence the PersistenceService used to save the table.
+   * @param filePath the file the table is kept in.
+   */
+  public NutritionTable(PersistenceService persistence, Path filePath) {
+    this.persistence = persistence;
+    this.filePath = filePath;
+    loadFromFile();
+  }
+
+  /**
+   * Sets the nutrition facts of an ingredient, replacing earlier facts, and saves the table.
+   *
+   * @param name the name of the ingredient.
+   * @param nutrition the NutritionFacts per unit of the ingredient.
+   * @throws IllegalArgumentException if the name is blank or the facts are null.
+   */
+  public void setFacts(String name, NutritionFacts nutrition) {
+    if (name == null || name.isBlank()) {
+      throw new IllegalArgumentException("Ingredient name cannot be null or blank");
+    }
+    if (nutrition == null) {
+      throw new IllegalArgumentException("Nutrition facts cannot be null");
+    }
+    synchronized (this) {
+      facts.put(StorageSnapshot.key(name), nutrition);
+      version++;
+      persistence.requestSave(filePath, this::copyFacts);
+    }
+    int ingredientId = IngredientDictionary.idOf(name);
+    for (IntConsumer listener : listeners) {
+      listener.accept(ingredientId);
+    }
+  }
+
+  /**
+   * Gets the nutrition facts of an ingredient.
+   *
+   * @param name the name of the ingredient.
+   * @return the NutritionFacts per unit, or null if none have been set.
+   */
+  public synchronized NutritionFacts getFacts(String name) {
+    return facts.get(StorageSnapshot.key(name));
+  }
+
+  /**
+   * Gets the nutrition facts of an ingredient by id.
+   *
+   * @param ingredientId the id of the ingredient, from the {@link IngredientDictionary}.
+   * @return the NutritionFacts per unit, or null if none have been set.
+   */
+  public synchronized NutritionFacts getFacts(int ingredientId) {
+    String key = IngredientDictionary.keyOf(ingredientId);
+    return key != null ? facts.get(key) : null;
+  }
+
+  /**
+   * Gets the number of ingredients with nutrition facts.
+   *
+   * @return the size of the table.
+   */
+  public synchronized int size() {
+    return facts.size();
+  }
+
+  /**
+   * Gets the version of the table, which increases by one whenever facts are set.
+   *
+   * @return the version number.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Registers a listener that is given the ingredient id whenever facts are set.
+   * Listeners are called on the thread that set the facts, after the table has changed.
+   *
+   * @param listener the listener to add.
+   */
+  public void addListener(IntConsumer listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Copies the table so it can be written while new facts are set.
+   *
+   * @return a copy of the facts by lower-case name.
+   */
+  private synchronized HashMap<String, NutritionFacts> copyFacts() {
+    return new HashMap<>(facts);
+  }
+
+  /**
+   * Loads the table from file if it exists.
+   */
+  @SuppressWarnings("unchecked")
+  private void loadFromFile() {
+    if (!Files.exists(filePath)) {
+      return;
+    }
+    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filePath.toFile()))) {
+      facts = (Map<String, NutritionFacts>) ois.readObject();
+    } catch (IOException | ClassNotFoundException e) {
+      System.out.println("Error loading nutrition facts: " + e.getMessage());
+    }
+  }
+}
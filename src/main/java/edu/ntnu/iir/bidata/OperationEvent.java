@@ -0,0 +1,25 @@
+package edu.ntnu.iir.bidata;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A Java Flight Recorder event for one measured operation.
+ * Only emitted when metrics and JFR events are both turned on.
+ */
+@Name("edu.ntnu.iir.bidata.Operation")
+@Label("Wasteless Operation")
+@Category("Wasteless")
+@Description("A measured storage, matching or persistence operation")
+class OperationEvent extends Event {
+  @Label("Operation")
+  String operation;
+
+  @Label("Latency")
+  @Timespan(Timespan.NANOSECONDS)
+  long latency;
+}
@@ -0,0 +1,95 @@
+package edu.ntnu.iir.bidata;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The cheapest combination of packs found to cover a shortfall of one item.
+ * A plan for an item without any known prices is unpriced and has no packs.
+ * A PackPlan never changes after it is built.
+ */
+public final class PackPlan {
+  private final String name;
+  private final String unit;
+  private final double needed;
+  private final Map<Double, Integer> packs;
+  private final double totalCost;
+
+  /**
+   * Constructs a new PackPlan.
+   *
+   * @param name the name of the item.
+   * @param unit the unit of the amounts.
+   * @param needed the amount that is missing.
+   * @param packs the number of packs to buy of each pack amount.
+   * @param totalCost the price of all the packs in NOK.
+   */
+  PackPlan(String name, String unit, double needed, Map<Double, Integer> packs,
+      double totalCost) {
+    this.name = name;
+    this.unit = unit;
+    this.needed = needed;
+    this.packs = Collections.unmodifiableMap(packs);
+    this.totalCost = totalCost;
+  }
+
+  /**
+   * Gets the name of the item.
+   *
+   * @return the name of the item.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Gets the amount that is missing.
+   *
+   * @return the missing amount.
+   */
+  public double getNeeded() {
+    return needed;
+  }
+
+  /**
+   * Gets the number of packs to buy of each pack amount.
+   *
+   * @return a map from pack amount to number of packs, smallest pack first.
+   */
+  public Map<Double, Integer> getPacks() {
+    return packs;
+  }
+
+  /**
+   * Gets the price of all the packs.
+   *
+   * @return the total cost in NOK, or 0 if the item is unpriced.
+   */
+  public double getTotalCost() {
+    return totalCost;
+  }
+
+  /**
+   * Checks whether any prices were known for the item.
+   *
+   * @return true if the plan has packs, false otherwise.
+   */
+  public boolean isPriced() {
+    return !packs.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    if (!isPriced()) {
+      return String.format("%s: %.2f %s, no known price", name, needed, unit);
+    }
+    StringBuilder sb = new StringBuilder(String.format("%s: %.2f %s, buy ", name, needed, unit));
+    String separator = "";
+    for (Map.Entry<Double, Integer> pack : packs.entrySet()) {
+      sb.append(separator).append(pack.getValue()).append(" x ").append(pack.getKey())
+          .append(' ').append(unit);
+      separator = " + ";
+    }
+    return sb.append(String.format(" for %.2f NOK", totalCost)).toString();
+  }
+}
@@ -0,0 +1,53 @@
+package edu.ntnu.iir.bidata;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents one page of results from a paginated listing.
+ * The cursor of a page is passed back to the listing to get the page after it.
+ *
+ * @param <T> the type of the items on the page.
+ */
+public class Page<T> {
+  private final List<T> items;
+  private final String nextCursor;
+
+  /**
+   * Constructs a new Page.
+   *
+   * @param items the items on the page.
+   * @param nextCursor the cursor for the next page, or null if this is the last page.
+   */
+  public Page(List<T> items, String nextCursor) {
+    this.items = Collections.unmodifiableList(items);
+    this.nextCursor = nextCursor;
+  }
+
+  /**
+   * Gets the items on the page.
+   *
+   * @return List of items.
+   */
+  public List<T> getItems() {
+    return items;
+  }
+
+  /**
+   * Gets the cursor for the next page.
+   *
+   * @return the cursor, or null if this is the last page.
+   */
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
+  /**
+   * Checks whether there are more pages after this one.
+   *
+   * @return true if there is a next page, false otherwise.
+   */
+  public boolean hasNext() {
+    return nextCursor != null;
+  }
+}
@@ -0,0 +1,214 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Hosts the pantries of many households in one process, each with its own data directory
+ * under a root directory. A pantry is loaded the first time it is asked for, and the least
+ * recently used pantries are evicted when more than a fixed number are open.
+ * An evicted pantry is saved and flushed to disk before it is let go. If it is asked for
+ * again while it is still being flushed, the same instance is handed out instead of
+ * reading a file that is not yet up to date.
+ * All pantries share one recipe catalogue, which keeps its cached servings per pantry.
+ * Every open pantry has a gauge of its groceries, named after its household, and counts
+ * towards the gauges added up over all pantries. An evicted pantry is removed from the
+ * gauges once it has been flushed, so the metrics only show open pantries.
+ */
+public class PantryRegistry {
+  private static final Pattern HOUSEHOLD_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+  private final Path rootDirectory;
+  private final PersistenceService persistence;
+  private final RecipeBook catalogue;
+  private final int capacity;
+  private final LinkedHashMap<String, FoodStorage> open = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<String, FoodStorage> closing = new HashMap<>();
+  private long loads;
+  private long evictions;
+
+  /**
+   * Constructs a new, empty PantryRegistry.
+   *
+   * @param rootDirectory the directory holding one directory per household.
+   * @param persistence the PersistenceService used to save every pantry.
+   * @param catalogue the RecipeBook shared by all households.
+   * @param capacity the largest number of pantries kept open at the same time.
+   * @throws IllegalArgumentException if capacity is less than 1.
+   */
+  public PantryRegistry(Path rootDirectory, PersistenceService persistence, RecipeBook catalogue,
+      int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be at least 1");
+    }
+    this.rootDirectory = rootDirectory;
+    this.persistence = persistence;
+    this.catalogue = catalogue;
+    this.capacity = capacity;
+    Metrics.gauge("registry.openPantries", this, PantryRegistry::getOpenCount);
+  }
+
+  /**
+   * Gets the pantry of a household, loading it from its directory if it is not open.
+   *
+   * @param householdId the id of the household, made of letters, digits, '-' and '_'.
+   * @return the FoodStorage of the household.
+   * @throws IllegalArgumentException if the household id is not valid.
+   */
+  public FoodStorage getPantry(String householdId) {
+    if (householdId == null || !HOUSEHOLD_ID.matcher(householdId).matches()) {
+      throw new IllegalArgumentException("Household id must be 1 to 64 letters, digits, "
+          + "'-' or '_'");
+    }
+    List<FoodStorage> evicted;
+    FoodStorage pantry;
+    synchronized (this) {
+      pantry = open.get(householdId);
+      if (pantry != null) {
+        return pantry;
+      }
+      pantry = closing.remove(householdId);
+      if (pantry == null) {
+        pantry = new FoodStorage(persistence, createDirectory(householdId));
+        Metrics.gauge(gaugeName(householdId), pantry, storage -> storage.snapshot().size());
+        loads++;
+        Metrics.increment("registry.loads", 1);
+      }
+      open.put(householdId, pantry);
+      evicted = evictOverCapacity();
+    }
+    flushEvicted(evicted);
+    return pantry;
+  }
+
+  /**
+   * Gets the recipe catalogue shared by all households.
+   *
+   * @return the shared RecipeBook.
+   */
+  public RecipeBook getCatalogue() {
+    return catalogue;
+  }
+
+  /**
+   * Gets the number of pantries that are open.
+   *
+   * @return the number of open pantries.
+   */
+  public synchronized int getOpenCount() {
+    return open.size();
+  }
+
+  /**
+   * Gets the number of times a pantry has been loaded from disk.
+   *
+   * @return the number of loads.
+   */
+  public synchronized long getLoads() {
+    return loads;
+  }
+
+  /**
+   * Gets the number of times a pantry has been evicted.
+   *
+   * @return the number of evictions.
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Saves every open pantry and waits until all data is on disk.
+   */
+  public void flushAll() {
+    List<FoodStorage> pantries;
+    synchronized (this) {
+      pantries = new ArrayList<>(open.values());
+    }
+    for (FoodStorage pantry : pantries) {
+      pantry.saveToFile();
+    }
+    persistence.flush();
+  }
+
+  /**
+   * Removes the least recently used pantries until no more than the capacity are open.
+   * The evicted pantries stay reachable through {@code closing} until they are flushed.
+   *
+   * @return the evicted pantries.
+   */
+  private List<FoodStorage> evictOverCapacity() {
+    List<FoodStorage> evicted = new ArrayList<>();
+    Iterator<Map.Entry<String, FoodStorage>> it = open.entrySet().iterator();
+    while (open.size() > capacity && it.hasNext()) {
+      Map.Entry<String, FoodStorage> eldest = it.next();
+      it.remove();
+      closing.put(eldest.getKey(), eldest.getValue());
+      evicted.add(eldest.getValue());
+      evictions++;
+      Metrics.increment("registry.evictions", 1);
+    }
+    return evicted;
+  }
+
+  /**
+   * Saves the evicted pantries, waits until they are on disk, and then lets them go,
+   * unless one has been opened again in the meantime.
+   *
+   * @param evicted the evicted pantries.
+   */
+  private void flushEvicted(List<FoodStorage> evicted) {
+    if (evicted.isEmpty()) {
+      return;
+    }
+    for (FoodStorage pantry : evicted) {
+      pantry.saveToFile();
+    }
+    persistence.flush();
+    List<FoodStorage> closed = new ArrayList<>();
+    synchronized (this) {
+      for (FoodStorage pantry : evicted) {
+        if (closing.values().remove(pantry)) {
+          closed.add(pantry);
+        }
+      }
+    }
+    for (FoodStorage pantry : closed) {
+      Metrics.removeGauges(pantry);
+    }
+  }
+
+  /**
+   * Gets the name of the gauge of the groceries in a household's pantry.
+   *
+   * @param householdId the id of the household.
+   * @return the name of the gauge.
+   */
+  static String gaugeName(String householdId) {
+    return "registry.pantry." + householdId + ".groceries";
+  }
+
+  /**
+   * Creates the data directory of a household, if it does not exist.
+   *
+   * @param householdId the id of the household.
+   * @return the data directory.
+   */
+  private Path createDirectory(String householdId) {
+    Path directory = rootDirectory.resolve(householdId);
+    try {
+      Files.createDirectories(directory);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Couldn't create " + directory, e);
+    }
+    return directory;
+  }
+}
@@ -0,0 +1,156 @@
+package edu.ntnu.iir.bidata;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The groceries of a storage snapshot indexed by ingredient id: a bit set of the ingredients
+ * in stock and the amount of each, kept in chunks of {@value #CHUNK} ids.
+ * Checking a {@link RecipeVector} against it needs no name lookups. "Partially makeable"
+ * is a single bit set intersection, and "fully makeable" a tight loop over the recipe's ids.
+ * Amounts are compared with a small tolerance, so scaling a recipe up and down
+ * does not fail on rounding errors.
+ * A PantryVector never changes after it is built. The pantry of the next snapshot is made
+ * from the one before with {@link #with(int, double)}, which copies only the chunk of the
+ * changed grocery, the bit set and the array of chunks, and shares the other chunks,
+ * so a change to the storage does not read every grocery again.
+ */
+public final class PantryVector {
+  private static final double TOLERANCE = 1e-9;
+  private static final int CHUNK_BITS = 6;
+  private static final int CHUNK = 1 << CHUNK_BITS;
+  private final BitSet inStock;
+  private final double[][] chunks;
+
+  /**
+   * Builds the pantry for a storage snapshot.
+   *
+   * @param snapshot the StorageSnapshot to index.
+   */
+  PantryVector(StorageSnapshot snapshot) {
+    List<Grocery> groceries = snapshot.getGroceries();
+    int[] ids = new int[groceries.size()];
+    int maxId = -1;
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = IngredientDictionary.idOf(groceries.get(i).getName());
+      maxId = Math.max(maxId, ids[i]);
+    }
+    inStock = new BitSet(maxId + 1);
+    chunks = new double[(maxId >>> CHUNK_BITS) + 1][];
+    for (int i = 0; i < ids.length; i++) {
+      inStock.set(ids[i]);
+      chunkFor(chunks, ids[i])[ids[i] & (CHUNK - 1)] = groceries.get(i).getAmount();
+    }
+  }
+
+  private PantryVector(BitSet inStock, double[][] chunks) {
+    this.inStock = inStock;
+    this.chunks = chunks;
+  }
+
+  /**
+   * Makes the pantry with the amount of one ingredient changed. This pantry is not changed.
+   *
+   * @param id the ingredient id.
+   * @param amount the new amount in stock, or 0 if the ingredient is no longer in stock.
+   * @return the new PantryVector, sharing the unchanged chunks with this one.
+   */
+  PantryVector with(int id, double amount) {
+    int chunk = id >>> CHUNK_BITS;
+    double[][] changed = Arrays.copyOf(chunks, Math.max(chunks.length, chunk + 1));
+    changed[chunk] = changed[chunk] != null ? changed[chunk].clone() : null;
+    chunkFor(changed, id)[id & (CHUNK - 1)] = amount;
+    BitSet stock = (BitSet) inStock.clone();
+    stock.set(id, amount > 0);
+    return new PantryVector(stock, changed);
+  }
+
+  /**
+   * Gets the chunk an ingredient id is kept in, creating it if it is missing.
+   *
+   * @param chunks the chunks, large enough for the id.
+   * @param id the ingredient id.
+   * @return the chunk.
+   */
+  private static double[] chunkFor(double[][] chunks, int id) {
+    int chunk = id >>> CHUNK_BITS;
+    if (chunks[chunk] == null) {
+      chunks[chunk] = new double[CHUNK];
+    }
+    return chunks[chunk];
+  }
+
+  /**
+   * Gets the amount in stock of an ingredient.
+   *
+   * @param id the ingredient id.
+   * @return the amount, or 0 if it is not in stock.
+   */
+  public double amountOf(int id) {
+    int chunk = id >>> CHUNK_BITS;
+    if (chunk >= chunks.length || chunks[chunk] == null) {
+      return 0;
+    }
+    return chunks[chunk][id & (CHUNK - 1)];
+  }
+
+  /**
+   * Checks whether there is enough of every ingredient in a recipe.
+   *
+   * @param recipe the compiled recipe.
+   * @return true if every ingredient is in stock in the required amount, false otherwise.
+   */
+  public boolean covers(RecipeVector recipe) {
+    for (int i = 0; i < recipe.size(); i++) {
+      if (amountOf(recipe.idAt(i)) < recipe.amountAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether there is enough of every ingredient to make a recipe for a number of servings.
+   *
+   * @param recipe the compiled recipe.
+   * @param servings the number of servings wanted.
+   * @return true if every ingredient is in stock for that many servings, false otherwise.
+   */
+  public boolean covers(RecipeVector recipe, int servings) {
+    for (int i = 0; i < recipe.size(); i++) {
+      if (amountOf(recipe.idAt(i)) + TOLERANCE < recipe.perServingAt(i) * servings) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Finds how many whole servings of a recipe the stock is enough for.
+   * The ingredient with the smallest ratio of stock to amount per serving limits the servings.
+   *
+   * @param recipe the compiled recipe.
+   * @return the number of servings, or Integer.MAX_VALUE if the recipe needs nothing.
+   */
+  public int maxServings(RecipeVector recipe) {
+    double limit = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < recipe.size(); i++) {
+      double needed = recipe.perServingAt(i);
+      if (needed > 0) {
+        limit = Math.min(limit, amountOf(recipe.idAt(i)) / needed);
+      }
+    }
+    return (int) Math.min(Integer.MAX_VALUE, Math.floor(limit + TOLERANCE));
+  }
+
+  /**
+   * Checks whether at least one ingredient of a recipe is in stock.
+   *
+   * @param recipe the compiled recipe.
+   * @return true if any ingredient is in stock, false otherwise.
+   */
+  public boolean intersects(RecipeVector recipe) {
+    return recipe.mask().intersects(inStock);
+  }
+}
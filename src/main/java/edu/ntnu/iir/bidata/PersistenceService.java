@@ -0,0 +1,317 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Saves data files on a background thread, so the user interface never waits for the disk.
+ * Save requests for the same file that arrive close together are coalesced into one write,
+ * which uses the newest contents at the time of writing.
+ * Every write goes to a temporary file that is synced to disk and then renamed over
+ * the old file, so a crash in the middle of a save never leaves a half-written file.
+ * Once shutdown has started, saves are no longer delayed: until the writer has stopped they
+ * are written by it, and after that they are written right away on the calling thread,
+ * so no save is lost and no two writes of the same file run at once.
+ */
+public class PersistenceService {
+  private static final long COALESCE_DELAY_MILLIS = 200;
+  private static final LatencyHistogram WRITE = Metrics.histogram("persistence.write");
+  private final ScheduledThreadPoolExecutor writer;
+  private final Map<Path, Supplier<?>> pending = new LinkedHashMap<>();
+  private final AtomicLong savesRequested = new AtomicLong();
+  private final AtomicLong savesCompleted = new AtomicLong();
+  private final AtomicLong savesFailed = new AtomicLong();
+  private final AtomicLong bytesWritten = new AtomicLong();
+  private final AtomicLong totalSaveNanos = new AtomicLong();
+  private final AtomicLong maxSaveNanos = new AtomicLong();
+  private volatile long lastSaveNanos;
+  private boolean shuttingDown;
+
+  /**
+   * Constructs a new PersistenceService with its own background writer thread.
+   */
+  public PersistenceService() {
+    this.writer = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "persistence-writer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    writer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    Metrics.gauge("persistence.queueDepth", this, PersistenceService::getQueueDepth);
+    Metrics.gauge("persistence.savesRequested", this, PersistenceService::getSavesRequested);
+    Metrics.gauge("persistence.savesCompleted", this, PersistenceService::getSavesCompleted);
+    Metrics.gauge("persistence.savesFailed", this, PersistenceService::getSavesFailed);
+    Metrics.gauge("persistence.bytesWritten", this, PersistenceService::getBytesWritten);
+  }
+
+  /**
+   * Asks for a file to be saved in the background.
+   * If a save of the same file is already waiting, the two are coalesced,
+   * and only the newest contents are written.
+   *
+   * @param target the file to save to.
+   * @param contents gives the object to write. It is called on the writer thread,
+   *                 right before writing, so it must be safe to call from there.
+   *                 While shutting down, the file is written without delay, and after
+   *                 shutdown it is written right away on the calling thread.
+   */
+  public void requestSave(Path target, Supplier<?> contents) {
+    savesRequested.incrementAndGet();
+    synchronized (this) {
+      if (!writer.isShutdown()) {
+        if (pending.put(target, contents) == null) {
+          if (shuttingDown) {
+            writer.execute(() -> writePending(target));
+          } else {
+            writer.schedule(() -> writePending(target), COALESCE_DELAY_MILLIS,
+                TimeUnit.MILLISECONDS);
+          }
+        }
+        return;
+      }
+    }
+    awaitWriter();
+    synchronized (this) {
+      write(target, contents);
+    }
+  }
+
+  /**
+   * Writes every save that is still waiting, and waits until they are on disk.
+   */
+  public void flush() {
+    try {
+      writer.submit(this::writeAllPending).get();
+    } catch (RejectedExecutionException e) {
+      awaitWriter();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      System.out.println("Couldn't save pending data: " + e.getCause().getMessage());
+    }
+  }
+
+  /**
+   * Writes every save that is still waiting, stops the writer thread and waits for it.
+   * Saves asked for from then on are written without delay, so none are lost when the
+   * program exits. Calling this more than once is harmless.
+   */
+  public void shutdown() {
+    boolean started;
+    synchronized (this) {
+      started = shuttingDown;
+      shuttingDown = true;
+    }
+    if (started) {
+      awaitWriter();
+      return;
+    }
+    flush();
+    synchronized (this) {
+      writer.shutdown();
+    }
+    awaitWriter();
+  }
+
+  /**
+   * Writes an object to a file, replacing the file in one atomic step.
+   * The object is written to a temporary file next to the target, which is synced
+   * to disk before it is renamed over the target. The directory is synced after the
+   * rename, so the rename itself is on disk when this returns.
+   * Only one thread at a time may write to the same target.
+   *
+   * @param target the file to save to.
+   * @param contents the object to write.
+   * @return the number of bytes written.
+   * @throws IOException if the file could not be written.
+   */
+  public static long writeAtomically(Path target, Object contents) throws IOException {
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+    try {
+      try (FileOutputStream fos = new FileOutputStream(temp.toFile());
+           ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(fos))) {
+        oos.writeObject(contents);
+        oos.flush();
+        fos.getFD().sync();
+      }
+      long bytes = Files.size(temp);
+      try {
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+      syncDirectory(target.toAbsolutePath().getParent());
+      return bytes;
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Syncs a directory to disk, so that a file renamed into it survives a crash.
+   * Some platforms, such as Windows, can not open a directory; there the rename
+   * is left to the file system.
+   *
+   * @param directory the directory to sync.
+   */
+  private static void syncDirectory(Path directory) {
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      // The directory can not be opened for syncing on this platform
+    }
+  }
+
+  /**
+   * Waits until the writer thread has stopped, after shutdown.
+   */
+  private void awaitWriter() {
+    try {
+      writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Gets the number of files waiting to be saved.
+   *
+   * @return the queue depth.
+   */
+  public synchronized int getQueueDepth() {
+    return pending.size();
+  }
+
+  /**
+   * Gets the number of saves that have been asked for, including coalesced ones.
+   *
+   * @return the number of save requests.
+   */
+  public long getSavesRequested() {
+    return savesRequested.get();
+  }
+
+  /**
+   * Gets the number of writes that have completed.
+   *
+   * @return the number of completed writes.
+   */
+  public long getSavesCompleted() {
+    return savesCompleted.get();
+  }
+
+  /**
+   * Gets the number of writes that failed.
+   *
+   * @return the number of failed writes.
+   */
+  public long getSavesFailed() {
+    return savesFailed.get();
+  }
+
+  /**
+   * Gets the total number of bytes written.
+   *
+   * @return the number of bytes written.
+   */
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  /**
+   * Gets how long the latest write took.
+   *
+   * @return the latency in milliseconds.
+   */
+  public double getLastSaveMillis() {
+    return lastSaveNanos / 1_000_000.0;
+  }
+
+  /**
+   * Gets how long writes have taken on average.
+   *
+   * @return the average latency in milliseconds, or 0 if nothing has been written.
+   */
+  public double getAverageSaveMillis() {
+    long completed = savesCompleted.get();
+    return completed == 0 ? 0 : totalSaveNanos.get() / 1_000_000.0 / completed;
+  }
+
+  /**
+   * Gets how long the slowest write took.
+   *
+   * @return the latency in milliseconds.
+   */
+  public double getMaxSaveMillis() {
+    return maxSaveNanos.get() / 1_000_000.0;
+  }
+
+  /**
+   * Writes the waiting save of one file, if it has not already been written.
+   *
+   * @param target the file to save.
+   */
+  private void writePending(Path target) {
+    Supplier<?> contents;
+    synchronized (this) {
+      contents = pending.remove(target);
+    }
+    if (contents != null) {
+      write(target, contents);
+    }
+  }
+
+  /**
+   * Writes the waiting saves of all files.
+   */
+  private void writeAllPending() {
+    List<Path> targets;
+    synchronized (this) {
+      targets = new ArrayList<>(pending.keySet());
+    }
+    for (Path target : targets) {
+      writePending(target);
+    }
+  }
+
+  /**
+   * Writes one file and records how long it took.
+   *
+   * @param target the file to save.
+   * @param contents gives the object to write.
+   */
+  private void write(Path target, Supplier<?> contents) {
+    long start = System.nanoTime();
+    try {
+      bytesWritten.addAndGet(writeAtomically(target, contents.get()));
+      long elapsed = System.nanoTime() - start;
+      lastSaveNanos = elapsed;
+      totalSaveNanos.addAndGet(elapsed);
+      maxSaveNanos.accumulateAndGet(elapsed, Math::max);
+      savesCompleted.incrementAndGet();
+      WRITE.record(elapsed);
+    } catch (IOException | RuntimeException e) {
+      savesFailed.incrementAndGet();
+      System.out.println("Couldn't save " + target + ": " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,426 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * An immutable sorted map where every change returns a new map.
+ * The map is a balanced (AVL) tree. A change copies only the nodes on the path
+ * to the changed key, and the new map shares every other node with the old one,
+ * so a change costs O(log n) and old versions stay valid and unchanged.
+ * Null values are not supported.
+ *
+ * @param <K> the type of the keys.
+ * @param <V> the type of the values.
+ */
+public final class PersistentSortedMap<K, V> implements Iterable<Map.Entry<K, V>> {
+  private final Comparator<? super K> comparator;
+  private final Node<K, V> root;
+
+  /**
+   * A node in the tree. Nodes are never changed after they are created.
+   */
+  private static final class Node<K, V> {
+    private final K key;
+    private final V value;
+    private final Node<K, V> left;
+    private final Node<K, V> right;
+    private final int height;
+    private final int size;
+
+    private Node(K key, V value, Node<K, V> left, Node<K, V> right) {
+      this.key = key;
+      this.value = value;
+      this.left = left;
+      this.right = right;
+      this.height = Math.max(height(left), height(right)) + 1;
+      this.size = size(left) + size(right) + 1;
+    }
+  }
+
+  private PersistentSortedMap(Comparator<? super K> comparator, Node<K, V> root) {
+    this.comparator = comparator;
+    this.root = root;
+  }
+
+  /**
+   * Creates an empty map.
+   *
+   * @param comparator the comparator ordering the keys.
+   * @param <K> the type of the keys.
+   * @param <V> the type of the values.
+   * @return an empty map.
+   */
+  public static <K, V> PersistentSortedMap<K, V> empty(Comparator<? super K> comparator) {
+    return new PersistentSortedMap<>(comparator, null);
+  }
+
+  /**
+   * Gets the value for a key.
+   *
+   * @param key the key to look up.
+   * @return the value, or null if the key is not in the map.
+   */
+  public V get(K key) {
+    Node<K, V> node = root;
+    while (node != null) {
+      int c = comparator.compare(key, node.key);
+      if (c == 0) {
+        return node.value;
+      }
+      node = c < 0 ? node.left : node.right;
+    }
+    return null;
+  }
+
+  /**
+   * Returns a map with the key set to the given value.
+   *
+   * @param key the key to set.
+   * @param value the value for the key.
+   * @return the new map. This map is not changed.
+   */
+  public PersistentSortedMap<K, V> put(K key, V value) {
+    return new PersistentSortedMap<>(comparator, put(root, key, value));
+  }
+
+  /**
+   * Returns a map without the given key.
+   *
+   * @param key the key to remove.
+   * @return the new map, or this map if the key is not in it.
+   */
+  public PersistentSortedMap<K, V> remove(K key) {
+    if (get(key) == null) {
+      return this;
+    }
+    return new PersistentSortedMap<>(comparator, remove(root, key));
+  }
+
+  /**
+   * Gets the number of entries in the map.
+   *
+   * @return the number of entries.
+   */
+  public int size() {
+    return size(root);
+  }
+
+  /**
+   * Checks whether the map is empty.
+   *
+   * @return true if the map has no entries, false otherwise.
+   */
+  public boolean isEmpty() {
+    return root == null;
+  }
+
+  /**
+   * Gets all values in key order.
+   *
+   * @return a new list of the values.
+   */
+  public List<V> values() {
+    List<V> values = new ArrayList<>(size());
+    for (Map.Entry<K, V> entry : this) {
+      values.add(entry.getValue());
+    }
+    return values;
+  }
+
+  /**
+   * Gets a read-only view of the values in key order, without copying them.
+   * Iterating over the view costs O(1) per value, and getting a value by position
+   * costs O(log n). Since the map never changes, neither does the view.
+   * A serialized view is written as a plain list of the values.
+   *
+   * @return an unmodifiable list view of the values.
+   */
+  public List<V> valueView() {
+    return new ValueView();
+  }
+
+  /**
+   * Iterates over the entries in key order.
+   *
+   * @return an iterator over the entries.
+   */
+  @Override
+  public Iterator<Map.Entry<K, V>> iterator() {
+    Deque<Node<K, V>> path = new ArrayDeque<>();
+    pushLeft(path, root);
+    return new EntryIterator<>(path);
+  }
+
+  /**
+   * Iterates over the entries with keys greater than the given key, in key order.
+   * Finding the first entry costs O(log n), so iterating from the middle of
+   * the map does not go through the entries before it.
+   *
+   * @param key the key to start after, or null to start from the first entry.
+   * @return an iterator over the entries after the key.
+   */
+  public Iterator<Map.Entry<K, V>> iteratorAfter(K key) {
+    if (key == null) {
+      return iterator();
+    }
+    Deque<Node<K, V>> path = new ArrayDeque<>();
+    Node<K, V> node = root;
+    while (node != null) {
+      if (comparator.compare(key, node.key) < 0) {
+        path.push(node);
+        node = node.left;
+      } else {
+        node = node.right;
+      }
+    }
+    return new EntryIterator<>(path);
+  }
+
+  /**
+   * Iterates over the entries from a position in key order.
+   * The node sizes are used to find the position in O(log n).
+   *
+   * @param index the position of the first entry, from 0 to size().
+   * @return an iterator over the entries from the position.
+   */
+  public Iterator<Map.Entry<K, V>> iteratorAt(int index) {
+    Deque<Node<K, V>> path = new ArrayDeque<>();
+    Node<K, V> node = root;
+    while (node != null) {
+      int leftSize = size(node.left);
+      if (index < leftSize) {
+        path.push(node);
+        node = node.left;
+      } else if (index == leftSize) {
+        path.push(node);
+        break;
+      } else {
+        index -= leftSize + 1;
+        node = node.right;
+      }
+    }
+    return new EntryIterator<>(path);
+  }
+
+  /**
+   * Creates a spliterator over the values in key order, for use in streams.
+   * It splits by position, so a parallel stream divides the map into
+   * ranges of equal size without going through it first.
+   *
+   * @return a sized, ordered spliterator over the values.
+   */
+  public Spliterator<V> valueSpliterator() {
+    return new RangeSpliterator(0, size());
+  }
+
+  /**
+   * A read-only list of the values of the map, replaced by a copy when serialized.
+   */
+  private final class ValueView extends AbstractList<V> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public V get(int index) {
+      if (index < 0 || index >= size()) {
+        throw new IndexOutOfBoundsException("Index " + index + " out of " + size());
+      }
+      return iteratorAt(index).next().getValue();
+    }
+
+    @Override
+    public int size() {
+      return PersistentSortedMap.this.size();
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+      Iterator<Map.Entry<K, V>> entries = PersistentSortedMap.this.iterator();
+      return new Iterator<>() {
+        @Override
+        public boolean hasNext() {
+          return entries.hasNext();
+        }
+
+        @Override
+        public V next() {
+          return entries.next().getValue();
+        }
+      };
+    }
+
+    @Override
+    public Spliterator<V> spliterator() {
+      return valueSpliterator();
+    }
+
+    private Object writeReplace() {
+      return new ArrayList<>(this);
+    }
+  }
+
+  /**
+   * Goes through the values from one position up to, but not including, another.
+   */
+  private final class RangeSpliterator implements Spliterator<V> {
+    private int from;
+    private final int to;
+    private Iterator<Map.Entry<K, V>> it;
+
+    private RangeSpliterator(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super V> action) {
+      if (from >= to) {
+        return false;
+      }
+      if (it == null) {
+        it = iteratorAt(from);
+      }
+      from++;
+      action.accept(it.next().getValue());
+      return true;
+    }
+
+    @Override
+    public Spliterator<V> trySplit() {
+      int middle = (from + to) >>> 1;
+      if (it != null || middle <= from) {
+        return null;
+      }
+      Spliterator<V> prefix = new RangeSpliterator(from, middle);
+      from = middle;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return to - from;
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+  }
+
+  /**
+   * Iterates in key order over a stack of nodes, where every node on the stack
+   * still has itself and its right subtree left to visit.
+   */
+  private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+    private final Deque<Node<K, V>> path;
+
+    private EntryIterator(Deque<Node<K, V>> path) {
+      this.path = path;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !path.isEmpty();
+    }
+
+    @Override
+    public Map.Entry<K, V> next() {
+      if (path.isEmpty()) {
+        throw new NoSuchElementException();
+      }
+      Node<K, V> node = path.pop();
+      pushLeft(path, node.right);
+      return new AbstractMap.SimpleImmutableEntry<>(node.key, node.value);
+    }
+  }
+
+  private static <K, V> void pushLeft(Deque<Node<K, V>> path, Node<K, V> node) {
+    while (node != null) {
+      path.push(node);
+      node = node.left;
+    }
+  }
+
+  private Node<K, V> put(Node<K, V> node, K key, V value) {
+    if (node == null) {
+      return new Node<>(key, value, null, null);
+    }
+    int c = comparator.compare(key, node.key);
+    if (c < 0) {
+      return balance(node.key, node.value, put(node.left, key, value), node.right);
+    } else if (c > 0) {
+      return balance(node.key, node.value, node.left, put(node.right, key, value));
+    }
+    return new Node<>(key, value, node.left, node.right);
+  }
+
+  private Node<K, V> remove(Node<K, V> node, K key) {
+    int c = comparator.compare(key, node.key);
+    if (c < 0) {
+      return balance(node.key, node.value, remove(node.left, key), node.right);
+    } else if (c > 0) {
+      return balance(node.key, node.value, node.left, remove(node.right, key));
+    }
+    if (node.left == null) {
+      return node.right;
+    }
+    if (node.right == null) {
+      return node.left;
+    }
+    Node<K, V> min = node.right;
+    while (min.left != null) {
+      min = min.left;
+    }
+    return balance(min.key, min.value, node.left, removeMin(node.right));
+  }
+
+  private static <K, V> Node<K, V> removeMin(Node<K, V> node) {
+    if (node.left == null) {
+      return node.right;
+    }
+    return balance(node.key, node.value, removeMin(node.left), node.right);
+  }
+
+  private static <K, V> Node<K, V> balance(K key, V value, Node<K, V> left, Node<K, V> right) {
+    if (height(left) > height(right) + 1) {
+      if (height(left.left) >= height(left.right)) {
+        return new Node<>(left.key, left.value, left.left,
+            new Node<>(key, value, left.right, right));
+      }
+      Node<K, V> middle = left.right;
+      return new Node<>(middle.key, middle.value,
+          new Node<>(left.key, left.value, left.left, middle.left),
+          new Node<>(key, value, middle.right, right));
+    }
+    if (height(right) > height(left) + 1) {
+      if (height(right.right) >= height(right.left)) {
+        return new Node<>(right.key, right.value,
+            new Node<>(key, value, left, right.left), right.right);
+      }
+      Node<K, V> middle = right.left;
+      return new Node<>(middle.key, middle.value,
+          new Node<>(key, value, left, middle.left),
+          new Node<>(right.key, right.value, middle.right, right.right));
+    }
+    return new Node<>(key, value, left, right);
+  }
+
+  private static int height(Node<?, ?> node) {
+    return node == null ? 0 : node.height;
+  }
+
+  private static int size(Node<?, ?> node) {
+    return node == null ? 0 : node.size;
+  }
+}
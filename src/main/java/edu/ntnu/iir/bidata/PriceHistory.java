@@ -0,0 +1,211 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the observed prices of every item, per item and unit, in a {@link PriceSeries}.
+ * From the newest price of each pack size, it finds the cheapest combination of packs
+ * that covers a shortfall, with a small dynamic program over the amount needed.
+ * Plans are memoized by item, series version and amount, so pricing the same shopping list
+ * again costs only a lookup until a new price is recorded for the item.
+ */
+public class PriceHistory {
+  private static final int MEMO_SIZE = 256;
+  private static final int MAX_CELLS = 100_000;
+  private static final long SCALE = 1000;
+  private static final LatencyHistogram PLAN = Metrics.histogram("prices.cheapestPlan");
+  private Map<String, PriceSeries> series = new HashMap<>();
+  private final Map<String, PackPlan> plans = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, PackPlan> eldest) {
+      return size() > MEMO_SIZE;
+    }
+  };
+  private final PersistenceService persistence;
+  private final Path filePath;
+
+  /**
+   * Constructs a new PriceHistory and loads earlier prices from file if available.
+   *
+   * @param persistence the PersistenceService used to save the prices.
+   * @param filePath the file the prices are kept in.
+   */
+  public PriceHistory(PersistenceService persistence, Path filePath) {
+    this.persistence = persistence;
+    this.filePath = filePath;
+    loadFromFile();
+  }
+
+  /**
+   * Records an observed price and saves the history.
+   *
+   * @param name the name of the item.
+   * @param unit the unit of the pack amount.
+   * @param packAmount the amount in the pack.
+   * @param price the price of the whole pack in NOK.
+   * @param time the time the price was seen, in milliseconds since the epoch.
+   * @throws IllegalArgumentException if the pack amount or price is not greater than 0.
+   */
+  public synchronized void record(String name, String unit, double packAmount, double price,
+      long time) {
+    if (packAmount <= 0) {
+      throw new IllegalArgumentException("Pack amount must be greater than 0");
+    }
+    if (price <= 0) {
+      throw new IllegalArgumentException("Price must be greater than 0");
+    }
+    series.computeIfAbsent(key(name, unit), k -> new PriceSeries()).append(time, packAmount, price);
+    persistence.requestSave(filePath, this::copySeries);
+  }
+
+  /**
+   * Gets the observed prices of an item.
+   *
+   * @param name the name of the item.
+   * @param unit the unit of the pack amounts.
+   * @return a copy of the PriceSeries, or null if no price has been seen.
+   */
+  public synchronized PriceSeries getSeries(String name, String unit) {
+    PriceSeries found = series.get(key(name, unit));
+    return found != null ? found.copy() : null;
+  }
+
+  /**
+   * Finds the cheapest combination of packs that covers a missing amount of an item,
+   * using the newest price seen for each pack size.
+   *
+   * @param name the name of the item.
+   * @param unit the unit of the amount.
+   * @param needed the amount that is missing.
+   * @return the PackPlan, which is unpriced if no price has been seen for the item.
+   */
+  public synchronized PackPlan cheapestPlan(String name, String unit, double needed) {
+    long start = Metrics.start();
+    String key = key(name, unit);
+    PriceSeries found = series.get(key);
+    String memoKey = key + "\u0000" + (found != null ? found.getAppended() : 0) + "\u0000" + needed;
+    PackPlan plan = plans.get(memoKey);
+    if (plan == null) {
+      Map<Double, Double> packPrices = found != null ? found.latestPackPrices() : Map.of();
+      plan = solve(name, unit, needed, packPrices);
+      plans.put(memoKey, plan);
+      Metrics.increment("prices.plans.misses", 1);
+    } else {
+      Metrics.increment("prices.plans.hits", 1);
+    }
+    PLAN.stop(start);
+    return plan;
+  }
+
+  /**
+   * Finds the cheapest packs covering a missing amount. Amounts are counted in steps of the
+   * greatest common divisor of the pack sizes, and cost[x] is the cheapest way to cover
+   * at least x steps. If the amount needs too many steps, the pack with the lowest price
+   * per unit is used for all of it.
+   *
+   * @param name the name of the item.
+   * @param unit the unit of the amount.
+   * @param needed the amount that is missing.
+   * @param packPrices the price of each pack size.
+   * @return the PackPlan.
+   */
+  private static PackPlan solve(String name, String unit, double needed,
+      Map<Double, Double> packPrices) {
+    Map<Double, Integer> counts = new TreeMap<>();
+    if (needed <= 0 || packPrices.isEmpty()) {
+      return new PackPlan(name, unit, needed, counts, 0);
+    }
+    int packCount = packPrices.size();
+    double[] sizes = new double[packCount];
+    double[] costs = new double[packCount];
+    long[] steps = new long[packCount];
+    long gcd = 0;
+    int j = 0;
+    for (Map.Entry<Double, Double> pack : packPrices.entrySet()) {
+      sizes[j] = pack.getKey();
+      costs[j] = pack.getValue();
+      steps[j] = Math.max(1, Math.round(sizes[j] * SCALE));
+      gcd = gcd(gcd, steps[j]);
+      j++;
+    }
+    long target = (long) Math.ceil(needed * SCALE - 1e-6);
+    long cells = (target + gcd - 1) / gcd;
+    if (cells > MAX_CELLS) {
+      int best = 0;
+      for (j = 1; j < packCount; j++) {
+        if (costs[j] / sizes[j] < costs[best] / sizes[best]) {
+          best = j;
+        }
+      }
+      int count = (int) Math.ceil(needed / sizes[best] - 1e-9);
+      counts.put(sizes[best], count);
+      return new PackPlan(name, unit, needed, counts, count * costs[best]);
+    }
+    int n = (int) cells;
+    double[] cost = new double[n + 1];
+    int[] choice = new int[n + 1];
+    for (int x = 1; x <= n; x++) {
+      cost[x] = Double.POSITIVE_INFINITY;
+      for (j = 0; j < packCount; j++) {
+        double c = cost[(int) Math.max(0, x - steps[j] / gcd)] + costs[j];
+        if (c < cost[x]) {
+          cost[x] = c;
+          choice[x] = j;
+        }
+      }
+    }
+    for (int x = n; x > 0; x = (int) Math.max(0, x - steps[choice[x]] / gcd)) {
+      counts.merge(sizes[choice[x]], 1, Integer::sum);
+    }
+    return new PackPlan(name, unit, needed, counts, cost[n]);
+  }
+
+  private static long gcd(long a, long b) {
+    return b == 0 ? a : gcd(b, a % b);
+  }
+
+  /**
+   * Builds the key of an item and unit, ignoring case.
+   *
+   * @param name the name of the item.
+   * @param unit the unit of the amounts.
+   * @return the key.
+   */
+  private static String key(String name, String unit) {
+    return StorageSnapshot.key(name) + "\u0000" + unit.toLowerCase();
+  }
+
+  /**
+   * Copies every series so they can be written while new prices are recorded.
+   *
+   * @return a map from key to a copy of each PriceSeries.
+   */
+  private synchronized HashMap<String, PriceSeries> copySeries() {
+    HashMap<String, PriceSeries> copy = new HashMap<>();
+    series.forEach((key, value) -> copy.put(key, value.copy()));
+    return copy;
+  }
+
+  /**
+   * Loads the prices from file if it exists.
+   */
+  @SuppressWarnings("unchecked")
+  private void loadFromFile() {
+    if (!Files.exists(filePath)) {
+      return;
+    }
+    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filePath.toFile()))) {
+      series = (Map<String, PriceSeries>) ois.readObject();
+    } catch (IOException | ClassNotFoundException e) {
+      System.out.println("Error loading prices: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The observed prices of one item in one unit, kept in a fixed-size ring buffer.
+ * Each observation is the time it was seen, the amount in the pack and the price of the pack.
+ * Observations are only ever appended. When the buffer is full, the oldest is overwritten,
+ * so the series never grows beyond its capacity.
+ */
+public final class PriceSeries implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final int CAPACITY = 16;
+  private final long[] times = new long[CAPACITY];
+  private final double[] packAmounts = new double[CAPACITY];
+  private final double[] prices = new double[CAPACITY];
+  private int next;
+  private int size;
+  private long appended;
+
+  /**
+   * Appends an observed price, overwriting the oldest observation if the buffer is full.
+   *
+   * @param time the time the price was seen, in milliseconds since the epoch.
+   * @param packAmount the amount in the pack.
+   * @param price the price of the whole pack in NOK.
+   */
+  void append(long time, double packAmount, double price) {
+    times[next] = time;
+    packAmounts[next] = packAmount;
+    prices[next] = price;
+    next = (next + 1) % CAPACITY;
+    size = Math.min(size + 1, CAPACITY);
+    appended++;
+  }
+
+  /**
+   * Gets the number of observations kept.
+   *
+   * @return the number of observations, at most the capacity of the buffer.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Gets the number of observations ever appended, including overwritten ones.
+   * It changes with every append, so it also works as a version of the series.
+   *
+   * @return the number of appended observations.
+   */
+  public long getAppended() {
+    return appended;
+  }
+
+  /**
+   * Gets the time of an observation.
+   *
+   * @param index the position, from 0 (oldest) to size() - 1 (newest).
+   * @return the time in milliseconds since the epoch.
+   */
+  public long timeAt(int index) {
+    return times[slot(index)];
+  }
+
+  /**
+   * Gets the pack amount of an observation.
+   *
+   * @param index the position, from 0 (oldest) to size() - 1 (newest).
+   * @return the amount in the pack.
+   */
+  public double packAmountAt(int index) {
+    return packAmounts[slot(index)];
+  }
+
+  /**
+   * Gets the price of an observation.
+   *
+   * @param index the position, from 0 (oldest) to size() - 1 (newest).
+   * @return the price of the pack in NOK.
+   */
+  public double priceAt(int index) {
+    return prices[slot(index)];
+  }
+
+  /**
+   * Gets the newest price seen for every pack size.
+   *
+   * @return a map from pack amount to price, smallest pack first.
+   */
+  public Map<Double, Double> latestPackPrices() {
+    Map<Double, Double> latest = new TreeMap<>();
+    for (int i = 0; i < size; i++) {
+      latest.put(packAmountAt(i), priceAt(i));
+    }
+    return latest;
+  }
+
+  /**
+   * Copies the series.
+   *
+   * @return a new PriceSeries with the same observations.
+   */
+  PriceSeries copy() {
+    PriceSeries copy = new PriceSeries();
+    for (int i = 0; i < size; i++) {
+      copy.append(timeAt(i), packAmountAt(i), priceAt(i));
+    }
+    copy.appended = appended;
+    return copy;
+  }
+
+  /**
+   * Finds the slot in the buffer of an observation.
+   *
+   * @param index the position, from 0 (oldest) to size() - 1 (newest).
+   * @return the index in the arrays.
+   */
+  private int slot(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+    }
+    return (next - size + index + CAPACITY) % CAPACITY;
+  }
+}
@@ -0,0 +1,109 @@
+package edu.ntnu.iir.bidata;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache of query results, keyed by the query, the storage it was run against,
+ * the storage version and the catalogue version.
+ * Any change to the storage or the catalogue gives it a new version, so later lookups use
+ * new keys and simply miss. Nothing is ever walked or cleared to invalidate results: entries
+ * for old versions are no longer asked for, and fall out as the least recently used.
+ * Cached results are shared between callers, so they must not be changed.
+ *
+ * @param <V> the type of the results.
+ */
+public final class QueryCache<V> {
+  private final String name;
+  private final Map<Key, V> entries;
+
+  /**
+   * The key of a cached result.
+   */
+  private static final class Key {
+    private final String query;
+    private final long storageId;
+    private final long storageVersion;
+    private final long catalogueVersion;
+
+    private Key(String query, long storageId, long storageVersion, long catalogueVersion) {
+      this.query = query;
+      this.storageId = storageId;
+      this.storageVersion = storageVersion;
+      this.catalogueVersion = catalogueVersion;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return storageId == other.storageId && storageVersion == other.storageVersion
+          && catalogueVersion == other.catalogueVersion && query.equals(other.query);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(query, storageId, storageVersion, catalogueVersion);
+    }
+  }
+
+  /**
+   * Constructs a new, empty QueryCache.
+   *
+   * @param name the name of the cache, used for its hit and miss counters.
+   * @param capacity the largest number of results kept.
+   */
+  public QueryCache(String name, int capacity) {
+    this.name = name;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, V> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Gets a cached result, or computes and caches it if there is none.
+   * The result is computed without holding the cache's lock, so a slow query
+   * does not hold up lookups of other queries.
+   *
+   * @param query the query, including its parameters.
+   * @param storageId the id of the storage the query is run against.
+   * @param storageVersion the version of the storage.
+   * @param catalogueVersion the version of the recipe catalogue.
+   * @param compute computes the result on a miss.
+   * @return the cached or computed result.
+   */
+  public V get(String query, long storageId, long storageVersion, long catalogueVersion,
+      Supplier<V> compute) {
+    Key key = new Key(query, storageId, storageVersion, catalogueVersion);
+    V value;
+    synchronized (this) {
+      value = entries.get(key);
+    }
+    if (value != null) {
+      Metrics.increment(name + ".hits", 1);
+      return value;
+    }
+    Metrics.increment(name + ".misses", 1);
+    value = compute.get();
+    synchronized (this) {
+      entries.put(key, value);
+    }
+    return value;
+  }
+
+  /**
+   * Gets the number of cached results.
+   *
+   * @return the number of results.
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+}
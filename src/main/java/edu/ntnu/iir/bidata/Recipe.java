@@ -9,9 +9,12 @@ import java.util.List;
  */
 public class Recipe implements Serializable {
   private static final long serialVersionUID = 1L;
+  private int id;
   private String name;
   private List<Ingredient> ingredients = new ArrayList<>();
   private String description;
+  private int servings = 1;
+  private transient RecipeVector vector;
 
   /**
    * Constructs a new Recipe with the specified name.
@@ -23,6 +26,24 @@ public class Recipe implements Serializable {
     this.name = name;
   }
 
+  /**
+   * Gets the id of the recipe, given to it when it was added to the recipe book.
+
+   * @return the id of the recipe, or 0 if it has not been added yet.
+   */
+  public int getId() {
+    return id;
+  }
+
+  /**
+   * Sets the id of the recipe.
+
+   * @param id the id given by the recipe book.
+   */
+  void setId(int id) {
+    this.id = id;
+  }
+
   /**
    * Gets the name of the recipe.
 
@@ -40,6 +61,47 @@ public class Recipe implements Serializable {
   public void addIngredient(Ingredient ingredient) {
 
     ingredients.add(ingredient);
+    vector = null;
+  }
+
+  /**
+   * Gets the number of servings the ingredient amounts are for.
+   * Recipes saved before servings were added are treated as one serving.
+
+   * @return the number of servings, at least 1.
+   */
+  public int getServings() {
+    return servings > 0 ? servings : 1;
+  }
+
+  /**
+   * Sets the number of servings the ingredient amounts are for.
+
+   * @param servings the number of servings.
+   * @throws IllegalArgumentException if servings is less than 1.
+   */
+  public void setServings(int servings) {
+    if (servings < 1) {
+      throw new IllegalArgumentException("Servings must be at least 1");
+    }
+    this.servings = servings;
+    vector = null;
+  }
+
+  /**
+   * Gets the ingredients of the recipe compiled into ingredient ids and amounts.
+   * The vector is built the first time it is asked for, and again after ingredients
+   * or servings are changed.
+
+   * @return the RecipeVector of the recipe.
+   */
+  public RecipeVector getVector() {
+    RecipeVector result = vector;
+    if (result == null) {
+      result = new RecipeVector(ingredients, getServings());
+      vector = result;
+    }
+    return result;
   }
 
   /**
@@ -69,8 +131,18 @@ public class Recipe implements Serializable {
     this.description = description;
   }
 
+  /**
+   * Returns a short, one-line summary of the recipe for use in listings.
+
+   * @return the name of the recipe, the number of ingredients and the servings.
+   */
+  public String toSummary() {
+    return name + " (" + ingredients.size() + " ingredients, serves " + getServings() + ")";
+  }
+
   @Override
   public String toString() {
-    return "Recipe: " + name + ", Ingredients: " + ingredients + ", Description: " + description;
+    return "Recipe: " + name + ", Servings: " + getServings() + ", Ingredients: " + ingredients
+        + ", Description: " + description;
   }
 }
\ No newline at end of file
@@ -1,111 +1,799 @@
 package edu.ntnu.iir.bidata;
 
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.IntFunction;
 
 /**
  * Manages a collection of recipes, including adding new recipes
  * and suggesting recipes based on available ingredients.
+ * Suggestions compare each recipe's {@link RecipeVector} with the storage's
+ * {@link PantryVector}, so no ingredient names are looked up while matching.
+ * Recipes are also kept in an index sorted by name, used for lookups and paginated listings,
+ * and in an index from ingredient id to the recipes using it, used to drop cached
+ * servings when the stock of an ingredient changes.
+ * Suggestions also accept substitutes from the book's {@link SubstitutionGraph}
+ * for ingredients that are short.
+ * The catalogue has two tiers. The compact part of every recipe, its name, servings and
+ * {@link RecipeVector}, is always in memory, so matching, listing and the indexes never read
+ * from disk. Whole recipes, with their ingredient names and descriptions, are kept in
+ * {@link RecipeStore} files, and are read from them when they are asked for, through a
+ * {@link RecipeCache} of the recipes used most recently. Suggestions match against the compact
+ * parts and read only the recipes that match, so the catalogue can be much larger than the heap.
+ * The store is split into a fixed number of shards by the hash of the recipe name, so adding a
+ * recipe appends to one shard file only, and the shards are opened in parallel at startup.
+ * Recipe books saved in the old single recipes file are copied into the store shards
+ * the first time they are loaded; the old file is left as it is.
+ * One RecipeBook can be shared by many storages, for example every pantry of a
+ * {@link PantryRegistry}: reads are safe while recipes are added, and cached servings
+ * are kept per storage.
+ * The ids of the suggested recipes are cached in a {@link QueryCache}, keyed by the storage
+ * version and the version of the recipe book, which changes whenever a recipe or a substitution
+ * is added. Only the ids are cached, so the whole recipes stay bounded by the recipe cache.
+ * Recipes can be searched by words in their name, ingredients and description through a
+ * {@link RecipeSearchIndex}, which is extended as recipes are added and saved next to the
+ * store, so it is only built from scratch when it is missing or does not match it.
+ * Calls to the public methods can be recorded by a {@link TraceRecorder}.
  */
-public class RecipeBook {
-  private List<Recipe> recipes = new ArrayList<>();
-  private static final String FILE_PATH = "recipes.dat";
+public class RecipeBook implements RecipeCatalogue {
+  private final List<RecipeStore.Entry> entries = new CopyOnWriteArrayList<>();
+  private final TreeMap<String, RecipeStore.Entry> byName = new TreeMap<>();
+  private final Map<Integer, List<RecipeStore.Entry>> byIngredient = new HashMap<>();
+  private final Map<GroceryStore, ServingsCache> servingsCaches = new WeakHashMap<>();
+  private final Map<Integer, RecipeStore.Entry> byId = new HashMap<>();
+  private final RecipeCache cache = new RecipeCache("catalogue.recipeCache", CACHE_BYTES);
+  private final QueryCache<int[]> suggestions =
+      new QueryCache<>("catalogue.suggestions", 64);
+  private RecipeSearchIndex searchIndex = new RecipeSearchIndex();
+  private volatile TraceRecorder trace;
+  private final boolean[] storeFailed = new boolean[SHARD_COUNT];
+  private int nextId = 1;
+  private volatile long version;
+  private final PersistenceService persistence;
+  private final SubstitutionGraph substitutions;
+  private final NutritionTable nutrition;
+  private final List<RecipeListener> recipeListeners = new CopyOnWriteArrayList<>();
+  private final RecipeStore[] stores = new RecipeStore[SHARD_COUNT];
+  private final Path shardDirectory;
+  private final Path legacyFilePath;
+  private final Path searchIndexPath;
+  private static final int SHARD_COUNT = 8;
+  private static final String SHARD_DIRECTORY_NAME = "recipes";
+  private static final String STORE_FILE_FORMAT = "catalogue-%02d.dat";
+  private static final long CACHE_BYTES = Long.getLong("wasteless.recipeCacheBytes", 16L << 20);
+  private static final String LEGACY_FILE_NAME = "recipes.dat";
+  private static final String SUBSTITUTIONS_FILE_NAME = "substitutions.dat";
+  private static final String NUTRITION_FILE_NAME = "nutrition.dat";
+  private static final String SEARCH_INDEX_FILE_NAME = "recipes.idx";
+  private static final LatencyHistogram SUGGEST = Metrics.histogram("catalogue.suggestRecipes");
+  private static final LatencyHistogram SUGGEST_PARTIAL =
+      Metrics.histogram("catalogue.suggestPartialRecipes");
+  private static final LatencyHistogram MAX_SERVINGS = Metrics.histogram("catalogue.maxServings");
+  private static final LatencyHistogram LOAD = Metrics.histogram("catalogue.loadFromFile");
+  private static final LatencyHistogram SEARCH = Metrics.histogram("catalogue.searchRecipes");
+  private static final LatencyHistogram READ = Metrics.histogram("catalogue.readRecipe");
 
   /**
    * Constructs a new RecipeBook object and loads existing recipes from file if available.
+   * The data files are kept in the working directory.
+   *
+   * @param persistence the PersistenceService used to save the recipes.
    */
-  public RecipeBook() {
+  public RecipeBook(PersistenceService persistence) {
+    this(persistence, Path.of(""));
+  }
+
+  /**
+   * Constructs a new RecipeBook object keeping its data files in the given directory,
+   * and loads existing recipes from there if available.
+   *
+   * @param persistence the PersistenceService used to save the recipes.
+   * @param directory the directory holding the data files of the recipe book.
+   */
+  public RecipeBook(PersistenceService persistence, Path directory) {
+    this.persistence = persistence;
+    this.shardDirectory = directory.resolve(SHARD_DIRECTORY_NAME);
+    for (int i = 0; i < SHARD_COUNT; i++) {
+      stores[i] = new RecipeStore(shardDirectory.resolve(String.format(STORE_FILE_FORMAT, i)));
+    }
+    this.legacyFilePath = directory.resolve(LEGACY_FILE_NAME);
+    this.searchIndexPath = directory.resolve(SEARCH_INDEX_FILE_NAME);
+    this.substitutions = new SubstitutionGraph(persistence,
+        directory.resolve(SUBSTITUTIONS_FILE_NAME));
+    this.nutrition = new NutritionTable(persistence, directory.resolve(NUTRITION_FILE_NAME));
     loadFromFile();
+    Metrics.gauge("catalogue.recipes", this, book -> book.entries.size());
+    Metrics.gauge("catalogue.recipeCache.bytes", this, book -> book.cache.getWeight());
   }
 
   /**
-   * Adds a new recipe to the recipe book and saves the updated list to file.
+   * Adds a new recipe to the recipe book and to the search index, appends it to the store
+   * and saves the search index. The recipe is kept in the cache of recently used recipes,
+   * and must not be changed after it is added.
+   * If the recipe could not be stored, it is not added.
    *
    * @param recipe the Recipe object to add.
    */
-  public void addRecipe(Recipe recipe) {
-    recipes.add(recipe);
-    saveToFile();
+  @Override
+  public synchronized void addRecipe(Recipe recipe) {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.ADD_RECIPE, recipe, 0);
+    }
+    if (recipe.getId() == 0) {
+      recipe.setId(nextId);
+    }
+    RecipeStore.Entry entry = append(recipe);
+    if (entry == null) {
+      return;
+    }
+    index(entry);
+    entries.add(entry);
+    cache.put(entry.id, recipe, entry.size);
+    if (recipe.getId() > searchIndex.getLastId()) {
+      searchIndex.add(recipe);
+    } else {
+      rebuildSearchIndex();
+    }
+    saveSearchIndex();
+    version++;
+    for (RecipeListener listener : recipeListeners) {
+      listener.recipeAdded(recipe);
+    }
+  }
+
+  @Override
+  public void addRecipeListener(RecipeListener listener) {
+    recipeListeners.add(listener);
   }
 
   /**
-   * Returns a list of recipes that can be made with the available ingredients in the storage.
+   * Starts recording calls to the public methods of this recipe book.
+   * Calls are recorded until the recorder is closed.
    *
-   * @param storage the FoodStorage object to check against.
-   * @return a list of recipes that can be made.
+   * @param recorder the TraceRecorder to record the calls with.
    */
-  public List<Recipe> suggestRecipes(FoodStorage storage) {
-    List<Recipe> suggestedRecipes = new ArrayList<>();
-    for (Recipe recipe : recipes) {
-      if (storage.hasIngredients(recipe)) {
-        suggestedRecipes.add(recipe);
-      }
+  public void setTraceRecorder(TraceRecorder recorder) {
+    this.trace = Objects.requireNonNull(recorder);
+  }
+
+  /**
+   * Gets the modification counter of the recipe book, which increases whenever a recipe
+   * or a substitution is added.
+   *
+   * @return the version of the recipe book.
+   */
+  @Override
+  public long getVersion() {
+    return version + substitutions.getVersion();
+  }
+
+  /**
+   * Finds a recipe by name, ignoring case.
+   *
+   * @param name the name of the recipe.
+   * @return the first Recipe with the name, or null if there is none.
+   */
+  @Override
+  public synchronized Recipe findRecipe(String name) {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.FIND_RECIPE, name);
+    }
+    Map.Entry<String, RecipeStore.Entry> entry =
+        byName.ceilingEntry(name.toLowerCase() + "\u0000");
+    if (entry == null || !entry.getValue().name.equalsIgnoreCase(name)) {
+      return null;
+    }
+    return recipe(entry.getValue());
+  }
+
+  /**
+   * Searches the names, ingredients and descriptions of the recipes, best match first.
+   * Words after "without" or "no", or starting with "-", leave out the recipes that have them,
+   * so "quick pasta without cheese" finds quick pasta dishes that do not use cheese.
+   *
+   * @param query the words to look for.
+   * @param limit the largest number of recipes to return.
+   * @return the matching recipes ranked by BM25, best first.
+   */
+  @Override
+  public synchronized List<Recipe> searchRecipes(String query, int limit) {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.SEARCH_RECIPES, query, limit);
+    }
+    long start = Metrics.start();
+    List<Recipe> matches = new ArrayList<>();
+    for (int id : searchIndex.search(query, limit)) {
+      matches.add(recipe(byId.get(id)));
+    }
+    SEARCH.stop(start);
+    return matches;
+  }
+
+  /**
+   * Retrieves one page of recipes in alphabetical order.
+   * The page starts right after the cursor in the sorted index,
+   * so no recipes before it are visited, and only the recipes on the page are read.
+   *
+   * @param cursor the cursor from the previous page, or null for the first page.
+   * @param limit the largest number of recipes on the page.
+   * @return the Page of Recipe objects.
+   */
+  @Override
+  public synchronized Page<Recipe> listRecipes(String cursor, int limit) {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.LIST_RECIPES, cursor, limit);
+    }
+    Map<String, RecipeStore.Entry> tail =
+        cursor == null ? byName : byName.tailMap(cursor, false);
+    List<Recipe> items = new ArrayList<>(limit);
+    Iterator<Map.Entry<String, RecipeStore.Entry>> it = tail.entrySet().iterator();
+    String last = null;
+    while (items.size() < limit && it.hasNext()) {
+      Map.Entry<String, RecipeStore.Entry> entry = it.next();
+      items.add(recipe(entry.getValue()));
+      last = entry.getKey();
     }
-    return suggestedRecipes;
+    return new Page<>(items, it.hasNext() ? last : null);
+  }
+
+  /**
+   * Gets the ingredient substitutions used when suggesting recipes.
+   *
+   * @return the SubstitutionGraph of the recipe book.
+   */
+  @Override
+  public SubstitutionGraph getSubstitutionGraph() {
+    return substitutions;
+  }
+
+  @Override
+  public NutritionTable getNutritionTable() {
+    return nutrition;
+  }
+
+  /**
+   * Returns a list of recipes that can be made with the available ingredients in the storage,
+   * using substitutes for ingredients that are short.
+   * Only the recipes that match are read from the store, as they are got from the list.
+   *
+   * @param storage the GroceryStore to check against.
+   * @return an unmodifiable list of recipes that can be made.
+   */
+  @Override
+  public List<Recipe> suggestRecipes(GroceryStore storage) {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.SUGGEST_RECIPES);
+    }
+    long start = Metrics.start();
+    StorageSnapshot snapshot = storage.snapshot();
+    int[] ids = suggestions.get("suggestRecipes", storage.getId(),
+        snapshot.getVersion(), getVersion(), () -> {
+          PantryVector pantry = snapshot.pantry();
+          return entries.stream()
+              .filter(entry -> substitutions.covers(pantry, entry.vector))
+              .mapToInt(entry -> entry.id)
+              .toArray();
+        });
+    SUGGEST.stop(start);
+    return recipesOf(ids);
   }
 
   /**
    * Returns a list of recipes that can be made partially
-   * with the available ingredients in the storage.
-   *
-   * @param storage the FoodStorage object to check against.
-   * @return a list of recipes that can be made partially.
-   */
-  public List<Recipe> suggestPartialRecipes(FoodStorage storage) {
-    List<Recipe> partialRecipes = new ArrayList<>();
-    for (Recipe recipe : recipes) {
-      boolean canMakePartially = false;
-      for (Ingredient ingredient : recipe.getIngredients()) {
-        if (storage.searchGrocery(ingredient.getName()) != null) {
-          canMakePartially = true;
-          break;
-        }
+   * with the available ingredients in the storage, or with substitutes for them.
+   *
+   * @param storage the GroceryStore to check against.
+   * @return an unmodifiable list of recipes that can be made partially.
+   */
+  @Override
+  public List<Recipe> suggestPartialRecipes(GroceryStore storage) {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.SUGGEST_PARTIAL_RECIPES);
+    }
+    long start = Metrics.start();
+    StorageSnapshot snapshot = storage.snapshot();
+    int[] ids = suggestions.get("suggestPartialRecipes", storage.getId(),
+        snapshot.getVersion(), getVersion(), () -> {
+          PantryVector pantry = snapshot.pantry();
+          return entries.stream()
+              .filter(entry -> substitutions.intersects(pantry, entry.vector))
+              .mapToInt(entry -> entry.id)
+              .toArray();
+        });
+    SUGGEST_PARTIAL.stop(start);
+    return recipesOf(ids);
+  }
+
+  /**
+   * Finds how many servings of every recipe can be made with the stock in the storage,
+   * limited by the ingredient with the smallest ratio of stock to amount per serving.
+   * Results are cached per storage, and a recipe is only computed again after the stock
+   * of one of its ingredients has changed.
+   *
+   * Recipes that cannot be made at all are left out, so only the others are read from the store.
+   *
+   * @param storage the GroceryStore to check against.
+   * @return the number of whole servings of each recipe that can be made at least once,
+   *     in the order the recipes were added. Recipes without ingredients get Integer.MAX_VALUE.
+   */
+  @Override
+  public Map<Recipe, Integer> maxServings(GroceryStore storage) {
+    if (trace != null) {
+      trace.record(TraceOp.Kind.MAX_SERVINGS);
+    }
+    long start = Metrics.start();
+    ServingsCache cache;
+    synchronized (this) {
+      cache = servingsCaches.get(storage);
+      if (cache == null) {
+        cache = new ServingsCache(this);
+        servingsCaches.put(storage, cache);
+        storage.addStockListener(cache);
       }
-      if (canMakePartially) {
-        partialRecipes.add(recipe);
+    }
+    Map<Recipe, Integer> servings = new LinkedHashMap<>();
+    cache.maxServings(entries, storage).forEach((id, count) -> {
+      if (count > 0) {
+        servings.put(recipe(byIdOf(id)), count);
       }
+    });
+    MAX_SERVINGS.stop(start);
+    return servings;
+  }
+
+  /**
+   * Finds the recipes that use an ingredient.
+   *
+   * @param ingredientId the id of the ingredient, from the {@link IngredientDictionary}.
+   * @return a new list of the recipes using the ingredient.
+   */
+  @Override
+  public List<Recipe> recipesUsing(int ingredientId) {
+    List<Recipe> recipes = new ArrayList<>();
+    for (RecipeStore.Entry entry : entriesUsing(ingredientId)) {
+      recipes.add(recipe(entry));
     }
-    return partialRecipes;
+    return recipes;
   }
 
   /**
-   * Returns the list of all recipes in the recipe book.
+   * Finds the compiled ingredients of the recipes that use an ingredient from the
+   * ingredient index, without reading the recipes from the store.
+   *
+   * @param ingredientId the id of the ingredient, from the {@link IngredientDictionary}.
+   * @return a new map of the RecipeVector of each recipe using the ingredient, by recipe id.
+   */
+  @Override
+  public Map<Integer, RecipeVector> vectorsUsing(int ingredientId) {
+    Map<Integer, RecipeVector> vectors = new LinkedHashMap<>();
+    for (RecipeStore.Entry entry : entriesUsing(ingredientId)) {
+      vectors.put(entry.id, entry.vector);
+    }
+    return vectors;
+  }
+
+  /**
+   * Finds the compact parts of the recipes that use an ingredient, without reading
+   * the recipes from the store.
+   *
+   * @param ingredientId the id of the ingredient.
+   * @return a copy of the list of entries using the ingredient.
+   */
+  synchronized List<RecipeStore.Entry> entriesUsing(int ingredientId) {
+    return new ArrayList<>(byIngredient.getOrDefault(ingredientId, List.of()));
+  }
+
+  /**
+   * Gets the number of times a whole recipe was asked for and found in the cache
+   * of recently used recipes.
+   *
+   * @return the number of cache hits.
+   */
+  public long getCacheHits() {
+    return cache.getHits();
+  }
+
+  /**
+   * Gets the number of times a whole recipe was asked for and had to be read from the store.
+   *
+   * @return the number of cache misses.
+   */
+  public long getCacheMisses() {
+    return cache.getMisses();
+  }
+
+  /**
+   * Writes all recipes to a compact backup. The recipes are read from the store one at
+   * a time, without going through the cache.
+   *
+   * @param out the stream to write to.
+   * @return the number of recipes written.
+   * @throws IOException if the backup could not be written.
+   * @see BackupFormat
+   */
+  @Override
+  public long exportBackup(OutputStream out) throws IOException {
+    try {
+      return BackupFormat.exportRecipes(stored(entries), out);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Adds the recipes in a backup to the recipe book, skipping recipes with a name
+   * that is already in the book. Recipes keep their ids unless the id is already taken.
+   *
+   * @param in the stream to read from.
+   * @return the number of recipes added.
+   * @throws IOException if the backup could not be read.
+   */
+  @Override
+  public long importBackup(InputStream in) throws IOException {
+    long[] added = new long[1];
+    BackupFormat.importRecipes(in, recipe -> {
+      synchronized (this) {
+        if (findRecipe(recipe.getName()) == null) {
+          if (recipe.getId() < nextId) {
+            recipe.setId(0);
+          }
+          addRecipe(recipe);
+          added[0]++;
+        }
+      }
+    });
+    return added[0];
+  }
+
+  /**
+   * Returns a read-only view of all recipes in the recipe book, in the order they were added.
+   * The size is known without reading anything, and recipes are read from the store
+   * as they are got.
    *
    * @return List of Recipe objects.
    */
+  @Override
   public List<Recipe> getRecipes() {
-    return recipes;
+    return new AbstractList<>() {
+      @Override
+      public Recipe get(int index) {
+        return recipe(entries.get(index));
+      }
+
+      @Override
+      public int size() {
+        return entries.size();
+      }
+    };
+  }
+
+  /**
+   * Gives a read-only view of the recipes with the given ids, read from the store
+   * as they are got, like {@link #getRecipes()}.
+   *
+   * @param ids the ids of the recipes, which must not be changed.
+   * @return List of Recipe objects.
+   */
+  private List<Recipe> recipesOf(int[] ids) {
+    return new AbstractList<>() {
+      @Override
+      public Recipe get(int index) {
+        return recipe(byIdOf(ids[index]));
+      }
+
+      @Override
+      public int size() {
+        return ids.length;
+      }
+    };
+  }
+
+  /**
+   * Gets a whole recipe from the cache, or reads it from the store and caches it.
+   *
+   * @param entry the compact part of the recipe.
+   * @return the Recipe.
+   * @throws UncheckedIOException if the recipe could not be read from the store.
+   */
+  private Recipe recipe(RecipeStore.Entry entry) {
+    Recipe recipe = cache.get(entry.id);
+    if (recipe == null) {
+      long start = Metrics.start();
+      try {
+        recipe = storeOf(entry).read(entry);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Couldn't read recipe " + entry.name, e);
+      }
+      cache.put(entry.id, recipe, entry.size);
+      READ.stop(start);
+    }
+    return recipe;
+  }
+
+  private synchronized RecipeStore.Entry byIdOf(int id) {
+    return byId.get(id);
+  }
+
+  /**
+   * Gets the store shard holding a recipe.
+   *
+   * @param entry the compact part of the recipe.
+   * @return the RecipeStore of its shard.
+   */
+  private RecipeStore storeOf(RecipeStore.Entry entry) {
+    return stores[shardOf(entry.name)];
+  }
+
+  /**
+   * Reads whole recipes from their store shards, without caching them, so that reading every
+   * recipe does not push the recently used ones out of the cache.
+   *
+   * @param list the entries of the recipes to read.
+   * @return the recipes, read one by one as they are iterated over.
+   */
+  private Iterable<Recipe> stored(List<RecipeStore.Entry> list) {
+    return () -> list.stream().map(entry -> {
+      try {
+        return storeOf(entry).read(entry);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }).iterator();
   }
 
   /**
-   * Saves the list of recipes to a file to ensure data is retained across sessions.
+   * Appends a recipe to the store shard of its name, creating the directory of the store
+   * if needed.
+   *
+   * @param recipe the Recipe to store, with its id.
+   * @return the Entry of the stored recipe, or null if it could not be stored.
    */
-  private void saveToFile() {
-    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(FILE_PATH))) {
-      oos.writeObject(recipes);
-      System.out.println("Recipes have been saved successfully.");
+  private RecipeStore.Entry append(Recipe recipe) {
+    int shard = shardOf(recipe.getName());
+    if (storeFailed[shard]) {
+      System.out.println("Recipe store could not be loaded earlier, so it is not written to.");
+      return null;
+    }
+    createDirectory();
+    try {
+      return stores[shard].append(recipe);
     } catch (IOException e) {
-      System.out.println("Couldn't save recipes: " + e.getMessage());
+      System.out.println("Couldn't save recipe " + recipe.getName() + ": " + e.getMessage());
+      return null;
     }
   }
 
   /**
-   * Loads the list of recipes from a file if it exists.
+   * Reads the compact part of every recipe from the store shards into the indexes,
+   * opening the shards in parallel. The recipes are listed in id order.
+   * If there are no shards yet, the recipes are copied into them from the old single
+   * recipes file.
    */
   private void loadFromFile() {
-    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(FILE_PATH))) {
-      recipes = (List<Recipe>) ois.readObject();
-      System.out.println("Recipes loaded successfully.");
-    } catch (FileNotFoundException e) {
+    long start = Metrics.start();
+    boolean migrate = true;
+    for (RecipeStore shard : stores) {
+      migrate &= !shard.exists();
+    }
+    List<RecipeStore.Entry> loaded = new ArrayList<>();
+    for (List<RecipeStore.Entry> shard : openStores()) {
+      loaded.addAll(shard);
+    }
+    loaded.sort(Comparator.comparingInt(entry -> entry.id));
+    for (RecipeStore.Entry entry : loaded) {
+      index(entry);
+    }
+    entries.addAll(loaded);
+    if (migrate) {
+      migrate();
+    }
+    loadSearchIndex();
+    if (entries.isEmpty()) {
       System.out.println("No saved recipes found. Starting with an empty list.");
+    } else {
+      System.out.println("Recipes loaded successfully.");
+    }
+    LOAD.stop(start);
+  }
+
+  /**
+   * Copies the recipes saved in the old single recipes file into the store shards.
+   * Recipes without an id get one.
+   */
+  private void migrate() {
+    if (!Files.exists(legacyFilePath)) {
+      return;
+    }
+    List<Recipe> loaded = loadLegacyFile();
+    for (Recipe recipe : loaded) {
+      nextId = Math.max(nextId, recipe.getId() + 1);
+    }
+    for (Recipe recipe : loaded) {
+      if (recipe.getId() == 0) {
+        recipe.setId(nextId);
+      }
+      RecipeStore.Entry entry = append(recipe);
+      if (entry != null) {
+        index(entry);
+        entries.add(entry);
+      }
+    }
+  }
+
+  /**
+   * Loads the search index saved next to the store. If it is missing, cannot be read,
+   * or does not hold the same recipes as the store, it is built again and saved.
+   */
+  private void loadSearchIndex() {
+    int lastId = 0;
+    for (RecipeStore.Entry entry : entries) {
+      lastId = Math.max(lastId, entry.id);
+    }
+    if (Files.exists(searchIndexPath)) {
+      try (ObjectInputStream ois =
+          new ObjectInputStream(new FileInputStream(searchIndexPath.toFile()))) {
+        RecipeSearchIndex loaded = (RecipeSearchIndex) ois.readObject();
+        if (loaded.size() == entries.size() && loaded.getLastId() == lastId) {
+          searchIndex = loaded;
+          return;
+        }
+      } catch (IOException | ClassNotFoundException | ClassCastException e) {
+        System.out.println("Error loading recipe search index: " + e.getMessage());
+      }
+    }
+    rebuildSearchIndex();
+    if (!entries.isEmpty()) {
+      saveSearchIndex();
+    }
+  }
+
+  /**
+   * Builds the search index from scratch, reading the recipes from the store in id order.
+   */
+  private void rebuildSearchIndex() {
+    List<RecipeStore.Entry> sorted = new ArrayList<>(entries);
+    sorted.sort(Comparator.comparingInt(entry -> entry.id));
+    searchIndex = new RecipeSearchIndex();
+    for (Recipe recipe : stored(sorted)) {
+      if (recipe.getId() > searchIndex.getLastId()) {
+        searchIndex.add(recipe);
+      }
+    }
+  }
+
+  /**
+   * Saves the search index in the background, from a copy taken right before writing.
+   */
+  private void saveSearchIndex() {
+    persistence.requestSave(searchIndexPath, this::copySearchIndex);
+  }
+
+  private synchronized RecipeSearchIndex copySearchIndex() {
+    return searchIndex.copy();
+  }
+
+  /**
+   * Opens every store shard. A shard that can not be opened is never written to,
+   * so a read error can not turn into data loss.
+   *
+   * @return the entries of each shard, in shard order.
+   */
+  private List<List<RecipeStore.Entry>> openStores() {
+    return readShards(shard -> stores[shard]::open, (shard, error) -> {
+      System.out.println("Error loading recipes: " + error.getMessage());
+      storeFailed[shard] = true;
+      return List.of();
+    });
+  }
+
+  /**
+   * Reads something from every shard on a thread pool sized to the number of cores.
+   *
+   * @param reader gives the task reading a shard, from the index of the shard.
+   * @param onError gives the result for a shard that could not be read, from the index of the
+   *     shard and the error. It is called on the calling thread.
+   * @param <T> the type of what is read from a shard.
+   * @return what was read from each shard, in shard order.
+   */
+  private static <T> List<T> readShards(IntFunction<Callable<T>> reader,
+      BiFunction<Integer, Throwable, T> onError) {
+    int threads = Math.min(SHARD_COUNT, Runtime.getRuntime().availableProcessors());
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<T> results = new ArrayList<>();
+    try {
+      List<Future<T>> futures = new ArrayList<>();
+      for (int i = 0; i < SHARD_COUNT; i++) {
+        futures.add(pool.submit(reader.apply(i)));
+      }
+      for (int i = 0; i < SHARD_COUNT; i++) {
+        try {
+          results.add(futures.get(i).get());
+        } catch (ExecutionException e) {
+          results.add(onError.apply(i, e.getCause()));
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      for (int i = results.size(); i < SHARD_COUNT; i++) {
+        results.add(onError.apply(i, e));
+      }
+    } finally {
+      pool.shutdown();
+    }
+    return results;
+  }
+
+  /**
+   * Reads the recipes from the old single recipes file.
+   *
+   * @return the recipes, or an empty list if the file could not be read.
+   */
+  private List<Recipe> loadLegacyFile() {
+    try (ObjectInputStream ois = new ObjectInputStream(
+        new FileInputStream(legacyFilePath.toFile()))) {
+      return (List<Recipe>) ois.readObject();
     } catch (IOException | ClassNotFoundException e) {
       System.out.println("Error loading recipes: " + e.getMessage());
+      return List.of();
+    }
+  }
+
+  /**
+   * Creates the directory holding the store, if it does not exist.
+   */
+  private void createDirectory() {
+    try {
+      Files.createDirectories(shardDirectory);
+    } catch (IOException e) {
+      System.out.println("Couldn't create " + shardDirectory + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Finds the shard a recipe belongs to, from the hash of its lower-case name.
+   *
+   * @param name the name of the recipe.
+   * @return the index of the shard.
+   */
+  private static int shardOf(String name) {
+    return Math.floorMod(name.toLowerCase().hashCode(), SHARD_COUNT);
+  }
+
+  /**
+   * Adds a stored recipe to the id, name and ingredient indexes.
+   *
+   * @param entry the Entry of the recipe.
+   */
+  private void index(RecipeStore.Entry entry) {
+    nextId = Math.max(nextId, entry.id + 1);
+    byId.put(entry.id, entry);
+    byName.put(entry.name.toLowerCase() + "\u0000" + entry.id, entry);
+    for (int i = 0; i < entry.vector.size(); i++) {
+      byIngredient.computeIfAbsent(entry.vector.idAt(i), id -> new ArrayList<>()).add(entry);
     }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,112 @@
+package edu.ntnu.iir.bidata;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the whole recipes that were used most recently, up to a budget of bytes.
+ * Each recipe is weighed by the size of its record in the {@link RecipeStore}, which grows
+ * with its description and ingredients the same way its size on the heap does.
+ * When the budget is exceeded, the least recently used recipes are dropped until it fits
+ * again, but the newest recipe is always kept, even if it alone is over the budget.
+ * Hits and misses are counted, and reported to {@link Metrics} under the cache's name.
+ * Cached recipes are shared between everyone asking for them, so they must not be changed.
+ */
+final class RecipeCache {
+  private final String name;
+  private final long capacity;
+  private final LinkedHashMap<Integer, Recipe> recipes = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<Integer, Integer> weights = new HashMap<>();
+  private long weight;
+  private long hits;
+  private long misses;
+
+  /**
+   * Constructs a new, empty RecipeCache.
+   *
+   * @param name the name the hits and misses are reported under.
+   * @param capacity the largest total weight of the cached recipes, in bytes.
+   */
+  RecipeCache(String name, long capacity) {
+    this.name = name;
+    this.capacity = capacity;
+  }
+
+  /**
+   * Gets a cached recipe and marks it as the most recently used.
+   *
+   * @param id the id of the recipe.
+   * @return the Recipe, or null if it is not cached.
+   */
+  Recipe get(int id) {
+    Recipe recipe;
+    synchronized (this) {
+      recipe = recipes.get(id);
+      if (recipe == null) {
+        misses++;
+      } else {
+        hits++;
+      }
+    }
+    Metrics.increment(name + (recipe == null ? ".misses" : ".hits"), 1);
+    return recipe;
+  }
+
+  /**
+   * Caches a recipe as the most recently used, dropping the least recently used
+   * recipes if the budget is exceeded.
+   *
+   * @param id the id of the recipe.
+   * @param recipe the Recipe to cache.
+   * @param size the weight of the recipe in bytes.
+   */
+  synchronized void put(int id, Recipe recipe, int size) {
+    recipes.put(id, recipe);
+    Integer old = weights.put(id, size);
+    weight += size - (old == null ? 0 : old);
+    Iterator<Integer> eldest = recipes.keySet().iterator();
+    while (weight > capacity && recipes.size() > 1) {
+      int evicted = eldest.next();
+      eldest.remove();
+      weight -= weights.remove(evicted);
+    }
+  }
+
+  /**
+   * Gets the number of lookups that found the recipe in the cache.
+   *
+   * @return the number of hits.
+   */
+  synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Gets the number of lookups that did not find the recipe in the cache.
+   *
+   * @return the number of misses.
+   */
+  synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Gets the total weight of the cached recipes.
+   *
+   * @return the weight in bytes.
+   */
+  synchronized long getWeight() {
+    return weight;
+  }
+
+  /**
+   * Gets the number of cached recipes.
+   *
+   * @return the number of recipes.
+   */
+  synchronized int size() {
+    return recipes.size();
+  }
+}
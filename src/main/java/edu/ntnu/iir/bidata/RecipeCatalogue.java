@@ -0,0 +1,149 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The recipes known to the app, as seen by the user interface and the rest of the app.
+ * Every {@link StorageBackend} has its own implementation; {@link RecipeBook} is the one
+ * keeping the recipes in files. A catalogue gives every added recipe an id, and can be
+ * shared by many storages, so it must be safe to use from several threads.
+ */
+public interface RecipeCatalogue {
+
+  /**
+   * Adds a new recipe and keeps it across sessions. A recipe without an id is given one.
+   *
+   * @param recipe the Recipe object to add.
+   */
+  void addRecipe(Recipe recipe);
+
+  /**
+   * Registers a listener that is told whenever a recipe is added, also from a backup.
+   *
+   * @param listener the RecipeListener to add.
+   */
+  void addRecipeListener(RecipeListener listener);
+
+  /**
+   * Gets the modification counter of the catalogue, which increases whenever a recipe
+   * or a substitution is added.
+   *
+   * @return the version of the catalogue.
+   */
+  long getVersion();
+
+  /**
+   * Finds a recipe by name, ignoring case.
+   *
+   * @param name the name of the recipe.
+   * @return the first Recipe with the name, or null if there is none.
+   */
+  Recipe findRecipe(String name);
+
+  /**
+   * Searches the names, ingredients and descriptions of the recipes, best match first.
+   *
+   * @param query the words to look for.
+   * @param limit the largest number of recipes to return.
+   * @return the matching recipes, best first.
+   */
+  List<Recipe> searchRecipes(String query, int limit);
+
+  /**
+   * Retrieves one page of recipes in alphabetical order.
+   *
+   * @param cursor the cursor from the previous page, or null for the first page.
+   * @param limit the largest number of recipes on the page.
+   * @return the Page of Recipe objects.
+   */
+  Page<Recipe> listRecipes(String cursor, int limit);
+
+  /**
+   * Returns all recipes in the order they were added.
+   *
+   * @return a read-only List of Recipe objects.
+   */
+  List<Recipe> getRecipes();
+
+  /**
+   * Gets the ingredient substitutions used when suggesting recipes.
+   *
+   * @return the SubstitutionGraph of the catalogue.
+   */
+  SubstitutionGraph getSubstitutionGraph();
+
+  /**
+   * Gets the nutrition facts of the ingredients used by the recipes.
+   *
+   * @return the NutritionTable of the catalogue.
+   */
+  NutritionTable getNutritionTable();
+
+  /**
+   * Returns the recipes that can be made with the groceries in a storage,
+   * using substitutes for ingredients that are short.
+   *
+   * @param storage the GroceryStore to check against.
+   * @return an unmodifiable list of recipes that can be made.
+   */
+  List<Recipe> suggestRecipes(GroceryStore storage);
+
+  /**
+   * Returns the recipes that can be made partially with the groceries in a storage,
+   * or with substitutes for them.
+   *
+   * @param storage the GroceryStore to check against.
+   * @return an unmodifiable list of recipes that can be made partially.
+   */
+  List<Recipe> suggestPartialRecipes(GroceryStore storage);
+
+  /**
+   * Finds how many servings of every recipe can be made with the stock in a storage.
+   *
+   * @param storage the GroceryStore to check against.
+   * @return the number of whole servings of each recipe that can be made at least once,
+   *     in the order the recipes were added.
+   */
+  Map<Recipe, Integer> maxServings(GroceryStore storage);
+
+  /**
+   * Finds the recipes that use an ingredient.
+   *
+   * @param ingredientId the id of the ingredient, from the {@link IngredientDictionary}.
+   * @return a new list of the recipes using the ingredient.
+   */
+  List<Recipe> recipesUsing(int ingredientId);
+
+  /**
+   * Finds the compiled ingredients of the recipes that use an ingredient, reading only
+   * their ingredients and servings, not the whole recipes.
+   *
+   * @param ingredientId the id of the ingredient, from the {@link IngredientDictionary}.
+   * @return a new map of the RecipeVector of each recipe using the ingredient, by recipe id,
+   *     in the order the recipes were added.
+   */
+  Map<Integer, RecipeVector> vectorsUsing(int ingredientId);
+
+  /**
+   * Writes all recipes to a compact backup.
+   *
+   * @param out the stream to write to.
+   * @return the number of recipes written.
+   * @throws IOException if the backup could not be written.
+   * @see BackupFormat
+   */
+  long exportBackup(OutputStream out) throws IOException;
+
+  /**
+   * Adds the recipes in a backup, skipping recipes with a name that is already known.
+   *
+   * @param in the stream to read from.
+   * @return the number of recipes added.
+   * @throws IOException if the backup could not be read.
+   */
+  long importBackup(InputStream in) throws IOException;
+}
@@ -0,0 +1,17 @@
+package edu.ntnu.iir.bidata;
+
+/**
+ * Is told when a recipe is added to a {@link RecipeCatalogue}.
+ * Listeners are called on the thread that added the recipe, after it has been stored,
+ * and may be called while the catalogue is locked, so they must be quick and must not
+ * call back into the catalogue.
+ */
+@FunctionalInterface
+public interface RecipeListener {
+  /**
+   * Called after a recipe has been added.
+   *
+   * @param recipe the added Recipe, with its id.
+   */
+  void recipeAdded(Recipe recipe);
+}
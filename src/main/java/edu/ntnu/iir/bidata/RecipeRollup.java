@@ -0,0 +1,167 @@
+package edu.ntnu.iir.bidata;
+
+/**
+ * The cost and nutrition of a whole recipe, added up over its ingredients.
+ * Ingredients without a known price or without nutrition facts are left out of the totals
+ * and counted, so a rollup tells whether its totals are complete.
+ * A rollup never changes; {@link RecipeRollups} makes a new one when a price or a nutrition
+ * fact it depends on changes.
+ */
+public final class RecipeRollup {
+  private final int recipeId;
+  private final int servings;
+  private final double cost;
+  private final int unpriced;
+  private final double kcal;
+  private final double protein;
+  private final double carbohydrates;
+  private final double fat;
+  private final int withoutNutrition;
+
+  /**
+   * Constructs a new RecipeRollup.
+   *
+   * @param recipeId the id of the recipe.
+   * @param servings the number of servings the recipe makes, at least 1.
+   * @param cost the cost of the priced ingredients, in NOK.
+   * @param unpriced the number of ingredients without a known price.
+   * @param nutrition the energy, protein, carbohydrates and fat of the ingredients with
+   *     nutrition facts, in that order.
+   * @param withoutNutrition the number of ingredients without nutrition facts.
+   */
+  RecipeRollup(int recipeId, int servings, double cost, int unpriced, double[] nutrition,
+      int withoutNutrition) {
+    this.recipeId = recipeId;
+    this.servings = servings;
+    this.cost = cost;
+    this.unpriced = unpriced;
+    this.kcal = nutrition[0];
+    this.protein = nutrition[1];
+    this.carbohydrates = nutrition[2];
+    this.fat = nutrition[3];
+    this.withoutNutrition = withoutNutrition;
+  }
+
+  /**
+   * Gets the id of the recipe.
+   *
+   * @return the recipe id.
+   */
+  public int getRecipeId() {
+    return recipeId;
+  }
+
+  /**
+   * Gets the number of servings the totals are for.
+   *
+   * @return the number of servings, at least 1.
+   */
+  public int getServings() {
+    return servings;
+  }
+
+  /**
+   * Gets the cost of the whole recipe, from the prices of the groceries in the storage.
+   *
+   * @return the cost in NOK of the ingredients with a known price.
+   */
+  public double getCost() {
+    return cost;
+  }
+
+  /**
+   * Gets the cost of one serving.
+   *
+   * @return the cost per serving in NOK.
+   */
+  public double getCostPerServing() {
+    return cost / servings;
+  }
+
+  /**
+   * Gets the energy of the whole recipe.
+   *
+   * @return the energy in kilocalories of the ingredients with nutrition facts.
+   */
+  public double getKcal() {
+    return kcal;
+  }
+
+  /**
+   * Gets the energy of one serving.
+   *
+   * @return the energy per serving in kilocalories.
+   */
+  public double getKcalPerServing() {
+    return kcal / servings;
+  }
+
+  /**
+   * Gets the protein of the whole recipe.
+   *
+   * @return the protein in grams of the ingredients with nutrition facts.
+   */
+  public double getProtein() {
+    return protein;
+  }
+
+  /**
+   * Gets the protein of one serving.
+   *
+   * @return the protein per serving in grams.
+   */
+  public double getProteinPerServing() {
+    return protein / servings;
+  }
+
+  /**
+   * Gets the carbohydrates of the whole recipe.
+   *
+   * @return the carbohydrates in grams of the ingredients with nutrition facts.
+   */
+  public double getCarbohydrates() {
+    return carbohydrates;
+  }
+
+  /**
+   * Gets the fat of the whole recipe.
+   *
+   * @return the fat in grams of the ingredients with nutrition facts.
+   */
+  public double getFat() {
+    return fat;
+  }
+
+  /**
+   * Gets the number of ingredients whose price is not known.
+   *
+   * @return the number of unpriced ingredients, 0 if the cost is complete.
+   */
+  public int getUnpriced() {
+    return unpriced;
+  }
+
+  /**
+   * Gets the number of ingredients without nutrition facts.
+   *
+   * @return the number of ingredients left out of the nutrition totals.
+   */
+  public int getWithoutNutrition() {
+    return withoutNutrition;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder(String.format(
+        "%.2f NOK, %.0f kcal, %.1f g protein, %.1f g carbohydrates, %.1f g fat per serving",
+        getCostPerServing(), getKcalPerServing(), getProteinPerServing(),
+        carbohydrates / servings, fat / servings));
+    if (unpriced > 0) {
+      text.append(", ").append(unpriced).append(" ingredients without a price");
+    }
+    if (withoutNutrition > 0) {
+      text.append(", ").append(withoutNutrition).append(" ingredients without nutrition facts");
+    }
+    return text.toString();
+  }
+}
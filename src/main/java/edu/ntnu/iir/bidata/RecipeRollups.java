@@ -0,0 +1,257 @@
+package edu.ntnu.iir.bidata;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps a {@link RecipeRollup} of the cost and nutrition of every recipe in a catalogue,
+ * priced with the groceries of one storage, so recipes can be sorted by cost or protein
+ * without adding up their ingredients on every query.
+ * A recipe is rolled up when it is added to the catalogue. When the stock of a grocery changes,
+ * only its ingredient id is noted; before the next read, the prices of the noted groceries are
+ * taken from one snapshot of the storage, so a storage backed by a database is not queried
+ * for every stock change. An ingredient whose price or nutrition facts changed is marked, and
+ * only the recipes using a marked ingredient are rolled up again. Their compiled ingredients
+ * are found with {@link RecipeCatalogue#vectorsUsing(int)}, outside the locks of the storage
+ * that reported the change. Recipes added before the rollups were made are rolled up the
+ * first time they are read.
+ * The cost of an ingredient is its amount times the price per unit of the grocery with the same
+ * name, as paid for its latest lot. A grocery that has been used up keeps its last price.
+ * Like recipe matching, amounts are taken to be in the unit of the grocery.
+ */
+public class RecipeRollups implements StockListener, RecipeListener {
+  private static final LatencyHistogram SORT = Metrics.histogram("rollups.sort");
+  private final RecipeCatalogue catalogue;
+  private final GroceryStore storage;
+  private final NutritionTable nutrition;
+  private final Map<Integer, RecipeRollup> byRecipe = new HashMap<>();
+  private final Map<Integer, Double> prices = new HashMap<>();
+  private final Set<Integer> restocked = new HashSet<>();
+  private final Set<Integer> changed = new HashSet<>();
+
+  /**
+   * The orders recipes can be sorted in. Recipes with a missing price or missing nutrition
+   * facts, depending on the order, come after the recipes whose totals are complete.
+   */
+  public enum Order {
+    /**
+     * Cheapest serving first.
+     */
+    COST,
+    /**
+     * Most protein per serving first.
+     */
+    PROTEIN,
+    /**
+     * Fewest kilocalories per serving first.
+     */
+    KCAL
+  }
+
+  /**
+   * Constructs new RecipeRollups for a catalogue and a storage, taking the prices of the
+   * groceries in the storage, and starts listening to both and to the nutrition table
+   * of the catalogue.
+   *
+   * @param catalogue the RecipeCatalogue holding the recipes.
+   * @param storage the GroceryStore whose prices are used.
+   */
+  public RecipeRollups(RecipeCatalogue catalogue, GroceryStore storage) {
+    this.catalogue = catalogue;
+    this.storage = storage;
+    this.nutrition = catalogue.getNutritionTable();
+    for (Grocery grocery : storage.snapshot().getGroceries()) {
+      prices.put(IngredientDictionary.idOf(grocery.getName()), grocery.getPricePerUnit());
+    }
+    storage.addStockListener(this);
+    catalogue.addRecipeListener(this);
+    nutrition.addListener(this::nutritionChanged);
+    Metrics.gauge("rollups.recipes", this, RecipeRollups::size);
+  }
+
+  /**
+   * Gets the rollup of a recipe.
+   *
+   * @param recipe the Recipe to get the rollup of.
+   * @return the up-to-date RecipeRollup of the recipe.
+   */
+  public RecipeRollup getRollup(Recipe recipe) {
+    update();
+    synchronized (this) {
+      return rollupOf(recipe);
+    }
+  }
+
+  /**
+   * Sorts recipes by their precomputed rollups. Ties keep the order they were given in.
+   *
+   * @param recipes the recipes to sort, such as the suggestions for a storage.
+   * @param order the Order to sort them in.
+   * @return an unmodifiable list of the recipes, sorted.
+   */
+  public List<Recipe> sort(List<Recipe> recipes, Order order) {
+    long start = Metrics.start();
+    update();
+    int count = recipes.size();
+    double[] keys = new double[count];
+    synchronized (this) {
+      for (int i = 0; i < count; i++) {
+        RecipeRollup rollup = rollupOf(recipes.get(i));
+        keys[i] = switch (order) {
+          case COST -> rollup.getUnpriced() > 0 ? Double.POSITIVE_INFINITY
+              : rollup.getCostPerServing();
+          case PROTEIN -> rollup.getWithoutNutrition() > 0 ? Double.POSITIVE_INFINITY
+              : -rollup.getProteinPerServing();
+          case KCAL -> rollup.getWithoutNutrition() > 0 ? Double.POSITIVE_INFINITY
+              : rollup.getKcalPerServing();
+        };
+      }
+    }
+    Integer[] indexes = new Integer[count];
+    Arrays.setAll(indexes, i -> i);
+    Arrays.sort(indexes, (a, b) -> Double.compare(keys[a], keys[b]));
+    Recipe[] sorted = new Recipe[count];
+    for (int i = 0; i < count; i++) {
+      sorted[i] = recipes.get(indexes[i]);
+    }
+    SORT.stop(start);
+    return List.of(sorted);
+  }
+
+  /**
+   * Gets the number of recipes that have been rolled up.
+   *
+   * @return the number of rollups kept.
+   */
+  public synchronized int size() {
+    return byRecipe.size();
+  }
+
+  /**
+   * Rolls up a new recipe with the current prices and nutrition facts.
+   *
+   * @param recipe the added Recipe.
+   */
+  @Override
+  public synchronized void recipeAdded(Recipe recipe) {
+    byRecipe.put(recipe.getId(), rollup(recipe.getId(), recipe.getVector()));
+  }
+
+  /**
+   * Notes an ingredient whose stock changed, so its price is checked before the next read.
+   *
+   * @param ingredientId the id of the ingredient whose stock changed.
+   */
+  @Override
+  public synchronized void stockChanged(int ingredientId) {
+    restocked.add(ingredientId);
+  }
+
+  /**
+   * Marks an ingredient whose nutrition facts were set.
+   *
+   * @param ingredientId the id of the ingredient.
+   */
+  private synchronized void nutritionChanged(int ingredientId) {
+    changed.add(ingredientId);
+  }
+
+  /**
+   * Takes the prices of the groceries whose stock changed since the last update, and rolls up
+   * again the recipes using an ingredient whose price or nutrition facts changed.
+   * A grocery that is no longer in the storage keeps its last price.
+   */
+  private void update() {
+    Integer[] noted;
+    synchronized (this) {
+      noted = restocked.toArray(new Integer[0]);
+      restocked.clear();
+    }
+    if (noted.length > 0) {
+      StorageSnapshot snapshot = storage.snapshot();
+      synchronized (this) {
+        for (int ingredientId : noted) {
+          String key = IngredientDictionary.keyOf(ingredientId);
+          Grocery grocery = key != null ? snapshot.searchGrocery(key) : null;
+          if (grocery != null) {
+            Double before = prices.put(ingredientId, grocery.getPricePerUnit());
+            if (before == null || before != grocery.getPricePerUnit()) {
+              changed.add(ingredientId);
+            }
+          }
+        }
+      }
+    }
+    Integer[] ingredients;
+    synchronized (this) {
+      if (changed.isEmpty()) {
+        return;
+      }
+      ingredients = changed.toArray(new Integer[0]);
+      changed.clear();
+    }
+    Map<Integer, RecipeVector> affected = new HashMap<>();
+    for (int ingredientId : ingredients) {
+      affected.putAll(catalogue.vectorsUsing(ingredientId));
+    }
+    synchronized (this) {
+      affected.forEach((id, vector) -> byRecipe.put(id, rollup(id, vector)));
+    }
+    Metrics.increment("rollups.recomputed", affected.size());
+  }
+
+  /**
+   * Gets the rollup of a recipe, rolling it up if it has not been yet.
+   * Must be called while holding the lock.
+   *
+   * @param recipe the Recipe.
+   * @return the RecipeRollup.
+   */
+  private RecipeRollup rollupOf(Recipe recipe) {
+    RecipeRollup rollup = byRecipe.get(recipe.getId());
+    if (rollup == null) {
+      rollup = rollup(recipe.getId(), recipe.getVector());
+      byRecipe.put(recipe.getId(), rollup);
+    }
+    return rollup;
+  }
+
+  /**
+   * Adds up the cost and nutrition of the ingredients of a recipe.
+   * Must be called while holding the lock.
+   *
+   * @param recipeId the id of the recipe.
+   * @param vector the compiled ingredients of the recipe.
+   * @return the new RecipeRollup.
+   */
+  private RecipeRollup rollup(int recipeId, RecipeVector vector) {
+    double cost = 0;
+    int unpriced = 0;
+    double[] totals = new double[4];
+    int withoutNutrition = 0;
+    for (int i = 0; i < vector.size(); i++) {
+      double amount = vector.amountAt(i);
+      Double price = prices.get(vector.idAt(i));
+      if (price != null) {
+        cost += amount * price;
+      } else {
+        unpriced++;
+      }
+      NutritionFacts facts = nutrition.getFacts(vector.idAt(i));
+      if (facts != null) {
+        totals[0] += amount * facts.getKcal();
+        totals[1] += amount * facts.getProtein();
+        totals[2] += amount * facts.getCarbohydrates();
+        totals[3] += amount * facts.getFat();
+      } else {
+        withoutNutrition++;
+      }
+    }
+    return new RecipeRollup(recipeId, vector.servings(), cost, unpriced, totals,
+        withoutNutrition);
+  }
+}
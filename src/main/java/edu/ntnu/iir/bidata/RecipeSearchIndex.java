@@ -0,0 +1,299 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * A full-text index over the names, ingredients and descriptions of recipes.
+ * Text is split into lower-case words, common words are dropped, and plural endings are
+ * trimmed, so "Tomatoes" and "tomato" are the same term. For every term the index keeps
+ * a postings list of the recipes using it, ordered by recipe id. Each entry is written as
+ * the difference from the id before it, followed by how often the term occurs, both as
+ * variable-length integers, so most entries take two bytes.
+ * Matches are ranked with BM25, and words in the name count twice.
+ * A query word after "without", "no" or "-" leaves out every recipe that has it.
+ * Recipes are added one at a time, and must be added in increasing id order.
+ * Not thread-safe: the {@link RecipeBook} only uses it while holding its lock.
+ */
+final class RecipeSearchIndex implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final double K1 = 1.2;
+  private static final double B = 0.75;
+  private static final int NAME_WEIGHT = 2;
+  private static final Set<String> STOPWORDS = Set.of("a", "an", "and", "as", "at", "by",
+      "for", "from", "in", "into", "is", "it", "of", "on", "or", "the", "then", "to", "with");
+  private static final Set<String> EXCLUDE = Set.of("without", "no", "not");
+  private final Map<String, Postings> postings = new HashMap<>();
+  private int[] lengths = new int[16];
+  private int documents;
+  private long totalLength;
+  private int lastId;
+
+  /**
+   * The recipes using one term, as gaps between ids and term counts.
+   */
+  private static final class Postings implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private byte[] data = new byte[8];
+    private int size;
+    private int count;
+    private int lastId;
+
+    private void add(int id, int frequency) {
+      if (data.length - size < 10) {
+        data = Arrays.copyOf(data, data.length * 2);
+      }
+      writeVarInt(id - lastId);
+      writeVarInt(frequency);
+      lastId = id;
+      count++;
+    }
+
+    private void writeVarInt(int value) {
+      while ((value & ~0x7F) != 0) {
+        data[size++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      data[size++] = (byte) value;
+    }
+
+    private Postings copy() {
+      Postings copy = new Postings();
+      copy.data = Arrays.copyOf(data, size);
+      copy.size = size;
+      copy.count = count;
+      copy.lastId = lastId;
+      return copy;
+    }
+  }
+
+  /**
+   * Reads a postings list entry by entry.
+   */
+  private static final class Cursor {
+    private final Postings postings;
+    private int position;
+    private int id;
+    private int frequency;
+
+    private Cursor(Postings postings) {
+      this.postings = postings;
+    }
+
+    private boolean next() {
+      if (position >= postings.size) {
+        return false;
+      }
+      id += readVarInt();
+      frequency = readVarInt();
+      return true;
+    }
+
+    private int readVarInt() {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = postings.data[position++];
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      return value;
+    }
+  }
+
+  /**
+   * Adds a recipe to the index.
+   *
+   * @param recipe the Recipe to add. Its id must be larger than that of every recipe
+   *     added before it.
+   * @throws IllegalArgumentException if the id is not larger than the last one added.
+   */
+  void add(Recipe recipe) {
+    int id = recipe.getId();
+    if (id <= lastId) {
+      throw new IllegalArgumentException("Recipe " + id + " is not after " + lastId);
+    }
+    Map<String, Integer> frequencies = new HashMap<>();
+    int length = 0;
+    for (String term : tokenize(recipe.getName())) {
+      frequencies.merge(term, NAME_WEIGHT, Integer::sum);
+      length += NAME_WEIGHT;
+    }
+    List<String> body = new ArrayList<>();
+    for (Ingredient ingredient : recipe.getIngredients()) {
+      body.addAll(tokenize(ingredient.getName()));
+    }
+    body.addAll(tokenize(recipe.getDescription()));
+    for (String term : body) {
+      frequencies.merge(term, 1, Integer::sum);
+      length++;
+    }
+    frequencies.forEach((term, frequency) ->
+        postings.computeIfAbsent(term, t -> new Postings()).add(id, frequency));
+    if (id >= lengths.length) {
+      lengths = Arrays.copyOf(lengths, Math.max(id + 1, lengths.length * 2));
+    }
+    lengths[id] = length;
+    totalLength += length;
+    documents++;
+    lastId = id;
+  }
+
+  /**
+   * Gets the number of recipes in the index.
+   *
+   * @return the number of recipes added.
+   */
+  int size() {
+    return documents;
+  }
+
+  /**
+   * Gets the largest recipe id in the index.
+   *
+   * @return the id of the last recipe added, or 0 if the index is empty.
+   */
+  int getLastId() {
+    return lastId;
+  }
+
+  /**
+   * Finds the recipes best matching a query, best first.
+   * Recipes matching none of the query words are not returned.
+   *
+   * @param query the words to look for, such as "quick pasta without cheese".
+   * @param limit the largest number of results.
+   * @return the ids of the matching recipes, best first.
+   */
+  List<Integer> search(String query, int limit) {
+    Set<String> wanted = new HashSet<>();
+    Set<String> unwanted = new HashSet<>();
+    boolean exclude = false;
+    for (String word : query.toLowerCase(Locale.ROOT).split("\\s+")) {
+      if (EXCLUDE.contains(word)) {
+        exclude = true;
+        continue;
+      }
+      boolean negated = word.startsWith("-");
+      List<String> terms = tokenize(negated ? word.substring(1) : word);
+      (exclude || negated ? unwanted : wanted).addAll(terms);
+      if (!terms.isEmpty()) {
+        exclude = false;
+      }
+    }
+    wanted.removeAll(unwanted);
+    Set<Integer> excluded = new HashSet<>();
+    for (String term : unwanted) {
+      Postings list = postings.get(term);
+      if (list != null) {
+        Cursor cursor = new Cursor(list);
+        while (cursor.next()) {
+          excluded.add(cursor.id);
+        }
+      }
+    }
+    Map<Integer, Double> scores = new HashMap<>();
+    double averageLength = documents == 0 ? 1 : Math.max(1.0, (double) totalLength / documents);
+    for (String term : wanted) {
+      Postings list = postings.get(term);
+      if (list == null) {
+        continue;
+      }
+      double idf = Math.log(1 + (documents - list.count + 0.5) / (list.count + 0.5));
+      Cursor cursor = new Cursor(list);
+      while (cursor.next()) {
+        if (!excluded.contains(cursor.id)) {
+          double norm = K1 * (1 - B + B * lengths[cursor.id] / averageLength);
+          double score = idf * cursor.frequency * (K1 + 1) / (cursor.frequency + norm);
+          scores.merge(cursor.id, score, Double::sum);
+        }
+      }
+    }
+    Comparator<Map.Entry<Integer, Double>> worstFirst =
+        Map.Entry.<Integer, Double>comparingByValue()
+            .thenComparing(Map.Entry.<Integer, Double>comparingByKey().reversed());
+    PriorityQueue<Map.Entry<Integer, Double>> best = new PriorityQueue<>(worstFirst);
+    for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+      best.add(entry);
+      if (best.size() > limit) {
+        best.poll();
+      }
+    }
+    Integer[] ids = new Integer[best.size()];
+    for (int i = ids.length - 1; i >= 0; i--) {
+      ids[i] = best.poll().getKey();
+    }
+    return List.of(ids);
+  }
+
+  /**
+   * Creates a copy of this index, for saving on another thread.
+   *
+   * @return the copy.
+   */
+  RecipeSearchIndex copy() {
+    RecipeSearchIndex copy = new RecipeSearchIndex();
+    postings.forEach((term, list) -> copy.postings.put(term, list.copy()));
+    copy.lengths = Arrays.copyOf(lengths, lastId + 1);
+    copy.documents = documents;
+    copy.totalLength = totalLength;
+    copy.lastId = lastId;
+    return copy;
+  }
+
+  /**
+   * Splits text into index terms: lower-case words of letters and digits,
+   * without common words and with plural endings trimmed.
+   *
+   * @param text the text to split, may be null.
+   * @return the terms, in the order they occur.
+   */
+  static List<String> tokenize(String text) {
+    List<String> terms = new ArrayList<>();
+    if (text == null) {
+      return terms;
+    }
+    String lower = text.toLowerCase(Locale.ROOT);
+    int start = -1;
+    for (int i = 0; i <= lower.length(); i++) {
+      boolean word = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+      if (word && start < 0) {
+        start = i;
+      } else if (!word && start >= 0) {
+        String term = lower.substring(start, i);
+        if (!STOPWORDS.contains(term)) {
+          terms.add(stem(term));
+        }
+        start = -1;
+      }
+    }
+    return terms;
+  }
+
+  /**
+   * Trims common English plural endings.
+   */
+  private static String stem(String word) {
+    if (word.length() > 4 && word.endsWith("ies")) {
+      return word.substring(0, word.length() - 3) + "y";
+    }
+    if (word.length() > 4 && (word.endsWith("oes") || word.endsWith("ches")
+        || word.endsWith("shes"))) {
+      return word.substring(0, word.length() - 2);
+    }
+    if (word.length() > 3 && word.endsWith("s") && !word.endsWith("ss")) {
+      return word.substring(0, word.length() - 1);
+    }
+    return word;
+  }
+}
@@ -0,0 +1,261 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The recipes of one shard of a recipe book on disk, in a file that is only ever appended to.
+ * Every record starts with the compact part of a recipe: its id, name, servings and
+ * ingredients. The description comes last, so opening the store reads the compact parts
+ * and skips over the descriptions, and only the compact parts stay in memory as
+ * {@link Entry} objects. A whole recipe is read back from the position of its record.
+ * Records are not synced to disk one by one. A record cut short by a crash is found
+ * when the store is opened, and the file is truncated to the last whole record.
+ */
+final class RecipeStore {
+  private static final int MAGIC = 0x574C5253;
+  private static final int FORMAT_VERSION = 1;
+  private static final int FILE_HEADER_SIZE = 8;
+  private static final int RECORD_HEADER_SIZE = 8;
+  private final Path file;
+  private final Object readerLock = new Object();
+  private volatile FileChannel reader;
+  private long end;
+
+  /**
+   * The compact part of a stored recipe, kept in memory for every recipe:
+   * enough to match it against a pantry and to list it, and the position of its record.
+   * An Entry never changes after it is created.
+   */
+  static final class Entry {
+    final int id;
+    final String name;
+    final int servings;
+    final RecipeVector vector;
+    final long offset;
+    final int size;
+
+    private Entry(int id, String name, int servings, RecipeVector vector, long offset,
+        int size) {
+      this.id = id;
+      this.name = name;
+      this.servings = servings;
+      this.vector = vector;
+      this.offset = offset;
+      this.size = size;
+    }
+  }
+
+  /**
+   * Constructs a RecipeStore for a file. Nothing is read or written until the store is
+   * opened, and the file is only created when the first recipe is appended.
+   *
+   * @param file the file holding the recipes.
+   */
+  RecipeStore(Path file) {
+    this.file = file;
+  }
+
+  /**
+   * Checks whether the store file exists.
+   *
+   * @return true if recipes have been stored before, false otherwise.
+   */
+  boolean exists() {
+    return Files.exists(file);
+  }
+
+  /**
+   * Reads the compact part of every record, in the order the recipes were appended.
+   * A record cut short at the end of the file is dropped, and the file is truncated so
+   * the next recipe is appended after the last whole record.
+   *
+   * @return the entries of the stored recipes, or an empty list if there is no store file.
+   * @throws IOException if the file could not be read or is not a recipe store.
+   */
+  synchronized List<Entry> open() throws IOException {
+    List<Entry> entries = new ArrayList<>();
+    end = 0;
+    if (!Files.exists(file)) {
+      return entries;
+    }
+    long length = Files.size(file);
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      if (length < FILE_HEADER_SIZE || in.readInt() != MAGIC) {
+        throw new IOException(file + " is not a recipe store");
+      }
+      int version = in.readInt();
+      if (version != FORMAT_VERSION) {
+        throw new IOException("Unsupported recipe store version " + version);
+      }
+      long offset = FILE_HEADER_SIZE;
+      while (offset + RECORD_HEADER_SIZE <= length) {
+        int headerLength = in.readInt();
+        int descriptionLength = in.readInt();
+        int size = RECORD_HEADER_SIZE + headerLength + Math.max(descriptionLength, 0);
+        if (headerLength < 0 || offset + size > length) {
+          break;
+        }
+        byte[] header = in.readNBytes(headerLength);
+        entries.add(readEntry(header, offset, size));
+        in.skipNBytes(Math.max(descriptionLength, 0));
+        offset += size;
+      }
+      end = offset;
+    }
+    if (end < length) {
+      System.out.println("Dropping a recipe cut short at the end of " + file);
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+        channel.truncate(end);
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Appends a recipe to the end of the file, creating the file if it does not exist.
+   * The recipe must already have its id.
+   *
+   * @param recipe the Recipe to store.
+   * @return the Entry of the stored recipe.
+   * @throws IOException if the recipe could not be written.
+   */
+  synchronized Entry append(Recipe recipe) throws IOException {
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(header);
+    out.writeInt(recipe.getId());
+    out.writeUTF(recipe.getName());
+    out.writeInt(recipe.getServings());
+    out.writeInt(recipe.getIngredients().size());
+    for (Ingredient ingredient : recipe.getIngredients()) {
+      out.writeUTF(ingredient.getName());
+      out.writeDouble(ingredient.getAmount());
+      out.writeUTF(ingredient.getUnit());
+    }
+    byte[] description = recipe.getDescription() == null
+        ? null : recipe.getDescription().getBytes(StandardCharsets.UTF_8);
+    int size = RECORD_HEADER_SIZE + header.size()
+        + (description == null ? 0 : description.length);
+    ByteBuffer record = ByteBuffer.allocate(size);
+    record.putInt(header.size());
+    record.putInt(description == null ? -1 : description.length);
+    record.put(header.toByteArray());
+    if (description != null) {
+      record.put(description);
+    }
+    record.flip();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE)) {
+      if (end == 0) {
+        ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        fileHeader.putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+        channel.truncate(0);
+        writeFully(channel, fileHeader, 0);
+        end = FILE_HEADER_SIZE;
+      }
+      writeFully(channel, record, end);
+    }
+    Entry entry = new Entry(recipe.getId(), recipe.getName(), recipe.getServings(),
+        recipe.getVector(), end, size);
+    end += size;
+    return entry;
+  }
+
+  /**
+   * Reads a whole recipe, with its description, from the position of its record.
+   * Reads do not take the store's lock, so they can run while recipes are appended.
+   *
+   * @param entry the Entry of the recipe.
+   * @return a new Recipe object.
+   * @throws IOException if the record could not be read.
+   */
+  Recipe read(Entry entry) throws IOException {
+    ByteBuffer record = ByteBuffer.allocate(entry.size);
+    FileChannel channel = reader();
+    while (record.hasRemaining()) {
+      if (channel.read(record, entry.offset + record.position()) < 0) {
+        throw new EOFException("Recipe " + entry.id + " is cut short in " + file);
+      }
+    }
+    record.flip();
+    int headerLength = record.getInt();
+    int descriptionLength = record.getInt();
+    DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(record.array(), RECORD_HEADER_SIZE, headerLength));
+    Recipe recipe = readRecipe(in);
+    if (descriptionLength >= 0) {
+      recipe.setDescription(new String(record.array(), RECORD_HEADER_SIZE + headerLength,
+          descriptionLength, StandardCharsets.UTF_8));
+    }
+    return recipe;
+  }
+
+  /**
+   * Gets the channel records are read through, opening it on the first read.
+   * One channel is kept open for the life of the store and shared by every read,
+   * since positional reads on it can run at the same time. It is opened again if an
+   * interrupted read closed it.
+   *
+   * @return the open read channel.
+   * @throws IOException if the file could not be opened.
+   */
+  private FileChannel reader() throws IOException {
+    FileChannel channel = reader;
+    if (channel == null || !channel.isOpen()) {
+      synchronized (readerLock) {
+        channel = reader;
+        if (channel == null || !channel.isOpen()) {
+          channel = FileChannel.open(file, StandardOpenOption.READ);
+          reader = channel;
+        }
+      }
+    }
+    return channel;
+  }
+
+  /**
+   * Builds the Entry of a record from its compact part. The ingredients are only
+   * kept as the compiled RecipeVector.
+   */
+  private static Entry readEntry(byte[] header, long offset, int size) throws IOException {
+    Recipe recipe = readRecipe(new DataInputStream(new ByteArrayInputStream(header)));
+    return new Entry(recipe.getId(), recipe.getName(), recipe.getServings(),
+        recipe.getVector(), offset, size);
+  }
+
+  /**
+   * Reads the compact part of a record into a recipe without a description.
+   */
+  private static Recipe readRecipe(DataInputStream in) throws IOException {
+    int id = in.readInt();
+    Recipe recipe = new Recipe(in.readUTF());
+    recipe.setId(id);
+    recipe.setServings(in.readInt());
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      recipe.addIngredient(new Ingredient(in.readUTF(), in.readDouble(), in.readUTF()));
+    }
+    return recipe;
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package edu.ntnu.iir.bidata;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The ingredients of a recipe compiled for fast matching: a sorted array of ingredient ids,
+ * the required amount of each, and a bit set with a bit for every ingredient.
+ * An ingredient that appears more than once in the recipe is listed once, with the amounts added.
+ * The amount for one serving is precomputed as well, so scaling a recipe needs no division.
+ * A RecipeVector never changes after it is built.
+ */
+public final class RecipeVector {
+  private final int[] ids;
+  private final double[] amounts;
+  private final double[] perServing;
+  private final int servings;
+  private final BitSet mask;
+
+  /**
+   * Compiles a list of ingredients.
+   *
+   * @param ingredients the ingredients of a recipe.
+   * @param servings the number of servings the amounts are for.
+   */
+  public RecipeVector(List<Ingredient> ingredients, int servings) {
+    Map<Integer, Double> required = new TreeMap<>();
+    for (Ingredient ingredient : ingredients) {
+      required.merge(IngredientDictionary.idOf(ingredient.getName()), ingredient.getAmount(),
+          Double::sum);
+    }
+    ids = new int[required.size()];
+    amounts = new double[required.size()];
+    perServing = new double[required.size()];
+    this.servings = servings;
+    mask = new BitSet();
+    int i = 0;
+    for (Map.Entry<Integer, Double> entry : required.entrySet()) {
+      ids[i] = entry.getKey();
+      amounts[i] = entry.getValue();
+      perServing[i] = amounts[i] / servings;
+      mask.set(ids[i]);
+      i++;
+    }
+  }
+
+  /**
+   * Gets the number of distinct ingredients.
+   *
+   * @return the number of ingredients.
+   */
+  public int size() {
+    return ids.length;
+  }
+
+  /**
+   * Gets the ingredient id at a position.
+   *
+   * @param index the position, from 0 to size() - 1.
+   * @return the ingredient id.
+   */
+  public int idAt(int index) {
+    return ids[index];
+  }
+
+  /**
+   * Gets the required amount at a position.
+   *
+   * @param index the position, from 0 to size() - 1.
+   * @return the required amount.
+   */
+  public double amountAt(int index) {
+    return amounts[index];
+  }
+
+  /**
+   * Gets the amount needed for one serving at a position.
+   *
+   * @param index the position, from 0 to size() - 1.
+   * @return the amount for one serving.
+   */
+  public double perServingAt(int index) {
+    return perServing[index];
+  }
+
+  /**
+   * Gets the number of servings the required amounts are for.
+   *
+   * @return the number of servings.
+   */
+  public int servings() {
+    return servings;
+  }
+
+  /**
+   * Gets the bit set with a bit for every ingredient id in the recipe.
+   * The bit set must not be changed.
+   *
+   * @return the ingredient bit set.
+   */
+  BitSet mask() {
+    return mask;
+  }
+
+  @Override
+  public String toString() {
+    return "RecipeVector" + Arrays.toString(ids);
+  }
+}
@@ -0,0 +1,121 @@
+package edu.ntnu.iir.bidata;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Tells that an item is expected to run out before the next shopping day, from the rate
+ * it has been used at, and how much to buy to last until the shopping day after that.
+ * A ReorderAlert never changes after it is created.
+ */
+public final class ReorderAlert {
+  private final String name;
+  private final String unit;
+  private final double stock;
+  private final double dailyRate;
+  private final long stockOutTime;
+  private final long shoppingTime;
+  private final double reorderAmount;
+
+  /**
+   * Constructs a ReorderAlert.
+   *
+   * @param name the name of the item.
+   * @param unit the unit of the amounts.
+   * @param stock the amount left in the storage.
+   * @param dailyRate the estimated amount used per day.
+   * @param stockOutTime the time the item is expected to run out, in milliseconds.
+   * @param shoppingTime the start of the next shopping day, in milliseconds.
+   * @param reorderAmount the amount to buy.
+   */
+  ReorderAlert(String name, String unit, double stock, double dailyRate, long stockOutTime,
+      long shoppingTime, double reorderAmount) {
+    this.name = name;
+    this.unit = unit;
+    this.stock = stock;
+    this.dailyRate = dailyRate;
+    this.stockOutTime = stockOutTime;
+    this.shoppingTime = shoppingTime;
+    this.reorderAmount = reorderAmount;
+  }
+
+  /**
+   * Gets the name of the item.
+   *
+   * @return the name.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Gets the unit of the amounts.
+   *
+   * @return the unit.
+   */
+  public String getUnit() {
+    return unit;
+  }
+
+  /**
+   * Gets the amount left in the storage when the alert was raised.
+   *
+   * @return the amount left.
+   */
+  public double getStock() {
+    return stock;
+  }
+
+  /**
+   * Gets the estimated amount used per day.
+   *
+   * @return the amount per day.
+   */
+  public double getDailyRate() {
+    return dailyRate;
+  }
+
+  /**
+   * Gets the time the item is expected to run out.
+   *
+   * @return the expected stock-out date.
+   */
+  public Date getStockOutDate() {
+    return new Date(stockOutTime);
+  }
+
+  /**
+   * Gets the start of the next shopping day.
+   *
+   * @return the next shopping day.
+   */
+  public Date getShoppingDate() {
+    return new Date(shoppingTime);
+  }
+
+  /**
+   * Gets the amount to buy to last until the shopping day after the next one.
+   *
+   * @return the amount to buy.
+   */
+  public double getReorderAmount() {
+    return reorderAmount;
+  }
+
+  /**
+   * Gets the amount to buy as an item for the shopping list.
+   *
+   * @return a new Ingredient with the name, amount to buy and unit.
+   */
+  public Ingredient toIngredient() {
+    return new Ingredient(name, reorderAmount, unit);
+  }
+
+  @Override
+  public String toString() {
+    SimpleDateFormat format = new SimpleDateFormat("dd.MM.yyyy");
+    return String.format("%s runs out around %s, before shopping on %s: buy %.1f %s",
+        name, format.format(getStockOutDate()), format.format(getShoppingDate()),
+        reorderAmount, unit);
+  }
+}
@@ -0,0 +1,17 @@
+package edu.ntnu.iir.bidata;
+
+/**
+ * Is told when an item in a {@link FoodStorage} is expected to run out before
+ * the next shopping day. Listeners are called on the thread that used the item,
+ * after the new snapshot has been published, so they must be quick and must not change
+ * the storage.
+ */
+@FunctionalInterface
+public interface ReorderListener {
+  /**
+   * Called after an item was used and is expected to run out before the next shopping day.
+   *
+   * @param alert the ReorderAlert for the item.
+   */
+  void reorderNeeded(ReorderAlert alert);
+}
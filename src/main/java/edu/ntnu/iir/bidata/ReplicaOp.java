@@ -0,0 +1,67 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.Serializable;
+
+/**
+ * One change to the replicated pantry, made on one device and sent to all the others.
+ * Every operation has the id of the device it was made on and a sequence number that
+ * counts the operations of that device, so each device applies each operation exactly once.
+ * A lot is identified by the device and sequence number of the operation that added it.
+ */
+final class ReplicaOp implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The kinds of operation.
+   */
+  enum Kind {
+    /** Adds a new lot. */
+    ADD,
+    /** Adds to or takes from the amount of a lot. */
+    AMOUNT,
+    /** Sets the price per unit of a lot. */
+    PRICE,
+    /** Sets the best-before date of a lot. */
+    EXPIRY
+  }
+
+  final Kind kind;
+  final String origin;
+  final long seq;
+  final long time;
+  final String lotOrigin;
+  final long lotSeq;
+  final String name;
+  final String unit;
+  final double amount;
+  final double price;
+  final long expiry;
+
+  ReplicaOp(Kind kind, String origin, long seq, long time, String lotOrigin, long lotSeq,
+      String name, String unit, double amount, double price, long expiry) {
+    this.kind = kind;
+    this.origin = origin;
+    this.seq = seq;
+    this.time = time;
+    this.lotOrigin = lotOrigin;
+    this.lotSeq = lotSeq;
+    this.name = name;
+    this.unit = unit;
+    this.amount = amount;
+    this.price = price;
+    this.expiry = expiry;
+  }
+
+  /**
+   * Gets the id of the lot this operation changes.
+   *
+   * @return the lot id, the same on every device.
+   */
+  String lotId() {
+    return lotId(lotOrigin, lotSeq);
+  }
+
+  static String lotId(String origin, long seq) {
+    return origin + ":" + seq;
+  }
+}
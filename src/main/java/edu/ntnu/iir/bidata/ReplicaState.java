@@ -0,0 +1,379 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The replicated state of one device's pantry, as a set of conflict-free replicated lots.
+ * The amount of a lot is a PN-counter: every device keeps its own total of what it has
+ * added and taken, and the amount is the sum over all devices, so changes made at the same
+ * time on different devices all count. The price and best-before date of a lot are
+ * last-writer-wins registers, where the latest change wins and ties go to the larger
+ * device id. Operations can be applied in any order across devices and give the same state
+ * everywhere, as long as each device's own operations are applied in the order they were made.
+ * Used-up lots are kept, so that late operations on them are still applied the same way.
+ * Not thread-safe: the {@link Replicator} only uses it while holding the storage lock.
+ */
+final class ReplicaState implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final double TOLERANCE = 1e-9;
+  private final String nodeId;
+  private long clock;
+  private final Map<String, Long> seen = new TreeMap<>();
+  private final Map<String, LotState> lots = new HashMap<>();
+  private final Map<String, Set<String>> lotsByGrocery = new HashMap<>();
+  private final List<ReplicaOp> unsent = new ArrayList<>();
+
+  /**
+   * One replicated lot.
+   */
+  private static final class LotState implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final String origin;
+    private final long seq;
+    private String name;
+    private String unit;
+    private long added;
+    private final TreeMap<String, double[]> counts = new TreeMap<>();
+    private double price;
+    private long priceTime = Long.MIN_VALUE;
+    private String priceNode = "";
+    private long expiry;
+    private long expiryTime = Long.MIN_VALUE;
+    private String expiryNode = "";
+
+    private LotState(String origin, long seq) {
+      this.origin = origin;
+      this.seq = seq;
+    }
+
+    private double amount() {
+      double amount = 0;
+      for (double[] count : counts.values()) {
+        amount += count[0] - count[1];
+      }
+      return amount;
+    }
+
+    private void count(String node, double delta) {
+      double[] count = counts.computeIfAbsent(node, n -> new double[2]);
+      if (delta >= 0) {
+        count[0] += delta;
+      } else {
+        count[1] -= delta;
+      }
+    }
+
+    private void setPrice(double value, long time, String node) {
+      if (wins(time, node, priceTime, priceNode)) {
+        price = value;
+        priceTime = time;
+        priceNode = node;
+      }
+    }
+
+    private void setExpiry(long value, long time, String node) {
+      if (wins(time, node, expiryTime, expiryNode)) {
+        expiry = value;
+        expiryTime = time;
+        expiryNode = node;
+      }
+    }
+
+    private static boolean wins(long time, String node, long currentTime, String currentNode) {
+      return time > currentTime || time == currentTime && node.compareTo(currentNode) > 0;
+    }
+
+    private LotState copy() {
+      LotState copy = new LotState(origin, seq);
+      copy.name = name;
+      copy.unit = unit;
+      copy.added = added;
+      counts.forEach((node, count) -> copy.counts.put(node, count.clone()));
+      copy.price = price;
+      copy.priceTime = priceTime;
+      copy.priceNode = priceNode;
+      copy.expiry = expiry;
+      copy.expiryTime = expiryTime;
+      copy.expiryNode = expiryNode;
+      return copy;
+    }
+  }
+
+  /**
+   * Constructs an empty state for a device.
+   *
+   * @param nodeId the id of the device.
+   */
+  ReplicaState(String nodeId) {
+    this.nodeId = nodeId;
+  }
+
+  /**
+   * Creates a deep copy of this state, for saving on another thread.
+   *
+   * @return the copy.
+   */
+  ReplicaState copy() {
+    ReplicaState copy = new ReplicaState(nodeId);
+    copy.clock = clock;
+    copy.seen.putAll(seen);
+    lots.forEach((id, lot) -> copy.lots.put(id, lot.copy()));
+    lotsByGrocery.forEach((key, ids) -> copy.lotsByGrocery.put(key, new HashSet<>(ids)));
+    copy.unsent.addAll(unsent);
+    return copy;
+  }
+
+  String getNodeId() {
+    return nodeId;
+  }
+
+  /**
+   * Gets how many operations of a device have been applied.
+   *
+   * @param origin the id of the device.
+   * @return the sequence number of the last applied operation, or 0 if none.
+   */
+  long getSeen(String origin) {
+    return seen.getOrDefault(origin, 0L);
+  }
+
+  /**
+   * Adds a new lot on this device.
+   *
+   * @param name the name of the grocery.
+   * @param unit the unit of the grocery.
+   * @param amount the amount of the lot.
+   * @param price the price per unit.
+   * @param expiry the best-before date in milliseconds.
+   * @return the operation, whose {@link ReplicaOp#lotId()} is the id of the new lot.
+   */
+  ReplicaOp addLot(String name, String unit, double amount, double price, long expiry) {
+    long seq = getSeen(nodeId) + 1;
+    return local(new ReplicaOp(ReplicaOp.Kind.ADD, nodeId, seq, tick(), nodeId, seq,
+        name, unit, amount, price, expiry));
+  }
+
+  /**
+   * Adds to or takes from the amount of a lot on this device.
+   *
+   * @param lotId the id of the lot.
+   * @param delta the amount to add, negative to take.
+   * @return the operation.
+   */
+  ReplicaOp changeAmount(String lotId, double delta) {
+    return change(ReplicaOp.Kind.AMOUNT, lotId, delta, 0, 0);
+  }
+
+  /**
+   * Sets the price per unit of a lot on this device.
+   *
+   * @param lotId the id of the lot.
+   * @param price the new price per unit.
+   * @return the operation.
+   */
+  ReplicaOp setPrice(String lotId, double price) {
+    return change(ReplicaOp.Kind.PRICE, lotId, 0, price, 0);
+  }
+
+  /**
+   * Sets the best-before date of a lot on this device.
+   *
+   * @param lotId the id of the lot.
+   * @param expiry the new best-before date in milliseconds.
+   * @return the operation.
+   */
+  ReplicaOp setExpiry(String lotId, long expiry) {
+    return change(ReplicaOp.Kind.EXPIRY, lotId, 0, 0, expiry);
+  }
+
+  /**
+   * Checks whether a lot has been added on this device.
+   *
+   * @param lotId the id of the lot.
+   * @return true if the lot is known, false otherwise.
+   */
+  boolean hasLot(String lotId) {
+    LotState lot = lots.get(lotId);
+    return lot != null && lot.name != null;
+  }
+
+  /**
+   * Makes a lot hold the given amount, price and best-before date, adding an operation
+   * for each of them that differs from what the lot holds now.
+   *
+   * @param lotId the id of a known lot.
+   * @param amount the amount the lot should hold.
+   * @param price the price per unit the lot should have.
+   * @param expiry the best-before date in milliseconds the lot should have.
+   * @return true if any operation was added, false if the lot already matched.
+   */
+  boolean update(String lotId, double amount, double price, long expiry) {
+    LotState lot = lots.get(lotId);
+    boolean changed = false;
+    double current = lot.amount();
+    if (amount != current) {
+      changeAmount(lotId, amount - current);
+      changed = true;
+    }
+    if (price != lot.price) {
+      setPrice(lotId, price);
+      changed = true;
+    }
+    if (expiry != lot.expiry) {
+      setExpiry(lotId, expiry);
+      changed = true;
+    }
+    return changed;
+  }
+
+  /**
+   * Takes what is left of a lot.
+   *
+   * @param lotId the id of a known lot.
+   * @return true if an operation was added, false if nothing was left.
+   */
+  boolean empty(String lotId) {
+    double current = lots.get(lotId).amount();
+    if (current <= TOLERANCE) {
+      return false;
+    }
+    changeAmount(lotId, -current);
+    return true;
+  }
+
+  private ReplicaOp change(ReplicaOp.Kind kind, String lotId, double amount, double price,
+      long expiry) {
+    LotState lot = lots.get(lotId);
+    long seq = getSeen(nodeId) + 1;
+    return local(new ReplicaOp(kind, nodeId, seq, tick(), lot.origin, lot.seq,
+        null, null, amount, price, expiry));
+  }
+
+  private ReplicaOp local(ReplicaOp op) {
+    apply(op);
+    unsent.add(op);
+    return op;
+  }
+
+  /**
+   * Gets the operations made on this device that have not been sent yet, oldest first.
+   *
+   * @return a copy of the unsent operations.
+   */
+  List<ReplicaOp> getUnsent() {
+    return new ArrayList<>(unsent);
+  }
+
+  /**
+   * Marks the oldest unsent operations as sent.
+   *
+   * @param count the number of operations that were sent.
+   */
+  void markSent(int count) {
+    unsent.subList(0, count).clear();
+  }
+
+  /**
+   * Applies an operation from any device, including this one.
+   * Operations already applied are skipped, as are operations that arrive before
+   * an earlier operation of the same device.
+   *
+   * @param op the operation.
+   * @return true if it was applied, false if it was skipped.
+   */
+  boolean apply(ReplicaOp op) {
+    if (op.seq != getSeen(op.origin) + 1) {
+      return false;
+    }
+    seen.put(op.origin, op.seq);
+    clock = Math.max(clock, op.time);
+    LotState lot = lots.computeIfAbsent(op.lotId(), id -> new LotState(op.lotOrigin, op.lotSeq));
+    switch (op.kind) {
+      case ADD -> {
+        lot.name = op.name;
+        lot.unit = op.unit;
+        lot.added = op.time;
+        lot.count(op.origin, op.amount);
+        lot.setPrice(op.price, op.time, op.origin);
+        lot.setExpiry(op.expiry, op.time, op.origin);
+        lotsByGrocery.computeIfAbsent(StorageSnapshot.key(op.name), k -> new HashSet<>())
+            .add(op.lotId());
+      }
+      case AMOUNT -> lot.count(op.origin, op.amount);
+      case PRICE -> lot.setPrice(op.price, op.time, op.origin);
+      case EXPIRY -> lot.setExpiry(op.expiry, op.time, op.origin);
+      default -> throw new IllegalStateException("Unknown operation " + op.kind);
+    }
+    return true;
+  }
+
+  /**
+   * Gets the grocery key of the lot an operation changed.
+   *
+   * @param op the operation.
+   * @return the grocery key, or null if the lot has not been added on this device yet.
+   */
+  String groceryKeyOf(ReplicaOp op) {
+    LotState lot = lots.get(op.lotId());
+    return lot == null || lot.name == null ? null : StorageSnapshot.key(lot.name);
+  }
+
+  /**
+   * Gets the keys of all groceries that have ever had a lot.
+   *
+   * @return a copy of the grocery keys.
+   */
+  Set<String> groceryKeys() {
+    return new HashSet<>(lotsByGrocery.keySet());
+  }
+
+  /**
+   * Builds a grocery from its replicated lots that have something left.
+   * The name and unit come from the first lot added, and the price per unit from the latest.
+   *
+   * @param key the grocery key.
+   * @return the Grocery, with the replica id set on every lot, or null if nothing is left.
+   */
+  Grocery grocery(String key) {
+    List<LotState> live = new ArrayList<>();
+    for (String id : lotsByGrocery.getOrDefault(key, Set.of())) {
+      LotState lot = lots.get(id);
+      if (lot.amount() > TOLERANCE) {
+        live.add(lot);
+      }
+    }
+    if (live.isEmpty()) {
+      return null;
+    }
+    live.sort(Comparator.<LotState>comparingLong(lot -> lot.added)
+        .thenComparing(lot -> lot.origin).thenComparingLong(lot -> lot.seq));
+    List<Lot> restored = new ArrayList<>(live.size());
+    for (LotState state : live) {
+      Lot lot = Lot.restore(state.amount(), new Date(state.expiry), state.price);
+      lot.setReplicaId(ReplicaOp.lotId(state.origin, state.seq));
+      restored.add(lot);
+    }
+    LotState first = live.get(0);
+    return Grocery.restore(first.name, first.unit, live.get(live.size() - 1).price, restored);
+  }
+
+  /**
+   * Advances the clock of this device, which never goes backwards and is always
+   * ahead of every operation seen, even if the system clocks of the devices differ.
+   *
+   * @return the new time.
+   */
+  private long tick() {
+    clock = Math.max(clock + 1, System.currentTimeMillis());
+    return clock;
+  }
+}
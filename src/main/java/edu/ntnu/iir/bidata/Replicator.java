@@ -0,0 +1,307 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the pantry of one device in step with the pantries of other devices,
+ * without any device being in charge.
+ * Every change to the {@link FoodStorage} is recorded as an operation on the lots it touched,
+ * in a {@link ReplicaState} that is saved next to the groceries. When syncing, the operations
+ * not yet sent are written as one compact batch file to a shared drop folder, such as a
+ * synced cloud folder or a network share, and the batches of the other devices are read
+ * and applied. Devices that have read the same batches have the same pantry, whatever order
+ * they read them in.
+ * Batch files are named after the device and the operations they hold, so batches that have
+ * already been applied are skipped without being opened.
+ */
+public class Replicator {
+  private static final String BATCH_SUFFIX = ".delta";
+  private static final Pattern BATCH_NAME =
+      Pattern.compile("([A-Za-z0-9_-]{1,64})-(\\d+)-(\\d+)\\.delta");
+  private static final LatencyHistogram SYNC = Metrics.histogram("replication.sync");
+  private final FoodStorage storage;
+  private final PersistenceService persistence;
+  private final Path stateFile;
+  private final Path dropDirectory;
+  private final ReplicaState state;
+  private final AtomicLong bytesSent = new AtomicLong();
+  private final AtomicLong bytesReceived = new AtomicLong();
+  private final AtomicLong opsSent = new AtomicLong();
+  private final AtomicLong opsReceived = new AtomicLong();
+
+  /**
+   * Constructs a Replicator, loading the replicated state from file if it exists.
+   * Called by {@link FoodStorage#startReplication} while holding the storage lock.
+   *
+   * @param storage the FoodStorage to replicate.
+   * @param persistence the PersistenceService used to save the replicated state.
+   * @param stateFile the file holding the replicated state.
+   * @param dropDirectory the folder shared by all devices.
+   */
+  Replicator(FoodStorage storage, PersistenceService persistence, Path stateFile,
+      Path dropDirectory) {
+    this.storage = storage;
+    this.persistence = persistence;
+    this.stateFile = stateFile;
+    this.dropDirectory = dropDirectory;
+    this.state = loadState(stateFile);
+  }
+
+  /**
+   * Gets the id of this device, made when replication was first started.
+   *
+   * @return the device id.
+   */
+  public String getNodeId() {
+    return state.getNodeId();
+  }
+
+  /**
+   * Adds the lots in storage that are not yet replicated, and then rebuilds the storage
+   * from the replicated state. Called while holding the storage lock.
+   *
+   * @param groceries the groceries in storage.
+   * @return the keys of every grocery that is or has been in the pantry.
+   */
+  Set<String> attach(List<Grocery> groceries) {
+    Set<String> keys = state.groceryKeys();
+    for (Grocery grocery : groceries) {
+      keys.add(StorageSnapshot.key(grocery.getName()));
+      for (Lot lot : grocery.getLots()) {
+        if (lot.getReplicaId() == null) {
+          state.addLot(grocery.getName(), grocery.getUnit(), lot.getAmount(),
+              lot.getPricePerUnit(), lot.getBestBeforeDate().getTime());
+        }
+      }
+    }
+    saveState();
+    return keys;
+  }
+
+  /**
+   * Gets the grocery built from the replicated lots. Called while holding the storage lock.
+   *
+   * @param key the grocery key.
+   * @return the Grocery, or null if nothing is left of it.
+   */
+  Grocery grocery(String key) {
+    return state.grocery(key);
+  }
+
+  /**
+   * Records the change of one grocery as operations on its lots.
+   * Each lot is compared with the replicated state rather than with the previous grocery,
+   * so a lot that comes back, as when a change is undone, is added to again.
+   * New lots are given their replica id here. Called while holding the storage lock.
+   *
+   * @param previous the grocery as it was, or null if it is new.
+   * @param updated the grocery as it is now, or null if it was removed.
+   */
+  void record(Grocery previous, Grocery updated) {
+    Set<String> kept = new HashSet<>();
+    boolean changed = false;
+    if (updated != null) {
+      for (Lot lot : updated.getLots()) {
+        String id = lot.getReplicaId();
+        if (id == null || !state.hasLot(id)) {
+          ReplicaOp op = state.addLot(updated.getName(), updated.getUnit(), lot.getAmount(),
+              lot.getPricePerUnit(), lot.getBestBeforeDate().getTime());
+          lot.setReplicaId(op.lotId());
+          changed = true;
+        } else {
+          kept.add(id);
+          changed |= state.update(id, lot.getAmount(), lot.getPricePerUnit(),
+              lot.getBestBeforeDate().getTime());
+        }
+      }
+    }
+    if (previous != null) {
+      for (Lot lot : previous.getLots()) {
+        String id = lot.getReplicaId();
+        if (id != null && !kept.contains(id) && state.hasLot(id)) {
+          changed |= state.empty(id);
+        }
+      }
+    }
+    if (changed) {
+      saveState();
+    }
+  }
+
+  /**
+   * Sends the changes made on this device, and applies the changes of the other devices
+   * that have not been applied yet.
+   *
+   * @return the number of operations from other devices that were applied.
+   * @throws IOException if the drop folder could not be read or written.
+   */
+  public synchronized long sync() throws IOException {
+    long start = Metrics.start();
+    Files.createDirectories(dropDirectory);
+    sendUnsent();
+    long applied = 0;
+    for (Path batch : pendingBatches()) {
+      List<ReplicaOp> ops;
+      try (InputStream in = Files.newInputStream(batch)) {
+        ops = BackupFormat.readDeltaBatch(in);
+      }
+      long size = Files.size(batch);
+      bytesReceived.addAndGet(size);
+      Metrics.increment("replication.bytesReceived", size);
+      synchronized (storage) {
+        Set<String> keys = new HashSet<>();
+        for (ReplicaOp op : ops) {
+          if (state.apply(op)) {
+            applied++;
+            String key = state.groceryKeyOf(op);
+            if (key != null) {
+              keys.add(key);
+            }
+          }
+        }
+        storage.refresh(keys);
+      }
+    }
+    opsReceived.addAndGet(applied);
+    if (applied > 0) {
+      saveState();
+      storage.saveToFile();
+    }
+    SYNC.stop(start);
+    return applied;
+  }
+
+  /**
+   * Gets the number of bytes written to the drop folder by this device.
+   *
+   * @return the bytes sent.
+   */
+  public long getBytesSent() {
+    return bytesSent.get();
+  }
+
+  /**
+   * Gets the number of bytes read from the drop folder by this device.
+   *
+   * @return the bytes received.
+   */
+  public long getBytesReceived() {
+    return bytesReceived.get();
+  }
+
+  /**
+   * Gets the number of operations this device has sent.
+   *
+   * @return the operations sent.
+   */
+  public long getOpsSent() {
+    return opsSent.get();
+  }
+
+  /**
+   * Gets the number of operations from other devices that this device has applied.
+   *
+   * @return the operations received.
+   */
+  public long getOpsReceived() {
+    return opsReceived.get();
+  }
+
+  /**
+   * Writes the operations not yet sent as one batch file in the drop folder.
+   * The file is written under a temporary name and then renamed, so other devices
+   * never read a half-written batch.
+   */
+  private void sendUnsent() throws IOException {
+    List<ReplicaOp> unsent;
+    synchronized (storage) {
+      unsent = state.getUnsent();
+    }
+    if (unsent.isEmpty()) {
+      return;
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BackupFormat.writeDeltaBatch(unsent, bytes);
+    ReplicaOp first = unsent.get(0);
+    String name = first.origin + "-" + first.seq + "-" + unsent.get(unsent.size() - 1).seq;
+    Path target = dropDirectory.resolve(name + BATCH_SUFFIX);
+    Path temp = dropDirectory.resolve(name + ".tmp");
+    Files.write(temp, bytes.toByteArray());
+    try {
+      Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temp, target);
+    }
+    synchronized (storage) {
+      state.markSent(unsent.size());
+    }
+    saveState();
+    bytesSent.addAndGet(bytes.size());
+    opsSent.addAndGet(unsent.size());
+    Metrics.increment("replication.bytesSent", bytes.size());
+  }
+
+  /**
+   * Lists the batches of other devices holding operations not yet applied,
+   * in the order they must be applied.
+   */
+  private List<Path> pendingBatches() throws IOException {
+    List<Matcher> pending = new ArrayList<>();
+    try (Stream<Path> files = Files.list(dropDirectory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Matcher matcher = BATCH_NAME.matcher(file.getFileName().toString());
+        if (matcher.matches() && !matcher.group(1).equals(state.getNodeId())) {
+          synchronized (storage) {
+            if (Long.parseLong(matcher.group(3)) > state.getSeen(matcher.group(1))) {
+              pending.add(matcher);
+            }
+          }
+        }
+      }
+    }
+    pending.sort(Comparator.<Matcher, String>comparing(matcher -> matcher.group(1))
+        .thenComparingLong(matcher -> Long.parseLong(matcher.group(2))));
+    List<Path> batches = new ArrayList<>(pending.size());
+    for (Matcher matcher : pending) {
+      batches.add(dropDirectory.resolve(matcher.group()));
+    }
+    return batches;
+  }
+
+  private void saveState() {
+    persistence.requestSave(stateFile, () -> {
+      synchronized (storage) {
+        return state.copy();
+      }
+    });
+  }
+
+  private static ReplicaState loadState(Path stateFile) {
+    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(stateFile.toFile()))) {
+      return (ReplicaState) ois.readObject();
+    } catch (FileNotFoundException e) {
+      return new ReplicaState(UUID.randomUUID().toString().replace("-", "").substring(0, 12));
+    } catch (IOException | ClassNotFoundException e) {
+      throw new IllegalStateException("Couldn't load replicated pantry: " + e.getMessage(), e);
+    }
+  }
+}
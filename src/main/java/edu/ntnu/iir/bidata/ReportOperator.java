@@ -0,0 +1,47 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * One report computed over the groceries of a storage in a single pass.
+ * The operator keeps its running totals in a state object: each grocery is added to a state,
+ * states built from different parts of the storage can be combined, and the final state is
+ * written out as text. Several operators can share one scan through {@link Reports}.
+ *
+ * @param <S> the type of the running state.
+ */
+public interface ReportOperator<S> {
+  /**
+   * Creates an empty state.
+   *
+   * @return the new state.
+   */
+  S newState();
+
+  /**
+   * Adds a grocery to a state.
+   *
+   * @param state the state to add to.
+   * @param grocery the grocery.
+   */
+  void accept(S state, Grocery grocery);
+
+  /**
+   * Combines two states built from different groceries.
+   *
+   * @param left the state of the earlier groceries, which may be changed and returned.
+   * @param right the state of the later groceries.
+   * @return the combined state.
+   */
+  S combine(S left, S right);
+
+  /**
+   * Writes the report of a final state.
+   *
+   * @param state the final state.
+   * @param out the writer to write the report to.
+   * @throws IOException if the report could not be written.
+   */
+  void write(S state, Writer out) throws IOException;
+}
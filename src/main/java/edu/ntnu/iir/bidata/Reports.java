@@ -0,0 +1,260 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Runs several {@link ReportOperator}s over a storage snapshot in one scan, and provides
+ * the standard reports: value per unit, value per expiry week, most valuable groceries
+ * and waste percentage.
+ * The snapshot is streamed, never copied into a list, and large snapshots are scanned in
+ * parallel, with each thread building its own states that are combined at the end.
+ * The reports are written straight to a Writer.
+ */
+public final class Reports {
+  private static final int PARALLEL_THRESHOLD = 10_000;
+  private static final LatencyHistogram RUN = Metrics.histogram("reports.run");
+
+  private Reports() {
+  }
+
+  /**
+   * Computes reports over a snapshot in one scan and writes them, one after the other.
+   * Snapshots of {@value #PARALLEL_THRESHOLD} groceries or more are scanned in parallel.
+   *
+   * @param snapshot the StorageSnapshot to report on.
+   * @param operators the reports to compute.
+   * @param out the writer to write the reports to. It is flushed, but not closed.
+   * @throws IOException if the reports could not be written.
+   */
+  public static void run(StorageSnapshot snapshot, List<ReportOperator<?>> operators, Writer out)
+      throws IOException {
+    run(snapshot, operators, out, snapshot.size() >= PARALLEL_THRESHOLD);
+  }
+
+  /**
+   * Computes reports over a snapshot in one scan and writes them, one after the other.
+   *
+   * @param snapshot the StorageSnapshot to report on.
+   * @param operators the reports to compute.
+   * @param out the writer to write the reports to. It is flushed, but not closed.
+   * @param parallel true to scan the snapshot in parallel.
+   * @throws IOException if the reports could not be written.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public static void run(StorageSnapshot snapshot, List<ReportOperator<?>> operators, Writer out,
+      boolean parallel) throws IOException {
+    long start = Metrics.start();
+    ReportOperator[] ops = operators.toArray(new ReportOperator[0]);
+    Object[] states = snapshot.groceryStream(parallel).collect(
+        () -> {
+          Object[] created = new Object[ops.length];
+          for (int i = 0; i < ops.length; i++) {
+            created[i] = ops[i].newState();
+          }
+          return created;
+        },
+        (acc, grocery) -> {
+          for (int i = 0; i < ops.length; i++) {
+            ops[i].accept(acc[i], grocery);
+          }
+        },
+        (left, right) -> {
+          for (int i = 0; i < ops.length; i++) {
+            left[i] = ops[i].combine(left[i], right[i]);
+          }
+        });
+    for (int i = 0; i < ops.length; i++) {
+      ops[i].write(states[i], out);
+    }
+    out.flush();
+    RUN.stop(start);
+  }
+
+  /**
+   * Creates a report of the number of groceries, total amount and value per unit.
+   *
+   * @return the ReportOperator.
+   */
+  public static ReportOperator<Map<String, double[]>> byUnit() {
+    return new ReportOperator<>() {
+      @Override
+      public Map<String, double[]> newState() {
+        return new TreeMap<>();
+      }
+
+      @Override
+      public void accept(Map<String, double[]> state, Grocery grocery) {
+        double[] totals = state.computeIfAbsent(grocery.getUnit().toLowerCase(),
+            unit -> new double[3]);
+        totals[0]++;
+        totals[1] += grocery.getAmount();
+        totals[2] += grocery.calculateTotalValue();
+      }
+
+      @Override
+      public Map<String, double[]> combine(Map<String, double[]> left,
+          Map<String, double[]> right) {
+        right.forEach((unit, totals) -> left.merge(unit, totals, (a, b) -> {
+          for (int i = 0; i < a.length; i++) {
+            a[i] += b[i];
+          }
+          return a;
+        }));
+        return left;
+      }
+
+      @Override
+      public void write(Map<String, double[]> state, Writer out) throws IOException {
+        out.write(String.format("Groceries per unit:%n"));
+        for (Map.Entry<String, double[]> entry : state.entrySet()) {
+          double[] totals = entry.getValue();
+          out.write(String.format("  %-10s %6d groceries, %10.2f in total, %10.2f NOK%n",
+              entry.getKey(), (long) totals[0], totals[1], totals[2]));
+        }
+      }
+    };
+  }
+
+  /**
+   * Creates a report of the value of the lots expiring each week.
+   *
+   * @return the ReportOperator.
+   */
+  public static ReportOperator<TreeMap<Date, Double>> valueByExpiryWeek() {
+    return new ReportOperator<>() {
+      @Override
+      public TreeMap<Date, Double> newState() {
+        return new TreeMap<>();
+      }
+
+      @Override
+      public void accept(TreeMap<Date, Double> state, Grocery grocery) {
+        for (Lot lot : grocery.getLots()) {
+          state.merge(WasteLedger.startOfWeek(lot.getBestBeforeDate()),
+              lot.calculateTotalValue(), Double::sum);
+        }
+      }
+
+      @Override
+      public TreeMap<Date, Double> combine(TreeMap<Date, Double> left,
+          TreeMap<Date, Double> right) {
+        right.forEach((week, value) -> left.merge(week, value, Double::sum));
+        return left;
+      }
+
+      @Override
+      public void write(TreeMap<Date, Double> state, Writer out) throws IOException {
+        out.write(String.format("Value expiring per week:%n"));
+        for (Map.Entry<Date, Double> entry : state.entrySet()) {
+          out.write(String.format("  Week of %td.%<tm.%<tY: %10.2f NOK%n",
+              entry.getKey(), entry.getValue()));
+        }
+      }
+    };
+  }
+
+  /**
+   * Creates a report of the most valuable groceries.
+   * Only the n most valuable seen so far are kept while scanning.
+   *
+   * @param n the number of groceries to list.
+   * @return the ReportOperator.
+   */
+  public static ReportOperator<PriorityQueue<Grocery>> topByValue(int n) {
+    Comparator<Grocery> byValue = Comparator.comparingDouble(Grocery::calculateTotalValue);
+    return new ReportOperator<>() {
+      @Override
+      public PriorityQueue<Grocery> newState() {
+        return new PriorityQueue<>(byValue);
+      }
+
+      @Override
+      public void accept(PriorityQueue<Grocery> state, Grocery grocery) {
+        state.add(grocery);
+        if (state.size() > n) {
+          state.poll();
+        }
+      }
+
+      @Override
+      public PriorityQueue<Grocery> combine(PriorityQueue<Grocery> left,
+          PriorityQueue<Grocery> right) {
+        for (Grocery grocery : right) {
+          accept(left, grocery);
+        }
+        return left;
+      }
+
+      @Override
+      public void write(PriorityQueue<Grocery> state, Writer out) throws IOException {
+        List<Grocery> top = new ArrayList<>(state);
+        top.sort(byValue.reversed());
+        out.write(String.format("Top %d groceries by value:%n", n));
+        for (Grocery grocery : top) {
+          out.write(String.format("  %-20s %10.2f NOK%n", grocery.getName(),
+              grocery.calculateTotalValue()));
+        }
+      }
+    };
+  }
+
+  /**
+   * Creates a report of how much of the stock has expired, and, if a ledger is given,
+   * how much of everything bought has been thrown away.
+   *
+   * @param today lots expiring before this date count as expired.
+   * @param ledger the WasteLedger with earlier waste, or null to leave it out.
+   * @return the ReportOperator.
+   */
+  public static ReportOperator<double[]> wastePercentage(Date today, WasteLedger ledger) {
+    return new ReportOperator<>() {
+      @Override
+      public double[] newState() {
+        return new double[2];
+      }
+
+      @Override
+      public void accept(double[] state, Grocery grocery) {
+        for (Lot lot : grocery.getLots()) {
+          double value = lot.calculateTotalValue();
+          state[1] += value;
+          if (lot.getBestBeforeDate().before(today)) {
+            state[0] += value;
+          }
+        }
+      }
+
+      @Override
+      public double[] combine(double[] left, double[] right) {
+        left[0] += right[0];
+        left[1] += right[1];
+        return left;
+      }
+
+      @Override
+      public void write(double[] state, Writer out) throws IOException {
+        out.write(String.format("Waste:%n"));
+        out.write(String.format("  Expired in storage: %.2f of %.2f NOK (%.1f %%)%n",
+            state[0], state[1], percent(state[0], state[1])));
+        if (ledger != null) {
+          double wasted = ledger.getTotalWaste();
+          out.write(String.format(
+              "  Thrown away so far: %.2f NOK (%.1f %% of wasted and stored value)%n",
+              wasted, percent(wasted, wasted + state[1])));
+        }
+      }
+    };
+  }
+
+  private static double percent(double part, double whole) {
+    return whole == 0 ? 0 : 100 * part / whole;
+  }
+}
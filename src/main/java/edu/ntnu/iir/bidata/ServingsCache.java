@@ -0,0 +1,64 @@
+package edu.ntnu.iir.bidata;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches, for one storage, how many servings of each recipe the stock is enough for.
+ * The cache listens to the storage, and when the stock of an ingredient changes it drops
+ * only the recipes that use that ingredient, found through the recipe book's ingredient index.
+ * Values are computed and dropped while holding the cache's lock, and the storage snapshot is
+ * read inside that lock, so a value computed from old stock can never outlive the change.
+ */
+final class ServingsCache implements StockListener {
+  private final RecipeBook recipeBook;
+  private final Map<Integer, Integer> servingsByRecipe = new HashMap<>();
+
+  /**
+   * Constructs a new, empty ServingsCache.
+   *
+   * @param recipeBook the RecipeBook holding the ingredient index.
+   */
+  ServingsCache(RecipeBook recipeBook) {
+    this.recipeBook = recipeBook;
+  }
+
+  /**
+   * Finds how many servings of each recipe can be made, computing only the recipes
+   * that are not cached. Only the compact parts of the recipes are needed.
+   *
+   * @param recipes the entries of the recipes to check.
+   * @param storage the GroceryStore this cache belongs to.
+   * @return the number of servings by recipe id, in the order of the recipes.
+   */
+  synchronized Map<Integer, Integer> maxServings(List<RecipeStore.Entry> recipes,
+      GroceryStore storage) {
+    PantryVector pantry = null;
+    int misses = 0;
+    Map<Integer, Integer> result = new LinkedHashMap<>();
+    for (RecipeStore.Entry recipe : recipes) {
+      Integer servings = servingsByRecipe.get(recipe.id);
+      if (servings == null) {
+        if (pantry == null) {
+          pantry = storage.snapshot().pantry();
+        }
+        servings = pantry.maxServings(recipe.vector);
+        servingsByRecipe.put(recipe.id, servings);
+        misses++;
+      }
+      result.put(recipe.id, servings);
+    }
+    Metrics.increment("catalogue.servingsCache.hits", recipes.size() - misses);
+    Metrics.increment("catalogue.servingsCache.misses", misses);
+    return result;
+  }
+
+  @Override
+  public synchronized void stockChanged(int ingredientId) {
+    for (RecipeStore.Entry recipe : recipeBook.entriesUsing(ingredientId)) {
+      servingsByRecipe.remove(recipe.id);
+    }
+  }
+}
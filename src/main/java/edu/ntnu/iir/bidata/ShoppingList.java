@@ -1,13 +1,38 @@
 package edu.ntnu.iir.bidata;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Manages a shopping list of ingredients needed for recipes.
+ * Items are also kept in an index sorted by name, used for paginated listings.
+ * The list can be priced from a {@link PriceHistory}, which picks the cheapest packs per item.
+ * The missing ingredients of a recipe are cached by recipe, servings and storage version,
+ * so generating the list again for unchanged stock skips the matching.
+ * As a {@link ReorderListener}, the list takes the items a storage is about to run out of.
+ * Each item is on the list once for reordering: a new alert for it updates the amount.
  */
-public class ShoppingList {
+public class ShoppingList implements ReorderListener {
   private List<Ingredient> items = new ArrayList<>();
+  private final TreeMap<String, Ingredient> byName = new TreeMap<>();
+  private final Map<String, Integer> reorders = new HashMap<>();
+  private final QueryCache<List<Ingredient>> missingItems =
+      new QueryCache<>("shoppingList.missingItems", 64);
+  private static final LatencyHistogram GENERATE =
+      Metrics.histogram("shoppingList.generateShoppingList");
+
+  /**
+   * Constructs a new, empty ShoppingList.
+   */
+  public ShoppingList() {
+    Metrics.gauge("shoppingList.items", this, list -> list.items.size());
+  }
 
   /**
    * Adds an ingredient to the shopping list.
@@ -16,6 +41,41 @@ public class ShoppingList {
    */
   public void addItem(Ingredient ingredient) {
     items.add(ingredient);
+    byName.put(indexKey(ingredient.getName().toLowerCase(), items.size()), ingredient);
+  }
+
+  /**
+   * Makes the key of an item in the index by name. The position is padded so that
+   * items with the same name are sorted in the order they were added.
+
+   * @param name the lower-case name of the item.
+
+   * @param position the position of the item in the list, counted from 1.
+
+   * @return the key of the item.
+   */
+  private static String indexKey(String name, int position) {
+    return String.format("%s\u0000%010d", name, position);
+  }
+
+  /**
+   * Adds the amount to buy of an item that is about to run out, or updates the amount
+   * if the item is already on the list for reordering.
+   *
+   * @param alert the ReorderAlert for the item.
+   */
+  @Override
+  public void reorderNeeded(ReorderAlert alert) {
+    Ingredient item = alert.toIngredient();
+    String key = StorageSnapshot.key(item.getName());
+    Integer position = reorders.get(key);
+    if (position == null) {
+      addItem(item);
+      reorders.put(key, items.size() - 1);
+    } else {
+      items.set(position, item);
+      byName.put(indexKey(key, position + 1), item);
+    }
   }
 
   /**
@@ -23,24 +83,150 @@ public class ShoppingList {
 
    * @param recipe the Recipe object to generate the list for.
 
-   * @param storage the FoodStorage object to check against.
+   * @param storage the GroceryStore to check against.
+   */
+  public void generateShoppingList(Recipe recipe, GroceryStore storage) {
+    generateShoppingList(recipe, storage, recipe.getServings());
+  }
+
+  /**
+   * Generates a shopping list for making a recipe for a number of servings,
+   * based on missing ingredients in the storage.
+
+   * @param recipe the Recipe object to generate the list for.
+
+   * @param storage the GroceryStore to check against.
+
+   * @param servings the number of servings to make.
+   */
+  public void generateShoppingList(Recipe recipe, GroceryStore storage, int servings) {
+    generateShoppingList(recipe, storage, servings, null);
+  }
+
+  /**
+   * Generates a shopping list for making a recipe for a number of servings,
+   * leaving out ingredients that are short if a substitute in the storage can make up for them.
+
+   * @param recipe the Recipe object to generate the list for.
+
+   * @param storage the GroceryStore to check against.
+
+   * @param servings the number of servings to make.
+
+   * @param substitutions the SubstitutionGraph to take substitutes from, or null for none.
+   */
+  public void generateShoppingList(Recipe recipe, GroceryStore storage, int servings,
+      SubstitutionGraph substitutions) {
+    long start = Metrics.start();
+    StorageSnapshot snapshot = storage.snapshot();
+    List<Ingredient> missing;
+    if (recipe.getId() == 0) {
+      missing = findMissing(recipe, snapshot, servings, substitutions);
+    } else {
+      String query = recipe.getId() + ":" + servings + ":" + (substitutions != null);
+      missing = missingItems.get(query, storage.getId(), snapshot.getVersion(),
+          substitutions != null ? substitutions.getVersion() : 0,
+          () -> findMissing(recipe, snapshot, servings, substitutions));
+    }
+    for (Ingredient item : missing) {
+      addItem(item);
+    }
+    GENERATE.stop(start);
+  }
+
+  /**
+   * Finds the ingredients of a recipe that are missing from a storage snapshot.
+   * The stock of every ingredient is used directly first, and a substitute only makes up
+   * a shortfall with the stock that is left after what the recipe already uses.
+
+   * @param recipe the Recipe object to check.
+
+   * @param snapshot the StorageSnapshot to check against.
+
+   * @param servings the number of servings to make.
+
+   * @param substitutions the SubstitutionGraph to take substitutes from, or null for none.
+
+   * @return an unmodifiable list of the missing amounts.
    */
-  public void generateShoppingList(Recipe recipe, FoodStorage storage) {
+  private static List<Ingredient> findMissing(Recipe recipe, StorageSnapshot snapshot,
+      int servings, SubstitutionGraph substitutions) {
+    PantryVector pantry = substitutions != null ? snapshot.pantry() : null;
+    Map<Integer, Double> used = new HashMap<>();
+    double scale = (double) servings / recipe.getServings();
+    List<Ingredient> shortfalls = new ArrayList<>();
     for (Ingredient ingredient : recipe.getIngredients()) {
-      Grocery grocery = storage.searchGrocery(ingredient.getName());
-      if (grocery == null || grocery.getAmount() < ingredient.getAmount()) {
-        double neededAmount = ingredient.getAmount() - (grocery != null ? grocery.getAmount() : 0);
-        items.add(new Ingredient(ingredient.getName(), neededAmount, ingredient.getUnit()));
+      int id = IngredientDictionary.idOf(ingredient.getName());
+      double requiredAmount = ingredient.getAmount() * scale;
+      Grocery grocery = snapshot.searchGrocery(ingredient.getName());
+      double left = (grocery != null ? grocery.getAmount() : 0) - used.getOrDefault(id, 0.0);
+      double direct = Math.max(0, Math.min(requiredAmount, left));
+      used.merge(id, direct, Double::sum);
+      if (direct < requiredAmount) {
+        shortfalls.add(new Ingredient(ingredient.getName(), requiredAmount - direct,
+            ingredient.getUnit()));
+      }
+    }
+    List<Ingredient> missing = new ArrayList<>();
+    for (Ingredient item : shortfalls) {
+      if (substitutions == null || substitutions.findSubstitute(pantry,
+          IngredientDictionary.idOf(item.getName()), item.getAmount(), used) == null) {
+        missing.add(item);
       }
     }
+    return List.copyOf(missing);
   }
 
   /**
-   * Returns the list of items in the shopping list.
+   * Returns a read-only view of the items in the shopping list, in the order they were added.
+   * Items are added through the list, so that the index by name stays in step.
 
    * @return List of Ingredient objects.
    */
   public List<Ingredient> getItems() {
-    return items;
+    return Collections.unmodifiableList(items);
+  }
+
+  /**
+   * Prices the shopping list, choosing the cheapest packs for each item.
+   * Items with the same name and unit are added up first, so each item is bought once.
+
+   * @param prices the PriceHistory to take prices from.
+
+   * @return a PackPlan for each item, in the order the items were first added.
+   */
+  public List<PackPlan> priceItems(PriceHistory prices) {
+    Map<String, Ingredient> totals = new LinkedHashMap<>();
+    for (Ingredient item : items) {
+      totals.merge(item.getName().toLowerCase() + "\u0000" + item.getUnit().toLowerCase(), item,
+          (a, b) -> new Ingredient(a.getName(), a.getAmount() + b.getAmount(), a.getUnit()));
+    }
+    List<PackPlan> plans = new ArrayList<>(totals.size());
+    for (Ingredient item : totals.values()) {
+      plans.add(prices.cheapestPlan(item.getName(), item.getUnit(), item.getAmount()));
+    }
+    return plans;
+  }
+
+  /**
+   * Retrieves one page of the shopping list in alphabetical order.
+
+   * @param cursor the cursor from the previous page, or null for the first page.
+
+   * @param limit the largest number of items on the page.
+
+   * @return the Page of Ingredient objects.
+   */
+  public Page<Ingredient> listItems(String cursor, int limit) {
+    Map<String, Ingredient> tail = cursor == null ? byName : byName.tailMap(cursor, false);
+    List<Ingredient> page = new ArrayList<>(limit);
+    Iterator<Map.Entry<String, Ingredient>> it = tail.entrySet().iterator();
+    String last = null;
+    while (page.size() < limit && it.hasNext()) {
+      Map.Entry<String, Ingredient> entry = it.next();
+      page.add(entry.getValue());
+      last = entry.getKey();
+    }
+    return new Page<>(page, it.hasNext() ? last : null);
   }
-}
\ No newline at end of file
+}
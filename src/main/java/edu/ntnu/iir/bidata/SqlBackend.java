@@ -0,0 +1,200 @@
+package edu.ntnu.iir.bidata;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A backend keeping the groceries and recipes in an embedded SQL database, reached through
+ * JDBC and running inside the app, without a server. Only the rows that are asked for are
+ * read, so the pantry and the catalogue do not have to fit in memory, and the data can be
+ * queried with any SQL tool.
+ * The database is chosen with {@code -Dwasteless.jdbcUrl}. Without it, an H2 database file
+ * named {@value #FILE_NAME} is kept in the data directory. The JDBC driver is not part of
+ * the app; without a driver for the URL on the class path, the backend is not available.
+ * The schema is normalized into groceries, their lots, recipes and their ingredients,
+ * with indexes on names and best-before dates. Each grocery row also holds the sum of its
+ * lots, kept up to date in the same transaction as the lots, so matching recipes against
+ * the stock looks up one row per ingredient instead of adding up lots.
+ * The schema only uses SQL understood by both H2 and SQLite.
+ */
+public final class SqlBackend implements StorageBackend {
+  /**
+   * The name of the SQL backend.
+   */
+  public static final String NAME = "sql";
+
+  /**
+   * The name of the database file in the data directory, used when no URL is given.
+   */
+  public static final String FILE_NAME = "wasteless";
+
+  /**
+   * The statements creating the schema. Every statement leaves an existing schema as it is.
+   */
+  private static final String[] SCHEMA = {
+    "CREATE TABLE IF NOT EXISTS groceries ("
+        + "name_key VARCHAR(255) PRIMARY KEY, "
+        + "name VARCHAR(255) NOT NULL, "
+        + "unit VARCHAR(64) NOT NULL, "
+        + "price_per_unit DOUBLE NOT NULL, "
+        + "amount DOUBLE NOT NULL)",
+    "CREATE TABLE IF NOT EXISTS lots ("
+        + "grocery_key VARCHAR(255) NOT NULL REFERENCES groceries(name_key), "
+        + "seq INTEGER NOT NULL, "
+        + "amount DOUBLE NOT NULL, "
+        + "best_before BIGINT NOT NULL, "
+        + "price_per_unit DOUBLE NOT NULL, "
+        + "PRIMARY KEY (grocery_key, seq))",
+    "CREATE INDEX IF NOT EXISTS lots_expiry ON lots(best_before)",
+    "CREATE TABLE IF NOT EXISTS recipes ("
+        + "id INTEGER PRIMARY KEY, "
+        + "name VARCHAR(255) NOT NULL, "
+        + "name_key VARCHAR(255) NOT NULL, "
+        + "servings INTEGER NOT NULL, "
+        + "description VARCHAR)",
+    "CREATE INDEX IF NOT EXISTS recipes_name ON recipes(name_key, id)",
+    "CREATE TABLE IF NOT EXISTS recipe_ingredients ("
+        + "recipe_id INTEGER NOT NULL REFERENCES recipes(id), "
+        + "seq INTEGER NOT NULL, "
+        + "name VARCHAR(255) NOT NULL, "
+        + "name_key VARCHAR(255) NOT NULL, "
+        + "amount DOUBLE NOT NULL, "
+        + "unit VARCHAR(64), "
+        + "needed DOUBLE NOT NULL, "
+        + "PRIMARY KEY (recipe_id, seq))",
+    "CREATE INDEX IF NOT EXISTS recipe_ingredients_name ON recipe_ingredients(name_key)",
+  };
+
+  /**
+   * Work done with a connection, which may fail with an SQLException.
+   *
+   * @param <T> the type of the result.
+   */
+  interface Work<T> {
+    /**
+     * Does the work.
+     *
+     * @return the result of the work.
+     * @throws SQLException if the database failed.
+     */
+    T run() throws SQLException;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  /**
+   * Checks that a JDBC driver for the database URL is on the class path.
+   *
+   * @return true if the database can be opened, false otherwise.
+   */
+  @Override
+  public boolean isAvailable() {
+    try {
+      DriverManager.getDriver(url(Path.of("")));
+      return true;
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public GroceryStore openGroceryStore(PersistenceService persistence, Path directory) {
+    return new SqlGroceryStore(persistence, directory);
+  }
+
+  @Override
+  public RecipeCatalogue openRecipeCatalogue(PersistenceService persistence, Path directory) {
+    return new SqlRecipeCatalogue(persistence, directory);
+  }
+
+  /**
+   * Gets the URL of the database for a data directory.
+   *
+   * @param directory the data directory.
+   * @return the URL given by {@code -Dwasteless.jdbcUrl}, or the URL of an H2 database file
+   *     in the directory.
+   */
+  static String url(Path directory) {
+    String url = System.getProperty("wasteless.jdbcUrl");
+    if (url != null) {
+      return url;
+    }
+    return "jdbc:h2:file:" + directory.resolve(FILE_NAME).toAbsolutePath();
+  }
+
+  /**
+   * Opens a connection to a database and creates the schema if it is not there yet.
+   * The connection does not commit by itself.
+   *
+   * @param url the URL of the database.
+   * @return the Connection.
+   * @throws IllegalStateException if the database could not be opened.
+   */
+  static Connection connect(String url) {
+    try {
+      Connection connection = DriverManager.getConnection(url);
+      connection.setAutoCommit(false);
+      try (Statement statement = connection.createStatement()) {
+        for (String sql : SCHEMA) {
+          statement.execute(sql);
+        }
+      }
+      connection.commit();
+      return connection;
+    } catch (SQLException e) {
+      throw failure("Couldn't open the database " + url, e);
+    }
+  }
+
+  /**
+   * Runs work as one transaction, committing it if it succeeds and rolling it back if not.
+   *
+   * @param connection the Connection to run the work on.
+   * @param work the work to run.
+   * @param <T> the type of the result.
+   * @return the result of the work.
+   * @throws IllegalStateException if the work failed.
+   */
+  static <T> T transaction(Connection connection, Work<T> work) {
+    try {
+      T result = work.run();
+      connection.commit();
+      return result;
+    } catch (SQLException e) {
+      try {
+        connection.rollback();
+      } catch (SQLException rollbackFailure) {
+        e.addSuppressed(rollbackFailure);
+      }
+      throw failure("Database error", e);
+    }
+  }
+
+  /**
+   * Wraps a database error in an unchecked exception, as the storage interfaces
+   * do not throw SQLException.
+   *
+   * @param message what was being done.
+   * @param e the SQLException.
+   * @return the IllegalStateException to throw.
+   */
+  static IllegalStateException failure(String message, SQLException e) {
+    return new IllegalStateException(message + ": " + e.getMessage(), e);
+  }
+
+  /**
+   * Makes a list of question marks for an IN clause.
+   *
+   * @param count the number of parameters, at least 1.
+   * @return the placeholders, separated by commas.
+   */
+  static String placeholders(int count) {
+    return "?" + ", ?".repeat(count - 1);
+  }
+}
@@ -0,0 +1,731 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps the groceries of one household in an SQL database, one row per grocery and one
+ * row per lot. Lookups, listings, expiry queries and the total value are answered by
+ * queries using the indexes on names and best-before dates, so only the groceries asked
+ * for are read. Changes are synchronized and each is committed as one transaction.
+ * Groceries from a backup are added in batches of {@value #BATCH_SIZE}, each written with
+ * a few batched statements.
+ * The whole storage is only read when a {@link StorageSnapshot} is asked for; the snapshot
+ * is kept until the next change.
+ * Prices and consumption are recorded in the same files as for {@link FoodStorage}, and
+ * reorder alerts are raised the same way. The database keeps no history, so changes can
+ * not be undone, and only one storage should be open on a database at a time.
+ */
+public class SqlGroceryStore implements GroceryStore {
+  private static final int BATCH_SIZE = 500;
+  private static final double TOLERANCE = 1e-9;
+  private static final String SELECT = "SELECT g.name_key, g.name, g.unit, g.price_per_unit, "
+      + "l.amount, l.best_before, l.price_per_unit "
+      + "FROM groceries g JOIN lots l ON l.grocery_key = g.name_key";
+  private static final String LOT_ORDER = "l.best_before, l.seq";
+  private static final String UPDATE_AMOUNT =
+      "UPDATE groceries SET amount = ? WHERE name_key = ?";
+  private static final String INSERT_LOT = "INSERT INTO lots "
+      + "(grocery_key, seq, amount, best_before, price_per_unit) VALUES (?, ?, ?, ?, ?)";
+  private static final String PRICES_FILE_NAME = "prices.dat";
+  private static final String CONSUMPTION_FILE_NAME = "consumption.dat";
+  private static final LatencyHistogram SEARCH = Metrics.histogram("sqlStorage.searchGrocery");
+  private static final LatencyHistogram HAS_INGREDIENTS =
+      Metrics.histogram("sqlStorage.hasIngredients");
+  private static final LatencyHistogram IMPORT = Metrics.histogram("sqlStorage.importBatch");
+
+  private final Connection connection;
+  private final String url;
+  private final List<StockListener> listeners = new CopyOnWriteArrayList<>();
+  private final List<ReorderListener> reorderListeners = new CopyOnWriteArrayList<>();
+  private final PriceHistory prices;
+  private final ConsumptionHistory consumption;
+  private final long id = FoodStorage.NEXT_ID.incrementAndGet();
+  private volatile long version;
+  private StorageSnapshot snapshot;
+
+  /**
+   * Opens the grocery storage in the database of a data directory,
+   * creating the tables if they are not there yet.
+   *
+   * @param persistence the PersistenceService used to save prices and consumption.
+   * @param directory the data directory.
+   * @throws IllegalStateException if the database could not be opened.
+   */
+  public SqlGroceryStore(PersistenceService persistence, Path directory) {
+    this.url = SqlBackend.url(directory);
+    this.connection = SqlBackend.connect(url);
+    this.prices = new PriceHistory(persistence, directory.resolve(PRICES_FILE_NAME));
+    this.consumption =
+        new ConsumptionHistory(persistence, directory.resolve(CONSUMPTION_FILE_NAME));
+  }
+
+  /**
+   * Gets the URL of the database holding the groceries.
+   *
+   * @return the JDBC URL.
+   */
+  public String getUrl() {
+    return url;
+  }
+
+  /**
+   * Gets a snapshot of the storage, reading every grocery from the database if it
+   * has changed since the last snapshot.
+   *
+   * @return the current StorageSnapshot.
+   */
+  @Override
+  public synchronized StorageSnapshot snapshot() {
+    if (snapshot == null || snapshot.getVersion() != version) {
+      StorageSnapshot built = StorageSnapshot.empty(0);
+      for (Grocery grocery : getGroceries()) {
+        built = built.replace(null, grocery);
+      }
+      snapshot = built.withVersion(version);
+    }
+    return snapshot;
+  }
+
+  @Override
+  public long getId() {
+    return id;
+  }
+
+  /**
+   * Gets the modification counter of the storage, which increases with every change
+   * made through this object.
+   *
+   * @return the version of the storage.
+   */
+  @Override
+  public long getVersion() {
+    return version;
+  }
+
+  @Override
+  public void addStockListener(StockListener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public void addReorderListener(ReorderListener listener) {
+    reorderListeners.add(listener);
+  }
+
+  @Override
+  public PriceHistory getPriceHistory() {
+    return prices;
+  }
+
+  @Override
+  public ConsumptionHistory getConsumptionHistory() {
+    return consumption;
+  }
+
+  /**
+   * Adds a grocery to the storage, merging its lots into a grocery with the same name,
+   * and records the price paid for each of its lots.
+   *
+   * @param grocery the Grocery object to add.
+   */
+  @Override
+  public synchronized void addGrocery(Grocery grocery) {
+    merge(List.of(grocery));
+    long now = System.currentTimeMillis();
+    for (Lot lot : grocery.getLots()) {
+      prices.record(grocery.getName(), grocery.getUnit(), lot.getAmount(),
+          lot.calculateTotalValue(), now);
+    }
+  }
+
+  /**
+   * Searches for a grocery by name, ignoring case, through the primary key.
+   *
+   * @param name the name of the grocery to search for.
+   * @return the Grocery object if found, null otherwise.
+   */
+  @Override
+  public synchronized Grocery searchGrocery(String name) {
+    long start = Metrics.start();
+    List<Grocery> found = query(SELECT + " WHERE g.name_key = ? ORDER BY " + LOT_ORDER,
+        StorageSnapshot.key(name));
+    SEARCH.stop(start);
+    return found.isEmpty() ? null : found.get(0);
+  }
+
+  /**
+   * Removes an amount from a grocery, earliest-expiring lots first, and records it as used.
+   * The lots of the grocery are written again; a grocery without any amount left is deleted.
+   *
+   * @param name the name of the grocery to update.
+   * @param amount the amount to remove.
+   * @return true if the grocery was found and updated, false otherwise.
+   */
+  @Override
+  public synchronized boolean removeGrocery(String name, double amount) {
+    Grocery grocery = searchGrocery(name);
+    if (grocery == null) {
+      return false;
+    }
+    consume(grocery, amount);
+    return true;
+  }
+
+  /**
+   * Retrieves all groceries in alphabetical order, in one query.
+   *
+   * @return List of Grocery objects.
+   */
+  @Override
+  public synchronized List<Grocery> getGroceries() {
+    return query(SELECT + " ORDER BY g.name_key, " + LOT_ORDER);
+  }
+
+  /**
+   * Retrieves one page of groceries in alphabetical order. The page starts right after the
+   * cursor in the primary key, so later pages cost no more than the first one.
+   *
+   * @param cursor the cursor from the previous page, or null for the first page.
+   * @param limit the largest number of groceries on the page.
+   * @return the Page of Grocery objects.
+   */
+  @Override
+  public synchronized Page<Grocery> listGroceries(String cursor, int limit) {
+    List<Grocery> items = query(SELECT + " WHERE g.name_key IN (SELECT name_key FROM groceries"
+        + " WHERE name_key > ? ORDER BY name_key LIMIT ?) ORDER BY g.name_key, " + LOT_ORDER,
+        cursor == null ? "" : cursor, limit + 1);
+    if (items.size() <= limit) {
+      return new Page<>(items, null);
+    }
+    items = items.subList(0, limit);
+    return new Page<>(items, StorageSnapshot.key(items.get(limit - 1).getName()));
+  }
+
+  /**
+   * Retrieves the groceries that have at least one lot expiring before the given date,
+   * earliest-expiring first, using the index on best-before dates.
+   *
+   * @param date the date to compare against.
+   * @return List of Grocery objects with expired lots.
+   */
+  @Override
+  public synchronized List<Grocery> getExpiredGroceries(Date date) {
+    return byExpiry("HAVING MIN(best_before) < ?", date.getTime());
+  }
+
+  /**
+   * Retrieves the groceries whose earliest lot has not expired before the given date,
+   * earliest-expiring first.
+   *
+   * @param date the date to compare against.
+   * @return List of Grocery objects that have not yet expired.
+   */
+  @Override
+  public synchronized List<Grocery> getGroceriesExpiringFrom(Date date) {
+    return byExpiry("HAVING MIN(best_before) >= ?", date.getTime());
+  }
+
+  /**
+   * Removes every lot that expired before the given date with one statement,
+   * updates the amounts of the groceries with a batch, and then deletes the groceries
+   * left without lots.
+   *
+   * @param date the date to compare against.
+   * @return a WasteEntry for each removed lot, recorded on the given date.
+   */
+  @Override
+  public synchronized List<WasteEntry> removeExpired(Date date) {
+    List<Grocery> expired = getExpiredGroceries(date);
+    if (expired.isEmpty()) {
+      return List.of();
+    }
+    List<WasteEntry> wasted = new ArrayList<>();
+    Map<String, Double> remaining = new HashMap<>();
+    for (Grocery grocery : expired) {
+      Grocery updated = grocery.copy();
+      for (Lot lot : updated.removeExpiredLots(date)) {
+        wasted.add(new WasteEntry(grocery, lot, date));
+      }
+      remaining.put(StorageSnapshot.key(grocery.getName()), updated.getAmount());
+    }
+    SqlBackend.transaction(connection, () -> {
+      try (PreparedStatement delete =
+               connection.prepareStatement("DELETE FROM lots WHERE best_before < ?");
+           PreparedStatement update = connection.prepareStatement(UPDATE_AMOUNT)) {
+        delete.setLong(1, date.getTime());
+        delete.executeUpdate();
+        for (Map.Entry<String, Double> entry : remaining.entrySet()) {
+          update.setDouble(1, entry.getValue());
+          update.setString(2, entry.getKey());
+          update.addBatch();
+        }
+        update.executeBatch();
+      }
+      deleteEmptyGroceries();
+      return null;
+    });
+    for (Grocery grocery : expired) {
+      changed(grocery.getName());
+    }
+    return wasted;
+  }
+
+  /**
+   * Calculates the total value of all groceries with one query.
+   *
+   * @return the total value in NOK.
+   */
+  @Override
+  public synchronized double getTotalValue() {
+    return SqlBackend.transaction(connection, () -> {
+      try (Statement statement = connection.createStatement();
+           ResultSet rows = statement.executeQuery(
+               "SELECT COALESCE(SUM(amount * price_per_unit), 0) FROM lots")) {
+        rows.next();
+        return rows.getDouble(1);
+      }
+    });
+  }
+
+  @Override
+  public synchronized void clearAllGroceries() {
+    List<String> names = SqlBackend.transaction(connection, () -> {
+      List<String> cleared = new ArrayList<>();
+      try (Statement statement = connection.createStatement()) {
+        try (ResultSet rows = statement.executeQuery("SELECT name FROM groceries")) {
+          while (rows.next()) {
+            cleared.add(rows.getString(1));
+          }
+        }
+        statement.executeUpdate("DELETE FROM lots");
+        statement.executeUpdate("DELETE FROM groceries");
+      }
+      return cleared;
+    });
+    for (String name : names) {
+      changed(name);
+    }
+  }
+
+  @Override
+  public boolean hasIngredients(Recipe recipe) {
+    return covers(recipe, -1);
+  }
+
+  @Override
+  public boolean hasIngredients(Recipe recipe, int servings) {
+    return covers(recipe, servings);
+  }
+
+  /**
+   * Checks if there are enough ingredients to make a recipe, reading the stock of only
+   * the recipe's ingredients.
+   *
+   * @param recipe the Recipe object to check.
+   * @param servings the number of servings wanted, or -1 for the amounts in the recipe.
+   * @return true if all ingredients are available, false otherwise.
+   */
+  private synchronized boolean covers(Recipe recipe, int servings) {
+    long start = Metrics.start();
+    Map<String, Double> needed = new HashMap<>();
+    for (Ingredient ingredient : recipe.getIngredients()) {
+      needed.merge(StorageSnapshot.key(ingredient.getName()), ingredient.getAmount(),
+          Double::sum);
+    }
+    Map<String, Double> stock = stockOf(needed.keySet());
+    boolean available = true;
+    for (Map.Entry<String, Double> entry : needed.entrySet()) {
+      double have = stock.getOrDefault(entry.getKey(), 0.0);
+      if (servings < 0 ? have < entry.getValue()
+          : have + TOLERANCE < entry.getValue() / recipe.getServings() * servings) {
+        available = false;
+        break;
+      }
+    }
+    HAS_INGREDIENTS.stop(start);
+    return available;
+  }
+
+  @Override
+  public synchronized void useIngredient(Ingredient ingredient) {
+    Grocery grocery = searchGrocery(ingredient.getName());
+    if (grocery != null) {
+      consume(grocery, ingredient.getAmount());
+    }
+  }
+
+  /**
+   * Does nothing, as the database keeps no history.
+   *
+   * @return false.
+   */
+  @Override
+  public boolean undo() {
+    return false;
+  }
+
+  /**
+   * Does nothing, as the database keeps no history.
+   *
+   * @return false.
+   */
+  @Override
+  public boolean redo() {
+    return false;
+  }
+
+  @Override
+  public int getUndoCount() {
+    return 0;
+  }
+
+  @Override
+  public int getRedoCount() {
+    return 0;
+  }
+
+  /**
+   * Does nothing, as every change is committed to the database when it is made.
+   */
+  @Override
+  public void saveToFile() {
+  }
+
+  /**
+   * Writes all groceries to a compact backup, earliest-expiring first.
+   *
+   * @param out the stream to write to.
+   * @return the number of groceries written.
+   * @throws IOException if the backup could not be written.
+   * @see BackupFormat
+   */
+  @Override
+  public long exportBackup(OutputStream out) throws IOException {
+    List<Grocery> groceries;
+    synchronized (this) {
+      groceries = byExpiry("", null);
+    }
+    return BackupFormat.exportGroceries(groceries, out);
+  }
+
+  /**
+   * Adds the groceries in a backup to the storage, merging their lots into groceries
+   * with the same name. Groceries are written in batches, each as one transaction.
+   * Prices from the backup are not recorded in the price history.
+   *
+   * @param in the stream to read from.
+   * @return the number of groceries read.
+   * @throws IOException if the backup could not be read.
+   */
+  @Override
+  public synchronized long importBackup(InputStream in) throws IOException {
+    List<Grocery> batch = new ArrayList<>(BATCH_SIZE);
+    long count = BackupFormat.importGroceries(in, grocery -> {
+      batch.add(grocery);
+      if (batch.size() == BATCH_SIZE) {
+        merge(batch);
+        batch.clear();
+      }
+    });
+    merge(batch);
+    return count;
+  }
+
+  /**
+   * Adds the lots of groceries to the storage in one transaction. New groceries are inserted,
+   * and the price of known ones is updated to that of their newest lot, with one batched
+   * statement each, and all lots are inserted with a third.
+   *
+   * @param groceries the groceries to add.
+   */
+  private void merge(Collection<Grocery> groceries) {
+    if (groceries.isEmpty()) {
+      return;
+    }
+    long start = Metrics.start();
+    Map<String, Grocery> byKey = new LinkedHashMap<>();
+    for (Grocery grocery : groceries) {
+      Grocery merged = byKey.get(StorageSnapshot.key(grocery.getName()));
+      if (merged == null) {
+        byKey.put(StorageSnapshot.key(grocery.getName()), grocery.copy());
+      } else {
+        merged.addLots(grocery);
+      }
+    }
+    SqlBackend.transaction(connection, () -> {
+      Map<String, Integer> lastSeq = lastSeq(byKey.keySet());
+      try (PreparedStatement insert = connection.prepareStatement(
+               "INSERT INTO groceries (name_key, name, unit, price_per_unit, amount) "
+                   + "VALUES (?, ?, ?, ?, ?)");
+           PreparedStatement update = connection.prepareStatement(
+               "UPDATE groceries SET price_per_unit = ?, amount = amount + ? WHERE name_key = ?");
+           PreparedStatement lots = connection.prepareStatement(INSERT_LOT)) {
+        for (Map.Entry<String, Grocery> entry : byKey.entrySet()) {
+          Grocery grocery = entry.getValue();
+          Integer seq = lastSeq.get(entry.getKey());
+          if (seq == null) {
+            insert.setString(1, entry.getKey());
+            insert.setString(2, grocery.getName());
+            insert.setString(3, grocery.getUnit());
+            insert.setDouble(4, grocery.getPricePerUnit());
+            insert.setDouble(5, grocery.getAmount());
+            insert.addBatch();
+            seq = 0;
+          } else {
+            update.setDouble(1, grocery.getPricePerUnit());
+            update.setDouble(2, grocery.getAmount());
+            update.setString(3, entry.getKey());
+            update.addBatch();
+          }
+          addLots(lots, entry.getKey(), grocery, seq);
+        }
+        insert.executeBatch();
+        update.executeBatch();
+        lots.executeBatch();
+      }
+      return null;
+    });
+    for (Grocery grocery : byKey.values()) {
+      changed(grocery.getName());
+    }
+    IMPORT.stop(start);
+  }
+
+  /**
+   * Consumes an amount of a grocery, earliest-expiring lots first, writes its remaining lots
+   * and records the use.
+   *
+   * @param grocery the Grocery to consume from, as read from the database.
+   * @param amount the amount to consume.
+   */
+  private void consume(Grocery grocery, double amount) {
+    Grocery updated = grocery.copy();
+    updated.consume(amount);
+    String key = StorageSnapshot.key(grocery.getName());
+    SqlBackend.transaction(connection, () -> {
+      try (PreparedStatement delete =
+               connection.prepareStatement("DELETE FROM lots WHERE grocery_key = ?")) {
+        delete.setString(1, key);
+        delete.executeUpdate();
+      }
+      if (updated.isEmpty()) {
+        try (PreparedStatement delete =
+                 connection.prepareStatement("DELETE FROM groceries WHERE name_key = ?")) {
+          delete.setString(1, key);
+          delete.executeUpdate();
+        }
+      } else {
+        try (PreparedStatement lots = connection.prepareStatement(INSERT_LOT);
+             PreparedStatement update = connection.prepareStatement(UPDATE_AMOUNT)) {
+          addLots(lots, key, updated, 0);
+          lots.executeBatch();
+          update.setDouble(1, updated.getAmount());
+          update.setString(2, key);
+          update.executeUpdate();
+        }
+      }
+      return null;
+    });
+    changed(grocery.getName());
+    recordUse(grocery, updated.getAmount());
+  }
+
+  /**
+   * Adds the lots of a grocery to a batch of inserts, numbering them after the last lot.
+   *
+   * @param insert the prepared insert into the lots table.
+   * @param key the key of the grocery.
+   * @param grocery the grocery holding the lots.
+   * @param seq the number of the last lot of the grocery in the database, or 0 if none.
+   * @throws SQLException if a parameter could not be set.
+   */
+  private static void addLots(PreparedStatement insert, String key, Grocery grocery, int seq)
+      throws SQLException {
+    for (Lot lot : grocery.getLots()) {
+      insert.setString(1, key);
+      insert.setInt(2, ++seq);
+      insert.setDouble(3, lot.getAmount());
+      insert.setLong(4, lot.getBestBeforeDate().getTime());
+      insert.setDouble(5, lot.getPricePerUnit());
+      insert.addBatch();
+    }
+  }
+
+  /**
+   * Finds the number of the last lot of every known grocery among some keys.
+   *
+   * @param keys the keys of the groceries.
+   * @return the last lot number by key, only for the groceries in the database.
+   * @throws SQLException if the query failed.
+   */
+  private Map<String, Integer> lastSeq(Collection<String> keys) throws SQLException {
+    Map<String, Integer> seqs = new HashMap<>();
+    try (PreparedStatement select = connection.prepareStatement(
+        "SELECT g.name_key, COALESCE(MAX(l.seq), 0) FROM groceries g "
+            + "LEFT JOIN lots l ON l.grocery_key = g.name_key WHERE g.name_key IN ("
+            + SqlBackend.placeholders(keys.size()) + ") GROUP BY g.name_key")) {
+      int index = 1;
+      for (String key : keys) {
+        select.setString(index++, key);
+      }
+      try (ResultSet rows = select.executeQuery()) {
+        while (rows.next()) {
+          seqs.put(rows.getString(1), rows.getInt(2));
+        }
+      }
+    }
+    return seqs;
+  }
+
+  /**
+   * Reads the stock of some ingredients from their grocery rows.
+   *
+   * @param keys the keys of the ingredients.
+   * @return the amount in stock by key, only for the ingredients in stock.
+   */
+  private Map<String, Double> stockOf(Collection<String> keys) {
+    if (keys.isEmpty()) {
+      return Map.of();
+    }
+    return SqlBackend.transaction(connection, () -> {
+      Map<String, Double> stock = new HashMap<>();
+      try (PreparedStatement select = connection.prepareStatement(
+          "SELECT name_key, amount FROM groceries WHERE name_key IN ("
+              + SqlBackend.placeholders(keys.size()) + ")")) {
+        int index = 1;
+        for (String key : keys) {
+          select.setString(index++, key);
+        }
+        try (ResultSet rows = select.executeQuery()) {
+          while (rows.next()) {
+            stock.put(rows.getString(1), rows.getDouble(2));
+          }
+        }
+      }
+      return stock;
+    });
+  }
+
+  /**
+   * Deletes the groceries that have no lots left.
+   *
+   * @throws SQLException if the statement failed.
+   */
+  private void deleteEmptyGroceries() throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.executeUpdate("DELETE FROM groceries WHERE NOT EXISTS "
+          + "(SELECT 1 FROM lots WHERE lots.grocery_key = groceries.name_key)");
+    }
+  }
+
+  /**
+   * Reads groceries ordered by the best-before date of their earliest lot, then by name.
+   *
+   * @param having the condition on the earliest best-before date, or empty for all groceries.
+   * @param time the time the condition compares with, or null if there is no condition.
+   * @return the groceries, earliest-expiring first.
+   */
+  private List<Grocery> byExpiry(String having, Long time) {
+    String sql = SELECT + " JOIN (SELECT grocery_key, MIN(best_before) AS earliest FROM lots"
+        + " GROUP BY grocery_key " + having + ") e ON e.grocery_key = g.name_key"
+        + " ORDER BY e.earliest, g.name_key, " + LOT_ORDER;
+    return time == null ? query(sql) : query(sql, time);
+  }
+
+  /**
+   * Runs a query selecting the columns of {@link #SELECT}, ordered so that the lots of each
+   * grocery are next to each other, and builds a grocery from each run of rows.
+   *
+   * @param sql the query.
+   * @param parameters the parameters of the query.
+   * @return the groceries in the order of the rows.
+   */
+  private List<Grocery> query(String sql, Object... parameters) {
+    return SqlBackend.transaction(connection, () -> {
+      List<Grocery> groceries = new ArrayList<>();
+      try (PreparedStatement select = connection.prepareStatement(sql)) {
+        for (int i = 0; i < parameters.length; i++) {
+          select.setObject(i + 1, parameters[i]);
+        }
+        try (ResultSet rows = select.executeQuery()) {
+          String key = null;
+          String name = null;
+          String unit = null;
+          double price = 0;
+          List<Lot> lots = new ArrayList<>();
+          while (rows.next()) {
+            if (!rows.getString(1).equals(key)) {
+              if (key != null) {
+                groceries.add(Grocery.restore(name, unit, price, lots));
+              }
+              key = rows.getString(1);
+              name = rows.getString(2);
+              unit = rows.getString(3);
+              price = rows.getDouble(4);
+              lots = new ArrayList<>();
+            }
+            lots.add(Lot.restore(rows.getDouble(5), new Date(rows.getLong(6)),
+                rows.getDouble(7)));
+          }
+          if (key != null) {
+            groceries.add(Grocery.restore(name, unit, price, lots));
+          }
+        }
+      }
+      return groceries;
+    });
+  }
+
+  /**
+   * Records the amount taken from a grocery in the consumption history, and gives the
+   * reorder listeners an alert if the rest is expected to run out before the next shopping day.
+   *
+   * @param before the grocery as it was before it was used.
+   * @param stock the amount left.
+   */
+  private void recordUse(Grocery before, double stock) {
+    double used = before.getAmount() - stock;
+    if (used <= 0) {
+      return;
+    }
+    ReorderAlert alert = consumption.record(before.getName(), before.getUnit(), used, stock,
+        System.currentTimeMillis());
+    if (alert != null) {
+      Metrics.increment("storage.reorderAlerts", 1);
+      for (ReorderListener listener : reorderListeners) {
+        listener.reorderNeeded(alert);
+      }
+    }
+  }
+
+  /**
+   * Increases the version after a grocery has changed, and tells the listeners.
+   *
+   * @param name the name of the grocery.
+   */
+  private void changed(String name) {
+    version++;
+    if (!listeners.isEmpty()) {
+      int ingredientId = IngredientDictionary.idOf(name);
+      for (StockListener listener : listeners) {
+        listener.stockChanged(ingredientId);
+      }
+    }
+  }
+}
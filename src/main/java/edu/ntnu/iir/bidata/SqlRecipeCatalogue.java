@@ -0,0 +1,758 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Keeps the recipes in an SQL database, one row per recipe and one row per ingredient.
+ * Lookups and listings use the index on recipe names, and the recipes using an ingredient
+ * are found through the index on ingredient names, so only the recipes asked for are read.
+ * When the storage to match against is a {@link SqlGroceryStore} in the same database,
+ * suggestions and servings are computed by the database with one query each, joining the
+ * ingredients of every recipe with the stock of the storage. Against other storages, or when
+ * substitutions have been added, the ingredients and servings of every recipe are read with
+ * one cursor and matched with the storage's {@link PantryVector}, as in {@link RecipeBook},
+ * without reading names or descriptions. Only the ids of the suggested recipes are cached,
+ * and lists of recipes are read from the database as they are got, so the recipes never
+ * have to be in memory all at once.
+ * Recipes from a backup are added in batches of {@value #BATCH_SIZE}, each written with
+ * two batched statements. The search index is held in memory and saved next to the
+ * database, so it is only built again, by streaming the recipes, when it is missing or does
+ * not match the database. Substitutions and nutrition facts are kept in the same files as
+ * for {@link RecipeBook}.
+ * Only one catalogue should be open on a database at a time.
+ */
+public class SqlRecipeCatalogue implements RecipeCatalogue {
+  private static final int BATCH_SIZE = 500;
+  private static final double TOLERANCE = 1e-9;
+  private static final String SELECT = "SELECT r.id, r.name, r.servings, r.description, "
+      + "i.name, i.amount, i.unit "
+      + "FROM recipes r LEFT JOIN recipe_ingredients i ON i.recipe_id = r.id";
+  private static final String COVERED = "SELECT r.id FROM recipes r WHERE NOT EXISTS ("
+      + "SELECT 1 FROM recipe_ingredients i LEFT JOIN groceries s ON s.name_key = i.name_key "
+      + "WHERE i.recipe_id = r.id AND COALESCE(s.amount, 0) < i.needed)";
+  private static final String INTERSECTING = "SELECT i.recipe_id FROM recipe_ingredients i "
+      + "JOIN groceries s ON s.name_key = i.name_key WHERE s.amount > 0";
+  private static final String SERVINGS = "SELECT r.id, "
+      + "MIN(COALESCE(s.amount, 0) * r.servings / i.needed) FROM recipes r "
+      + "LEFT JOIN recipe_ingredients i ON i.recipe_id = r.id AND i.needed > 0 "
+      + "LEFT JOIN groceries s ON s.name_key = i.name_key GROUP BY r.id ORDER BY r.id";
+  private static final String COMPACT = "SELECT r.id, r.servings, i.name, i.amount, i.unit "
+      + "FROM recipes r LEFT JOIN recipe_ingredients i ON i.recipe_id = r.id";
+  private static final String VECTORS = COMPACT
+      + " WHERE r.id IN (SELECT recipe_id FROM recipe_ingredients WHERE name_key = ?)"
+      + " ORDER BY r.id, i.seq";
+  private static final String SUBSTITUTIONS_FILE_NAME = "substitutions.dat";
+  private static final String SEARCH_INDEX_FILE_NAME = "recipes-sql.idx";
+  private static final String NUTRITION_FILE_NAME = "nutrition.dat";
+  private static final LatencyHistogram SUGGEST =
+      Metrics.histogram("sqlCatalogue.suggestRecipes");
+  private static final LatencyHistogram SUGGEST_PARTIAL =
+      Metrics.histogram("sqlCatalogue.suggestPartialRecipes");
+  private static final LatencyHistogram MAX_SERVINGS =
+      Metrics.histogram("sqlCatalogue.maxServings");
+  private static final LatencyHistogram IMPORT = Metrics.histogram("sqlCatalogue.importBatch");
+
+  private final Connection connection;
+  private final String url;
+  private final PersistenceService persistence;
+  private final Path searchIndexPath;
+  private final SubstitutionGraph substitutions;
+  private final NutritionTable nutrition;
+  private final List<RecipeListener> recipeListeners = new CopyOnWriteArrayList<>();
+  private final QueryCache<int[]> suggestions =
+      new QueryCache<>("sqlCatalogue.suggestions", 64);
+  private RecipeSearchIndex searchIndex = new RecipeSearchIndex();
+  private int nextId = 1;
+  private volatile long version;
+
+  /**
+   * Opens the recipe catalogue in the database of a data directory, creating the tables
+   * if they are not there yet, and loads the search index saved next to it.
+   *
+   * @param persistence the PersistenceService used to save the substitutions and the index.
+   * @param directory the data directory.
+   * @throws IllegalStateException if the database could not be opened.
+   */
+  public SqlRecipeCatalogue(PersistenceService persistence, Path directory) {
+    this.url = SqlBackend.url(directory);
+    this.connection = SqlBackend.connect(url);
+    this.persistence = persistence;
+    this.searchIndexPath = directory.resolve(SEARCH_INDEX_FILE_NAME);
+    this.substitutions = new SubstitutionGraph(persistence,
+        directory.resolve(SUBSTITUTIONS_FILE_NAME));
+    this.nutrition = new NutritionTable(persistence, directory.resolve(NUTRITION_FILE_NAME));
+    loadSearchIndex();
+  }
+
+  /**
+   * Adds a new recipe, giving it an id if it has none, and commits it to the database.
+   *
+   * @param recipe the Recipe object to add.
+   */
+  @Override
+  public synchronized void addRecipe(Recipe recipe) {
+    insert(List.of(recipe));
+  }
+
+  @Override
+  public void addRecipeListener(RecipeListener listener) {
+    recipeListeners.add(listener);
+  }
+
+  @Override
+  public long getVersion() {
+    return version + substitutions.getVersion();
+  }
+
+  /**
+   * Finds a recipe by name, ignoring case, through the index on recipe names.
+   *
+   * @param name the name of the recipe.
+   * @return the first Recipe added with the name, or null if there is none.
+   */
+  @Override
+  public synchronized Recipe findRecipe(String name) {
+    List<Recipe> found = query(SELECT + " WHERE r.id = (SELECT MIN(id) FROM recipes"
+        + " WHERE name_key = ?) ORDER BY i.seq", name.toLowerCase());
+    return found.isEmpty() ? null : found.get(0);
+  }
+
+  /**
+   * Searches the names, ingredients and descriptions of the recipes with the search index,
+   * and reads the matches with one query.
+   *
+   * @param query the words to look for.
+   * @param limit the largest number of recipes to return.
+   * @return the matching recipes ranked by BM25, best first.
+   */
+  @Override
+  public synchronized List<Recipe> searchRecipes(String query, int limit) {
+    List<Integer> ids = searchIndex.search(query, limit);
+    Map<Integer, Recipe> byId = new HashMap<>();
+    for (Recipe recipe : byIds(ids)) {
+      byId.put(recipe.getId(), recipe);
+    }
+    List<Recipe> matches = new ArrayList<>();
+    for (int id : ids) {
+      matches.add(byId.get(id));
+    }
+    return matches;
+  }
+
+  /**
+   * Retrieves one page of recipes in alphabetical order. The page starts right after the
+   * cursor in the index on recipe names.
+   *
+   * @param cursor the cursor from the previous page, or null for the first page.
+   * @param limit the largest number of recipes on the page.
+   * @return the Page of Recipe objects.
+   */
+  @Override
+  public synchronized Page<Recipe> listRecipes(String cursor, int limit) {
+    String key = "";
+    int id = 0;
+    if (cursor != null) {
+      int separator = cursor.lastIndexOf('\u0000');
+      key = cursor.substring(0, separator);
+      id = Integer.parseInt(cursor.substring(separator + 1));
+    }
+    List<Recipe> items = query(SELECT + " WHERE r.id IN (SELECT id FROM recipes"
+        + " WHERE name_key > ? OR (name_key = ? AND id > ?) ORDER BY name_key, id LIMIT ?)"
+        + " ORDER BY r.name_key, r.id, i.seq", key, key, id, limit + 1);
+    if (items.size() <= limit) {
+      return new Page<>(items, null);
+    }
+    items = items.subList(0, limit);
+    Recipe last = items.get(limit - 1);
+    return new Page<>(items, last.getName().toLowerCase() + "\u0000" + last.getId());
+  }
+
+  /**
+   * Returns a read-only view of all recipes, in the order they were added. Only the ids
+   * are read up front; the recipes are read as they are got.
+   *
+   * @return List of Recipe objects.
+   */
+  @Override
+  public synchronized List<Recipe> getRecipes() {
+    return new RecipeList(ids("SELECT id FROM recipes ORDER BY id"));
+  }
+
+  @Override
+  public SubstitutionGraph getSubstitutionGraph() {
+    return substitutions;
+  }
+
+  @Override
+  public NutritionTable getNutritionTable() {
+    return nutrition;
+  }
+
+  /**
+   * Returns the recipes that can be made with the groceries in a storage, using substitutes
+   * for ingredients that are short. Against a storage in the same database without
+   * substitutions, the recipes are found by the database.
+   *
+   * @param storage the GroceryStore to check against.
+   * @return an unmodifiable list of recipes that can be made, in the order they were added.
+   */
+  @Override
+  public List<Recipe> suggestRecipes(GroceryStore storage) {
+    long start = Metrics.start();
+    int[] ids = suggestions.get("suggestRecipes", storage.getId(),
+        storage.getVersion(), getVersion(), () -> joins(storage)
+            ? select(COVERED)
+            : match(storage, (pantry, recipe) -> substitutions.covers(pantry, recipe)));
+    SUGGEST.stop(start);
+    return new RecipeList(ids);
+  }
+
+  /**
+   * Returns the recipes that can be made partially with the groceries in a storage,
+   * or with substitutes for them.
+   *
+   * @param storage the GroceryStore to check against.
+   * @return an unmodifiable list of recipes that can be made partially.
+   */
+  @Override
+  public List<Recipe> suggestPartialRecipes(GroceryStore storage) {
+    long start = Metrics.start();
+    int[] ids = suggestions.get("suggestPartialRecipes", storage.getId(),
+        storage.getVersion(), getVersion(), () -> joins(storage)
+            ? select(INTERSECTING)
+            : match(storage, (pantry, recipe) -> substitutions.intersects(pantry, recipe)));
+    SUGGEST_PARTIAL.stop(start);
+    return new RecipeList(ids);
+  }
+
+  /**
+   * Finds how many servings of every recipe can be made with the stock in a storage,
+   * limited by the ingredient with the smallest ratio of stock to amount per serving.
+   * Against a storage in the same database, the ratios are computed by the database.
+   * Against other storages, only the ingredients and servings of every recipe are read,
+   * and the recipes that can be made are read whole afterwards.
+   *
+   * @param storage the GroceryStore to check against.
+   * @return the number of whole servings of each recipe that can be made at least once,
+   *     in the order the recipes were added. Recipes without ingredients get Integer.MAX_VALUE.
+   */
+  @Override
+  public Map<Recipe, Integer> maxServings(GroceryStore storage) {
+    long start = Metrics.start();
+    Map<Recipe, Integer> servings = new LinkedHashMap<>();
+    Map<Integer, Integer> counts = new LinkedHashMap<>();
+    if (storage instanceof SqlGroceryStore sql && sql.getUrl().equals(url)) {
+      synchronized (this) {
+        SqlBackend.transaction(connection, () -> {
+          try (Statement statement = connection.createStatement();
+               ResultSet rows = statement.executeQuery(SERVINGS)) {
+            while (rows.next()) {
+              double limit = rows.getDouble(2);
+              int count = rows.wasNull() ? Integer.MAX_VALUE
+                  : (int) Math.min(Integer.MAX_VALUE, Math.floor(limit + TOLERANCE));
+              if (count > 0) {
+                counts.put(rows.getInt(1), count);
+              }
+            }
+          }
+          return null;
+        });
+      }
+    } else {
+      PantryVector pantry = storage.snapshot().pantry();
+      synchronized (this) {
+        forEachVector(COMPACT + " ORDER BY r.id, i.seq", (id, vector) -> {
+          int count = pantry.maxServings(vector);
+          if (count > 0) {
+            counts.put(id, count);
+          }
+        });
+      }
+    }
+    synchronized (this) {
+      for (Recipe recipe : byIds(new ArrayList<>(counts.keySet()))) {
+        servings.put(recipe, counts.get(recipe.getId()));
+      }
+    }
+    MAX_SERVINGS.stop(start);
+    return servings;
+  }
+
+  /**
+   * Finds the recipes that use an ingredient through the index on ingredient names.
+   *
+   * @param ingredientId the id of the ingredient, from the {@link IngredientDictionary}.
+   * @return a new list of the recipes using the ingredient, in the order they were added.
+   */
+  @Override
+  public synchronized List<Recipe> recipesUsing(int ingredientId) {
+    String key = IngredientDictionary.keyOf(ingredientId);
+    if (key == null) {
+      return new ArrayList<>();
+    }
+    return query(SELECT + " WHERE r.id IN (SELECT recipe_id FROM recipe_ingredients"
+        + " WHERE name_key = ?) ORDER BY r.id, i.seq", key);
+  }
+
+  /**
+   * Finds the compiled ingredients of the recipes that use an ingredient through the index
+   * on ingredient names, reading only the ingredients and servings of the recipes.
+   *
+   * @param ingredientId the id of the ingredient, from the {@link IngredientDictionary}.
+   * @return a new map of the RecipeVector of each recipe using the ingredient, by recipe id.
+   */
+  @Override
+  public synchronized Map<Integer, RecipeVector> vectorsUsing(int ingredientId) {
+    Map<Integer, RecipeVector> vectors = new LinkedHashMap<>();
+    String key = IngredientDictionary.keyOf(ingredientId);
+    if (key == null) {
+      return vectors;
+    }
+    forEachVector(VECTORS, vectors::put, key);
+    return vectors;
+  }
+
+  @Override
+  public long exportBackup(OutputStream out) throws IOException {
+    return BackupFormat.exportRecipes(getRecipes(), out);
+  }
+
+  /**
+   * Adds the recipes in a backup, skipping recipes with a name that is already known.
+   * Recipes keep their ids unless the id is already taken, and are written in batches,
+   * each as one transaction.
+   *
+   * @param in the stream to read from.
+   * @return the number of recipes added.
+   * @throws IOException if the backup could not be read.
+   */
+  @Override
+  public synchronized long importBackup(InputStream in) throws IOException {
+    List<Recipe> batch = new ArrayList<>(BATCH_SIZE);
+    Set<String> names = new HashSet<>();
+    long[] added = new long[1];
+    BackupFormat.importRecipes(in, recipe -> {
+      if (names.add(recipe.getName().toLowerCase()) && findRecipe(recipe.getName()) == null) {
+        if (recipe.getId() < nextId) {
+          recipe.setId(0);
+        }
+        batch.add(recipe);
+        added[0]++;
+        if (batch.size() == BATCH_SIZE) {
+          insert(batch);
+          batch.clear();
+        }
+      }
+    });
+    insert(batch);
+    return added[0];
+  }
+
+  /**
+   * Checks whether the recipes can be matched by the database, which needs the storage
+   * to be in the same database and no substitutions.
+   *
+   * @param storage the storage to match against.
+   * @return true if the database can match the recipes, false otherwise.
+   */
+  private boolean joins(GroceryStore storage) {
+    return storage instanceof SqlGroceryStore sql && sql.getUrl().equals(url)
+        && substitutions.getSubstitutions().isEmpty();
+  }
+
+  /**
+   * Finds the ids of the recipes selected by a query.
+   *
+   * @param ids the query selecting the ids, which may list an id more than once.
+   * @return the ids, each once, in the order the recipes were added.
+   */
+  private synchronized int[] select(String ids) {
+    return ids("SELECT id FROM recipes WHERE id IN (" + ids + ") ORDER BY id");
+  }
+
+  /**
+   * Reads the ingredients and servings of every recipe with one cursor, and keeps the ids
+   * of the ones that match the pantry of a storage.
+   *
+   * @param storage the storage to match against.
+   * @param matches the test of a compiled recipe against the pantry.
+   * @return the ids of the matching recipes, in the order they were added.
+   */
+  private int[] match(GroceryStore storage, PantryTest matches) {
+    PantryVector pantry = storage.snapshot().pantry();
+    IntStream.Builder ids = IntStream.builder();
+    synchronized (this) {
+      forEachVector(COMPACT + " ORDER BY r.id, i.seq", (id, vector) -> {
+        if (matches.test(pantry, vector)) {
+          ids.add(id);
+        }
+      });
+    }
+    return ids.build().toArray();
+  }
+
+  /**
+   * A test of a compiled recipe against a pantry.
+   */
+  private interface PantryTest {
+    boolean test(PantryVector pantry, RecipeVector recipe);
+  }
+
+  /**
+   * A read-only list of recipes, holding only their ids and reading the recipes from the
+   * database as they are got. Iterating reads {@value #BATCH_SIZE} recipes per query.
+   */
+  private final class RecipeList extends AbstractList<Recipe> {
+    private final int[] ids;
+
+    /**
+     * Constructs a list of the recipes with the given ids.
+     *
+     * @param ids the ids of the recipes, in increasing order. They must not be changed.
+     */
+    private RecipeList(int[] ids) {
+      this.ids = ids;
+    }
+
+    @Override
+    public Recipe get(int index) {
+      synchronized (SqlRecipeCatalogue.this) {
+        return byIds(List.of(ids[index])).get(0);
+      }
+    }
+
+    @Override
+    public int size() {
+      return ids.length;
+    }
+
+    @Override
+    public Iterator<Recipe> iterator() {
+      return new Iterator<>() {
+        private int read;
+        private Iterator<Recipe> batch = Collections.emptyIterator();
+
+        @Override
+        public boolean hasNext() {
+          return batch.hasNext() || read < ids.length;
+        }
+
+        @Override
+        public Recipe next() {
+          if (!batch.hasNext()) {
+            if (read >= ids.length) {
+              throw new NoSuchElementException();
+            }
+            int end = Math.min(ids.length, read + BATCH_SIZE);
+            List<Integer> chunk = new ArrayList<>(end - read);
+            for (int i = read; i < end; i++) {
+              chunk.add(ids[i]);
+            }
+            synchronized (SqlRecipeCatalogue.this) {
+              batch = byIds(chunk).iterator();
+            }
+            read = end;
+          }
+          return batch.next();
+        }
+      };
+    }
+  }
+
+  /**
+   * Reads recipes by id, in chunks of {@value #BATCH_SIZE} ids per query.
+   *
+   * @param ids the ids of the recipes.
+   * @return the recipes that were found, ordered by id.
+   */
+  private List<Recipe> byIds(List<Integer> ids) {
+    List<Recipe> recipes = new ArrayList<>();
+    for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+      List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + BATCH_SIZE));
+      recipes.addAll(query(SELECT + " WHERE r.id IN (" + SqlBackend.placeholders(chunk.size())
+          + ") ORDER BY r.id, i.seq", chunk.toArray()));
+    }
+    return recipes;
+  }
+
+  /**
+   * Writes recipes to the database in one transaction, with one batched statement for the
+   * recipes and one for their ingredients, and adds them to the search index. Every
+   * ingredient row is given the total amount of that ingredient in its recipe.
+   * Recipes without an id are given one.
+   *
+   * @param recipes the recipes to add.
+   */
+  private void insert(List<Recipe> recipes) {
+    if (recipes.isEmpty()) {
+      return;
+    }
+    long start = Metrics.start();
+    int firstId = nextId;
+    for (Recipe recipe : recipes) {
+      if (recipe.getId() == 0) {
+        recipe.setId(nextId);
+      }
+      nextId = Math.max(nextId, recipe.getId() + 1);
+    }
+    try {
+      SqlBackend.transaction(connection, () -> {
+        try (PreparedStatement insertRecipe = connection.prepareStatement("INSERT INTO recipes "
+                 + "(id, name, name_key, servings, description) VALUES (?, ?, ?, ?, ?)");
+             PreparedStatement insertIngredient = connection.prepareStatement(
+                 "INSERT INTO recipe_ingredients "
+                     + "(recipe_id, seq, name, name_key, amount, unit, needed) "
+                     + "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+          for (Recipe recipe : recipes) {
+            insertRecipe.setInt(1, recipe.getId());
+            insertRecipe.setString(2, recipe.getName());
+            insertRecipe.setString(3, recipe.getName().toLowerCase());
+            insertRecipe.setInt(4, recipe.getServings());
+            insertRecipe.setString(5, recipe.getDescription());
+            insertRecipe.addBatch();
+            Map<String, Double> needed = new HashMap<>();
+            for (Ingredient ingredient : recipe.getIngredients()) {
+              needed.merge(StorageSnapshot.key(ingredient.getName()), ingredient.getAmount(),
+                  Double::sum);
+            }
+            int seq = 0;
+            for (Ingredient ingredient : recipe.getIngredients()) {
+              insertIngredient.setInt(1, recipe.getId());
+              insertIngredient.setInt(2, ++seq);
+              insertIngredient.setString(3, ingredient.getName());
+              insertIngredient.setString(4, StorageSnapshot.key(ingredient.getName()));
+              insertIngredient.setDouble(5, ingredient.getAmount());
+              insertIngredient.setString(6, ingredient.getUnit());
+              insertIngredient.setDouble(7,
+                  needed.get(StorageSnapshot.key(ingredient.getName())));
+              insertIngredient.addBatch();
+            }
+          }
+          insertRecipe.executeBatch();
+          insertIngredient.executeBatch();
+        }
+        return null;
+      });
+    } catch (IllegalStateException e) {
+      nextId = firstId;
+      throw e;
+    }
+    for (Recipe recipe : recipes) {
+      if (recipe.getId() > searchIndex.getLastId()) {
+        searchIndex.add(recipe);
+      }
+    }
+    saveSearchIndex();
+    version++;
+    IMPORT.stop(start);
+    for (Recipe recipe : recipes) {
+      for (RecipeListener listener : recipeListeners) {
+        listener.recipeAdded(recipe);
+      }
+    }
+  }
+
+  /**
+   * Loads the search index saved next to the database, and finds the next free id.
+   * If the index is missing, cannot be read, or does not hold the same recipes as the
+   * database, it is built again by streaming the recipes, and saved.
+   */
+  private void loadSearchIndex() {
+    long[] stored = SqlBackend.transaction(connection, () -> {
+      try (Statement statement = connection.createStatement();
+           ResultSet rows = statement.executeQuery("SELECT COUNT(*), MAX(id) FROM recipes")) {
+        rows.next();
+        return new long[] {rows.getLong(1), rows.getLong(2)};
+      }
+    });
+    nextId = (int) stored[1] + 1;
+    if (Files.exists(searchIndexPath)) {
+      try (ObjectInputStream ois =
+          new ObjectInputStream(new FileInputStream(searchIndexPath.toFile()))) {
+        RecipeSearchIndex loaded = (RecipeSearchIndex) ois.readObject();
+        if (loaded.size() == stored[0] && loaded.getLastId() == stored[1]) {
+          searchIndex = loaded;
+          return;
+        }
+      } catch (IOException | ClassNotFoundException | ClassCastException e) {
+        System.out.println("Error loading recipe search index: " + e.getMessage());
+      }
+    }
+    forEach(SELECT + " ORDER BY r.id, i.seq", searchIndex::add);
+    if (stored[0] > 0) {
+      saveSearchIndex();
+    }
+  }
+
+  /**
+   * Saves the search index in the background, from a copy taken right before writing.
+   */
+  private void saveSearchIndex() {
+    persistence.requestSave(searchIndexPath, this::copySearchIndex);
+  }
+
+  private synchronized RecipeSearchIndex copySearchIndex() {
+    return searchIndex.copy();
+  }
+
+  /**
+   * Finds the ids selected by a query.
+   *
+   * @param sql the query selecting the ids.
+   * @param parameters the parameters of the query.
+   * @return the ids in the order of the rows.
+   */
+  private int[] ids(String sql, Object... parameters) {
+    return SqlBackend.transaction(connection, () -> {
+      IntStream.Builder ids = IntStream.builder();
+      try (PreparedStatement select = prepare(sql, parameters);
+           ResultSet rows = select.executeQuery()) {
+        while (rows.next()) {
+          ids.add(rows.getInt(1));
+        }
+      }
+      return ids.build().toArray();
+    });
+  }
+
+  /**
+   * Runs a query selecting the columns of {@link #SELECT}, ordered so that the ingredients
+   * of each recipe are next to each other, and collects the recipe built from each run of rows.
+   *
+   * @param sql the query.
+   * @param parameters the parameters of the query.
+   * @return the recipes in the order of the rows.
+   */
+  private List<Recipe> query(String sql, Object... parameters) {
+    List<Recipe> recipes = new ArrayList<>();
+    forEach(sql, recipes::add, parameters);
+    return recipes;
+  }
+
+  /**
+   * Runs a query selecting the columns of {@link #SELECT}, ordered so that the ingredients
+   * of each recipe are next to each other, and hands each recipe on as soon as its rows have
+   * been read, so the recipes are never held all at once.
+   *
+   * @param sql the query.
+   * @param action takes each recipe, in the order of the rows.
+   * @param parameters the parameters of the query.
+   */
+  private void forEach(String sql, Consumer<Recipe> action, Object... parameters) {
+    SqlBackend.transaction(connection, () -> {
+      try (PreparedStatement select = prepare(sql, parameters);
+           ResultSet rows = select.executeQuery()) {
+        Recipe recipe = null;
+        while (rows.next()) {
+          int id = rows.getInt(1);
+          if (recipe == null || recipe.getId() != id) {
+            if (recipe != null) {
+              action.accept(recipe);
+            }
+            recipe = new Recipe(rows.getString(2));
+            recipe.setId(id);
+            recipe.setServings(rows.getInt(3));
+            recipe.setDescription(rows.getString(4));
+          }
+          String ingredient = rows.getString(5);
+          if (ingredient != null) {
+            recipe.addIngredient(new Ingredient(ingredient, rows.getDouble(6),
+                rows.getString(7)));
+          }
+        }
+        if (recipe != null) {
+          action.accept(recipe);
+        }
+      }
+      return null;
+    });
+  }
+
+  /**
+   * Runs a query selecting the columns of {@link #COMPACT}, ordered so that the ingredients
+   * of each recipe are next to each other, and hands on the compiled ingredients of each
+   * recipe as soon as its rows have been read.
+   *
+   * @param sql the query.
+   * @param action takes the id and the RecipeVector of each recipe, in the order of the rows.
+   * @param parameters the parameters of the query.
+   */
+  private void forEachVector(String sql, BiConsumer<Integer, RecipeVector> action,
+      Object... parameters) {
+    SqlBackend.transaction(connection, () -> {
+      try (PreparedStatement select = prepare(sql, parameters);
+           ResultSet rows = select.executeQuery()) {
+        int id = 0;
+        int servings = 0;
+        List<Ingredient> ingredients = null;
+        while (rows.next()) {
+          if (ingredients == null || rows.getInt(1) != id) {
+            if (ingredients != null) {
+              action.accept(id, new RecipeVector(ingredients, servings));
+            }
+            id = rows.getInt(1);
+            servings = rows.getInt(2);
+            ingredients = new ArrayList<>();
+          }
+          String ingredient = rows.getString(3);
+          if (ingredient != null) {
+            ingredients.add(new Ingredient(ingredient, rows.getDouble(4), rows.getString(5)));
+          }
+        }
+        if (ingredients != null) {
+          action.accept(id, new RecipeVector(ingredients, servings));
+        }
+      }
+      return null;
+    });
+  }
+
+  /**
+   * Prepares a query, setting its parameters and asking for the rows {@value #BATCH_SIZE}
+   * at a time.
+   *
+   * @param sql the query.
+   * @param parameters the parameters of the query.
+   * @return the PreparedStatement, which the caller must close.
+   * @throws SQLException if the query could not be prepared.
+   */
+  private PreparedStatement prepare(String sql, Object... parameters) throws SQLException {
+    PreparedStatement select = connection.prepareStatement(sql);
+    try {
+      select.setFetchSize(BATCH_SIZE);
+      for (int i = 0; i < parameters.length; i++) {
+        select.setObject(i + 1, parameters[i]);
+      }
+      return select;
+    } catch (SQLException e) {
+      select.close();
+      throw e;
+    }
+  }
+}
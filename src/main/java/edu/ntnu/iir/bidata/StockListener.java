@@ -0,0 +1,16 @@
+package edu.ntnu.iir.bidata;
+
+/**
+ * Is told when the stock of an ingredient in a {@link FoodStorage} changes.
+ * Listeners are called on the thread that made the change, after the new snapshot
+ * has been published, so they must be quick and must not change the storage.
+ */
+@FunctionalInterface
+public interface StockListener {
+  /**
+   * Called after the stock of an ingredient has changed.
+   *
+   * @param ingredientId the id of the ingredient, from the {@link IngredientDictionary}.
+   */
+  void stockChanged(int ingredientId);
+}
@@ -0,0 +1,109 @@
+package edu.ntnu.iir.bidata;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * A storage engine for the groceries and recipes of the app.
+ * Backends are found with a {@link ServiceLoader}, so a new engine is added by putting
+ * a jar with the implementation on the class path, listed in
+ * {@code META-INF/services/edu.ntnu.iir.bidata.StorageBackend}. The backend is chosen
+ * by name when the app starts. The file backend, {@link FileBackend}, is always there.
+ * Every backend must pass the shared conformance tests for storages and catalogues.
+ */
+public interface StorageBackend {
+
+  /**
+   * Gets the name the backend is chosen by, such as "files".
+   *
+   * @return the name of the backend.
+   */
+  String getName();
+
+  /**
+   * Opens the grocery storage kept in a directory, loading what was saved there before.
+   *
+   * @param persistence the PersistenceService used to save in the background.
+   * @param directory the directory holding the data of the storage.
+   * @return the GroceryStore.
+   */
+  GroceryStore openGroceryStore(PersistenceService persistence, Path directory);
+
+  /**
+   * Opens the recipe catalogue kept in a directory, loading what was saved there before.
+   *
+   * @param persistence the PersistenceService used to save in the background.
+   * @param directory the directory holding the data of the catalogue.
+   * @return the RecipeCatalogue.
+   */
+  RecipeCatalogue openRecipeCatalogue(PersistenceService persistence, Path directory);
+
+  /**
+   * Checks whether the backend can be used, for example whether the libraries it needs
+   * are on the class path.
+   *
+   * @return true if the backend can open storages, false otherwise.
+   */
+  default boolean isAvailable() {
+    return true;
+  }
+
+  /**
+   * Finds every backend on the class path that can be used.
+   *
+   * @return the backends, the file backend first.
+   */
+  static List<StorageBackend> available() {
+    List<StorageBackend> backends = new ArrayList<>();
+    for (StorageBackend backend : installed()) {
+      if (backend.isAvailable()) {
+        backends.add(backend);
+      }
+    }
+    return backends;
+  }
+
+  /**
+   * Finds a backend by name, ignoring case.
+   *
+   * @param name the name of the backend.
+   * @return the StorageBackend.
+   * @throws IllegalArgumentException if there is no backend with the name, or it can not
+   *     be used.
+   */
+  static StorageBackend find(String name) {
+    List<String> names = new ArrayList<>();
+    for (StorageBackend backend : installed()) {
+      if (backend.getName().equalsIgnoreCase(name.trim())) {
+        if (!backend.isAvailable()) {
+          throw new IllegalArgumentException("Storage backend " + backend.getName()
+              + " is not available");
+        }
+        return backend;
+      }
+      if (backend.isAvailable()) {
+        names.add(backend.getName());
+      }
+    }
+    throw new IllegalArgumentException("Unknown storage backend " + name
+        + ", available: " + String.join(", ", names));
+  }
+
+  /**
+   * Finds every backend on the class path, whether it can be used or not.
+   *
+   * @return the backends, the file backend first.
+   */
+  private static List<StorageBackend> installed() {
+    List<StorageBackend> backends = new ArrayList<>();
+    backends.add(new FileBackend());
+    for (StorageBackend backend : ServiceLoader.load(StorageBackend.class)) {
+      if (!backend.getName().equals(FileBackend.NAME)) {
+        backends.add(backend);
+      }
+    }
+    return backends;
+  }
+}
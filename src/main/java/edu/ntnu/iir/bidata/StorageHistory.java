@@ -0,0 +1,293 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the earlier versions of a {@link FoodStorage}, for undo and redo and for looking
+ * up what the storage held at an earlier time.
+ * Snapshots share everything but the changed groceries with each other, so keeping many
+ * of them costs little, and undoing a change only makes an earlier snapshot current again.
+ * Each undo step remembers which groceries its change touched, so only those have to be
+ * announced to the stock listeners.
+ * The snapshots of this session are kept in memory, by the time they were made. For earlier
+ * times, checkpoints of the whole storage are saved to disk at most once every hour.
+ * Not thread-safe on its own: the undo and redo steps are only used while holding
+ * the storage lock, and the timeline and checkpoints are guarded by this object.
+ */
+final class StorageHistory {
+  private static final int MAX_UNDO = 100;
+  private static final int MAX_TIMELINE = 1000;
+  private static final int MAX_CHECKPOINTS = 720;
+  private static final int LOADED_CHECKPOINTS = 4;
+  private static final long CHECKPOINT_INTERVAL_MILLIS = 60 * 60 * 1000L;
+  private static final Pattern CHECKPOINT_NAME = Pattern.compile("groceries-(\\d+)\\.dat");
+  private static final LatencyHistogram LOAD_CHECKPOINT =
+      Metrics.histogram("history.loadCheckpoint");
+  private final Deque<Step> undo = new ArrayDeque<>();
+  private final Deque<Step> redo = new ArrayDeque<>();
+  private Step open;
+  private final TreeMap<Long, StorageSnapshot> timeline = new TreeMap<>();
+  private final TreeMap<Long, Path> checkpoints = new TreeMap<>();
+  private final Map<Long, StorageSnapshot> loaded =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, StorageSnapshot> eldest) {
+          return size() > LOADED_CHECKPOINTS;
+        }
+      };
+  private final Path checkpointDirectory;
+  private final PersistenceService persistence;
+  private long lastCheckpoint;
+
+  /**
+   * One change that can be undone: the snapshot before it, and the groceries it touched.
+   */
+  static final class Step {
+    private final StorageSnapshot snapshot;
+    private final Set<String> names;
+
+    private Step(StorageSnapshot snapshot, Set<String> names) {
+      this.snapshot = snapshot;
+      this.names = names;
+    }
+
+    StorageSnapshot getSnapshot() {
+      return snapshot;
+    }
+
+    Set<String> getNames() {
+      return names;
+    }
+  }
+
+  /**
+   * Constructs a history, finding the checkpoints already saved in its directory.
+   *
+   * @param checkpointDirectory the directory holding the checkpoints.
+   * @param persistence the PersistenceService used to save checkpoints.
+   */
+  StorageHistory(Path checkpointDirectory, PersistenceService persistence) {
+    this.checkpointDirectory = checkpointDirectory;
+    this.persistence = persistence;
+    if (Files.isDirectory(checkpointDirectory)) {
+      try (Stream<Path> files = Files.list(checkpointDirectory)) {
+        for (Path file : (Iterable<Path>) files::iterator) {
+          Matcher matcher = CHECKPOINT_NAME.matcher(file.getFileName().toString());
+          if (matcher.matches()) {
+            checkpoints.put(Long.parseLong(matcher.group(1)), file);
+          }
+        }
+      } catch (IOException e) {
+        System.out.println("Couldn't read the storage history: " + e.getMessage());
+      }
+    }
+    lastCheckpoint = checkpoints.isEmpty() ? 0 : checkpoints.lastKey();
+  }
+
+  /**
+   * Starts a change that can be undone.
+   *
+   * @param before the snapshot before the change.
+   */
+  void begin(StorageSnapshot before) {
+    open = new Step(before, new HashSet<>());
+  }
+
+  /**
+   * Notes that the open change touched a grocery.
+   *
+   * @param name the name of the grocery.
+   */
+  void touched(String name) {
+    if (open != null) {
+      open.names.add(StorageSnapshot.key(name));
+    }
+  }
+
+  /**
+   * Ends the open change, keeping it as an undo step if it touched anything.
+   * A new undo step drops the steps that could be redone.
+   *
+   * @param after the snapshot after the change.
+   */
+  void end(StorageSnapshot after) {
+    if (open != null && !open.names.isEmpty()) {
+      undo.push(open);
+      if (undo.size() > MAX_UNDO) {
+        undo.removeLast();
+      }
+      redo.clear();
+      record(after);
+    }
+    open = null;
+  }
+
+  /**
+   * Takes the newest undo step, and keeps the current snapshot so it can be redone.
+   *
+   * @param current the current snapshot.
+   * @return the step to undo, or null if there is nothing to undo.
+   */
+  Step undo(StorageSnapshot current) {
+    return move(undo, redo, current);
+  }
+
+  /**
+   * Takes the newest redo step, and keeps the current snapshot so it can be undone again.
+   *
+   * @param current the current snapshot.
+   * @return the step to redo, or null if there is nothing to redo.
+   */
+  Step redo(StorageSnapshot current) {
+    return move(redo, undo, current);
+  }
+
+  private static Step move(Deque<Step> from, Deque<Step> to, StorageSnapshot current) {
+    Step step = from.poll();
+    if (step != null) {
+      to.push(new Step(current, step.names));
+    }
+    return step;
+  }
+
+  /**
+   * Drops every undo and redo step. Used after changes that must not be undone,
+   * such as expired lots that have been recorded as waste.
+   */
+  void clearUndo() {
+    undo.clear();
+    redo.clear();
+  }
+
+  int getUndoCount() {
+    return undo.size();
+  }
+
+  int getRedoCount() {
+    return redo.size();
+  }
+
+  /**
+   * Adds a snapshot to the timeline, as what the storage holds from now on.
+   *
+   * @param snapshot the current snapshot.
+   */
+  synchronized void record(StorageSnapshot snapshot) {
+    timeline.put(System.currentTimeMillis(), snapshot);
+    if (timeline.size() > MAX_TIMELINE) {
+      timeline.pollFirstEntry();
+    }
+  }
+
+  /**
+   * Saves a checkpoint of the storage if the last one is more than an hour old.
+   *
+   * @param snapshot the current snapshot.
+   * @param time the time the snapshot is from.
+   */
+  synchronized void checkpoint(StorageSnapshot snapshot, long time) {
+    if (time - lastCheckpoint >= CHECKPOINT_INTERVAL_MILLIS) {
+      write(snapshot, time);
+    }
+  }
+
+  /**
+   * Saves a checkpoint of the storage as loaded from file, if it was saved after the last
+   * checkpoint. This keeps the changes made in the last hour of the previous session.
+   *
+   * @param snapshot the snapshot loaded from file.
+   * @param time the time the file was saved.
+   */
+  synchronized void checkpointLoaded(StorageSnapshot snapshot, long time) {
+    if (time > lastCheckpoint) {
+      write(snapshot, time);
+    }
+  }
+
+  /**
+   * Saves a checkpoint in the background, and deletes the oldest checkpoints when there
+   * are more than {@value #MAX_CHECKPOINTS}.
+   */
+  private void write(StorageSnapshot snapshot, long time) {
+    try {
+      Files.createDirectories(checkpointDirectory);
+    } catch (IOException e) {
+      System.out.println("Couldn't save the storage history: " + e.getMessage());
+      return;
+    }
+    lastCheckpoint = time;
+    Path file = checkpointDirectory.resolve("groceries-" + time + ".dat");
+    checkpoints.put(time, file);
+    loaded.put(time, snapshot);
+    persistence.requestSave(file, snapshot::getGroceries);
+    while (checkpoints.size() > MAX_CHECKPOINTS) {
+      Map.Entry<Long, Path> eldest = checkpoints.pollFirstEntry();
+      Path oldest = eldest.getValue();
+      loaded.remove(eldest.getKey());
+      try {
+        Files.deleteIfExists(oldest);
+      } catch (IOException e) {
+        System.out.println("Couldn't delete old history " + oldest + ": " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Finds what the storage held at a time.
+   * Times during this session are answered from memory. Earlier times are answered from
+   * the newest checkpoint before them, which is loaded once and then kept for a while.
+   *
+   * @param time the time in milliseconds.
+   * @return the snapshot, or null if the history does not go back that far.
+   */
+  synchronized StorageSnapshot snapshotAt(long time) {
+    Map.Entry<Long, StorageSnapshot> recent = timeline.floorEntry(time);
+    if (recent != null) {
+      return recent.getValue();
+    }
+    Map.Entry<Long, Path> checkpoint = checkpoints.floorEntry(time);
+    if (checkpoint == null) {
+      return null;
+    }
+    StorageSnapshot snapshot = loaded.get(checkpoint.getKey());
+    if (snapshot == null) {
+      snapshot = load(checkpoint.getValue());
+      if (snapshot != null) {
+        loaded.put(checkpoint.getKey(), snapshot);
+      }
+    }
+    return snapshot;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static StorageSnapshot load(Path file) {
+    long start = Metrics.start();
+    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file.toFile()))) {
+      StorageSnapshot snapshot = StorageSnapshot.empty(0);
+      for (Grocery grocery : (List<Grocery>) ois.readObject()) {
+        snapshot = snapshot.replace(null, grocery);
+      }
+      return snapshot;
+    } catch (IOException | ClassNotFoundException e) {
+      System.out.println("Couldn't read the storage history " + file + ": " + e.getMessage());
+      return null;
+    } finally {
+      LOAD_CHECKPOINT.stop(start);
+    }
+  }
+}
@@ -0,0 +1,283 @@
+package edu.ntnu.iir.bidata;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An immutable, point-in-time view of the groceries in a {@link FoodStorage}.
+ * Snapshots are built from persistent maps, so publishing a new version after a change
+ * shares everything except the changed grocery with the previous version.
+ * Readers can keep using a snapshot for as long as they like without
+ * blocking, or being disturbed by, later changes to the storage.
+ * Groceries are frozen when they are put in a snapshot, so they can not be changed through
+ * the snapshot either; a storage changes a copy and puts that in the next snapshot.
+ */
+public final class StorageSnapshot {
+  private final long version;
+  private final PersistentSortedMap<String, Grocery> byName;
+  private final PersistentSortedMap<ExpiryKey, Grocery> byExpiry;
+  private volatile PantryVector pantry;
+
+  /**
+   * The key of a grocery in the expiry index: its earliest best-before time, then its
+   * name key. The key is taken when the grocery is put in the snapshot.
+   */
+  private static final class ExpiryKey implements Comparable<ExpiryKey> {
+    private final long bestBefore;
+    private final String name;
+
+    private ExpiryKey(long bestBefore, String name) {
+      this.bestBefore = bestBefore;
+      this.name = name;
+    }
+
+    private static ExpiryKey of(Grocery grocery) {
+      return new ExpiryKey(grocery.getBestBeforeDate().getTime(), key(grocery.getName()));
+    }
+
+    @Override
+    public int compareTo(ExpiryKey other) {
+      int byTime = Long.compare(bestBefore, other.bestBefore);
+      return byTime != 0 ? byTime : name.compareTo(other.name);
+    }
+  }
+
+  private StorageSnapshot(long version, PersistentSortedMap<String, Grocery> byName,
+                          PersistentSortedMap<ExpiryKey, Grocery> byExpiry,
+                          PantryVector pantry) {
+    this.version = version;
+    this.byName = byName;
+    this.byExpiry = byExpiry;
+    this.pantry = pantry;
+  }
+
+  /**
+   * Creates an empty snapshot.
+   *
+   * @param version the version number of the snapshot.
+   * @return a snapshot without groceries.
+   */
+  static StorageSnapshot empty(long version) {
+    return new StorageSnapshot(version, PersistentSortedMap.empty(Comparator.naturalOrder()),
+        PersistentSortedMap.empty(Comparator.naturalOrder()), null);
+  }
+
+  /**
+   * Creates the next version of this snapshot with one grocery replaced.
+   * If the pantry of this snapshot has been built, the pantry of the new snapshot is made
+   * from it by changing the amount of the replaced grocery.
+   *
+   * @param previous the grocery currently in the snapshot, or null if it is new.
+   * @param updated the grocery to put in its place, or null or empty to remove it.
+   *     It is frozen, so it must not be used for further changes.
+   * @return the new snapshot. This snapshot is not changed.
+   */
+  StorageSnapshot replace(Grocery previous, Grocery updated) {
+    PersistentSortedMap<String, Grocery> names = byName;
+    PersistentSortedMap<ExpiryKey, Grocery> expiry = byExpiry;
+    PantryVector derived = pantry;
+    Grocery kept = updated != null && !updated.isEmpty() ? updated : null;
+    if (previous != null) {
+      names = names.remove(key(previous.getName()));
+      expiry = expiry.remove(ExpiryKey.of(previous));
+      if (derived != null
+          && (kept == null || !key(previous.getName()).equals(key(kept.getName())))) {
+        derived = derived.with(IngredientDictionary.idOf(previous.getName()), 0);
+      }
+    }
+    if (kept != null) {
+      kept.freeze();
+      names = names.put(key(kept.getName()), kept);
+      expiry = expiry.put(ExpiryKey.of(kept), kept);
+      if (derived != null) {
+        derived = derived.with(IngredientDictionary.idOf(kept.getName()), kept.getAmount());
+      }
+    }
+    return new StorageSnapshot(version + 1, names, expiry, derived);
+  }
+
+  /**
+   * Creates a snapshot with the same groceries under another version number.
+   * Used when an older snapshot becomes current again, so that the version still
+   * increases with every change. Nothing is copied.
+   *
+   * @param newVersion the version number of the new snapshot.
+   * @return the new snapshot. This snapshot is not changed.
+   */
+  StorageSnapshot withVersion(long newVersion) {
+    return new StorageSnapshot(newVersion, byName, byExpiry, pantry);
+  }
+
+  /**
+   * Gets the version of the storage this snapshot was taken from.
+   * The version increases by one for every change to the storage.
+   *
+   * @return the version number.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Searches for a grocery by name.
+   *
+   * @param name the name of the grocery to search for.
+   * @return the Grocery object if found, null otherwise.
+   */
+  public Grocery searchGrocery(String name) {
+    return byName.get(key(name));
+  }
+
+  /**
+   * Retrieves all groceries in the snapshot, in alphabetical order, without copying them.
+   *
+   * @return an unmodifiable List of the frozen Grocery objects.
+   */
+  public List<Grocery> getGroceries() {
+    return byName.valueView();
+  }
+
+  /**
+   * Retrieves one page of groceries in alphabetical order.
+   * The page starts right after the cursor, found in O(log n),
+   * so later pages cost no more than the first one.
+   *
+   * @param cursor the cursor from the previous page, or null for the first page.
+   * @param limit the largest number of groceries on the page.
+   * @return the Page of Grocery objects.
+   */
+  public Page<Grocery> listGroceries(String cursor, int limit) {
+    List<Grocery> items = new ArrayList<>(limit);
+    Iterator<Map.Entry<String, Grocery>> it = byName.iteratorAfter(cursor);
+    String last = null;
+    while (items.size() < limit && it.hasNext()) {
+      Map.Entry<String, Grocery> entry = it.next();
+      items.add(entry.getValue());
+      last = entry.getKey();
+    }
+    return new Page<>(items, it.hasNext() ? last : null);
+  }
+
+  /**
+   * Gets the groceries of this snapshot indexed by ingredient id, for recipe matching.
+   * The pantry is built the first time it is asked for and then reused,
+   * so repeated matching against an unchanged storage builds it only once. Later snapshots
+   * of the storage make theirs from it as groceries change, without building it again.
+   *
+   * @return the PantryVector of this snapshot.
+   */
+  public PantryVector pantry() {
+    PantryVector result = pantry;
+    if (result == null) {
+      result = new PantryVector(this);
+      pantry = result;
+    }
+    return result;
+  }
+
+  /**
+   * Gets the number of groceries in the snapshot.
+   *
+   * @return the number of groceries.
+   */
+  public int size() {
+    return byName.size();
+  }
+
+  /**
+   * Retrieves the groceries that have at least one lot expiring before the given date,
+   * earliest-expiring first.
+   *
+   * @param date the date to compare against, usually the start of today.
+   * @return List of Grocery objects with expired lots.
+   */
+  public List<Grocery> getExpiredGroceries(Date date) {
+    List<Grocery> expired = new ArrayList<>();
+    for (Map.Entry<ExpiryKey, Grocery> entry : byExpiry) {
+      if (entry.getKey().bestBefore >= date.getTime()) {
+        break;
+      }
+      expired.add(entry.getValue());
+    }
+    return expired;
+  }
+
+  /**
+   * Retrieves the groceries whose earliest lot has not expired before the given date,
+   * earliest-expiring first. The expiry index is entered at the date in O(log n),
+   * so the groceries that have expired are not gone through.
+   *
+   * @param date the date to compare against, usually the start of today.
+   * @return List of Grocery objects that have not yet expired.
+   */
+  public List<Grocery> getGroceriesExpiringFrom(Date date) {
+    List<Grocery> expiring = new ArrayList<>();
+    Iterator<Map.Entry<ExpiryKey, Grocery>> it =
+        byExpiry.iteratorAfter(new ExpiryKey(date.getTime(), ""));
+    while (it.hasNext()) {
+      expiring.add(it.next().getValue());
+    }
+    return expiring;
+  }
+
+  /**
+   * Streams all groceries in alphabetical order, without copying them into a list.
+   * A parallel stream splits the snapshot into ranges of groceries by position.
+   *
+   * @param parallel true for a parallel stream, false for a sequential one.
+   * @return a Stream of the groceries.
+   */
+  public Stream<Grocery> groceryStream(boolean parallel) {
+    return StreamSupport.stream(byName.valueSpliterator(), parallel);
+  }
+
+  /**
+   * Iterates over all groceries, earliest-expiring first, without copying them into a list.
+   *
+   * @return an Iterable over the groceries in order of their earliest best-before date.
+   */
+  public Iterable<Grocery> groceriesByExpiry() {
+    return () -> new Iterator<>() {
+      private final Iterator<Map.Entry<ExpiryKey, Grocery>> entries = byExpiry.iterator();
+
+      @Override
+      public boolean hasNext() {
+        return entries.hasNext();
+      }
+
+      @Override
+      public Grocery next() {
+        return entries.next().getValue();
+      }
+    };
+  }
+
+  /**
+   * Calculates the total value of all groceries in the snapshot.
+   *
+   * @return the total value in NOK.
+   */
+  public double getTotalValue() {
+    double totalValue = 0;
+    for (Map.Entry<String, Grocery> entry : byName) {
+      totalValue += entry.getValue().calculateTotalValue();
+    }
+    return totalValue;
+  }
+
+  /**
+   * Gets the index key for a grocery name.
+   *
+   * @param name the name of the grocery.
+   * @return the name in lower case.
+   */
+  static String key(String name) {
+    return name.toLowerCase();
+  }
+}
@@ -0,0 +1,88 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.Serializable;
+
+/**
+ * Says that one ingredient can be used instead of another.
+ * The ratio is how much of the substitute replaces one unit of the original,
+ * and the penalty says how much worse the result is, where 0 means just as good.
+ * Substitutions are also used for chains of substitutions, with the ratios
+ * multiplied and the penalties added.
+ */
+public class Substitution implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private final String original;
+  private final String substitute;
+  private final double ratio;
+  private final double penalty;
+
+  /**
+   * Constructs a new Substitution.
+   *
+   * @param original the name of the ingredient in the recipe.
+   * @param substitute the name of the ingredient that can be used instead.
+   * @param ratio the amount of the substitute to use per unit of the original.
+   * @param penalty how much worse the substitute is, 0 or more.
+   * @throws IllegalArgumentException if any parameter is invalid.
+   */
+  public Substitution(String original, String substitute, double ratio, double penalty) {
+    if (original == null || original.isBlank() || substitute == null || substitute.isBlank()) {
+      throw new IllegalArgumentException("Ingredient names cannot be null or blank");
+    }
+    if (original.equalsIgnoreCase(substitute)) {
+      throw new IllegalArgumentException("An ingredient cannot substitute itself");
+    }
+    if (ratio <= 0) {
+      throw new IllegalArgumentException("Ratio must be greater than 0");
+    }
+    if (penalty < 0) {
+      throw new IllegalArgumentException("Penalty cannot be negative");
+    }
+    this.original = original;
+    this.substitute = substitute;
+    this.ratio = ratio;
+    this.penalty = penalty;
+  }
+
+  /**
+   * Gets the name of the ingredient being replaced.
+   *
+   * @return the name of the original ingredient.
+   */
+  public String getOriginal() {
+    return original;
+  }
+
+  /**
+   * Gets the name of the ingredient used instead.
+   *
+   * @return the name of the substitute.
+   */
+  public String getSubstitute() {
+    return substitute;
+  }
+
+  /**
+   * Gets the amount of the substitute to use per unit of the original.
+   *
+   * @return the ratio.
+   */
+  public double getRatio() {
+    return ratio;
+  }
+
+  /**
+   * Gets how much worse the substitute is than the original.
+   *
+   * @return the penalty, 0 or more.
+   */
+  public double getPenalty() {
+    return penalty;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s instead of %s (ratio %.2f, penalty %.1f)",
+        substitute, original, ratio, penalty);
+  }
+}
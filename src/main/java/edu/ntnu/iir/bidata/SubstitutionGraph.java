@@ -0,0 +1,340 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * A graph of ingredient substitutions, such as margarine for butter.
+ * Substitutions chain: if margarine can replace butter and oil can replace margarine,
+ * oil can replace butter, with the ratios multiplied and the penalties added.
+ * Every time a substitution is added, the transitive closure is computed once into an array
+ * of candidates per ingredient id, cheapest penalty first, so matching a recipe only
+ * looks through the candidates of the ingredients that are short, and never searches the graph.
+ */
+public class SubstitutionGraph {
+  private static final double TOLERANCE = 1e-9;
+  private static final Substitution[] NO_CANDIDATES = new Substitution[0];
+  private final List<Substitution> substitutions = new ArrayList<>();
+  private final PersistenceService persistence;
+  private final Path filePath;
+  private volatile Closure closure;
+  private volatile long version;
+
+  /**
+   * The precomputed closure: for every ingredient id, the substitutes reachable from it,
+   * cheapest penalty first, and their ingredient ids. It never changes after it is built.
+   */
+  private static final class Closure {
+    private final Substitution[][] candidates;
+    private final int[][] ids;
+
+    private Closure(Substitution[][] candidates, int[][] ids) {
+      this.candidates = candidates;
+      this.ids = ids;
+    }
+  }
+
+  /**
+   * Constructs a new SubstitutionGraph and loads existing substitutions from file if available.
+   *
+   * @param persistence the PersistenceService used to save the substitutions.
+   * @param filePath the file the substitutions are kept in.
+   */
+  public SubstitutionGraph(PersistenceService persistence, Path filePath) {
+    this.persistence = persistence;
+    this.filePath = filePath;
+    loadFromFile();
+    closure = buildClosure(substitutions);
+  }
+
+  /**
+   * Adds a substitution and saves the graph. A substitution for the same pair of
+   * ingredients replaces the earlier one.
+   *
+   * @param substitution the Substitution to add.
+   */
+  public synchronized void addSubstitution(Substitution substitution) {
+    substitutions.removeIf(s -> s.getOriginal().equalsIgnoreCase(substitution.getOriginal())
+        && s.getSubstitute().equalsIgnoreCase(substitution.getSubstitute()));
+    substitutions.add(substitution);
+    closure = buildClosure(substitutions);
+    version++;
+    persistence.requestSave(filePath, this::getSubstitutions);
+  }
+
+  /**
+   * Gets the version of the graph, which increases by one for every added substitution.
+   *
+   * @return the version number.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Retrieves the substitutions that have been added, not including chains.
+   *
+   * @return a copy of the list of Substitution objects.
+   */
+  public synchronized List<Substitution> getSubstitutions() {
+    return new ArrayList<>(substitutions);
+  }
+
+  /**
+   * Retrieves every ingredient that can replace an ingredient, directly or through a chain.
+   *
+   * @param name the name of the ingredient.
+   * @return the substitutes, cheapest penalty first.
+   */
+  public List<Substitution> getCandidates(String name) {
+    return List.of(candidatesOf(closure, IngredientDictionary.idOf(name)));
+  }
+
+  /**
+   * Finds the cheapest substitute with enough stock to make up for a missing amount,
+   * checking the whole stock of each substitute.
+   *
+   * @param pantry the PantryVector to check against.
+   * @param ingredientId the id of the ingredient that is short.
+   * @param missing the amount of the ingredient that is missing.
+   * @return the Substitution to use, or null if no substitute has enough stock.
+   */
+  public Substitution findSubstitute(PantryVector pantry, int ingredientId, double missing) {
+    return findSubstitute(pantry, ingredientId, missing, new HashMap<>());
+  }
+
+  /**
+   * Finds the cheapest substitute with enough stock left to make up for a missing amount,
+   * and charges the amount it uses to the tally, so the same stock is not used twice when
+   * several ingredients of a recipe are short.
+   *
+   * @param pantry the PantryVector to check against.
+   * @param ingredientId the id of the ingredient that is short.
+   * @param missing the amount of the ingredient that is missing.
+   * @param used the amounts already used by the recipe, by ingredient id.
+   * @return the Substitution to use, or null if no substitute has enough stock left.
+   */
+  public Substitution findSubstitute(PantryVector pantry, int ingredientId, double missing,
+      Map<Integer, Double> used) {
+    Closure current = closure;
+    Substitution[] candidates = candidatesOf(current, ingredientId);
+    for (int i = 0; i < candidates.length; i++) {
+      int substituteId = current.ids[ingredientId][i];
+      double needed = missing * candidates[i].getRatio();
+      if (pantry.amountOf(substituteId) - used.getOrDefault(substituteId, 0.0) + TOLERANCE
+          >= needed) {
+        used.merge(substituteId, needed, Double::sum);
+        return candidates[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Checks whether a recipe can be made for a number of servings, using substitutes
+   * for ingredients that are short. What is missing of an ingredient is made up
+   * by a single substitute, from the stock not already used by the recipe.
+   *
+   * @param pantry the PantryVector to check against.
+   * @param recipe the compiled recipe.
+   * @param servings the number of servings wanted.
+   * @return true if every ingredient is in stock or can be substituted, false otherwise.
+   */
+  public boolean covers(PantryVector pantry, RecipeVector recipe, int servings) {
+    return pantry.covers(recipe, servings) || substitute(pantry, recipe, servings, null);
+  }
+
+  /**
+   * Checks whether a recipe can be made, using substitutes for ingredients that are short.
+   *
+   * @param pantry the PantryVector to check against.
+   * @param recipe the compiled recipe.
+   * @return true if every ingredient is in stock or can be substituted, false otherwise.
+   */
+  public boolean covers(PantryVector pantry, RecipeVector recipe) {
+    return pantry.covers(recipe) || covers(pantry, recipe, recipe.servings());
+  }
+
+  /**
+   * Checks whether at least one ingredient of a recipe, or a substitute for it, is in stock.
+   *
+   * @param pantry the PantryVector to check against.
+   * @param recipe the compiled recipe.
+   * @return true if any ingredient or substitute is in stock, false otherwise.
+   */
+  public boolean intersects(PantryVector pantry, RecipeVector recipe) {
+    if (pantry.intersects(recipe)) {
+      return true;
+    }
+    Closure current = closure;
+    for (int i = 0; i < recipe.size(); i++) {
+      int id = recipe.idAt(i);
+      if (id < current.ids.length && current.ids[id] != null) {
+        for (int substituteId : current.ids[id]) {
+          if (pantry.amountOf(substituteId) > 0) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Chooses the substitutes to use when making a recipe for a number of servings.
+   *
+   * @param pantry the PantryVector to check against.
+   * @param recipe the compiled recipe.
+   * @param servings the number of servings wanted.
+   * @return the Substitution chosen for each ingredient that is short and can be substituted.
+   */
+  public List<Substitution> chooseSubstitutes(PantryVector pantry, RecipeVector recipe,
+      int servings) {
+    List<Substitution> chosen = new ArrayList<>();
+    substitute(pantry, recipe, servings, chosen);
+    return chosen;
+  }
+
+  /**
+   * Plans how a recipe is made for a number of servings. The stock of every ingredient is
+   * used directly first, and then each shortfall, in the order of the recipe, is made up by
+   * the cheapest substitute with enough stock left after what is already used.
+   *
+   * @param pantry the PantryVector to check against.
+   * @param recipe the compiled recipe.
+   * @param servings the number of servings wanted.
+   * @param chosen the list to add the chosen substitutes to, or null to stop at the first
+   *     ingredient that can not be made up.
+   * @return true if every shortfall is made up, false otherwise.
+   */
+  private boolean substitute(PantryVector pantry, RecipeVector recipe, int servings,
+      List<Substitution> chosen) {
+    Map<Integer, Double> used = new HashMap<>();
+    double[] missing = new double[recipe.size()];
+    for (int i = 0; i < recipe.size(); i++) {
+      int id = recipe.idAt(i);
+      double required = recipe.perServingAt(i) * servings;
+      double direct = Math.min(required, pantry.amountOf(id));
+      used.put(id, direct);
+      missing[i] = required - direct;
+    }
+    boolean covered = true;
+    for (int i = 0; i < recipe.size(); i++) {
+      if (missing[i] > TOLERANCE) {
+        Substitution substitution = findSubstitute(pantry, recipe.idAt(i), missing[i], used);
+        if (substitution != null) {
+          if (chosen != null) {
+            chosen.add(substitution);
+          }
+        } else if (chosen == null) {
+          return false;
+        } else {
+          covered = false;
+        }
+      }
+    }
+    return covered;
+  }
+
+  /**
+   * Gets the candidates of an ingredient from a closure.
+   *
+   * @param current the closure to look in.
+   * @param id the ingredient id.
+   * @return the candidates, or an empty array if there are none.
+   */
+  private static Substitution[] candidatesOf(Closure current, int id) {
+    if (id >= current.candidates.length || current.candidates[id] == null) {
+      return NO_CANDIDATES;
+    }
+    return current.candidates[id];
+  }
+
+  /**
+   * Computes the transitive closure of the substitutions. For every ingredient,
+   * the cheapest chain to each reachable substitute is found by Dijkstra's algorithm
+   * on the penalties.
+   *
+   * @param edges the substitutions that have been added.
+   * @return the closure.
+   */
+  private static Closure buildClosure(List<Substitution> edges) {
+    Map<Integer, List<Substitution>> adjacency = new HashMap<>();
+    for (Substitution edge : edges) {
+      adjacency.computeIfAbsent(IngredientDictionary.idOf(edge.getOriginal()),
+          id -> new ArrayList<>()).add(edge);
+    }
+    int size = adjacency.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1) + 1;
+    Substitution[][] candidates = new Substitution[size][];
+    int[][] ids = new int[size][];
+    for (Map.Entry<Integer, List<Substitution>> entry : adjacency.entrySet()) {
+      List<Substitution> reachable = reachableFrom(entry.getKey(), entry.getValue(), adjacency);
+      int source = entry.getKey();
+      candidates[source] = reachable.toArray(NO_CANDIDATES);
+      ids[source] = new int[reachable.size()];
+      for (int i = 0; i < reachable.size(); i++) {
+        ids[source][i] = IngredientDictionary.idOf(reachable.get(i).getSubstitute());
+      }
+    }
+    return new Closure(candidates, ids);
+  }
+
+  /**
+   * Finds the cheapest chain from an ingredient to every substitute reachable from it.
+   *
+   * @param source the id of the ingredient.
+   * @param direct the substitutions for the ingredient itself.
+   * @param adjacency the substitutions of every ingredient, by ingredient id.
+   * @return one combined Substitution per reachable substitute, cheapest penalty first.
+   */
+  private static List<Substitution> reachableFrom(int source, List<Substitution> direct,
+      Map<Integer, List<Substitution>> adjacency) {
+    PriorityQueue<Substitution> queue =
+        new PriorityQueue<>(Comparator.comparingDouble(Substitution::getPenalty));
+    queue.addAll(direct);
+    Set<Integer> settled = new HashSet<>();
+    settled.add(source);
+    List<Substitution> reachable = new ArrayList<>();
+    while (!queue.isEmpty()) {
+      Substitution path = queue.poll();
+      int target = IngredientDictionary.idOf(path.getSubstitute());
+      if (!settled.add(target)) {
+        continue;
+      }
+      reachable.add(path);
+      for (Substitution edge : adjacency.getOrDefault(target, List.of())) {
+        if (!settled.contains(IngredientDictionary.idOf(edge.getSubstitute()))) {
+          queue.add(new Substitution(path.getOriginal(), edge.getSubstitute(),
+              path.getRatio() * edge.getRatio(), path.getPenalty() + edge.getPenalty()));
+        }
+      }
+    }
+    return reachable;
+  }
+
+  /**
+   * Loads the substitutions from file if it exists.
+   */
+  @SuppressWarnings("unchecked")
+  private void loadFromFile() {
+    if (!Files.exists(filePath)) {
+      return;
+    }
+    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filePath.toFile()))) {
+      substitutions.addAll((List<Substitution>) ois.readObject());
+    } catch (IOException | ClassNotFoundException e) {
+      System.out.println("Error loading substitutions: " + e.getMessage());
+    }
+  }
+}
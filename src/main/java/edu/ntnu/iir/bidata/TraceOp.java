@@ -0,0 +1,88 @@
+package edu.ntnu.iir.bidata;
+
+/**
+ * One call to a public method of a {@link FoodStorage} or {@link RecipeBook}, as recorded
+ * by a {@link TraceRecorder}. Only the arguments the kind of call takes are set.
+ */
+final class TraceOp {
+
+  /**
+   * The arguments a kind of call takes.
+   */
+  enum Shape {
+    /** No arguments. */
+    NONE,
+    /** A name or query. */
+    TEXT,
+    /** A name and an amount. */
+    TEXT_NUMBER,
+    /** A name or cursor, and a limit. */
+    TEXT_COUNT,
+    /** The name, amount and unit of an ingredient. */
+    INGREDIENT,
+    /** A date. */
+    DATE,
+    /** A whole grocery. */
+    GROCERY,
+    /** A whole recipe, and a number of servings. */
+    RECIPE
+  }
+
+  /**
+   * The methods that are recorded.
+   */
+  enum Kind {
+    ADD_GROCERY(Shape.GROCERY),
+    SEARCH_GROCERY(Shape.TEXT),
+    REMOVE_GROCERY(Shape.TEXT_NUMBER),
+    GET_GROCERIES(Shape.NONE),
+    LIST_GROCERIES(Shape.TEXT_COUNT),
+    GET_EXPIRED(Shape.DATE),
+    GET_EXPIRING_FROM(Shape.DATE),
+    REMOVE_EXPIRED(Shape.DATE),
+    TOTAL_VALUE(Shape.NONE),
+    CLEAR(Shape.NONE),
+    SAVE(Shape.NONE),
+    HAS_INGREDIENTS(Shape.RECIPE),
+    USE_INGREDIENT(Shape.INGREDIENT),
+    UNDO(Shape.NONE),
+    REDO(Shape.NONE),
+    SNAPSHOT_AT(Shape.DATE),
+    ADD_RECIPE(Shape.RECIPE),
+    FIND_RECIPE(Shape.TEXT),
+    SEARCH_RECIPES(Shape.TEXT_COUNT),
+    LIST_RECIPES(Shape.TEXT_COUNT),
+    SUGGEST_RECIPES(Shape.NONE),
+    SUGGEST_PARTIAL_RECIPES(Shape.NONE),
+    MAX_SERVINGS(Shape.NONE);
+
+    final Shape shape;
+
+    Kind(Shape shape) {
+      this.shape = shape;
+    }
+  }
+
+  final Kind kind;
+  final long micros;
+  final String text;
+  final String unit;
+  final double number;
+  final int count;
+  final long date;
+  final Grocery grocery;
+  final Recipe recipe;
+
+  TraceOp(Kind kind, long micros, String text, String unit, double number, int count,
+      long date, Grocery grocery, Recipe recipe) {
+    this.kind = kind;
+    this.micros = micros;
+    this.text = text;
+    this.unit = unit;
+    this.number = number;
+    this.count = count;
+    this.date = date;
+    this.grocery = grocery;
+    this.recipe = recipe;
+  }
+}
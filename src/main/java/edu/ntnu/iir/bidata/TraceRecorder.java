@@ -0,0 +1,120 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Records every call to the public methods of a {@link FoodStorage} and a
+ * {@link RecipeBook}, with its arguments and the time it was made, as a compact trace file.
+ * The trace can be played back by a {@link TraceReplayer} to put the same load on
+ * another storage, for example to compare a change against real use of the app.
+ * Calls that only read, such as searches and listings, are recorded as well as changes.
+ * Recording is turned on with {@code -Dwasteless.trace=<file>}. While it is off, the
+ * storage and recipe book only check for a recorder, and build no records.
+ * If the trace can not be written, recording stops and the app carries on.
+ *
+ * @see BackupFormat
+ */
+public final class TraceRecorder implements Closeable {
+  private static final int FLUSH_EVERY = 256;
+  private final OutputStream out;
+  private final BackupFormat.TraceWriter writer;
+  private final long startNanos = System.nanoTime();
+  private long count;
+  private boolean failed;
+
+  /**
+   * Constructs a TraceRecorder writing a new trace to a file, replacing any trace there.
+   *
+   * @param file the file to write the trace to.
+   * @throws IOException if the file could not be created.
+   */
+  public TraceRecorder(Path file) throws IOException {
+    this.out = Files.newOutputStream(file);
+    this.writer = new BackupFormat.TraceWriter(out);
+  }
+
+  /**
+   * Gets the number of calls recorded so far.
+   *
+   * @return the number of recorded calls.
+   */
+  public synchronized long getCount() {
+    return count;
+  }
+
+  /**
+   * Ends the trace and closes the file. Calls made after this are not recorded.
+   *
+   * @throws IOException if the end of the trace could not be written.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      if (!failed) {
+        writer.finish();
+      }
+    } finally {
+      failed = true;
+      out.close();
+    }
+  }
+
+  void record(TraceOp.Kind kind) {
+    write(kind, null, null, 0, 0, 0, null, null);
+  }
+
+  void record(TraceOp.Kind kind, String text) {
+    write(kind, text, null, 0, 0, 0, null, null);
+  }
+
+  void record(TraceOp.Kind kind, String text, double number) {
+    write(kind, text, null, number, 0, 0, null, null);
+  }
+
+  void record(TraceOp.Kind kind, String text, int count) {
+    write(kind, text, null, 0, count, 0, null, null);
+  }
+
+  void record(TraceOp.Kind kind, long date) {
+    write(kind, null, null, 0, 0, date, null, null);
+  }
+
+  void record(TraceOp.Kind kind, Ingredient ingredient) {
+    write(kind, ingredient.getName(), ingredient.getUnit(), ingredient.getAmount(), 0, 0,
+        null, null);
+  }
+
+  void record(TraceOp.Kind kind, Grocery grocery) {
+    write(kind, null, null, 0, 0, 0, grocery, null);
+  }
+
+  void record(TraceOp.Kind kind, Recipe recipe, int servings) {
+    write(kind, null, null, 0, servings, 0, null, recipe);
+  }
+
+  /**
+   * Writes one call to the trace. The trace is flushed every {@value #FLUSH_EVERY} calls,
+   * so little is lost if the app is killed.
+   */
+  private synchronized void write(TraceOp.Kind kind, String text, String unit, double number,
+      int count, long date, Grocery grocery, Recipe recipe) {
+    if (failed) {
+      return;
+    }
+    long micros = (System.nanoTime() - startNanos) / 1000;
+    try {
+      writer.write(new TraceOp(kind, micros, text, unit, number, count, date, grocery, recipe));
+      this.count++;
+      if (this.count % FLUSH_EVERY == 0) {
+        writer.flush();
+      }
+    } catch (IOException e) {
+      System.out.println("Couldn't write the trace, recording stopped: " + e.getMessage());
+      failed = true;
+    }
+  }
+}
@@ -0,0 +1,237 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays back a trace written by a {@link TraceRecorder} against a {@link GroceryStore} and a
+ * {@link RecipeCatalogue}, making the same calls with the same arguments in the same order.
+ * The trace can be played against any {@link StorageBackend}, to compare engines.
+ * Calls are made one after another on the calling thread, either as fast as possible or
+ * keeping the time between calls that was recorded.
+ * Every call is timed, and the bytes the thread allocated during it are counted, so the
+ * {@link Report} shows the throughput, latency percentiles and allocation rate for every
+ * kind of call. Replaying the same trace before and after a change shows what the change
+ * does to real use of the app. Arguments are decoded before a call is timed, so reading
+ * the trace is not part of the measurements.
+ */
+public final class TraceReplayer {
+  private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+  private final GroceryStore storage;
+  private final RecipeCatalogue recipeBook;
+
+  /**
+   * Constructs a TraceReplayer making calls to a storage and a recipe book.
+   *
+   * @param storage the GroceryStore to play the storage calls against.
+   * @param recipeBook the RecipeCatalogue to play the recipe calls against.
+   */
+  public TraceReplayer(GroceryStore storage, RecipeCatalogue recipeBook) {
+    this.storage = storage;
+    this.recipeBook = recipeBook;
+  }
+
+  /**
+   * The measurements of one replay.
+   */
+  public static final class Report {
+    private final Map<TraceOp.Kind, LatencyHistogram> latencies =
+        new EnumMap<>(TraceOp.Kind.class);
+    private final Map<TraceOp.Kind, long[]> allocated = new EnumMap<>(TraceOp.Kind.class);
+    private long count;
+    private long elapsedNanos;
+
+    private void add(TraceOp.Kind kind, long nanos, long bytes) {
+      latencies.computeIfAbsent(kind, k -> new LatencyHistogram(k.name())).record(nanos);
+      allocated.computeIfAbsent(kind, k -> new long[1])[0] += bytes;
+      count++;
+    }
+
+    /**
+     * Gets the number of calls played back.
+     *
+     * @return the number of calls.
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * Gets the time the replay took, including any waiting to keep the recorded pace.
+     *
+     * @return the elapsed time in nanoseconds.
+     */
+    public long getElapsedNanos() {
+      return elapsedNanos;
+    }
+
+    /**
+     * Gets the number of calls played back per second.
+     *
+     * @return the throughput, or 0 if nothing was played back.
+     */
+    public double getCallsPerSecond() {
+      return elapsedNanos == 0 ? 0 : count * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Gets the latencies of one kind of call, such as "ADD_GROCERY" or "SEARCH_RECIPES".
+     *
+     * @param kind the name of the kind of call.
+     * @return the LatencyHistogram of the calls, or null if there were none of that kind.
+     */
+    public LatencyHistogram getLatency(String kind) {
+      return latencies.get(TraceOp.Kind.valueOf(kind));
+    }
+
+    /**
+     * Gets the mean number of bytes allocated by one kind of call.
+     *
+     * @param kind the name of the kind of call.
+     * @return the bytes allocated per call, 0 if there were none of that kind,
+     *     or -1 if the JVM can not measure allocations.
+     */
+    public double getBytesPerCall(String kind) {
+      TraceOp.Kind key = TraceOp.Kind.valueOf(kind);
+      if (THREADS == null) {
+        return -1;
+      }
+      LatencyHistogram latency = latencies.get(key);
+      return latency == null ? 0 : (double) allocated.get(key)[0] / latency.getCount();
+    }
+
+    /**
+     * Shows the measurements as a table, one row per kind of call.
+     *
+     * @return the table.
+     */
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(String.format("%d calls in %.1f ms, %.0f calls/s%n",
+          count, elapsedNanos / 1e6, getCallsPerSecond()));
+      sb.append(String.format("%-24s %8s %10s %10s %10s %10s %12s%n",
+          "Operation", "Count", "Mean us", "P50 us", "P99 us", "Max us", "Bytes/call"));
+      latencies.forEach((kind, h) -> sb.append(String.format(
+          "%-24s %8d %10.1f %10.1f %10.1f %10.1f %12.0f%n",
+          kind, h.getCount(), h.getMeanNanos() / 1000.0, h.getPercentileNanos(50) / 1000.0,
+          h.getPercentileNanos(99) / 1000.0, h.getMaxNanos() / 1000.0,
+          getBytesPerCall(kind.name()))));
+      return sb.toString();
+    }
+  }
+
+  /**
+   * Plays back a trace file.
+   *
+   * @param trace the trace file.
+   * @param paced true to keep the recorded time between calls, false to go as fast as possible.
+   * @return the Report of the replay.
+   * @throws IOException if the trace could not be read.
+   */
+  public Report replay(Path trace, boolean paced) throws IOException {
+    try (InputStream in = Files.newInputStream(trace)) {
+      return replay(in, paced);
+    }
+  }
+
+  /**
+   * Plays back a trace read from a stream.
+   *
+   * @param in the stream to read the trace from. It is not closed.
+   * @param paced true to keep the recorded time between calls, false to go as fast as possible.
+   * @return the Report of the replay.
+   * @throws IOException if the trace could not be read.
+   */
+  public Report replay(InputStream in, boolean paced) throws IOException {
+    BackupFormat.TraceReader reader = new BackupFormat.TraceReader(in);
+    Report report = new Report();
+    long start = System.nanoTime();
+    for (TraceOp op = reader.read(); op != null; op = reader.read()) {
+      if (paced) {
+        long due = start + op.micros * 1000;
+        for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+          LockSupport.parkNanos(wait);
+        }
+      }
+      Date date = op.kind.shape == TraceOp.Shape.DATE ? new Date(op.date) : null;
+      Ingredient ingredient = op.kind.shape == TraceOp.Shape.INGREDIENT
+          ? new Ingredient(op.text, op.number, op.unit) : null;
+      if (op.kind == TraceOp.Kind.HAS_INGREDIENTS) {
+        op.recipe.getVector();
+      }
+      long bytes = allocatedBytes();
+      long callStart = System.nanoTime();
+      call(op, date, ingredient);
+      long nanos = System.nanoTime() - callStart;
+      report.add(op.kind, nanos, allocatedBytes() - bytes);
+    }
+    report.elapsedNanos = System.nanoTime() - start;
+    return report;
+  }
+
+  /**
+   * Makes one recorded call.
+   */
+  private void call(TraceOp op, Date date, Ingredient ingredient) {
+    switch (op.kind) {
+      case ADD_GROCERY -> storage.addGrocery(op.grocery);
+      case SEARCH_GROCERY -> storage.searchGrocery(op.text);
+      case REMOVE_GROCERY -> storage.removeGrocery(op.text, op.number);
+      case GET_GROCERIES -> storage.getGroceries();
+      case LIST_GROCERIES -> storage.listGroceries(op.text, op.count);
+      case GET_EXPIRED -> storage.getExpiredGroceries(date);
+      case GET_EXPIRING_FROM -> storage.getGroceriesExpiringFrom(date);
+      case REMOVE_EXPIRED -> storage.removeExpired(date);
+      case TOTAL_VALUE -> storage.getTotalValue();
+      case CLEAR -> storage.clearAllGroceries();
+      case SAVE -> storage.saveToFile();
+      case HAS_INGREDIENTS -> {
+        if (op.count == 0) {
+          storage.hasIngredients(op.recipe);
+        } else {
+          storage.hasIngredients(op.recipe, op.count);
+        }
+      }
+      case USE_INGREDIENT -> storage.useIngredient(ingredient);
+      case UNDO -> storage.undo();
+      case REDO -> storage.redo();
+      case SNAPSHOT_AT -> {
+        if (storage instanceof VersionedStore versioned) {
+          versioned.snapshotAt(date);
+        }
+      }
+      case ADD_RECIPE -> recipeBook.addRecipe(op.recipe);
+      case FIND_RECIPE -> recipeBook.findRecipe(op.text);
+      case SEARCH_RECIPES -> recipeBook.searchRecipes(op.text, op.count);
+      case LIST_RECIPES -> recipeBook.listRecipes(op.text, op.count);
+      case SUGGEST_RECIPES -> recipeBook.suggestRecipes(storage);
+      case SUGGEST_PARTIAL_RECIPES -> recipeBook.suggestPartialRecipes(storage);
+      case MAX_SERVINGS -> recipeBook.maxServings(storage);
+      default -> throw new IllegalStateException("Unknown operation " + op.kind);
+    }
+  }
+
+  private static long allocatedBytes() {
+    return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+  }
+
+  /**
+   * Finds the thread bean of the JVM, if it can count the bytes allocated by a thread.
+   */
+  private static com.sun.management.ThreadMXBean threadBean() {
+    if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+        && bean.isThreadAllocatedMemorySupported()) {
+      bean.setThreadAllocatedMemoryEnabled(true);
+      return bean;
+    }
+    return null;
+  }
+}
@@ -1,11 +1,20 @@
 package edu.ntnu.iir.bidata;
 
-import java.text.ParseException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
-import java.util.Comparator;
 import java.util.Date;
-import java.util.Scanner;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * This class represents the user interface for the Waste_Less app.
@@ -13,22 +22,36 @@ import java.util.Scanner;
  * Provides a text-based menu for adding, removing, and viewing groceries.
  */
 public class UserInterface {
-  private Scanner scanner;
-  private final FoodStorage storage;
-  private final RecipeBook recipeBook;
+  private final InputParser input;
+  private final GroceryStore storage;
+  private final RecipeCatalogue recipeBook;
   private final ShoppingList shoppingList;
+  private final RecipeRollups rollups;
+  private final WasteLedger wasteLedger;
   private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy");
+  private static final int PAGE_SIZE = 10;
+  private static final String GROCERY_BACKUP = "groceries.wlb";
+  private static final String RECIPE_BACKUP = "recipes.wlb";
 
   /**
-   * Constructs a new UserInterface with the given FoodStorage.
+   * Constructs a new UserInterface with the given storage, recipe catalogue and WasteLedger.
    *
-   * @param storage the FoodStorage object to manage groceries
+   * @param storage the GroceryStore to manage groceries
+   * @param recipeBook the RecipeCatalogue to manage recipes
+   * @param wasteLedger the WasteLedger holding groceries that have been thrown away
    */
-  public UserInterface(FoodStorage storage) {
+  public UserInterface(GroceryStore storage, RecipeCatalogue recipeBook,
+      WasteLedger wasteLedger) {
     this.storage = storage;
-    this.recipeBook = new RecipeBook();
+    this.wasteLedger = wasteLedger;
+    this.recipeBook = recipeBook;
     this.shoppingList = new ShoppingList();
-    this.scanner = new Scanner(System.in);
+    this.rollups = new RecipeRollups(recipeBook, storage);
+    this.input = new InputParser(System.in);
+    storage.addReorderListener(alert -> {
+      shoppingList.reorderNeeded(alert);
+      System.out.println("Added to shopping list: " + alert);
+    });
   }
 
   /**
@@ -73,12 +96,36 @@ public class UserInterface {
               +
           "14. About the app\n"
               +
+          "15. Show performance metrics\n"
+              +
+          "16. Add an ingredient substitute\n"
+              +
+          "17. Export backup\n"
+              +
+          "18. Import backup\n"
+              +
+          "19. Show storage report\n"
+              +
+          "20. Sync with other devices\n"
+              +
+          "21. Undo last change\n"
+              +
+          "22. Redo last undone change\n"
+              +
+          "23. Show storage at an earlier date\n"
+              +
+          "24. Search recipes\n"
+              +
+          "25. Add nutrition facts for an ingredient\n"
+              +
+          "26. Suggest recipes by cost or nutrition\n"
+              +
           "0. Save & Exit\n"
               +
           "Choose an option: "
       );
       try {
-        int choice = Integer.parseInt(scanner.nextLine());
+        int choice = input.nextWholeNumber();
         switch (choice) {
           case 1 -> addGrocery();
           case 2 -> searchGrocery();
@@ -94,6 +141,18 @@ public class UserInterface {
           case 12 -> suggestRecipes();
           case 13 -> showShoppingList();
           case 14 -> aboutApp();
+          case 15 -> System.out.print(Metrics.dump());
+          case 16 -> addSubstitution();
+          case 17 -> exportBackup();
+          case 18 -> importBackup();
+          case 19 -> showStorageReport();
+          case 20 -> syncWithOtherDevices();
+          case 21 -> undo();
+          case 22 -> redo();
+          case 23 -> showStorageAtDate();
+          case 24 -> searchRecipes();
+          case 25 -> addNutritionFacts();
+          case 26 -> suggestRecipesByRollup();
           case 0 ->
             {
             saveFridgeData();
@@ -101,11 +160,14 @@ public class UserInterface {
                 "Take care of your self, and have a wasteless day, and eat well!");
             return;
             }
+          case InputParser.INVALID_NUMBER -> System.out.println(
+                "Invalid input. Please enter a number corresponding to the menu options.");
           default -> System.out.println("Invalid option. Please try again.");
         }
-      } catch (NumberFormatException e) {
-        System.out.println(
-                "Invalid input. Please enter a number corresponding to the menu options.");
+      } catch (NoSuchElementException e) {
+        // The input has ended, as when groceries are piped in from a file
+        saveFridgeData();
+        return;
       }
     }
   }
@@ -115,7 +177,7 @@ public class UserInterface {
    */
   private void addGrocery() {
     System.out.print("Enter name (or type 'Return' to Cancel): ");
-    String name = scanner.nextLine();
+    String name = input.nextLine();
     if (name.isBlank()) {
       System.out.println("Operation cancelled.");
       return;
@@ -125,60 +187,45 @@ public class UserInterface {
     name = Character.toUpperCase(name.charAt(0)) + name.substring(1).toLowerCase();
 
     System.out.print("Enter amount: ");
-    String amountInput = scanner.nextLine();
-    double amount;
-    try {
-      amount = Double.parseDouble(amountInput.replace(",", "."));
-      if (amount <= 0) {
-        System.out.println("Amount must be greater than 0. Operation cancelled.");
-        return;
-      }
-    } catch (NumberFormatException e) {
-      System.out.println("Invalid amount format. Operation cancelled.");
+    double amount = input.nextDecimal();
+    if (Double.isNaN(amount)) {
+      System.out.println("Invalid amount format. " + input.getError() + " Operation cancelled.");
+      return;
+    }
+    if (amount <= 0) {
+      System.out.println("Amount must be greater than 0. Operation cancelled.");
       return;
     }
 
     System.out.print("Enter unit (liters, kg, grams, pieces): ");
-    String unit = scanner.nextLine();
+    String unit = input.nextLine();
     if (unit.isBlank()) {
       System.out.println("Unit cannot be empty. Operation cancelled.");
       return;
     }
 
     System.out.print("Enter price per unit: ");
-    String priceInput = scanner.nextLine();
-    double pricePerUnit;
-    try {
-      pricePerUnit = Double.parseDouble(priceInput.replace(",", "."));
-      if (pricePerUnit <= 0) {
-        System.out.println("Price per unit must be greater than 0. Operation cancelled.");
-        return;
-      }
-    } catch (NumberFormatException e) {
-      System.out.println("Invalid price format. Operation cancelled.");
+    double pricePerUnit = input.nextDecimal();
+    if (Double.isNaN(pricePerUnit)) {
+      System.out.println("Invalid price format. " + input.getError() + " Operation cancelled.");
+      return;
+    }
+    if (pricePerUnit <= 0) {
+      System.out.println("Price per unit must be greater than 0. Operation cancelled.");
       return;
     }
 
     System.out.print("Enter best before date (dd.MM.yyyy): ");
-    String dateInput = scanner.nextLine();
-    Date bestBeforeDate;
-    try {
-      bestBeforeDate = dateFormat.parse(dateInput);
-      Calendar todayCal = Calendar.getInstance();
-      todayCal.set(Calendar.HOUR_OF_DAY, 0);
-      todayCal.set(Calendar.MINUTE, 0);
-      todayCal.set(Calendar.SECOND, 0);
-      todayCal.set(Calendar.MILLISECOND, 0);
-      Date today = todayCal.getTime();
-
-      if (bestBeforeDate.before(today)) {
-        System.out.println("Best before date cannot be in the past. Operation cancelled.");
-        return;
-      }
-    } catch (ParseException e) {
-      System.out.println("Invalid date format. Operation cancelled.");
+    long bestBeforeDay = input.nextEpochDay();
+    if (bestBeforeDay == InputParser.INVALID_DAY) {
+      System.out.println("Invalid date format. " + input.getError() + " Operation cancelled.");
+      return;
+    }
+    if (bestBeforeDay < InputParser.today()) {
+      System.out.println("Best before date cannot be in the past. Operation cancelled.");
       return;
     }
+    Date bestBeforeDate = InputParser.startOfDay(bestBeforeDay);
 
     try {
       Grocery grocery = new Grocery(name, amount, unit, bestBeforeDate, pricePerUnit);
@@ -195,7 +242,7 @@ public class UserInterface {
    */
   private void searchGrocery() {
     System.out.print("Enter grocery name to search: ");
-    String name = scanner.nextLine();
+    String name = input.nextLine();
     Grocery grocery = storage.searchGrocery(name);
     if (grocery != null) {
       System.out.println("Grocery found: " + grocery);
@@ -209,9 +256,13 @@ public class UserInterface {
    */
   private void removeGrocery() {
     System.out.print("Enter grocery name to remove amount from: ");
-    String name = scanner.nextLine();
+    String name = input.nextLine();
     System.out.print("Enter amount to remove: ");
-    double amount = Double.parseDouble(scanner.nextLine());
+    double amount = input.nextDecimal();
+    if (Double.isNaN(amount) || amount <= 0) {
+      System.out.println("Amount must be a number greater than 0. Operation cancelled.");
+      return;
+    }
     if (storage.removeGrocery(name, amount)) {
       System.out.println("Amount removed successfully.");
     } else {
@@ -223,9 +274,8 @@ public class UserInterface {
    * Shows all groceries sorted alphabetically.
    */
   private void showGroceriesSortedAlphabetically() {
-    storage.getGroceries().stream()
-             .sorted(Comparator.comparing(Grocery::getName))
-             .forEach(System.out::println);
+    StorageSnapshot snapshot = storage.snapshot();
+    showPages(snapshot::listGroceries, Grocery::toSummary);
   }
 
   /**
@@ -239,10 +289,7 @@ public class UserInterface {
     todayCal.set(Calendar.MILLISECOND, 0);
     Date today = todayCal.getTime();
 
-    storage.getGroceries().stream()
-             .filter(grocery -> grocery.getBestBeforeDate().after(today))
-             .sorted(Comparator.comparing(Grocery::getBestBeforeDate))
-             .forEach(System.out::println);
+    storage.getGroceriesExpiringFrom(today).forEach(System.out::println);
   }
 
   /**
@@ -256,19 +303,29 @@ public class UserInterface {
     todayCal.set(Calendar.MILLISECOND, 0);
     Date today = todayCal.getTime();
 
-    storage.getGroceries().stream()
-                .filter(grocery -> grocery.getBestBeforeDate().before(today))
-                .sorted(Comparator.comparing(Grocery::getBestBeforeDate).reversed())
-                .forEach(System.out::println);
+    double wastedValue = 0;
+    for (Grocery grocery : storage.snapshot().getExpiredGroceries(today)) {
+      for (Lot lot : grocery.getLots()) {
+        if (!lot.getBestBeforeDate().before(today)) {
+          break;
+        }
+        System.out.println(grocery.getName() + " - " + lot);
+        wastedValue += lot.calculateTotalValue();
+      }
+    }
+    System.out.printf("Wasted value: %.2f NOK%n", wastedValue);
+
+    System.out.println("Wasted value per week:");
+    wasteLedger.getWeeklyWaste().forEach((week, value) ->
+        System.out.printf("Week of %s: %.2f NOK%n", dateFormat.format(week), value));
+    System.out.printf("Total wasted value: %.2f NOK%n", wasteLedger.getTotalWaste());
   }
 
   /**
    * Shows the total value of all groceries in storage.
    */
   private void showTotalValue() {
-    double totalValue = storage.getGroceries().stream()
-            .mapToDouble(Grocery::calculateTotalValue)
-            .sum();
+    double totalValue = storage.getTotalValue();
     System.out.println("Total storage value: " + totalValue + " NOK");
   }
 
@@ -277,9 +334,9 @@ public class UserInterface {
    */
   private void clearAllGroceries() {
     System.out.println("WARNING: You are about to delete all groceries from the food storage.");
-    System.out.println("This action cannot be undone.");
+    System.out.println("You can bring them back with option 21, Undo last change.");
     System.out.print("Type \"YES\" to confirm, or any other key to cancel: ");
-    String confirmation = scanner.nextLine();
+    String confirmation = input.nextLine();
     if (confirmation.equalsIgnoreCase("YES")) {
       storage.clearAllGroceries();
       System.out.println("All groceries have been cleared.");
@@ -288,6 +345,149 @@ public class UserInterface {
     }
   }
 
+  /**
+   * Undoes the latest change to the storage.
+   */
+  private void undo() {
+    if (storage.undo()) {
+      storage.saveToFile();
+      System.out.println("Change undone. " + storage.getUndoCount() + " more can be undone.");
+    } else {
+      System.out.println("There is nothing to undo.");
+    }
+  }
+
+  /**
+   * Redoes the latest undone change to the storage.
+   */
+  private void redo() {
+    if (storage.redo()) {
+      storage.saveToFile();
+      System.out.println("Change redone. " + storage.getRedoCount() + " more can be redone.");
+    } else {
+      System.out.println("There is nothing to redo.");
+    }
+  }
+
+  /**
+   * Shows the groceries the storage held at the end of an earlier day.
+   */
+  private void showStorageAtDate() {
+    System.out.print("Enter date (dd.MM.yyyy): ");
+    long day = input.nextEpochDay();
+    if (day == InputParser.INVALID_DAY) {
+      System.out.println("Invalid date format. " + input.getError() + " Operation cancelled.");
+      return;
+    }
+    Date date = InputParser.startOfDay(day);
+    Date endOfDay = new Date(InputParser.startOfDay(day + 1).getTime() - 1);
+    if (!(storage instanceof VersionedStore versioned)) {
+      System.out.println("This storage backend keeps no history.");
+      return;
+    }
+    StorageSnapshot snapshot = versioned.snapshotAt(endOfDay);
+    if (snapshot == null) {
+      System.out.println("The storage history does not go back to "
+          + dateFormat.format(date) + ".");
+      return;
+    }
+    System.out.println("Storage at the end of " + dateFormat.format(date) + ":");
+    showPages(snapshot::listGroceries, Grocery::toSummary);
+  }
+
+  /**
+   * Exports all groceries and recipes to backup files in a folder.
+   */
+  private void exportBackup() {
+    Path folder = askBackupFolder();
+    try {
+      Files.createDirectories(folder);
+      long groceries;
+      try (OutputStream out = Files.newOutputStream(folder.resolve(GROCERY_BACKUP))) {
+        groceries = storage.exportBackup(out);
+      }
+      long recipes;
+      try (OutputStream out = Files.newOutputStream(folder.resolve(RECIPE_BACKUP))) {
+        recipes = recipeBook.exportBackup(out);
+      }
+      System.out.println("Exported " + groceries + " groceries and " + recipes
+          + " recipes to " + folder.toAbsolutePath() + ".");
+    } catch (IOException e) {
+      System.out.println("Error exporting backup: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Imports groceries and recipes from backup files in a folder.
+   */
+  private void importBackup() {
+    Path folder = askBackupFolder();
+    try {
+      long groceries;
+      try (InputStream in = Files.newInputStream(folder.resolve(GROCERY_BACKUP))) {
+        groceries = storage.importBackup(in);
+      }
+      long recipes;
+      try (InputStream in = Files.newInputStream(folder.resolve(RECIPE_BACKUP))) {
+        recipes = recipeBook.importBackup(in);
+      }
+      storage.saveToFile();
+      System.out.println("Imported " + groceries + " groceries and " + recipes + " new recipes.");
+    } catch (IOException e) {
+      System.out.println("Error importing backup: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Shows the value per unit, value expiring per week, most valuable groceries and waste,
+   * all computed in one pass over the storage.
+   */
+  private void showStorageReport() {
+    PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+    try {
+      Reports.run(storage.snapshot(), List.of(
+          Reports.byUnit(),
+          Reports.valueByExpiryWeek(),
+          Reports.topByValue(5),
+          Reports.wastePercentage(new Date(), wasteLedger)), out);
+    } catch (IOException e) {
+      System.out.println("Error writing report: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Sends the changes made on this device to the other devices sharing the pantry,
+   * and applies theirs.
+   */
+  private void syncWithOtherDevices() {
+    Replicator replicator =
+        storage instanceof VersionedStore versioned ? versioned.getReplicator() : null;
+    if (replicator == null) {
+      System.out.println("Syncing is off. Start the app with -Dwasteless.sync=<shared folder> "
+          + "to share the pantry between devices.");
+      return;
+    }
+    try {
+      long applied = replicator.sync();
+      System.out.println("Applied " + applied + " changes from other devices. This device is '"
+          + replicator.getNodeId() + "', and has sent " + replicator.getBytesSent()
+          + " bytes and received " + replicator.getBytesReceived() + " bytes.");
+    } catch (IOException e) {
+      System.out.println("Error syncing: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Asks for the folder holding the backup files.
+   *
+   * @return the folder, "backup" if nothing was entered.
+   */
+  private Path askBackupFolder() {
+    System.out.print("Enter backup folder (press Enter for 'backup'): ");
+    String folder = input.nextLine().trim();
+    return Path.of(folder.isEmpty() ? "backup" : folder);
+  }
+
   /**
    * Saves the current state of the fridge data to a file.
    */
@@ -301,22 +501,33 @@ public class UserInterface {
    */
   private void addRecipe() {
     System.out.print("Enter recipe name: ");
-    String name = scanner.nextLine();
+    String name = input.nextLine();
     Recipe recipe = new Recipe(name);
+    System.out.print("Enter number of servings: ");
+    int servings = input.nextWholeNumber();
+    if (servings < 1) {
+      System.out.println("Servings must be a whole number of at least 1. Operation cancelled.");
+      return;
+    }
+    recipe.setServings(servings);
     while (true) {
       System.out.print("Enter ingredient name (or type 'done' to finish): ");
-      String ingredientName = scanner.nextLine();
+      String ingredientName = input.nextLine();
       if (ingredientName.equalsIgnoreCase("done")) {
         break;
       }
       System.out.print("Enter amount: ");
-      double amount = Double.parseDouble(scanner.nextLine());
+      double amount = input.nextDecimal();
+      if (Double.isNaN(amount) || amount <= 0) {
+        System.out.println("Amount must be a number greater than 0. Ingredient skipped.");
+        continue;
+      }
       System.out.print("Enter unit: ");
-      String unit = scanner.nextLine();
+      String unit = input.nextLine();
       recipe.addIngredient(new Ingredient(ingredientName, amount, unit));
     }
     System.out.print("Enter description and recipe: ");
-    String description = scanner.nextLine();
+    String description = input.nextLine();
     recipe.setDescription(description);
     recipeBook.addRecipe(recipe);
     System.out.println("Recipe added successfully.");
@@ -327,9 +538,7 @@ public class UserInterface {
    */
   private void showAllRecipes() {
     System.out.println("Stored recipes:");
-    recipeBook.getRecipes().stream()
-            .sorted(Comparator.comparing(Recipe::getName))
-            .forEach(System.out::println);
+    showPages(recipeBook::listRecipes, Recipe::toSummary);
   }
 
   /**
@@ -337,52 +546,213 @@ public class UserInterface {
      */
   private void generateShoppingList() {
     System.out.print("Enter recipe name to generate shopping list: ");
-    String name = scanner.nextLine();
-    Recipe recipe = recipeBook.getRecipes().stream()
-            .filter(r -> r.getName().equalsIgnoreCase(name))
-            .findFirst()
-            .orElse(null);
+    String name = input.nextLine();
+    Recipe recipe = recipeBook.findRecipe(name);
+    if (recipe == null) {
+      recipe = chooseRecipe(recipeBook.searchRecipes(name, 5));
+    }
 
     if (recipe == null) {
       System.out.println("Recipe not found.");
       return;
     }
 
-    shoppingList.generateShoppingList(recipe, storage);
+    System.out.print("Enter number of servings (press Enter for "
+        + recipe.getServings() + "): ");
+    int servings = input.nextWholeNumber();
+    if (input.isBlank()) {
+      servings = recipe.getServings();
+    } else if (servings < 1) {
+      System.out.println("Servings must be a whole number of at least 1. Operation cancelled.");
+      return;
+    }
+
+    if (storage.hasIngredients(recipe, servings)) {
+      System.out.println("You have everything needed for " + servings + " servings.");
+      return;
+    }
+    shoppingList.generateShoppingList(recipe, storage, servings,
+        recipeBook.getSubstitutionGraph());
     System.out.println("Shopping list generated:");
     shoppingList.getItems().forEach(System.out::println);
   }
 
+  /**
+   * Lets the user pick one of the recipes found by a search.
+   *
+   * @param matches the recipes found, best first.
+   * @return the chosen Recipe, or null if there were none or none was chosen.
+   */
+  private Recipe chooseRecipe(List<Recipe> matches) {
+    if (matches.isEmpty()) {
+      return null;
+    }
+    System.out.println("Did you mean:");
+    for (int i = 0; i < matches.size(); i++) {
+      System.out.println((i + 1) + ". " + matches.get(i).toSummary());
+    }
+    System.out.print("Choose a recipe (press Enter to cancel): ");
+    int choice = input.nextWholeNumber();
+    return choice >= 1 && choice <= matches.size() ? matches.get(choice - 1) : null;
+  }
+
+  /**
+   * Searches the recipes by words in their name, ingredients and description.
+   */
+  private void searchRecipes() {
+    System.out.print("Enter words to search for, such as \"quick pasta without cheese\": ");
+    List<Recipe> matches = recipeBook.searchRecipes(input.nextLine(), PAGE_SIZE);
+    if (matches.isEmpty()) {
+      System.out.println("No recipes found.");
+      return;
+    }
+    System.out.println("Recipes found, best match first:");
+    matches.forEach(recipe -> System.out.println(recipe.toSummary()));
+  }
+
   /**
    * Suggests recipes based on the available ingredients in the storage.
    * Adds missing groceries to the shopping list for partially available recipes.
    */
   private void suggestRecipes() {
     System.out.println("Recipes that can be made with available ingredients:");
-    recipeBook.suggestRecipes(storage).forEach(System.out::println);
+    SubstitutionGraph substitutions = recipeBook.getSubstitutionGraph();
+    recipeBook.suggestRecipes(storage).forEach(recipe -> {
+      System.out.println(recipe);
+      substitutions.chooseSubstitutes(storage.snapshot().pantry(), recipe.getVector(),
+          recipe.getServings()).forEach(substitution ->
+          System.out.println("  Use " + substitution));
+    });
+    System.out.println("Servings you can make with available ingredients:");
+    recipeBook.maxServings(storage).forEach((recipe, servings) -> {
+      if (servings > 0 && !recipe.getIngredients().isEmpty()) {
+        System.out.println(recipe.getName() + ": " + servings + " servings");
+      }
+    });
     System.out.println("Recipes that can be made partially with available ingredients:");
     recipeBook.suggestPartialRecipes(storage).forEach(recipe -> {
       System.out.println(recipe);
-      recipe.getIngredients().forEach(ingredient -> {
-        Grocery grocery = storage.searchGrocery(ingredient.getName());
-        if (grocery == null || grocery.getAmount() < ingredient.getAmount()) {
-          double neededAmount = ingredient.getAmount() - (grocery != null
-              ? grocery.getAmount() : 0);
-          shoppingList.addItem(new Ingredient(ingredient.getName(), neededAmount,
-                    ingredient.getUnit()));
-        }
-      });
+      shoppingList.generateShoppingList(recipe, storage, recipe.getServings(), substitutions);
     });
   }
 
+  /**
+   * Shows the recipes that can be made, or made partially, sorted by cost per serving,
+   * protein per serving or calories per serving, with the cost and nutrition of each.
+   */
+  private void suggestRecipesByRollup() {
+    System.out.print("Sort by 1. cost, 2. protein or 3. calories per serving: ");
+    RecipeRollups.Order order = switch (input.nextWholeNumber()) {
+      case 1 -> RecipeRollups.Order.COST;
+      case 2 -> RecipeRollups.Order.PROTEIN;
+      case 3 -> RecipeRollups.Order.KCAL;
+      default -> null;
+    };
+    if (order == null) {
+      System.out.println("Invalid option. Operation cancelled.");
+      return;
+    }
+    System.out.println("Recipes that can be made with available ingredients:");
+    rollups.sort(recipeBook.suggestRecipes(storage), order).forEach(recipe ->
+        System.out.println(recipe.getName() + ": " + rollups.getRollup(recipe)));
+    System.out.println("Recipes that can be made partially with available ingredients:");
+    rollups.sort(recipeBook.suggestPartialRecipes(storage), order).forEach(recipe ->
+        System.out.println(recipe.getName() + ": " + rollups.getRollup(recipe)));
+  }
+
+  /**
+   * Sets the calories and macronutrients in one unit of an ingredient.
+   */
+  private void addNutritionFacts() {
+    System.out.print("Enter ingredient: ");
+    String name = input.nextLine();
+    System.out.print("Enter kcal per unit: ");
+    double kcal = input.nextDecimal();
+    System.out.print("Enter grams of protein per unit: ");
+    double protein = input.nextDecimal();
+    System.out.print("Enter grams of carbohydrates per unit: ");
+    double carbohydrates = input.nextDecimal();
+    System.out.print("Enter grams of fat per unit: ");
+    double fat = input.nextDecimal();
+    if (Double.isNaN(kcal) || Double.isNaN(protein) || Double.isNaN(carbohydrates)
+        || Double.isNaN(fat)) {
+      System.out.println("Invalid number format. Operation cancelled.");
+      return;
+    }
+    try {
+      recipeBook.getNutritionTable().setFacts(name,
+          new NutritionFacts(kcal, protein, carbohydrates, fat));
+      System.out.println("Nutrition facts added successfully.");
+    } catch (IllegalArgumentException e) {
+      System.out.println("Error adding nutrition facts: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Adds an ingredient that can be used instead of another when suggesting recipes.
+   */
+  private void addSubstitution() {
+    System.out.print("Enter ingredient used in recipes: ");
+    String original = input.nextLine();
+    System.out.print("Enter ingredient that can be used instead: ");
+    String substitute = input.nextLine();
+    System.out.print("Enter amount of substitute per unit of ingredient: ");
+    double ratio = input.nextDecimal();
+    System.out.print("Enter penalty (0 if it is just as good): ");
+    double penalty = input.nextDecimal();
+    if (Double.isNaN(ratio) || Double.isNaN(penalty)) {
+      System.out.println("Invalid number format. Operation cancelled.");
+      return;
+    }
+    try {
+      recipeBook.getSubstitutionGraph().addSubstitution(
+          new Substitution(original, substitute, ratio, penalty));
+      System.out.println("Substitution added successfully.");
+    } catch (IllegalArgumentException e) {
+      System.out.println("Error adding substitution: " + e.getMessage());
+    }
+  }
+
   /**
    * Shows the shopping list with groceries sorted alphabetically.
    */
   private void showShoppingList() {
     System.out.println("Shopping list:");
-    shoppingList.getItems().stream()
-            .sorted(Comparator.comparing(Ingredient::getName))
-            .forEach(System.out::println);
+    showPages(shoppingList::listItems, Ingredient::toString);
+    List<PackPlan> plans = shoppingList.priceItems(storage.getPriceHistory());
+    if (!plans.isEmpty()) {
+      System.out.println("Cheapest packs from earlier prices:");
+      double total = 0;
+      for (PackPlan plan : plans) {
+        System.out.println(plan);
+        total += plan.getTotalCost();
+      }
+      System.out.printf("Estimated cost: %.2f NOK%n", total);
+    }
+  }
+
+  /**
+   * Shows a listing one page at a time, asking before showing the next page.
+   * Only the rows on the pages that are shown are fetched and turned into text.
+   *
+   * @param query the paginated query, taking a cursor and a page size
+   * @param render turns one row into the text to show
+   * @param <T> the type of the rows
+   */
+  private <T> void showPages(BiFunction<String, Integer, Page<T>> query,
+                             Function<T, String> render) {
+    Page<T> page = query.apply(null, PAGE_SIZE);
+    while (true) {
+      page.getItems().forEach(item -> System.out.println(render.apply(item)));
+      if (!page.hasNext()) {
+        return;
+      }
+      System.out.print("Press Enter for more, or type 'q' to stop: ");
+      if (input.nextLine().equalsIgnoreCase("q")) {
+        return;
+      }
+      page = query.apply(page.getNextCursor(), PAGE_SIZE);
+    }
   }
 
   /**
@@ -403,11 +773,13 @@ public class UserInterface {
     System.out.println("3. Remove some amount: Remove a specified amount from a grocery item.");
     System.out.println("4. Show all groceries sorted alphabetically: Display all "
         +
-        "groceries in alphabetical order.");
+        "groceries in alphabetical order, " + PAGE_SIZE + " at a time.");
     System.out.println("5. Show expires soon: Display groceries that are expiring soon.");
     System.out.println("6. Show expired groceries and wasted value: Display expired "
         +
-        "groceries and their wasted value.");
+        "groceries and their wasted value, and the value thrown away each week. "
+        +
+        "Expired groceries are moved to the waste record automatically.");
     System.out.println("7. Show total storage value: Display the total value of all "
         +
         "groceries in storage.");
@@ -417,19 +789,57 @@ public class UserInterface {
         +
         "groceries from storage.");
     System.out.println("9. Add a new recipe: Add a new recipe to the recipe book.");
-    System.out.println("10. Show all recipes: Display all stored recipes in alphabetical order.");
+    System.out.println("10. Show all recipes: Display all stored recipes in alphabetical order, "
+        +
+        PAGE_SIZE + " at a time.");
     System.out.println("11. Generate shopping list for recipe: Generate a shopping list "
         +
-        "for a recipe based on missing ingredients.");
+        "for a recipe based on missing ingredients, for the number of servings you choose.");
     System.out.println("12. Suggest recipes based on storage: Suggest recipes that can be "
         +
-        "made with available ingredients.");
+        "made with available ingredients or substitutes, and how many servings you can make.");
     System.out.println("13. Show shopping list: Display the shopping list with groceries "
         +
-        "sorted alphabetically.");
+        "sorted alphabetically, and the cheapest packs to buy based on earlier prices. "
+        +
+        "Groceries you use up faster than you shop are added to it automatically.");
     System.out.println("14. About the app: Display information about the app and instructions "
         +
         "on how to use it.");
+    System.out.println("15. Show performance metrics: Display how often and how fast "
+        +
+        "storage, recipe and saving operations run.");
+    System.out.println("16. Add an ingredient substitute: Add an ingredient that can be used "
+        +
+        "instead of another, such as margarine for butter, when suggesting recipes.");
+    System.out.println("17. Export backup: Write all groceries and recipes to compact backup "
+        +
+        "files in a folder of your choice.");
+    System.out.println("18. Import backup: Add the groceries and recipes from backup files "
+        +
+        "in a folder of your choice.");
+    System.out.println("19. Show storage report: Display the value per unit, the value expiring "
+        +
+        "each week, the most valuable groceries and how much has been wasted.");
+    System.out.println("20. Sync with other devices: Share the changes to the pantry with other "
+        +
+        "devices using the same sync folder, and get theirs.");
+    System.out.println("21. Undo last change: Undo the latest change to the groceries, "
+        +
+        "such as adding, removing or clearing them.");
+    System.out.println("22. Redo last undone change: Make an undone change again.");
+    System.out.println("23. Show storage at an earlier date: Display the groceries that were "
+        +
+        "in the storage at the end of a day you choose.");
+    System.out.println("24. Search recipes: Find recipes by words in their name, ingredients "
+        +
+        "or description. Leave out recipes with a word by writing \"without\" before it.");
+    System.out.println("25. Add nutrition facts for an ingredient: Enter the calories, protein, "
+        +
+        "carbohydrates and fat in one unit of an ingredient, such as one gram of flour.");
+    System.out.println("26. Suggest recipes by cost or nutrition: Suggest recipes sorted by the "
+        +
+        "cost, protein or calories per serving, using the prices of your groceries.");
     System.out.println("0. Save & Exit: Save the current state and exit the app.");
   }
 }
\ No newline at end of file
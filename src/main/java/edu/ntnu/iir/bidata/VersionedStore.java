@@ -0,0 +1,37 @@
+package edu.ntnu.iir.bidata;
+
+import java.nio.file.Path;
+import java.util.Date;
+
+/**
+ * A {@link GroceryStore} that keeps the versions it went through, so it can show the storage
+ * as it was at an earlier time and share its changes with other devices.
+ * Not every backend can do this; {@link FoodStorage} can, and a database backend can not, so
+ * callers check for it with {@code instanceof} and leave the feature out for other backends.
+ */
+public interface VersionedStore extends GroceryStore {
+
+  /**
+   * Gets the storage as it was at an earlier time.
+   *
+   * @param time the time to look at.
+   * @return the snapshot from that time, or null if the history does not go back that far.
+   */
+  StorageSnapshot snapshotAt(Date time);
+
+  /**
+   * Starts sharing this pantry with other devices through a drop folder they all can reach.
+   * Calling this again returns the Replicator that was already started.
+   *
+   * @param dropDirectory the folder shared by all devices.
+   * @return the Replicator, used to sync with the other devices.
+   */
+  Replicator startReplication(Path dropDirectory);
+
+  /**
+   * Gets the Replicator sharing this pantry with other devices.
+   *
+   * @return the Replicator, or null if replication has not been started.
+   */
+  Replicator getReplicator();
+}
@@ -0,0 +1,95 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.Serializable;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Represents a lot of a grocery that expired and was thrown away.
+ */
+public class WasteEntry implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private final String name;
+  private final double amount;
+  private final String unit;
+  private final double value;
+  private final Date bestBeforeDate;
+  private final Date recordedDate;
+  private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("dd.MM.yyyy");
+
+  /**
+   * Constructs a new WasteEntry for an expired lot.
+   *
+   * @param grocery the grocery the lot belonged to.
+   * @param lot the expired lot.
+   * @param recordedDate the date the waste was recorded.
+   */
+  public WasteEntry(Grocery grocery, Lot lot, Date recordedDate) {
+    this.name = grocery.getName();
+    this.amount = lot.getAmount();
+    this.unit = grocery.getUnit();
+    this.value = lot.calculateTotalValue();
+    this.bestBeforeDate = lot.getBestBeforeDate();
+    this.recordedDate = recordedDate;
+  }
+
+  /**
+   * Gets the name of the wasted grocery.
+   *
+   * @return the name of the grocery.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Gets the amount that was wasted.
+   *
+   * @return the wasted amount.
+   */
+  public double getAmount() {
+    return amount;
+  }
+
+  /**
+   * Gets the unit of the wasted amount.
+   *
+   * @return the unit of measurement.
+   */
+  public String getUnit() {
+    return unit;
+  }
+
+  /**
+   * Gets the value that was wasted.
+   *
+   * @return the wasted value in NOK.
+   */
+  public double getValue() {
+    return value;
+  }
+
+  /**
+   * Gets the best-before date of the wasted lot.
+   *
+   * @return the best-before date.
+   */
+  public Date getBestBeforeDate() {
+    return bestBeforeDate;
+  }
+
+  /**
+   * Gets the date the waste was recorded.
+   *
+   * @return the recorded date.
+   */
+  public Date getRecordedDate() {
+    return recordedDate;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Wasted: %s, Amount: %.2f %s, Best Before: %s, Value: %.2f NOK",
+        name, amount, unit, DATE_FORMAT.format(bestBeforeDate), value);
+  }
+}
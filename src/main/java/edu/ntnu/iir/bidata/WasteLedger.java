@@ -0,0 +1,155 @@
+package edu.ntnu.iir.bidata;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Keeps a persistent record of wasted groceries.
+ * The wasted value is also added up per week as entries are recorded,
+ * so reports of waste over time never have to go through the whole history.
+ */
+public class WasteLedger {
+  private List<WasteEntry> entries = new ArrayList<>();
+  private TreeMap<Date, Double> weeklyWaste = new TreeMap<>();
+  private final PersistenceService persistence;
+  private final Path filePath;
+  private static final String FILE_NAME = "waste.dat";
+  private static final LatencyHistogram LOAD = Metrics.histogram("ledger.loadFromFile");
+
+  /**
+   * Constructs a new WasteLedger and loads earlier waste from file if available.
+   * The data file is kept in the working directory.
+   *
+   * @param persistence the PersistenceService used to save the ledger.
+   */
+  public WasteLedger(PersistenceService persistence) {
+    this(persistence, Path.of(""));
+  }
+
+  /**
+   * Constructs a new WasteLedger keeping its data file in the given directory,
+   * and loads earlier waste from there if available.
+   *
+   * @param persistence the PersistenceService used to save the ledger.
+   * @param directory the directory holding the data file of the ledger.
+   */
+  public WasteLedger(PersistenceService persistence, Path directory) {
+    this.persistence = persistence;
+    this.filePath = directory.resolve(FILE_NAME);
+    loadFromFile();
+    Metrics.gauge("ledger.entries", this, WasteLedger::getEntryCount);
+  }
+
+  /**
+   * Records a wasted lot in the ledger.
+   *
+   * @param entry the WasteEntry to record.
+   */
+  public synchronized void record(WasteEntry entry) {
+    entries.add(entry);
+    weeklyWaste.merge(startOfWeek(entry.getRecordedDate()), entry.getValue(), Double::sum);
+  }
+
+  /**
+   * Retrieves all recorded waste, oldest first.
+   *
+   * @return List of WasteEntry objects.
+   */
+  public synchronized List<WasteEntry> getEntries() {
+    return new ArrayList<>(entries);
+  }
+
+  /**
+   * Gets the number of recorded waste entries.
+   *
+   * @return the number of entries.
+   */
+  public synchronized int getEntryCount() {
+    return entries.size();
+  }
+
+  /**
+   * Retrieves the wasted value per week.
+   *
+   * @return a map from the Monday starting each week to the value wasted that week in NOK.
+   */
+  public synchronized NavigableMap<Date, Double> getWeeklyWaste() {
+    return Collections.unmodifiableNavigableMap(new TreeMap<>(weeklyWaste));
+  }
+
+  /**
+   * Calculates the total wasted value.
+   *
+   * @return the total wasted value in NOK.
+   */
+  public synchronized double getTotalWaste() {
+    double total = 0;
+    for (double value : weeklyWaste.values()) {
+      total += value;
+    }
+    return total;
+  }
+
+  /**
+   * Saves the ledger to a file to ensure data is retained across sessions.
+   * The file is written in the background, from a copy taken right before writing.
+   */
+  public void saveToFile() {
+    persistence.requestSave(filePath, this::copyLedger);
+  }
+
+  /**
+   * Copies the entries and weekly totals so they can be written while new waste is recorded.
+   *
+   * @return an array holding the list of entries and the map of weekly totals.
+   */
+  private synchronized Object[] copyLedger() {
+    return new Object[] {new ArrayList<>(entries), new TreeMap<>(weeklyWaste)};
+  }
+
+  /**
+   * Loads the ledger from a file if it exists.
+   */
+  @SuppressWarnings("unchecked")
+  private void loadFromFile() {
+    long start = Metrics.start();
+    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filePath.toFile()))) {
+      Object[] data = (Object[]) ois.readObject();
+      entries = (List<WasteEntry>) data[0];
+      weeklyWaste = (TreeMap<Date, Double>) data[1];
+    } catch (FileNotFoundException e) {
+      System.out.println("No saved waste found. Starting with an empty ledger.");
+    } catch (IOException | ClassNotFoundException e) {
+      System.out.println("Error loading waste ledger: " + e.getMessage());
+    }
+    LOAD.stop(start);
+  }
+
+  /**
+   * Finds the Monday at midnight starting the week of the given date.
+   *
+   * @param date the date to find the week for.
+   * @return the start of the week.
+   */
+  static Date startOfWeek(Date date) {
+    Calendar cal = Calendar.getInstance();
+    cal.setFirstDayOfWeek(Calendar.MONDAY);
+    cal.setTime(date);
+    cal.set(Calendar.HOUR_OF_DAY, 0);
+    cal.set(Calendar.MINUTE, 0);
+    cal.set(Calendar.SECOND, 0);
+    cal.set(Calendar.MILLISECOND, 0);
+    cal.set(Calendar.DAY_OF_WEEK, Calendar.MONDAY);
+    return cal.getTime();
+  }
+}
@@ -0,0 +1,135 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import edu.ntnu.iir.bidata.BackupFormat;
+import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.Ingredient;
+import edu.ntnu.iir.bidata.Lot;
+import edu.ntnu.iir.bidata.Recipe;
+
+/**
+ * Compares the backup format with Java serialization, the format of the data files:
+ * the size of the files, and how many megabytes per second are written and read.
+ * Run the main method from the IDE; it is not a JUnit test.
+ */
+public class BackupBenchmark {
+
+    private static final int GROCERIES = 100_000;
+    private static final int RECIPES = 20_000;
+    private static final String[] UNITS = {"grams", "pieces", "liters", "kg"};
+    private static final String[] WORDS = {"mix", "the", "flour", "with", "milk", "and", "stir",
+        "until", "smooth", "then", "bake", "in", "oven", "for", "minutes", "serve", "warm"};
+
+    /**
+     * Runs the benchmark and prints sizes and throughput.
+     *
+     * @param args command-line arguments (not used)
+     * @throws IOException if the temporary files could not be written
+     */
+    public static void main(String[] args) throws IOException {
+        Random random = new Random(1);
+        List<Grocery> groceries = new ArrayList<>(GROCERIES);
+        for (int i = 0; i < GROCERIES; i++) {
+            Grocery grocery = new Grocery("Item" + i, 1 + random.nextInt(1000),
+                    UNITS[random.nextInt(UNITS.length)], daysFromNow(1 + i / 500), 1.0);
+            if (random.nextBoolean()) {
+                grocery.addLot(new Lot(1 + random.nextInt(100), daysFromNow(30 + i / 500), 2.0));
+            }
+            groceries.add(grocery);
+        }
+        List<Recipe> recipes = new ArrayList<>(RECIPES);
+        for (int i = 0; i < RECIPES; i++) {
+            Recipe recipe = new Recipe("Recipe" + i);
+            for (int j = 0; j < 3 + random.nextInt(8); j++) {
+                recipe.addIngredient(new Ingredient("Item" + random.nextInt(500),
+                        1 + random.nextInt(200), UNITS[random.nextInt(UNITS.length)]));
+            }
+            StringBuilder description = new StringBuilder();
+            for (int j = 0; j < 40 + random.nextInt(80); j++) {
+                description.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            recipe.setDescription(description.toString());
+            recipes.add(recipe);
+        }
+
+        Path directory = Files.createTempDirectory("backup-benchmark");
+        try {
+            for (int round = 0; round < 3; round++) {
+                System.out.println("Round " + (round + 1));
+                compare("Groceries", directory, new ArrayList<>(groceries),
+                        out -> BackupFormat.exportGroceries(groceries, out),
+                        in -> BackupFormat.importGroceries(in, grocery -> { }));
+                compare("Recipes", directory, new ArrayList<>(recipes),
+                        out -> BackupFormat.exportRecipes(recipes, out),
+                        in -> BackupFormat.importRecipes(in, recipe -> { }));
+            }
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private interface Export {
+        long run(OutputStream out) throws IOException;
+    }
+
+    private interface Import {
+        long run(InputStream in) throws IOException;
+    }
+
+    private static void compare(String name, Path directory, Object serialized, Export export,
+            Import read) throws IOException {
+        Path serializedFile = directory.resolve(name + ".dat");
+        long start = System.nanoTime();
+        try (ObjectOutputStream out = new ObjectOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(serializedFile)))) {
+            out.writeObject(serialized);
+        }
+        double serializeSeconds = (System.nanoTime() - start) / 1e9;
+
+        Path backupFile = directory.resolve(name + ".wlb");
+        start = System.nanoTime();
+        try (OutputStream out = Files.newOutputStream(backupFile)) {
+            export.run(out);
+        }
+        double exportSeconds = (System.nanoTime() - start) / 1e9;
+        start = System.nanoTime();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(backupFile))) {
+            read.run(in);
+        }
+        double importSeconds = (System.nanoTime() - start) / 1e9;
+
+        long serializedSize = Files.size(serializedFile);
+        long backupSize = Files.size(backupFile);
+        double megabytes = serializedSize / 1e6;
+        System.out.printf("  %-9s serialized %8.2f MB in %5.3f s, backup %8.2f MB (ratio %.2f)%n",
+                name, megabytes, serializeSeconds, backupSize / 1e6,
+                (double) serializedSize / backupSize);
+        System.out.printf("  %-9s export %7.1f MB/s, import %7.1f MB/s (of serialized size)%n",
+                name, megabytes / exportSeconds, megabytes / importSeconds);
+    }
+
+    private static Date daysFromNow(int days) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.DAY_OF_MONTH, days);
+        return calendar.getTime();
+    }
+}
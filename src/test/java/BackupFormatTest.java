@@ -0,0 +1,119 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import edu.ntnu.iir.bidata.BackupFormat;
+import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.Ingredient;
+import edu.ntnu.iir.bidata.Lot;
+import edu.ntnu.iir.bidata.Recipe;
+
+/**
+ * Tests the BackupFormat class.
+ *
+ * Positive tests:
+ * - Groceries with several lots are read back with the same lots, dates and prices
+ * - Recipes spanning several blocks are read back with ids, servings, ingredients and descriptions
+ *
+ * Negative tests:
+ * - A grocery backup is not accepted as a recipe backup
+ * - A truncated backup throws IOException
+ */
+public class BackupFormatTest {
+
+    private static List<Grocery> groceries() {
+        Grocery milk = new Grocery("Milk", 1.0, "liters", TestFixtures.daysFromNow(3), 20.0);
+        milk.addLot(new Lot(2.0, TestFixtures.daysFromNow(10), 18.5));
+        Grocery rice = new Grocery("Rice", 1000.0, "grams", TestFixtures.daysFromNow(100), 0.05);
+        return List.of(milk, rice);
+    }
+
+    private static List<Recipe> recipes(int count) {
+        List<Recipe> recipes = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            Recipe recipe = new Recipe("Recipe " + i);
+            recipe.setServings(1 + i % 4);
+            recipe.addIngredient(new Ingredient("Flour", 100 + i, "grams"));
+            recipe.addIngredient(new Ingredient("Milk", 0.5, "liters"));
+            recipe.setDescription(i % 7 == 0 ? null : "Mix and bake recipe " + i + " for 20 minutes.");
+            recipes.add(recipe);
+        }
+        return recipes;
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests that groceries are read back with all their lots.
+     */
+    @Test
+    public void testGroceryRoundTrip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(2, BackupFormat.exportGroceries(groceries(), out));
+        List<Grocery> read = new ArrayList<>();
+        BackupFormat.importGroceries(new ByteArrayInputStream(out.toByteArray()), read::add);
+
+        assertEquals(2, read.size());
+        for (int i = 0; i < read.size(); i++) {
+            Grocery expected = groceries().get(i);
+            Grocery actual = read.get(i);
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getUnit(), actual.getUnit());
+            assertEquals(expected.getAmount(), actual.getAmount(), 1e-9);
+            assertEquals(expected.getPricePerUnit(), actual.getPricePerUnit(), 1e-9);
+            assertEquals(expected.getLots().size(), actual.getLots().size());
+        }
+        assertEquals(groceries().get(0).getLots().get(1).getBestBeforeDate().getTime(),
+                read.get(0).getLots().get(1).getBestBeforeDate().getTime(), 1000);
+    }
+
+    /**
+     * Tests that recipes in more than one block are read back in order.
+     */
+    @Test
+    public void testRecipeRoundTrip() throws IOException {
+        List<Recipe> recipes = recipes(600);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(600, BackupFormat.exportRecipes(recipes, out));
+        List<Recipe> read = new ArrayList<>();
+        BackupFormat.importRecipes(new ByteArrayInputStream(out.toByteArray()), read::add);
+
+        assertEquals(600, read.size());
+        for (int i = 0; i < recipes.size(); i++) {
+            assertEquals(recipes.get(i).getName(), read.get(i).getName());
+            assertEquals(recipes.get(i).getServings(), read.get(i).getServings());
+            assertEquals(recipes.get(i).getDescription(), read.get(i).getDescription());
+            assertEquals(recipes.get(i).getIngredients().toString(),
+                    read.get(i).getIngredients().toString());
+        }
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that a grocery backup is rejected when read as recipes.
+     */
+    @Test
+    public void testWrongKindOfBackup() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BackupFormat.exportGroceries(groceries(), out);
+        assertThrows(IOException.class, () -> BackupFormat.importRecipes(
+                new ByteArrayInputStream(out.toByteArray()), recipe -> { }));
+    }
+
+    /**
+     * Tests that a backup cut off in the middle throws IOException.
+     */
+    @Test
+    public void testTruncatedBackup() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BackupFormat.exportRecipes(recipes(10), out);
+        byte[] truncated = Arrays.copyOf(out.toByteArray(), out.size() / 2);
+        assertThrows(IOException.class, () -> BackupFormat.importRecipes(
+                new ByteArrayInputStream(truncated), recipe -> { }));
+    }
+}
@@ -0,0 +1,167 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import edu.ntnu.iir.bidata.ConsumptionHistory;
+import edu.ntnu.iir.bidata.ConsumptionSeries;
+import edu.ntnu.iir.bidata.FoodStorage;
+import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.ReorderAlert;
+import edu.ntnu.iir.bidata.ShoppingList;
+
+/**
+ * Tests recording the use of groceries and raising reorder alerts.
+ *
+ * Positive tests:
+ * - The window keeps the latest uses and their total, and the rate follows steady use
+ * - The rate falls when an item is no longer used
+ * - An item running out before the shopping day gives an alert with the amount to buy
+ * - Alerts from a storage reach the shopping list, once per item
+ *
+ * Negative tests:
+ * - Items with enough stock give no alert
+ * - Invalid amounts and shopping days are rejected
+ */
+public class ConsumptionHistoryTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    @TempDir
+    Path directory;
+
+    private final PersistenceService persistence = new PersistenceService();
+
+    private static long saturdayNoon() {
+        Calendar cal = Calendar.getInstance();
+        cal.set(2025, Calendar.MARCH, 1, 12, 0, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTimeInMillis();
+    }
+
+    private ConsumptionHistory history() {
+        return new ConsumptionHistory(persistence, directory.resolve("consumption.dat"));
+    }
+
+    private static Grocery grocery(String name, double amount) {
+        Calendar date = Calendar.getInstance();
+        date.add(Calendar.DAY_OF_MONTH, 30);
+        return new Grocery(name, amount, "pieces", date.getTime(), 5.0);
+    }
+
+    @AfterEach
+    public void shutdownPersistence() {
+        persistence.shutdown();
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests the window and the rate for an item used at a steady pace.
+     */
+    @Test
+    public void testSteadyUse() {
+        ConsumptionHistory history = history();
+        long start = saturdayNoon();
+        for (int day = 0; day < 40; day++) {
+            history.record("Milk", "liters", 2, 1000, start + day * DAY);
+        }
+        ConsumptionSeries series = history.getSeries("milk");
+        assertEquals(32, series.size());
+        assertEquals(64, series.getWindowTotal(), 1e-9);
+        assertEquals(start + 8 * DAY, series.timeAt(0));
+        assertEquals(2, series.windowRate(), 0.1);
+        assertEquals(2, history.dailyRate("Milk", start + 39 * DAY), 0.2);
+    }
+
+    /**
+     * Tests that the rate falls when an item is no longer used.
+     */
+    @Test
+    public void testRateDecays() {
+        ConsumptionHistory history = history();
+        long start = saturdayNoon();
+        for (int day = 0; day < 14; day++) {
+            history.record("Eggs", "pieces", 3, 1000, start + day * DAY);
+        }
+        double rate = history.dailyRate("Eggs", start + 13 * DAY);
+        assertTrue(history.dailyRate("Eggs", start + 27 * DAY) < rate / 6);
+        assertEquals(0, history.dailyRate("Flour", start));
+    }
+
+    /**
+     * Tests that an item running out before the shopping day gives an alert.
+     */
+    @Test
+    public void testAlertBeforeShoppingDay() {
+        ConsumptionHistory history = history();
+        long saturday = saturdayNoon();
+        assertEquals(saturday + 7 * DAY - 12 * 60 * 60 * 1000L, history.nextShoppingDay(saturday));
+        history.setShoppingDay(Calendar.WEDNESDAY);
+        assertEquals(saturday + 4 * DAY - 12 * 60 * 60 * 1000L, history.nextShoppingDay(saturday));
+
+        assertNull(history.record("Rice", "grams", 4, 40, saturday));
+        ReorderAlert alert = history.record("Bread", "slices", 4, 4, saturday);
+        assertNotNull(alert);
+        assertEquals(4, alert.getDailyRate(), 1e-9);
+        assertTrue(alert.getStockOutDate().getTime() < alert.getShoppingDate().getTime());
+        assertEquals(Math.ceil((4 * 10.5 - 4) * 10) / 10, alert.getReorderAmount(), 1e-9);
+        assertEquals("Bread", alert.toIngredient().getName());
+    }
+
+    /**
+     * Tests that alerts from a storage are added to the shopping list once per item.
+     */
+    @Test
+    public void testAlertsReachShoppingList() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        ShoppingList shoppingList = new ShoppingList();
+        List<ReorderAlert> alerts = new ArrayList<>();
+        storage.getConsumptionHistory().setShoppingDay(Calendar.getInstance().get(Calendar.DAY_OF_WEEK));
+        storage.addReorderListener(shoppingList);
+        storage.addReorderListener(alerts::add);
+        storage.addGrocery(grocery("Eggs", 6));
+        storage.removeGrocery("Eggs", 4);
+        storage.removeGrocery("Eggs", 10);
+
+        assertEquals(2, alerts.size());
+        assertEquals(0, alerts.get(1).getStock());
+        assertEquals(6, storage.getConsumptionHistory().getSeries("Eggs").getWindowTotal(), 1e-9);
+        assertEquals(1, shoppingList.getItems().size());
+        assertEquals(alerts.get(1).getReorderAmount(), shoppingList.getItems().get(0).getAmount());
+        assertEquals(1, shoppingList.listItems(null, 10).getItems().size());
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that items with enough stock give no alert.
+     */
+    @Test
+    public void testNoAlertWithEnoughStock() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        List<ReorderAlert> alerts = new ArrayList<>();
+        storage.addReorderListener(alerts::add);
+        storage.addGrocery(grocery("Rice", 1000));
+        storage.removeGrocery("Rice", 1);
+        storage.removeGrocery("Pasta", 1);
+        assertTrue(alerts.isEmpty());
+        assertNull(storage.getConsumptionHistory().getSeries("Pasta"));
+    }
+
+    /**
+     * Tests that amounts that are not positive and invalid days are rejected.
+     */
+    @Test
+    public void testInvalidInput() {
+        ConsumptionHistory history = history();
+        assertThrows(IllegalArgumentException.class,
+                () -> history.record("Milk", "liters", 0, 1, saturdayNoon()));
+        assertThrows(IllegalArgumentException.class, () -> history.setShoppingDay(8));
+        assertThrows(IllegalArgumentException.class, () -> history.setShoppingDay(0));
+    }
+}
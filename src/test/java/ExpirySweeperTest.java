@@ -0,0 +1,141 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import edu.ntnu.iir.bidata.ExpirySweeper;
+import edu.ntnu.iir.bidata.FoodStorage;
+import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.WasteEntry;
+import edu.ntnu.iir.bidata.WasteLedger;
+
+/**
+ * Tests the ExpirySweeper, WasteLedger and WasteEntry classes.
+ *
+ * Positive tests:
+ * - Expired lots are moved into the ledger with their amount, value and dates
+ * - The ledger totals and weekly waste are saved and loaded again
+ *
+ * Negative tests:
+ * - Lots that have not expired stay in the storage
+ * - A sweep that removes nothing does not touch the ledger or the undo steps
+ * - A sweep that removes lots drops the undo steps
+ */
+public class ExpirySweeperTest {
+
+    @TempDir
+    Path directory;
+
+    private final PersistenceService persistence = new PersistenceService();
+
+    @AfterEach
+    public void shutdownPersistence() {
+        persistence.shutdown();
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests that only the lots expired before the sweep date are moved into the ledger.
+     */
+    @Test
+    public void testExpiredLotsMoveToLedger() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        WasteLedger ledger = new WasteLedger(persistence, directory);
+        storage.addGrocery(new Grocery("Milk", 2, "liters", TestFixtures.daysFromNow(3), 20.0));
+        storage.addGrocery(new Grocery("Milk", 1, "liters", TestFixtures.daysFromNow(30), 22.0));
+        storage.addGrocery(new Grocery("Rice", 500, "grams", TestFixtures.daysFromNow(60), 0.05));
+        Date sweepDate = TestFixtures.daysFromNow(10);
+
+        assertEquals(1, new ExpirySweeper(storage, ledger).sweep(sweepDate));
+
+        List<WasteEntry> entries = ledger.getEntries();
+        assertEquals(1, entries.size());
+        WasteEntry entry = entries.get(0);
+        assertEquals("Milk", entry.getName());
+        assertEquals(2.0, entry.getAmount(), 1e-9);
+        assertEquals("liters", entry.getUnit());
+        assertEquals(40.0, entry.getValue(), 1e-9);
+        assertEquals(sweepDate, entry.getRecordedDate());
+        assertTrue(entry.getBestBeforeDate().before(sweepDate));
+        assertEquals(40.0, ledger.getTotalWaste(), 1e-9);
+    }
+
+    /**
+     * Tests that the entries, total and weekly waste of the ledger are read back from file.
+     */
+    @Test
+    public void testLedgerSaveAndLoad() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        WasteLedger ledger = new WasteLedger(persistence, directory);
+        storage.addGrocery(new Grocery("Bread", 1, "pieces", TestFixtures.daysFromNow(2), 35.0));
+        storage.addGrocery(new Grocery("Yoghurt", 4, "pieces", TestFixtures.daysFromNow(4), 12.5));
+        new ExpirySweeper(storage, ledger).sweep(TestFixtures.daysFromNow(7));
+        persistence.shutdown();
+
+        WasteLedger loaded = new WasteLedger(persistence, directory);
+        assertEquals(2, loaded.getEntryCount());
+        assertEquals(85.0, loaded.getTotalWaste(), 1e-9);
+        assertEquals(ledger.getWeeklyWaste(), loaded.getWeeklyWaste());
+        assertEquals(85.0, loaded.getWeeklyWaste().values().stream()
+                .mapToDouble(Double::doubleValue).sum(), 1e-9);
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that lots that have not expired stay in the storage and out of the ledger.
+     */
+    @Test
+    public void testUnexpiredLotsStay() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        WasteLedger ledger = new WasteLedger(persistence, directory);
+        storage.addGrocery(new Grocery("Cheese", 1, "kg", TestFixtures.daysFromNow(3), 100.0));
+        storage.addGrocery(new Grocery("Cheese", 2, "kg", TestFixtures.daysFromNow(20), 110.0));
+
+        assertEquals(1, new ExpirySweeper(storage, ledger).sweep(TestFixtures.daysFromNow(10)));
+
+        Grocery cheese = storage.searchGrocery("Cheese");
+        assertEquals(2.0, cheese.getAmount(), 1e-9);
+        assertEquals(1, cheese.getLots().size());
+        assertEquals(220.0, storage.getTotalValue(), 1e-9);
+    }
+
+    /**
+     * Tests that a sweep with nothing expired leaves the ledger and the undo steps alone.
+     */
+    @Test
+    public void testNothingExpired() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        WasteLedger ledger = new WasteLedger(persistence, directory);
+        storage.addGrocery(new Grocery("Apples", 6, "pieces", TestFixtures.daysFromNow(14), 5.0));
+        int undoSteps = storage.getUndoCount();
+
+        assertEquals(0, new ExpirySweeper(storage, ledger).sweep());
+
+        assertEquals(0, ledger.getEntryCount());
+        assertEquals(0.0, ledger.getTotalWaste(), 1e-9);
+        assertEquals(undoSteps, storage.getUndoCount());
+    }
+
+    /**
+     * Tests that a sweep that removes lots drops the undo steps, as documented.
+     */
+    @Test
+    public void testSweepDropsUndoSteps() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        WasteLedger ledger = new WasteLedger(persistence, directory);
+        storage.addGrocery(new Grocery("Fish", 1, "kg", TestFixtures.daysFromNow(1), 150.0));
+        storage.addGrocery(new Grocery("Pasta", 1, "kg", TestFixtures.daysFromNow(90), 30.0));
+        assertTrue(storage.getUndoCount() > 0);
+
+        new ExpirySweeper(storage, ledger).sweep(TestFixtures.daysFromNow(5));
+
+        assertEquals(0, storage.getUndoCount());
+        assertFalse(storage.undo());
+        assertNull(storage.searchGrocery("Fish"));
+    }
+}
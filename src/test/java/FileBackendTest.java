@@ -0,0 +1,13 @@
+import edu.ntnu.iir.bidata.FileBackend;
+import edu.ntnu.iir.bidata.StorageBackend;
+
+/**
+ * Runs the storage backend conformance tests against the file backend.
+ */
+public class FileBackendTest extends StorageBackendConformanceTest {
+
+    @Override
+    protected StorageBackend createBackend() {
+        return StorageBackend.find(FileBackend.NAME);
+    }
+}
@@ -4,6 +4,7 @@ import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.Lot;
 
 /**
  * Tests the Grocery class. This class contains unit tests to ensure
@@ -22,6 +23,7 @@ import edu.ntnu.iir.bidata.Grocery;
  * - Specifying an invalid unit (null or empty)
  * - Setting an invalid best before date
  * - Setting a negative price per unit
+ * - Setting the amount, date or price of a grocery with several lots
  */
 public class GroceryTest {
 
@@ -78,6 +80,58 @@ public class GroceryTest {
         assertEquals(30.0, apple.getPricePerUnit(), 0.01, "Price per unit should be 30.0 NOK");
     }
 
+    /**
+     * Tests that consuming a grocery takes from the earliest-expiring lot first.
+     */
+    @Test
+    public void testConsumeEarliestLotFirst() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.DAY_OF_YEAR, 10);
+        Date later = calendar.getTime();
+        calendar.add(Calendar.DAY_OF_YEAR, -5);
+        Date sooner = calendar.getTime();
+
+        Grocery milk = new Grocery("Milk", 1, "liters", later, 20.0);
+        milk.addLot(new Lot(2, sooner, 25.0));
+        assertEquals(sooner, milk.getBestBeforeDate(), "Earliest lot should set the best before date");
+
+        milk.consume(2.5);
+        assertEquals(0.5, milk.getAmount(), 0.001, "Amount should be reduced by 2.5");
+        assertEquals(later, milk.getBestBeforeDate(), "Earliest lot should be used up");
+        assertEquals(10.0, milk.calculateTotalValue(), 0.001, "Only the later lot should be left");
+    }
+
+    /**
+     * Tests that consuming more than is left empties the grocery.
+     */
+    @Test
+    public void testConsumeMoreThanAvailable() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.DAY_OF_YEAR, 1);
+        Grocery bread = new Grocery("Bread", 2, "pieces", calendar.getTime(), 10.0);
+        assertEquals(2, bread.consume(5), 0.001, "Only the available amount should be consumed");
+        assertTrue(bread.isEmpty(), "Grocery should have no lots left");
+    }
+
+    /**
+     * Tests that the setters change the single lot of a grocery.
+     */
+    @Test
+    public void testSettersChangeSingleLot() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.DAY_OF_YEAR, 3);
+        Grocery cheese = new Grocery("Cheese", 1, "kg", calendar.getTime(), 100.0);
+        calendar.add(Calendar.DAY_OF_YEAR, 4);
+        cheese.setAmount(2);
+        cheese.setBestBeforeDate(calendar.getTime());
+        cheese.setPricePerUnit(80.0);
+        assertEquals(2, cheese.getAmount(), 0.001, "Amount should be 2");
+        assertEquals(calendar.getTime(), cheese.getBestBeforeDate(), "Date should be moved");
+        assertEquals(80.0, cheese.getPricePerUnit(), 0.001, "Price should be 80");
+        assertEquals(160.0, cheese.calculateTotalValue(), 0.001, "Value should follow the lot");
+        assertEquals(1, cheese.getLots().size(), "There should still be one lot");
+    }
+
     // Negative Tests
 
     /**
@@ -134,4 +188,19 @@ public class GroceryTest {
         });
         assertEquals("Price per unit must be greater than 0", exception.getMessage());
     }
+
+    /**
+     * Tests that the setters are rejected when a grocery has several lots.
+     */
+    @Test
+    public void testSettersRejectSeveralLots() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.DAY_OF_YEAR, 3);
+        Grocery eggs = new Grocery("Eggs", 6, "pieces", calendar.getTime(), 4.0);
+        eggs.addLot(new Lot(6, calendar.getTime(), 5.0));
+        assertThrows(IllegalStateException.class, () -> eggs.setAmount(3));
+        assertThrows(IllegalStateException.class, () -> eggs.setPricePerUnit(3.0));
+        assertThrows(IllegalStateException.class, () -> eggs.setBestBeforeDate(new Date()));
+        assertEquals(12, eggs.getAmount(), 0.001, "Amount should not change");
+    }
 }
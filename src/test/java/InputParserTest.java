@@ -0,0 +1,120 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import edu.ntnu.iir.bidata.InputParser;
+
+/**
+ * Tests the InputParser class.
+ *
+ * Positive tests:
+ * - Decimals are parsed with a point, a comma, or the separators of the locale
+ * - Dates in the format dd.MM.yyyy give the same epoch day as java.time
+ * - Lines are read one at a time, with Windows line breaks removed
+ *
+ * Negative tests:
+ * - Invalid numbers and dates give a sentinel and an error, not an exception
+ * - Dates that do not exist are rejected
+ * - Reading past the end of the input throws NoSuchElementException
+ */
+public class InputParserTest {
+
+    private static InputParser parser(String input) {
+        return new InputParser(new StringReader(input), Locale.US);
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests decimals with a point, a comma, a sign and grouping.
+     */
+    @Test
+    public void testDecimals() {
+        InputParser parser = parser("");
+        assertEquals(2.5, parser.parseDecimal("2.5"));
+        assertEquals(2.5, parser.parseDecimal(" 2,5 "));
+        assertEquals(-0.75, parser.parseDecimal("-0.75"));
+        assertEquals(0.1, parser.parseDecimal(".1"));
+        assertEquals(12, parser.parseDecimal("12"));
+        assertEquals(0.3, parser.parseDecimal("0.3"), "Should round the same as parseDouble");
+        assertEquals(Double.parseDouble("1234567890.123456789"),
+                parser.parseDecimal("1234567890.123456789"));
+        assertNull(parser.getError());
+
+        InputParser norwegian = new InputParser(new StringReader(""), Locale.forLanguageTag("nb-NO"));
+        assertEquals(1250.5, norwegian.parseDecimal("1 250,50"));
+    }
+
+    /**
+     * Tests that dates give the same epoch day as LocalDate, including leap days.
+     */
+    @Test
+    public void testDates() {
+        InputParser parser = parser("");
+        assertEquals(LocalDate.of(2025, 3, 1).toEpochDay(), parser.parseEpochDay("01.03.2025"));
+        assertEquals(LocalDate.of(2024, 2, 29).toEpochDay(), parser.parseEpochDay("29.2.2024"));
+        assertEquals(LocalDate.of(1969, 12, 31).toEpochDay(), parser.parseEpochDay("31.12.1969"));
+        for (LocalDate date = LocalDate.of(1999, 1, 1); date.getYear() < 2102; date = date.plusDays(17)) {
+            String text = String.format("%02d.%02d.%04d",
+                    date.getDayOfMonth(), date.getMonthValue(), date.getYear());
+            assertEquals(date.toEpochDay(), parser.parseEpochDay(text), text);
+        }
+    }
+
+    /**
+     * Tests reading lines, numbers and dates from the input.
+     */
+    @Test
+    public void testReadLines() {
+        InputParser parser = parser("Milk\r\n2,5\n\n7\n24.12.2030");
+        assertEquals("Milk", parser.nextLine());
+        assertEquals(2.5, parser.nextDecimal());
+        assertEquals(InputParser.INVALID_NUMBER, parser.nextWholeNumber());
+        assertTrue(parser.isBlank());
+        assertEquals(7, parser.nextWholeNumber());
+        assertFalse(parser.isBlank());
+        assertEquals(LocalDate.of(2030, 12, 24).toEpochDay(), parser.nextEpochDay());
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that invalid numbers give NaN or INVALID_NUMBER and an error.
+     */
+    @Test
+    public void testInvalidNumbers() {
+        InputParser parser = parser("");
+        for (String text : new String[] {"", "abc", "1.2.3", "-", "1e5", "NaN", "1 000", "5kg"}) {
+            assertTrue(Double.isNaN(parser.parseDecimal(text)), text);
+            assertNotNull(parser.getError(), text);
+        }
+        assertEquals(InputParser.INVALID_NUMBER, parser.parseWholeNumber("2.5"));
+        assertEquals(InputParser.INVALID_NUMBER, parser.parseWholeNumber("99999999999"));
+        assertEquals(InputParser.INVALID_NUMBER, parser.parseWholeNumber("+"));
+    }
+
+    /**
+     * Tests that invalid and non-existing dates give INVALID_DAY.
+     */
+    @Test
+    public void testInvalidDates() {
+        InputParser parser = parser("");
+        for (String text : new String[] {"", "2025-01-01", "1.1.25", "31.04.2025", "29.02.2023",
+                "00.01.2025", "01.13.2025", "123.01.2025", "01.01.2025.", "1..2025"}) {
+            assertEquals(InputParser.INVALID_DAY, parser.parseEpochDay(text), text);
+            assertNotNull(parser.getError(), text);
+        }
+    }
+
+    /**
+     * Tests that reading past the end of the input throws NoSuchElementException.
+     */
+    @Test
+    public void testEndOfInput() {
+        InputParser parser = parser("last");
+        assertEquals("last", parser.nextLine());
+        assertThrows(NoSuchElementException.class, parser::nextLine);
+    }
+}
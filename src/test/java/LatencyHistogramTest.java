@@ -0,0 +1,55 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import edu.ntnu.iir.bidata.LatencyHistogram;
+
+/**
+ * Tests the LatencyHistogram class.
+ *
+ * Positive tests:
+ * - Percentiles are within the bucket precision of the recorded values
+ * - Count, mean and max are exact
+ *
+ * Negative tests:
+ * - An empty histogram reports 0 for every percentile
+ */
+public class LatencyHistogramTest {
+
+    // Positive Tests
+
+    /**
+     * Tests that percentiles are within about 6% of the true values.
+     */
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        for (long i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(5_000_000, histogram.getPercentileNanos(50), 5_000_000 * 0.07, "P50 should be about 5 ms");
+        assertEquals(9_900_000, histogram.getPercentileNanos(99), 9_900_000 * 0.07, "P99 should be about 9.9 ms");
+    }
+
+    /**
+     * Tests that count, mean and max are recorded exactly.
+     */
+    @Test
+    public void testCountMeanMax() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        histogram.record(100);
+        histogram.record(300);
+        assertEquals(2, histogram.getCount(), "Count should be 2");
+        assertEquals(200.0, histogram.getMeanNanos(), 0.001, "Mean should be 200 ns");
+        assertEquals(300, histogram.getMaxNanos(), "Max should be 300 ns");
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that an empty histogram reports 0.
+     */
+    @Test
+    public void testEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        assertEquals(0, histogram.getPercentileNanos(99), "Empty histogram should report 0");
+    }
+}
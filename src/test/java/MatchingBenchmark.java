@@ -0,0 +1,102 @@
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+import edu.ntnu.iir.bidata.FoodStorage;
+import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.Ingredient;
+import edu.ntnu.iir.bidata.PantryVector;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.Recipe;
+
+/**
+ * Measures how many recipes per second can be checked against the storage,
+ * comparing a name lookup per ingredient with the compiled recipe and pantry vectors.
+ * Run the main method from the IDE; it is not a JUnit test.
+ */
+public class MatchingBenchmark {
+
+    private static final int INGREDIENT_NAMES = 500;
+    private static final int GROCERIES = 300;
+    private static final int RECIPES = 20_000;
+    private static final int ROUNDS = 20;
+
+    /**
+     * Runs the benchmark and prints the throughput of both approaches.
+     *
+     * @param args command-line arguments (not used)
+     */
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.YEAR, 1);
+        Date bestBefore = calendar.getTime();
+
+        FoodStorage storage = new FoodStorage(new PersistenceService());
+        storage.clearAllGroceries();
+        for (int i = 0; i < GROCERIES; i++) {
+            storage.addGrocery(new Grocery("Item" + random.nextInt(INGREDIENT_NAMES),
+                    1 + random.nextInt(1000), "grams", bestBefore, 1.0));
+        }
+        Recipe[] recipes = new Recipe[RECIPES];
+        for (int i = 0; i < RECIPES; i++) {
+            recipes[i] = new Recipe("Recipe" + i);
+            int count = 3 + random.nextInt(10);
+            for (int j = 0; j < count; j++) {
+                recipes[i].addIngredient(new Ingredient("Item" + random.nextInt(INGREDIENT_NAMES),
+                        1 + random.nextInt(200), "grams"));
+            }
+            recipes[i].getVector();
+        }
+
+        for (int warmup = 0; warmup < 3; warmup++) {
+            byName(storage, recipes);
+            byVector(storage, recipes);
+        }
+        long start = System.nanoTime();
+        int matchedByName = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            matchedByName += byName(storage, recipes);
+        }
+        double nameSeconds = (System.nanoTime() - start) / 1e9;
+        start = System.nanoTime();
+        int matchedByVector = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            matchedByVector += byVector(storage, recipes);
+        }
+        double vectorSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("Name lookups:   %,.0f recipes/s (%d matches)%n",
+                RECIPES * ROUNDS / nameSeconds, matchedByName);
+        System.out.printf("Pantry vectors: %,.0f recipes/s (%d matches)%n",
+                RECIPES * ROUNDS / vectorSeconds, matchedByVector);
+    }
+
+    private static int byName(FoodStorage storage, Recipe[] recipes) {
+        int matched = 0;
+        for (Recipe recipe : recipes) {
+            boolean available = true;
+            for (Ingredient ingredient : recipe.getIngredients()) {
+                Grocery grocery = storage.searchGrocery(ingredient.getName());
+                if (grocery == null || grocery.getAmount() < ingredient.getAmount()) {
+                    available = false;
+                    break;
+                }
+            }
+            if (available) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    private static int byVector(FoodStorage storage, Recipe[] recipes) {
+        PantryVector pantry = storage.snapshot().pantry();
+        int matched = 0;
+        for (Recipe recipe : recipes) {
+            if (pantry.covers(recipe.getVector())) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
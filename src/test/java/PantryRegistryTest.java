@@ -0,0 +1,118 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Calendar;
+import edu.ntnu.iir.bidata.FoodStorage;
+import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.Metrics;
+import edu.ntnu.iir.bidata.PantryRegistry;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.RecipeBook;
+
+/**
+ * Tests the PantryRegistry class.
+ *
+ * Positive tests:
+ * - Pantries are loaded once and kept open while there is room
+ * - Evicted pantries are saved, and their groceries are there when loaded again
+ * - Every open pantry has its own gauge, which is removed when the pantry is evicted
+ *
+ * Negative tests:
+ * - Invalid household ids are rejected
+ */
+public class PantryRegistryTest {
+
+    @TempDir
+    Path directory;
+
+    private final PersistenceService persistence = new PersistenceService();
+
+    private PantryRegistry createRegistry(PersistenceService persistence, int capacity) {
+        RecipeBook catalogue = new RecipeBook(persistence, directory.resolve("catalogue"));
+        return new PantryRegistry(directory.resolve("households"), persistence, catalogue,
+                capacity);
+    }
+
+    private static Grocery milk() {
+        Calendar tomorrow = Calendar.getInstance();
+        tomorrow.add(Calendar.DAY_OF_MONTH, 1);
+        return new Grocery("Milk", 2.0, "liters", tomorrow.getTime(), 20.0);
+    }
+
+    @AfterEach
+    public void shutdownPersistence() {
+        persistence.shutdown();
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests that asking for an open pantry returns the same instance without loading it again.
+     */
+    @Test
+    public void testPantryIsLoadedOnce() {
+        PantryRegistry registry = createRegistry(persistence, 2);
+        FoodStorage pantry = registry.getPantry("smith");
+        assertSame(pantry, registry.getPantry("smith"));
+        assertEquals(1, registry.getLoads());
+        assertTrue(Files.isDirectory(directory.resolve("households").resolve("smith")));
+    }
+
+    /**
+     * Tests that the least recently used pantry is evicted, saved, and loaded again with its data.
+     */
+    @Test
+    public void testEvictedPantryIsSavedAndReloaded() {
+        PantryRegistry registry = createRegistry(persistence, 1);
+        registry.getPantry("smith").addGrocery(milk());
+        registry.getPantry("jones");
+        assertEquals(1, registry.getOpenCount());
+        assertEquals(1, registry.getEvictions());
+        assertTrue(Files.exists(directory.resolve("households/smith/groceries.dat")));
+
+        FoodStorage reloaded = registry.getPantry("smith");
+        assertEquals(2, registry.getEvictions());
+        assertEquals(2.0, reloaded.searchGrocery("milk").getAmount(), 1e-9);
+    }
+
+    /**
+     * Tests that each pantry has a gauge of its own, and that evicting it removes the gauge.
+     */
+    @Test
+    public void testPantryGaugesAreRemovedOnEviction() {
+        PantryRegistry registry = createRegistry(persistence, 1);
+        FoodStorage gaugeA = registry.getPantry("gauge-a");
+        gaugeA.addGrocery(milk());
+        assertEquals(1L, Metrics.getValue("registry.pantry.gauge-a.groceries"));
+        assertNull(Metrics.getValue("registry.pantry.gauge-b.groceries"));
+
+        registry.getPantry("gauge-b");
+        assertEquals(0L, Metrics.getValue("registry.pantry.gauge-b.groceries"));
+        assertNull(Metrics.getValue("registry.pantry.gauge-a.groceries"));
+
+        Object owner = new Object();
+        Metrics.gauge("registry.test.parts", owner, part -> 2);
+        Metrics.gauge("registry.test.parts", gaugeA, storage -> storage.snapshot().size());
+        assertEquals(3L, Metrics.getValue("registry.test.parts"));
+        Metrics.removeGauges(owner);
+        assertEquals(1L, Metrics.getValue("registry.test.parts"));
+        Metrics.removeGauges(gaugeA);
+        assertNull(Metrics.getValue("registry.test.parts"));
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that household ids that are not plain directory names throw IllegalArgumentException.
+     */
+    @Test
+    public void testInvalidHouseholdId() {
+        PantryRegistry registry = createRegistry(persistence, 1);
+        assertThrows(IllegalArgumentException.class, () -> registry.getPantry("../etc"));
+        assertThrows(IllegalArgumentException.class, () -> registry.getPantry(""));
+        assertThrows(IllegalArgumentException.class, () -> registry.getPantry(null));
+    }
+}
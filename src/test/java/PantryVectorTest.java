@@ -0,0 +1,166 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import edu.ntnu.iir.bidata.FoodStorage;
+import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.Ingredient;
+import edu.ntnu.iir.bidata.IngredientDictionary;
+import edu.ntnu.iir.bidata.PantryVector;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.RecipeVector;
+
+/**
+ * Tests the PantryVector and RecipeVector classes.
+ *
+ * Positive tests:
+ * - A pantry covers a recipe it has enough of every ingredient for, scaled by servings
+ * - A pantry intersects a recipe when any one ingredient is in stock
+ * - An ingredient listed more than once in a recipe is listed once, with the amounts summed
+ * - The pantry of a later snapshot follows the changes to the storage
+ *
+ * Negative tests:
+ * - A pantry does not cover a recipe it is short of, or that needs an unknown ingredient
+ * - A pantry does not intersect a recipe with nothing in stock
+ */
+public class PantryVectorTest {
+
+    @TempDir
+    Path directory;
+
+    private final PersistenceService persistence = new PersistenceService();
+
+    private FoodStorage createStorage(Object... groceries) {
+        Calendar nextWeek = Calendar.getInstance();
+        nextWeek.add(Calendar.DAY_OF_MONTH, 7);
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        for (int i = 0; i < groceries.length; i += 2) {
+            storage.addGrocery(new Grocery((String) groceries[i], (Double) groceries[i + 1],
+                    "grams", nextWeek.getTime(), 0.1));
+        }
+        return storage;
+    }
+
+    private static RecipeVector vector(int servings, Object... ingredients) {
+        List<Ingredient> list = new ArrayList<>();
+        for (int i = 0; i < ingredients.length; i += 2) {
+            list.add(new Ingredient((String) ingredients[i], (Double) ingredients[i + 1],
+                    "grams"));
+        }
+        return new RecipeVector(list, servings);
+    }
+
+    private static Grocery createGrocery(String name, double amount) {
+        Calendar nextMonth = Calendar.getInstance();
+        nextMonth.add(Calendar.MONTH, 1);
+        return new Grocery(name, amount, "grams", nextMonth.getTime(), 0.2);
+    }
+
+    @AfterEach
+    public void shutdownPersistence() {
+        persistence.shutdown();
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests that a recipe is covered when every ingredient is in stock, scaled by servings.
+     */
+    @Test
+    public void testCovers() {
+        PantryVector pantry = createStorage("Flour", 500.0, "Butter", 200.0).snapshot().pantry();
+        RecipeVector shortbread = vector(2, "Flour", 300.0, "butter", 200.0);
+
+        assertTrue(pantry.covers(shortbread));
+        assertTrue(pantry.covers(shortbread, 2));
+        assertTrue(pantry.covers(shortbread, 1));
+        assertFalse(pantry.covers(shortbread, 3));
+        assertEquals(2, pantry.maxServings(shortbread));
+        assertEquals(500.0, pantry.amountOf(IngredientDictionary.idOf("FLOUR")), 1e-9);
+    }
+
+    /**
+     * Tests that a recipe intersects the pantry when one of its ingredients is in stock.
+     */
+    @Test
+    public void testIntersects() {
+        PantryVector pantry = createStorage("Rice", 1000.0).snapshot().pantry();
+        assertTrue(pantry.intersects(vector(1, "Saffron", 1.0, "Rice", 2000.0)));
+        assertFalse(pantry.covers(vector(1, "Saffron", 1.0, "Rice", 2000.0)));
+    }
+
+    /**
+     * Tests that an ingredient listed twice is compiled once, with its amounts added.
+     */
+    @Test
+    public void testDuplicateIngredientsAreSummed() {
+        RecipeVector bread = vector(4, "Flour", 300.0, "Water", 200.0, "flour", 300.0);
+        assertEquals(2, bread.size());
+        int flour = IngredientDictionary.idOf("Flour");
+        int index = bread.idAt(0) == flour ? 0 : 1;
+        assertEquals(flour, bread.idAt(index));
+        assertEquals(600.0, bread.amountAt(index), 1e-9);
+        assertEquals(150.0, bread.perServingAt(index), 1e-9);
+        assertTrue(bread.idAt(0) < bread.idAt(1));
+
+        PantryVector pantry = createStorage("Flour", 500.0, "Water", 1000.0).snapshot().pantry();
+        assertFalse(pantry.covers(bread));
+        assertEquals(3, pantry.maxServings(bread));
+    }
+
+    /**
+     * Tests that the pantries of later snapshots follow the storage, and earlier ones stay.
+     */
+    @Test
+    public void testPantryFollowsChanges() {
+        FoodStorage storage = createStorage("Sugar", 100.0, "Salt", 50.0);
+        PantryVector before = storage.snapshot().pantry();
+        int sugar = IngredientDictionary.idOf("Sugar");
+        int salt = IngredientDictionary.idOf("Salt");
+
+        storage.addGrocery(createGrocery("Sugar", 150.0));
+        storage.addGrocery(createGrocery("Pepper", 10.0));
+        assertTrue(storage.removeGrocery("Salt", 50.0));
+        PantryVector after = storage.snapshot().pantry();
+
+        assertEquals(250.0, after.amountOf(sugar), 1e-9);
+        assertEquals(10.0, after.amountOf(IngredientDictionary.idOf("Pepper")), 1e-9);
+        assertEquals(0.0, after.amountOf(salt), 1e-9);
+        assertFalse(after.intersects(vector(1, "Salt", 1.0)));
+        assertTrue(after.covers(vector(1, "Sugar", 250.0, "Pepper", 10.0)));
+
+        assertEquals(100.0, before.amountOf(sugar), 1e-9);
+        assertEquals(50.0, before.amountOf(salt), 1e-9);
+        assertTrue(before.intersects(vector(1, "Salt", 1.0)));
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that a recipe that is short of an ingredient, or needs an unknown one, is not covered.
+     */
+    @Test
+    public void testDoesNotCover() {
+        PantryVector pantry = createStorage("Oats", 100.0).snapshot().pantry();
+        assertFalse(pantry.covers(vector(1, "Oats", 100.5)));
+        assertFalse(pantry.covers(vector(1, "Oats", 50.0, "Vanilla", 1.0)));
+        assertEquals(0, pantry.maxServings(vector(1, "Oats", 50.0, "Honey", 10.0)));
+        assertEquals(0.0, pantry.amountOf(Integer.MAX_VALUE - 1), 1e-9);
+    }
+
+    /**
+     * Tests that a recipe with none of its ingredients in stock does not intersect the pantry.
+     */
+    @Test
+    public void testDoesNotIntersect() {
+        PantryVector pantry = createStorage("Tea", 20.0).snapshot().pantry();
+        assertFalse(pantry.intersects(vector(1, "Coffee", 10.0, "Milk", 50.0)));
+        PantryVector empty = new FoodStorage(persistence,
+                directory.resolve("empty")).snapshot().pantry();
+        assertFalse(empty.intersects(vector(1, "Tea", 1.0)));
+    }
+}
@@ -0,0 +1,109 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.FileInputStream;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import edu.ntnu.iir.bidata.PersistenceService;
+
+/**
+ * Tests the PersistenceService class.
+ *
+ * Positive tests:
+ * - Save requests close together are coalesced into one write of the newest contents
+ * - Flushing writes pending saves and leaves no temporary file behind
+ * - Saves asked for while shutting down, and after it, are all written
+ *
+ * Negative tests:
+ * - A failing save is counted and does not stop later saves
+ */
+public class PersistenceServiceTest {
+
+    @TempDir
+    Path directory;
+
+    // Positive Tests
+
+    /**
+     * Tests that several save requests for the same file are written once, with the newest contents.
+     */
+    @Test
+    public void testSavesAreCoalesced() throws Exception {
+        PersistenceService persistence = new PersistenceService();
+        Path target = directory.resolve("data.dat");
+        for (int i = 1; i <= 5; i++) {
+            String contents = "version " + i;
+            persistence.requestSave(target, () -> contents);
+        }
+        assertEquals(1, persistence.getQueueDepth(), "Only one save should be waiting");
+        persistence.shutdown();
+
+        assertEquals(5, persistence.getSavesRequested(), "All requests should be counted");
+        assertEquals(1, persistence.getSavesCompleted(), "Requests should be written once");
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(target.toFile()))) {
+            assertEquals("version 5", ois.readObject(), "Newest contents should be written");
+        }
+    }
+
+    /**
+     * Tests that flushing writes the file and removes the temporary file.
+     */
+    @Test
+    public void testFlushLeavesNoTemporaryFile() {
+        PersistenceService persistence = new PersistenceService();
+        Path target = directory.resolve("data.dat");
+        persistence.requestSave(target, () -> "contents");
+        persistence.flush();
+        assertTrue(Files.exists(target), "File should be written");
+        assertFalse(Files.exists(directory.resolve("data.dat.tmp")), "Temporary file should be gone");
+        assertEquals(0, persistence.getQueueDepth(), "Nothing should be waiting");
+        persistence.shutdown();
+    }
+
+    /**
+     * Tests that saves asked for from another thread while the service shuts down are not lost.
+     */
+    @Test
+    public void testSavesDuringShutdownAreWritten() throws Exception {
+        PersistenceService persistence = new PersistenceService();
+        int files = 50;
+        Thread requester = new Thread(() -> {
+            for (int i = 0; i < files; i++) {
+                String contents = "file " + i;
+                persistence.requestSave(directory.resolve(i + ".dat"), () -> contents);
+            }
+        });
+        requester.start();
+        persistence.shutdown();
+        requester.join();
+        persistence.shutdown();
+
+        assertEquals(files, persistence.getSavesCompleted(), "Every save should be written");
+        for (int i = 0; i < files; i++) {
+            Path target = directory.resolve(i + ".dat");
+            try (ObjectInputStream ois = new ObjectInputStream(
+                    new FileInputStream(target.toFile()))) {
+                assertEquals("file " + i, ois.readObject());
+            }
+            assertFalse(Files.exists(directory.resolve(i + ".dat.tmp")));
+        }
+        persistence.requestSave(directory.resolve("late.dat"), () -> "late");
+        assertTrue(Files.exists(directory.resolve("late.dat")), "A late save should be written");
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that a save to a missing directory fails without stopping other saves.
+     */
+    @Test
+    public void testFailedSaveIsCounted() {
+        PersistenceService persistence = new PersistenceService();
+        persistence.requestSave(directory.resolve("missing").resolve("data.dat"), () -> "contents");
+        persistence.requestSave(directory.resolve("data.dat"), () -> "contents");
+        persistence.shutdown();
+        assertEquals(1, persistence.getSavesFailed(), "The failed save should be counted");
+        assertEquals(1, persistence.getSavesCompleted(), "The other save should succeed");
+    }
+}
@@ -0,0 +1,161 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import edu.ntnu.iir.bidata.PersistentSortedMap;
+
+/**
+ * Tests the PersistentSortedMap class.
+ *
+ * Positive tests:
+ * - Entries are kept in key order after many puts and removes
+ * - Older versions of the map are not changed by later changes
+ * - Iterating after a key starts at the next key
+ * - Iterating from a position and a parallel stream of the values visit every entry in order
+ * - The value view follows key order and is serialized as a plain list
+ *
+ * Negative tests:
+ * - Removing a key that is not in the map returns the same map
+ * - Looking up a missing key returns null
+ * - The value view can not be changed
+ */
+public class PersistentSortedMapTest {
+
+    // Positive Tests
+
+    /**
+     * Tests that the map matches a TreeMap after random puts and removes.
+     */
+    @Test
+    public void testMatchesTreeMap() {
+        Random random = new Random(42);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        PersistentSortedMap<Integer, Integer> map = PersistentSortedMap.empty(Comparator.naturalOrder());
+        for (int i = 0; i < 2000; i++) {
+            int key = random.nextInt(500);
+            if (random.nextBoolean()) {
+                expected.put(key, i);
+                map = map.put(key, i);
+            } else {
+                expected.remove(key);
+                map = map.remove(key);
+            }
+        }
+        assertEquals(expected.size(), map.size(), "Sizes should match");
+        assertEquals(new ArrayList<>(expected.values()), map.values(), "Values should be in key order");
+    }
+
+    /**
+     * Tests that an older version keeps its entries after the map is changed.
+     */
+    @Test
+    public void testOldVersionUnchanged() {
+        PersistentSortedMap<String, String> first = PersistentSortedMap.<String, String>empty(Comparator.naturalOrder())
+                .put("b", "Bread")
+                .put("a", "Apple");
+        PersistentSortedMap<String, String> second = first.remove("a").put("c", "Cheese");
+        assertEquals(List.of("Apple", "Bread"), first.values(), "First version should be unchanged");
+        assertEquals(List.of("Bread", "Cheese"), second.values(), "Second version should have the changes");
+    }
+
+    /**
+     * Tests that iterating after a key starts at the next larger key.
+     */
+    @Test
+    public void testIteratorAfter() {
+        PersistentSortedMap<Integer, Integer> map = PersistentSortedMap.empty(Comparator.naturalOrder());
+        for (int i = 0; i < 100; i += 2) {
+            map = map.put(i, i);
+        }
+        List<Integer> keys = new ArrayList<>();
+        map.iteratorAfter(41).forEachRemaining(entry -> keys.add(entry.getKey()));
+        assertEquals(42, keys.get(0), "Iteration should start at the next key");
+        assertEquals(29, keys.size(), "All larger keys should be visited");
+        assertFalse(map.iteratorAfter(98).hasNext(), "Nothing should come after the last key");
+    }
+
+    /**
+     * Tests iterating from a position, and that a parallel stream keeps key order.
+     */
+    @Test
+    public void testPositionsAndParallelStream() {
+        PersistentSortedMap<Integer, Integer> map = PersistentSortedMap.empty(Comparator.naturalOrder());
+        for (int i = 999; i >= 0; i--) {
+            map = map.put(i, i);
+        }
+        assertEquals(500, map.iteratorAt(500).next().getKey(), "Iteration should start at the position");
+        assertFalse(map.iteratorAt(1000).hasNext(), "Nothing should come after the last position");
+        List<Integer> values = StreamSupport.stream(map.valueSpliterator(), true)
+                .collect(Collectors.toList());
+        assertEquals(map.values(), values, "Parallel stream should visit all values in key order");
+    }
+
+    /**
+     * Tests that the value view lists the values in key order, and is written as a list.
+     */
+    @Test
+    public void testValueView() throws IOException, ClassNotFoundException {
+        PersistentSortedMap<Integer, String> map = PersistentSortedMap.empty(Comparator.naturalOrder());
+        for (int i = 9; i >= 0; i--) {
+            map = map.put(i, "v" + i);
+        }
+        List<String> view = map.valueView();
+        assertEquals(map.values(), view, "View should hold the values in key order");
+        assertEquals("v7", view.get(7), "Get should find the value by position");
+        assertEquals(map.values(), new ArrayList<>(map.put(10, "v10").valueView()).subList(0, 10));
+        assertEquals(10, view.size(), "View of the old map should not change");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(view);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Object read = in.readObject();
+            assertInstanceOf(ArrayList.class, read, "View should be written as an ArrayList");
+            assertEquals(view, read);
+        }
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that removing a missing key returns the same map.
+     */
+    @Test
+    public void testRemoveMissingKey() {
+        PersistentSortedMap<String, String> map = PersistentSortedMap.<String, String>empty(Comparator.naturalOrder())
+                .put("a", "Apple");
+        assertSame(map, map.remove("z"), "Map should be unchanged");
+    }
+
+    /**
+     * Tests that the value view can not be changed and rejects positions outside it.
+     */
+    @Test
+    public void testValueViewIsReadOnly() {
+        List<String> view = PersistentSortedMap.<String, String>empty(Comparator.naturalOrder())
+                .put("a", "Apple").valueView();
+        assertThrows(UnsupportedOperationException.class, () -> view.add("Banana"));
+        assertThrows(UnsupportedOperationException.class, () -> view.remove(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> view.get(1));
+    }
+
+    /**
+     * Tests that looking up a missing key returns null.
+     */
+    @Test
+    public void testGetMissingKey() {
+        PersistentSortedMap<String, String> map = PersistentSortedMap.empty(Comparator.naturalOrder());
+        assertNull(map.get("a"), "Missing key should give null");
+    }
+}
@@ -0,0 +1,104 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import edu.ntnu.iir.bidata.PackPlan;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.PriceHistory;
+import edu.ntnu.iir.bidata.PriceSeries;
+
+/**
+ * Tests the PriceHistory class.
+ *
+ * Positive tests:
+ * - The cheapest combination of packs is chosen, not just the cheapest pack per unit
+ * - Plans are memoized until a new price is recorded for the item
+ * - The ring buffer keeps only the newest prices
+ *
+ * Negative tests:
+ * - Items without prices give an unpriced plan
+ * - Invalid prices are rejected
+ */
+public class PriceHistoryTest {
+
+    @TempDir
+    Path directory;
+
+    private final PersistenceService persistence = new PersistenceService();
+
+    @AfterEach
+    public void shutdownPersistence() {
+        persistence.shutdown();
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests that a mix of pack sizes is chosen when it is cheaper than buying one size.
+     */
+    @Test
+    public void testCheapestCombination() {
+        PriceHistory prices = new PriceHistory(persistence, directory.resolve("p.dat"));
+        prices.record("Milk", "liters", 1.0, 20.0, 1);
+        prices.record("Milk", "liters", 2.0, 30.0, 2);
+        PackPlan plan = prices.cheapestPlan("milk", "Liters", 3.0);
+        assertEquals(50.0, plan.getTotalCost(), 1e-9);
+        assertEquals(1, plan.getPacks().get(1.0));
+        assertEquals(1, plan.getPacks().get(2.0));
+    }
+
+    /**
+     * Tests that the same plan is returned until the item gets a new price.
+     */
+    @Test
+    public void testPlansAreMemoized() {
+        PriceHistory prices = new PriceHistory(persistence, directory.resolve("p.dat"));
+        prices.record("Rice", "kg", 1.0, 30.0, 1);
+        PackPlan first = prices.cheapestPlan("Rice", "kg", 2.5);
+        assertSame(first, prices.cheapestPlan("Rice", "kg", 2.5));
+        prices.record("Rice", "kg", 1.0, 25.0, 2);
+        PackPlan second = prices.cheapestPlan("Rice", "kg", 2.5);
+        assertNotSame(first, second);
+        assertEquals(75.0, second.getTotalCost(), 1e-9);
+    }
+
+    /**
+     * Tests that the ring buffer overwrites the oldest prices when it is full.
+     */
+    @Test
+    public void testRingBufferKeepsNewest() {
+        PriceHistory prices = new PriceHistory(persistence, directory.resolve("p.dat"));
+        for (int i = 1; i <= 40; i++) {
+            prices.record("Eggs", "pieces", 12, i, i);
+        }
+        PriceSeries series = prices.getSeries("Eggs", "pieces");
+        assertEquals(16, series.size());
+        assertEquals(40, series.getAppended());
+        assertEquals(25.0, series.priceAt(0), 1e-9);
+        assertEquals(40.0, series.priceAt(series.size() - 1), 1e-9);
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that an item without prices gives an unpriced plan.
+     */
+    @Test
+    public void testUnknownItem() {
+        PriceHistory prices = new PriceHistory(persistence, directory.resolve("p.dat"));
+        PackPlan plan = prices.cheapestPlan("Saffron", "grams", 1.0);
+        assertFalse(plan.isPriced());
+        assertEquals(0.0, plan.getTotalCost(), 1e-9);
+    }
+
+    /**
+     * Tests that invalid prices throw IllegalArgumentException.
+     */
+    @Test
+    public void testInvalidPrice() {
+        PriceHistory prices = new PriceHistory(persistence, directory.resolve("p.dat"));
+        assertThrows(IllegalArgumentException.class, () -> prices.record("Tea", "g", 0, 10, 1));
+        assertThrows(IllegalArgumentException.class, () -> prices.record("Tea", "g", 10, -1, 1));
+    }
+}
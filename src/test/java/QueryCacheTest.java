@@ -0,0 +1,61 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import edu.ntnu.iir.bidata.QueryCache;
+
+/**
+ * Tests the QueryCache class.
+ *
+ * Positive tests:
+ * - A repeated query with the same versions is answered from the cache
+ * - A new storage or catalogue version computes the result again
+ *
+ * Negative tests:
+ * - The cache never holds more results than its capacity
+ */
+public class QueryCacheTest {
+
+    // Positive Tests
+
+    /**
+     * Tests that the result is computed once for the same query and versions.
+     */
+    @Test
+    public void testHit() {
+        QueryCache<String> cache = new QueryCache<>("test.hit", 4);
+        AtomicInteger computed = new AtomicInteger();
+        assertEquals("1", cache.get("q", 1, 1, 1, () -> "" + computed.incrementAndGet()));
+        assertEquals("1", cache.get("q", 1, 1, 1, () -> "" + computed.incrementAndGet()));
+        assertEquals(1, computed.get());
+    }
+
+    /**
+     * Tests that changing any version or the storage misses the cache.
+     */
+    @Test
+    public void testNewVersionMisses() {
+        QueryCache<Integer> cache = new QueryCache<>("test.version", 8);
+        AtomicInteger computed = new AtomicInteger();
+        cache.get("q", 1, 1, 1, computed::incrementAndGet);
+        cache.get("q", 1, 2, 1, computed::incrementAndGet);
+        cache.get("q", 1, 2, 2, computed::incrementAndGet);
+        cache.get("q", 2, 2, 2, computed::incrementAndGet);
+        cache.get("other", 2, 2, 2, computed::incrementAndGet);
+        assertEquals(5, computed.get());
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that the least recently used results are dropped beyond the capacity.
+     */
+    @Test
+    public void testBounded() {
+        QueryCache<Long> cache = new QueryCache<>("test.bounded", 3);
+        for (long version = 0; version < 10; version++) {
+            long v = version;
+            cache.get("q", 1, v, 0, () -> v);
+        }
+        assertEquals(3, cache.size());
+    }
+}
@@ -0,0 +1,221 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import edu.ntnu.iir.bidata.FoodStorage;
+import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.Ingredient;
+import edu.ntnu.iir.bidata.NutritionFacts;
+import edu.ntnu.iir.bidata.NutritionTable;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.Recipe;
+import edu.ntnu.iir.bidata.RecipeBook;
+import edu.ntnu.iir.bidata.RecipeRollup;
+import edu.ntnu.iir.bidata.RecipeRollups;
+
+/**
+ * Tests the RecipeRollups and NutritionTable classes.
+ *
+ * Positive tests:
+ * - A recipe is rolled up with cost, calories and macros per serving when it is added
+ * - Setting nutrition facts rolls up the recipes using the ingredient again
+ * - Recipes are sorted by cost, protein and calories per serving
+ * - A grocery that is used up keeps its last price
+ * - Nutrition facts are saved and loaded again
+ *
+ * Negative tests:
+ * - Recipes with unknown prices or nutrition facts are sorted last
+ * - Invalid nutrition facts are rejected
+ */
+public class RecipeRollupsTest {
+
+    @TempDir
+    Path directory;
+
+    private final PersistenceService persistence = new PersistenceService();
+
+    private static Grocery grocery(String name, double amount, double pricePerUnit) {
+        Calendar nextWeek = Calendar.getInstance();
+        nextWeek.add(Calendar.DAY_OF_MONTH, 7);
+        return new Grocery(name, amount, "grams", nextWeek.getTime(), pricePerUnit);
+    }
+
+    private static Recipe recipe(String name, int servings, Object... ingredients) {
+        Recipe recipe = new Recipe(name);
+        recipe.setServings(servings);
+        for (int i = 0; i < ingredients.length; i += 2) {
+            recipe.addIngredient(new Ingredient((String) ingredients[i],
+                    (Double) ingredients[i + 1], "grams"));
+        }
+        return recipe;
+    }
+
+    private static List<String> names(List<Recipe> recipes) {
+        List<String> names = new ArrayList<>();
+        for (Recipe recipe : recipes) {
+            names.add(recipe.getName());
+        }
+        return names;
+    }
+
+    @AfterEach
+    public void shutdownPersistence() {
+        persistence.shutdown();
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests that an added recipe is rolled up with the prices and nutrition facts known then.
+     */
+    @Test
+    public void testRollupWhenAdded() {
+        RecipeBook book = new RecipeBook(persistence, directory);
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        storage.addGrocery(grocery("Flour", 1000, 0.02));
+        storage.addGrocery(grocery("Butter", 250, 0.1));
+        book.getNutritionTable().setFacts("flour", new NutritionFacts(3.6, 0.1, 0.75, 0.01));
+        book.getNutritionTable().setFacts("Butter", new NutritionFacts(7.2, 0.01, 0.0, 0.8));
+        RecipeRollups rollups = new RecipeRollups(book, storage);
+        Recipe shortbread = recipe("Shortbread", 4, "Flour", 300.0, "Butter", 200.0);
+        book.addRecipe(shortbread);
+
+        RecipeRollup rollup = rollups.getRollup(shortbread);
+        assertEquals(1, rollups.size());
+        assertEquals(26.0, rollup.getCost(), 1e-9);
+        assertEquals(6.5, rollup.getCostPerServing(), 1e-9);
+        assertEquals(2520.0, rollup.getKcal(), 1e-9);
+        assertEquals(8.0, rollup.getProteinPerServing(), 1e-9);
+        assertEquals(225.0, rollup.getCarbohydrates(), 1e-9);
+        assertEquals(163.0, rollup.getFat(), 1e-9);
+        assertEquals(0, rollup.getUnpriced());
+        assertEquals(0, rollup.getWithoutNutrition());
+    }
+
+    /**
+     * Tests that setting nutrition facts rolls up only the recipes using the ingredient again.
+     */
+    @Test
+    public void testNutritionChangeUpdatesAffectedRecipes() {
+        RecipeBook book = new RecipeBook(persistence, directory);
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        RecipeRollups rollups = new RecipeRollups(book, storage);
+        Recipe porridge = recipe("Porridge", 1, "Oats", 100.0);
+        Recipe salad = recipe("Salad", 1, "Lettuce", 100.0);
+        book.addRecipe(porridge);
+        book.addRecipe(salad);
+        RecipeRollup saladBefore = rollups.getRollup(salad);
+        assertEquals(1, rollups.getRollup(porridge).getWithoutNutrition());
+
+        book.getNutritionTable().setFacts("Oats", new NutritionFacts(3.8, 0.13, 0.6, 0.07));
+        assertEquals(380.0, rollups.getRollup(porridge).getKcal(), 1e-9);
+        assertEquals(0, rollups.getRollup(porridge).getWithoutNutrition());
+        assertSame(saladBefore, rollups.getRollup(salad));
+    }
+
+    /**
+     * Tests sorting by cost, protein and calories per serving.
+     */
+    @Test
+    public void testSortByCostAndProtein() {
+        RecipeBook book = new RecipeBook(persistence, directory);
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        storage.addGrocery(grocery("Beans", 1000, 0.03));
+        storage.addGrocery(grocery("Chicken", 1000, 0.12));
+        storage.addGrocery(grocery("Rice", 1000, 0.02));
+        NutritionTable nutrition = book.getNutritionTable();
+        nutrition.setFacts("Beans", new NutritionFacts(1.3, 0.09, 0.23, 0.005));
+        nutrition.setFacts("Chicken", new NutritionFacts(1.65, 0.31, 0.0, 0.036));
+        nutrition.setFacts("Rice", new NutritionFacts(1.3, 0.027, 0.28, 0.003));
+        RecipeRollups rollups = new RecipeRollups(book, storage);
+        book.addRecipe(recipe("Chicken and rice", 2, "Chicken", 300.0, "Rice", 200.0));
+        book.addRecipe(recipe("Beans and rice", 2, "Beans", 300.0, "Rice", 200.0));
+        book.addRecipe(recipe("Plain rice", 1, "Rice", 150.0));
+
+        assertEquals(List.of("Plain rice", "Beans and rice", "Chicken and rice"),
+                names(rollups.sort(book.getRecipes(), RecipeRollups.Order.COST)));
+        assertEquals(List.of("Chicken and rice", "Beans and rice", "Plain rice"),
+                names(rollups.sort(book.getRecipes(), RecipeRollups.Order.PROTEIN)));
+        assertEquals(List.of("Plain rice", "Beans and rice", "Chicken and rice"),
+                names(rollups.sort(book.getRecipes(), RecipeRollups.Order.KCAL)));
+    }
+
+    /**
+     * Tests that a new price rolls up the recipes again, and a used-up grocery keeps its price.
+     */
+    @Test
+    public void testPriceChangeAndUsedUpGrocery() {
+        RecipeBook book = new RecipeBook(persistence, directory);
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        storage.addGrocery(grocery("Sugar", 500, 0.02));
+        Recipe caramel = recipe("Caramel", 1, "Sugar", 200.0);
+        book.addRecipe(caramel);
+        RecipeRollups rollups = new RecipeRollups(book, storage);
+        assertEquals(4.0, rollups.getRollup(caramel).getCost(), 1e-9);
+
+        storage.addGrocery(grocery("Sugar", 500, 0.04));
+        assertEquals(8.0, rollups.getRollup(caramel).getCost(), 1e-9);
+        assertTrue(storage.removeGrocery("Sugar", 1000));
+        assertNull(storage.searchGrocery("Sugar"));
+        assertEquals(8.0, rollups.getRollup(caramel).getCost(), 1e-9);
+    }
+
+    /**
+     * Tests that nutrition facts are read back from the file.
+     */
+    @Test
+    public void testNutritionSaveAndLoad() {
+        Path file = directory.resolve("nutrition.dat");
+        new NutritionTable(persistence, file)
+                .setFacts("Honey", new NutritionFacts(3.0, 0.003, 0.82, 0.0));
+        persistence.shutdown();
+        NutritionTable loaded = new NutritionTable(persistence, file);
+        assertEquals(1, loaded.size());
+        assertEquals(0.82, loaded.getFacts("HONEY").getCarbohydrates(), 1e-9);
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that recipes with an unknown price or unknown nutrition facts are sorted last.
+     */
+    @Test
+    public void testIncompleteRollupsSortedLast() {
+        RecipeBook book = new RecipeBook(persistence, directory);
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        storage.addGrocery(grocery("Pasta", 500, 0.05));
+        book.getNutritionTable().setFacts("Pasta", new NutritionFacts(3.5, 0.12, 0.7, 0.015));
+        RecipeRollups rollups = new RecipeRollups(book, storage);
+        book.addRecipe(recipe("Truffle pasta", 2, "Pasta", 200.0, "Truffle", 10.0));
+        book.addRecipe(recipe("Plain pasta", 1, "Pasta", 200.0));
+
+        assertEquals(List.of("Plain pasta", "Truffle pasta"),
+                names(rollups.sort(book.getRecipes(), RecipeRollups.Order.COST)));
+        assertEquals(List.of("Plain pasta", "Truffle pasta"),
+                names(rollups.sort(book.getRecipes(), RecipeRollups.Order.PROTEIN)));
+        RecipeRollup truffle = rollups.getRollup(book.findRecipe("Truffle pasta"));
+        assertEquals(1, truffle.getUnpriced());
+        assertEquals(1, truffle.getWithoutNutrition());
+        assertEquals(10.0, truffle.getCost(), 1e-9);
+    }
+
+    /**
+     * Tests that negative amounts and blank names throw IllegalArgumentException.
+     */
+    @Test
+    public void testInvalidNutritionFacts() {
+        NutritionTable table = new NutritionTable(persistence,
+                directory.resolve("nutrition.dat"));
+        assertThrows(IllegalArgumentException.class, () -> new NutritionFacts(-1, 0, 0, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new NutritionFacts(1, Double.NaN, 0, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> table.setFacts(" ", new NutritionFacts(1, 0, 0, 0)));
+        assertThrows(IllegalArgumentException.class, () -> table.setFacts("Salt", null));
+        assertEquals(0, table.size());
+    }
+}
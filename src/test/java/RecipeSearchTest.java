@@ -0,0 +1,106 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.Recipe;
+import edu.ntnu.iir.bidata.RecipeBook;
+
+/**
+ * Tests searching the recipes of a RecipeBook.
+ *
+ * Positive tests:
+ * - Recipes are ranked by how well their name and description match the query
+ * - Words after "without" leave out recipes with them, also in the ingredients
+ * - The search index is saved and used again when the recipe book is loaded
+ *
+ * Negative tests:
+ * - Queries with no known words, or only common words, find nothing
+ */
+public class RecipeSearchTest {
+
+    @TempDir
+    Path directory;
+
+    private final PersistenceService persistence = new PersistenceService();
+
+    private static void addRecipes(RecipeBook book) {
+        book.addRecipe(TestFixtures.recipe("Pasta Carbonara", "A quick pasta with bacon and eggs.",
+                "Pasta", "Bacon", "Eggs", "Cheese"));
+        book.addRecipe(TestFixtures.recipe("Tomato Pasta", "Quick weeknight pasta in tomato sauce.",
+                "Pasta", "Tomatoes"));
+        book.addRecipe(TestFixtures.recipe("Lasagne",
+                "Slow baked layers of pasta, meat sauce and cheese.",
+                "Pasta", "Minced meat", "Cheese"));
+        book.addRecipe(TestFixtures.recipe("Pancakes", "Quick breakfast.",
+                "Flour", "Milk", "Eggs"));
+    }
+
+    @AfterEach
+    public void shutdownPersistence() {
+        persistence.shutdown();
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests that the best matching recipes come first.
+     */
+    @Test
+    public void testRankedSearch() {
+        RecipeBook book = new RecipeBook(persistence, directory);
+        addRecipes(book);
+        List<Recipe> matches = book.searchRecipes("quick pasta", 10);
+        assertEquals(4, matches.size());
+        assertEquals("Pancakes", matches.get(3).getName(), "Only quick should rank last");
+        assertEquals("Tomato Pasta", book.searchRecipes("tomato", 10).get(0).getName());
+        assertEquals(2, book.searchRecipes("quick pasta", 2).size());
+    }
+
+    /**
+     * Tests that "without" leaves out recipes having the next word.
+     */
+    @Test
+    public void testWithout() {
+        RecipeBook book = new RecipeBook(persistence, directory);
+        addRecipes(book);
+        List<Recipe> matches = book.searchRecipes("quick pasta without cheese", 10);
+        assertEquals(List.of("Tomato Pasta", "Pancakes"),
+                matches.stream().map(Recipe::getName).toList());
+        assertEquals(1, book.searchRecipes("pasta -cheese -eggs", 10).size());
+    }
+
+    /**
+     * Tests that the index is saved next to the recipes and loaded with them.
+     */
+    @Test
+    public void testIndexIsSaved() throws Exception {
+        Files.createDirectories(directory);
+        addRecipes(new RecipeBook(persistence, directory));
+        persistence.flush();
+        assertTrue(Files.exists(directory.resolve("recipes.idx")));
+
+        RecipeBook loaded = new RecipeBook(persistence, directory);
+        assertEquals("Lasagne", loaded.searchRecipes("slow baked", 10).get(0).getName());
+        loaded.addRecipe(TestFixtures.recipe("Baked Potatoes", "Slow and simple.", "Potatoes"));
+        assertEquals(2, loaded.searchRecipes("baked potato", 10).size());
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that unknown words and common words find nothing.
+     */
+    @Test
+    public void testNoMatches() {
+        RecipeBook book = new RecipeBook(persistence, directory);
+        addRecipes(book);
+        assertTrue(book.searchRecipes("sushi", 10).isEmpty());
+        assertTrue(book.searchRecipes("the and of", 10).isEmpty());
+        assertTrue(book.searchRecipes("without pasta", 10).isEmpty());
+        assertTrue(book.searchRecipes("", 10).isEmpty());
+    }
+}
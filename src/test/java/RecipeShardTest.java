@@ -0,0 +1,175 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import edu.ntnu.iir.bidata.Ingredient;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.Recipe;
+import edu.ntnu.iir.bidata.RecipeBook;
+
+/**
+ * Tests splitting the recipe store of a RecipeBook into shards by the hash of the recipe name.
+ *
+ * Positive tests:
+ * - A recipe name goes to the same shard in every recipe book, whatever its case
+ * - Adding a recipe writes to one shard file only, and the recipes are spread over the shards
+ * - The shards are loaded back together, in id order, with the next id after the last one
+ *
+ * Negative tests:
+ * - A shard that can not be read is not written to, and the other shards still load
+ */
+public class RecipeShardTest {
+
+    @TempDir
+    Path directory;
+
+    private static final String[] NAMES = {"Omelette", "Pancakes", "Toast", "Porridge",
+        "Waffles", "Lasagne", "Risotto", "Curry", "Chili", "Goulash", "Ramen", "Paella",
+        "Tacos", "Falafel", "Hummus", "Quiche", "Crepes", "Muffins", "Scones", "Brownies",
+        "Granola", "Couscous", "Moussaka", "Gazpacho"};
+
+    private static Recipe recipe(String name) {
+        Recipe recipe = new Recipe(name);
+        recipe.setDescription("How to make " + name + ".");
+        recipe.addIngredient(new Ingredient(name + " base", 1, "pieces"));
+        return recipe;
+    }
+
+    private static Map<String, Long> storeSizes(Path directory) throws IOException {
+        Map<String, Long> sizes = new TreeMap<>();
+        Path recipes = directory.resolve("recipes");
+        if (!Files.isDirectory(recipes)) {
+            return sizes;
+        }
+        try (DirectoryStream<Path> stores = Files.newDirectoryStream(recipes,
+                "catalogue-*.dat")) {
+            for (Path store : stores) {
+                sizes.put(store.getFileName().toString(), Files.size(store));
+            }
+        }
+        return sizes;
+    }
+
+    private static String grown(Map<String, Long> before, Map<String, Long> after) {
+        List<String> grown = new ArrayList<>();
+        after.forEach((store, size) -> {
+            if (size > before.getOrDefault(store, 0L)) {
+                grown.add(store);
+            }
+        });
+        assertEquals(1, grown.size(), "Adding a recipe should write to one shard only");
+        return grown.get(0);
+    }
+
+    /**
+     * Adds a recipe and finds the shard file it was written to.
+     */
+    private static String addAndFindShard(RecipeBook book, Path directory, Recipe recipe)
+            throws IOException {
+        Map<String, Long> before = storeSizes(directory);
+        book.addRecipe(recipe);
+        return grown(before, storeSizes(directory));
+    }
+
+    private static List<String> names(List<Recipe> recipes) {
+        return recipes.stream().map(Recipe::getName).toList();
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests that a recipe name is placed in the same shard by different recipe books.
+     */
+    @Test
+    public void testSameNameSameShard() throws IOException {
+        PersistenceService persistence = new PersistenceService();
+        Path first = directory.resolve("first");
+        Path second = directory.resolve("second");
+        RecipeBook firstBook = new RecipeBook(persistence, first);
+        RecipeBook secondBook = new RecipeBook(persistence, second);
+        for (String name : Arrays.copyOf(NAMES, 6)) {
+            assertEquals(addAndFindShard(firstBook, first, recipe(name)),
+                    addAndFindShard(secondBook, second, recipe(name.toUpperCase())), name);
+        }
+        persistence.shutdown();
+    }
+
+    /**
+     * Tests that every recipe is appended to one shard, and that several shards are used.
+     */
+    @Test
+    public void testSingleShardWrite() throws IOException {
+        PersistenceService persistence = new PersistenceService();
+        RecipeBook book = new RecipeBook(persistence, directory);
+        for (String name : NAMES) {
+            addAndFindShard(book, directory, recipe(name));
+        }
+        assertTrue(storeSizes(directory).size() > 1, "Recipes should be spread over shards");
+        assertTrue(storeSizes(directory).size() <= 8);
+        assertFalse(Files.exists(directory.resolve("recipes").resolve("catalogue.dat")));
+        persistence.shutdown();
+    }
+
+    /**
+     * Tests that the recipes of every shard are loaded back, in the order they were added.
+     */
+    @Test
+    public void testLoadsAllShards() {
+        PersistenceService persistence = new PersistenceService();
+        RecipeBook book = new RecipeBook(persistence, directory);
+        for (String name : NAMES) {
+            book.addRecipe(recipe(name));
+        }
+
+        RecipeBook loaded = new RecipeBook(persistence, directory);
+        assertEquals(Arrays.asList(NAMES), names(loaded.getRecipes()));
+        for (int i = 0; i < NAMES.length; i++) {
+            Recipe recipe = loaded.getRecipes().get(i);
+            assertEquals(book.getRecipes().get(i).getId(), recipe.getId());
+            assertEquals("How to make " + NAMES[i] + ".", recipe.getDescription());
+        }
+        Recipe bread = recipe("Bread");
+        loaded.addRecipe(bread);
+        assertEquals(loaded.getRecipes().get(NAMES.length - 1).getId() + 1, bread.getId());
+        persistence.shutdown();
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that a shard that can not be read is left as it is, and the others still load.
+     */
+    @Test
+    public void testCorruptShardNotWritten() throws IOException {
+        PersistenceService persistence = new PersistenceService();
+        RecipeBook book = new RecipeBook(persistence, directory);
+        String omelette = addAndFindShard(book, directory, recipe("Omelette"));
+        String other = null;
+        for (String name : NAMES) {
+            String shard = addAndFindShard(book, directory, recipe(name + " deluxe"));
+            if (!shard.equals(omelette)) {
+                other = name + " deluxe";
+                break;
+            }
+        }
+        assertNotNull(other);
+        Path corrupt = directory.resolve("recipes").resolve(omelette);
+        Files.write(corrupt, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+
+        RecipeBook loaded = new RecipeBook(persistence, directory);
+        assertNull(loaded.findRecipe("Omelette"));
+        assertNotNull(loaded.findRecipe(other));
+        loaded.addRecipe(recipe("omelette"));
+        assertNull(loaded.findRecipe("Omelette"));
+        assertEquals(9, Files.size(corrupt));
+        persistence.shutdown();
+    }
+}
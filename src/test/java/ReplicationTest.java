@@ -0,0 +1,202 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import edu.ntnu.iir.bidata.FoodStorage;
+import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.PersistenceService;
+
+/**
+ * Tests replication of FoodStorage between devices through a drop folder.
+ *
+ * Positive tests:
+ * - Several simulated devices making random changes end up with the same pantry
+ * - Amounts taken at the same time on two devices are both taken
+ * - A device started again keeps its replicated state and does not send its lots twice
+ * - Undoing a change is replicated like any other change
+ *
+ * Negative tests:
+ * - Syncing again without new changes applies nothing
+ */
+public class ReplicationTest {
+
+    private static final String[] NAMES = {"Milk", "Bread", "Eggs", "Cheese", "Apples", "Rice"};
+
+    @TempDir
+    Path directory;
+
+    private FoodStorage device(PersistenceService persistence, String name) throws IOException {
+        Files.createDirectories(directory.resolve(name));
+        FoodStorage storage = new FoodStorage(persistence, directory.resolve(name));
+        storage.startReplication(directory.resolve("drop"));
+        return storage;
+    }
+
+    private static List<String> contents(FoodStorage storage) {
+        List<String> contents = new ArrayList<>();
+        for (Grocery grocery : storage.getGroceries()) {
+            contents.add(grocery.getName() + "=" + grocery.getAmount() + "/" + grocery.getLots().size());
+        }
+        return contents;
+    }
+
+    // Positive Tests
+
+    /**
+     * Simulates four devices making random changes between syncs in random order, and
+     * measures how long it takes, and how many bytes it takes, for them all to agree.
+     */
+    @Test
+    public void testSimulationConverges() throws IOException {
+        PersistenceService persistence = new PersistenceService();
+        List<FoodStorage> devices = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            devices.add(device(persistence, "device" + i));
+        }
+        Random random = new Random(7);
+        int changes = 0;
+        for (int round = 0; round < 20; round++) {
+            for (FoodStorage device : devices) {
+                for (int i = 0; i < 5; i++) {
+                    String name = NAMES[random.nextInt(NAMES.length)];
+                    if (random.nextInt(3) == 0) {
+                        device.removeGrocery(name, 1 + random.nextInt(3));
+                    } else {
+                        device.addGrocery(TestFixtures.grocery(name, 1 + random.nextInt(5),
+                                1 + random.nextInt(30)));
+                    }
+                    changes++;
+                }
+            }
+            Collections.shuffle(devices, random);
+            for (FoodStorage device : devices) {
+                if (random.nextBoolean()) {
+                    device.getReplicator().sync();
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        int rounds = 0;
+        while (!converged(devices)) {
+            for (FoodStorage device : devices) {
+                device.getReplicator().sync();
+            }
+            rounds++;
+            assertTrue(rounds <= 2, "Devices should agree after every device has synced twice");
+        }
+        double millis = (System.nanoTime() - start) / 1_000_000.0;
+        long bytes = 0;
+        for (FoodStorage device : devices) {
+            bytes += device.getReplicator().getBytesSent();
+        }
+        System.out.printf("%d changes on %d devices converged in %d rounds, %.1f ms,"
+                + " %d bytes sent (%.1f bytes per change)%n",
+                changes, devices.size(), rounds, millis, bytes, (double) bytes / changes);
+        assertFalse(devices.get(0).getGroceries().isEmpty());
+        assertTrue(bytes < changes * 40L, "Batches should take well under 40 bytes per change");
+        persistence.shutdown();
+    }
+
+    private static boolean converged(List<FoodStorage> devices) {
+        for (FoodStorage device : devices) {
+            if (!contents(device).equals(contents(devices.get(0)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests that amounts taken on two devices before they sync are both taken.
+     */
+    @Test
+    public void testConcurrentRemovalsBothCount() throws IOException {
+        PersistenceService persistence = new PersistenceService();
+        FoodStorage first = device(persistence, "first");
+        FoodStorage second = device(persistence, "second");
+        first.addGrocery(TestFixtures.grocery("Milk", 10, 5));
+        first.getReplicator().sync();
+        second.getReplicator().sync();
+        assertEquals(10, second.searchGrocery("milk").getAmount(), 1e-9);
+
+        first.removeGrocery("Milk", 3);
+        second.removeGrocery("Milk", 2);
+        first.getReplicator().sync();
+        second.getReplicator().sync();
+        first.getReplicator().sync();
+        assertEquals(5, first.searchGrocery("milk").getAmount(), 1e-9);
+        assertEquals(5, second.searchGrocery("milk").getAmount(), 1e-9);
+        persistence.shutdown();
+    }
+
+    /**
+     * Tests that a device started again keeps its id and lots, and only sends new changes.
+     */
+    @Test
+    public void testRestartKeepsState() throws IOException {
+        PersistenceService persistence = new PersistenceService();
+        FoodStorage storage = device(persistence, "device");
+        storage.addGrocery(TestFixtures.grocery("Bread", 2, 3));
+        storage.getReplicator().sync();
+        String nodeId = storage.getReplicator().getNodeId();
+        storage.saveToFile();
+        persistence.flush();
+
+        FoodStorage restarted = device(persistence, "device");
+        assertEquals(nodeId, restarted.getReplicator().getNodeId());
+        assertEquals(2, restarted.searchGrocery("bread").getAmount(), 1e-9);
+        restarted.getReplicator().sync();
+        assertEquals(0, restarted.getReplicator().getOpsSent(), "Nothing new should be sent");
+        persistence.shutdown();
+    }
+
+    /**
+     * Tests that clearing the storage and undoing it on one device gives the lots back everywhere.
+     */
+    @Test
+    public void testUndoIsReplicated() throws IOException {
+        PersistenceService persistence = new PersistenceService();
+        FoodStorage first = device(persistence, "first");
+        FoodStorage second = device(persistence, "second");
+        first.addGrocery(TestFixtures.grocery("Rice", 4, 20));
+        first.getReplicator().sync();
+        second.getReplicator().sync();
+
+        first.clearAllGroceries();
+        first.getReplicator().sync();
+        second.getReplicator().sync();
+        assertNull(second.searchGrocery("rice"));
+
+        assertTrue(first.undo());
+        first.getReplicator().sync();
+        second.getReplicator().sync();
+        assertEquals(4, second.searchGrocery("rice").getAmount(), 1e-9);
+        assertEquals(contents(first), contents(second));
+        persistence.shutdown();
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that batches already applied are not applied again.
+     */
+    @Test
+    public void testSyncAgainAppliesNothing() throws IOException {
+        PersistenceService persistence = new PersistenceService();
+        FoodStorage first = device(persistence, "first");
+        FoodStorage second = device(persistence, "second");
+        first.addGrocery(TestFixtures.grocery("Eggs", 12, 10));
+        first.getReplicator().sync();
+        assertEquals(1, second.getReplicator().sync());
+        assertEquals(0, second.getReplicator().sync());
+        assertEquals(12, second.searchGrocery("eggs").getAmount(), 1e-9);
+        persistence.shutdown();
+    }
+}
@@ -0,0 +1,182 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import edu.ntnu.iir.bidata.FoodStorage;
+import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.ReportOperator;
+import edu.ntnu.iir.bidata.Reports;
+import edu.ntnu.iir.bidata.StorageSnapshot;
+import edu.ntnu.iir.bidata.WasteLedger;
+
+/**
+ * Tests the Reports class.
+ *
+ * Positive tests:
+ * - Groceries are counted, and their amounts and values added up, per unit
+ * - The value of the lots is added up per expiry week, in date order
+ * - The most valuable groceries are kept, most valuable first
+ * - The expired share of the stock is computed, and the same reports are written
+ *   whether the snapshot is scanned in parallel or not
+ *
+ * Negative tests:
+ * - An empty pantry gives empty reports and 0 % waste
+ * - Waste with a zero denominator is 0 %, not NaN
+ */
+public class ReportsTest {
+
+    @TempDir
+    Path directory;
+
+    private final PersistenceService persistence = new PersistenceService();
+
+    private static final Date SOON = TestFixtures.daysFromNow(3);
+    private static final Date LATER = TestFixtures.daysFromNow(60);
+
+    /**
+     * Creates a pantry worth 135 NOK: 88 NOK of it expiring soon and 47 NOK later.
+     */
+    private FoodStorage createPantry() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        storage.addGrocery(new Grocery("Milk", 2, "liters", SOON, 20.0));
+        storage.addGrocery(new Grocery("Milk", 1, "Liters", LATER, 22.0));
+        storage.addGrocery(new Grocery("Eggs", 12, "pieces", SOON, 4.0));
+        storage.addGrocery(new Grocery("Rice", 500, "grams", LATER, 0.05));
+        return storage;
+    }
+
+    private static <S> S scan(ReportOperator<S> operator, StorageSnapshot snapshot) {
+        S state = operator.newState();
+        for (Grocery grocery : snapshot.getGroceries()) {
+            operator.accept(state, grocery);
+        }
+        return state;
+    }
+
+    private static String write(StorageSnapshot snapshot, List<ReportOperator<?>> operators,
+            boolean parallel) throws IOException {
+        StringWriter out = new StringWriter();
+        Reports.run(snapshot, operators, out, parallel);
+        return out.toString();
+    }
+
+    @AfterEach
+    public void shutdownPersistence() {
+        persistence.shutdown();
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests the number of groceries, total amount and value per lower-case unit.
+     */
+    @Test
+    public void testByUnit() {
+        Map<String, double[]> units = scan(Reports.byUnit(), createPantry().snapshot());
+        assertEquals(List.of("grams", "liters", "pieces"), new ArrayList<>(units.keySet()));
+        assertArrayEquals(new double[] {1, 500, 25}, units.get("grams"), 1e-9);
+        assertArrayEquals(new double[] {1, 3, 62}, units.get("liters"), 1e-9);
+        assertArrayEquals(new double[] {1, 12, 48}, units.get("pieces"), 1e-9);
+    }
+
+    /**
+     * Tests that the value of the lots is added up per week, earliest week first.
+     */
+    @Test
+    public void testValueByExpiryWeek() {
+        TreeMap<Date, Double> weeks = scan(Reports.valueByExpiryWeek(),
+                createPantry().snapshot());
+        assertEquals(2, weeks.size());
+        assertEquals(88.0, weeks.firstEntry().getValue(), 1e-9);
+        assertEquals(47.0, weeks.lastEntry().getValue(), 1e-9);
+        // A week, and an hour for a change to or from daylight saving time
+        long week = (7L * 24 + 1) * 60 * 60 * 1000;
+        assertFalse(weeks.firstKey().after(SOON));
+        assertTrue(SOON.getTime() - weeks.firstKey().getTime() < week);
+        assertFalse(weeks.lastKey().after(LATER));
+        assertTrue(LATER.getTime() - weeks.lastKey().getTime() < week);
+    }
+
+    /**
+     * Tests that only the n most valuable groceries are kept.
+     */
+    @Test
+    public void testTopByValue() throws IOException {
+        StorageSnapshot snapshot = createPantry().snapshot();
+        PriorityQueue<Grocery> top = scan(Reports.topByValue(2), snapshot);
+        List<String> names = new ArrayList<>();
+        for (Grocery grocery : top) {
+            names.add(grocery.getName());
+        }
+        names.sort(null);
+        assertEquals(List.of("Eggs", "Milk"), names);
+
+        String report = write(snapshot, List.of(Reports.topByValue(2)), false);
+        assertTrue(report.indexOf("Milk") < report.indexOf("Eggs"));
+        assertFalse(report.contains("Rice"));
+    }
+
+    /**
+     * Tests the expired share of the stock, and that a parallel scan writes the same reports.
+     */
+    @Test
+    public void testWastePercentage() throws IOException {
+        StorageSnapshot snapshot = createPantry().snapshot();
+        Date today = TestFixtures.daysFromNow(10);
+        assertArrayEquals(new double[] {88, 135},
+                scan(Reports.wastePercentage(today, null), snapshot), 1e-9);
+        String report = write(snapshot, List.of(Reports.wastePercentage(today, null)), false);
+        assertTrue(report.contains(String.format("%.2f of %.2f NOK (%.1f %%)",
+                88.0, 135.0, 100 * 88.0 / 135.0)), report);
+        assertFalse(report.contains("Thrown away"));
+
+        List<ReportOperator<?>> all = List.of(Reports.byUnit(), Reports.valueByExpiryWeek(),
+                Reports.topByValue(3), Reports.wastePercentage(today, null));
+        assertEquals(write(snapshot, all, false), write(snapshot, all, true));
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that an empty pantry gives empty reports and 0 % waste.
+     */
+    @Test
+    public void testEmptyPantry() throws IOException {
+        StorageSnapshot snapshot = new FoodStorage(persistence, directory).snapshot();
+        assertTrue(scan(Reports.byUnit(), snapshot).isEmpty());
+        assertTrue(scan(Reports.valueByExpiryWeek(), snapshot).isEmpty());
+        assertTrue(scan(Reports.topByValue(5), snapshot).isEmpty());
+        assertArrayEquals(new double[] {0, 0},
+                scan(Reports.wastePercentage(new Date(), null), snapshot), 1e-9);
+
+        String report = write(snapshot, List.of(Reports.wastePercentage(new Date(), null)),
+                false);
+        assertTrue(report.contains(String.format("%.2f of %.2f NOK (%.1f %%)", 0.0, 0.0, 0.0)),
+                report);
+        assertFalse(report.contains("NaN"));
+    }
+
+    /**
+     * Tests that waste against an empty pantry and an empty ledger is 0 %, not NaN.
+     */
+    @Test
+    public void testZeroWasteDenominator() throws IOException {
+        StorageSnapshot snapshot = new FoodStorage(persistence, directory).snapshot();
+        WasteLedger ledger = new WasteLedger(persistence, directory);
+        String report = write(snapshot, List.of(Reports.wastePercentage(new Date(), ledger)),
+                false);
+        assertTrue(report.contains(String.format("Thrown away so far: %.2f NOK (%.1f %%", 0.0,
+                0.0)), report);
+        assertFalse(report.contains("NaN"));
+    }
+}
@@ -0,0 +1,164 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import java.util.Calendar;
+import java.util.Map;
+import edu.ntnu.iir.bidata.FoodStorage;
+import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.Ingredient;
+import edu.ntnu.iir.bidata.Metrics;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.Recipe;
+import edu.ntnu.iir.bidata.RecipeBook;
+
+/**
+ * Tests scaling recipes by servings in FoodStorage and RecipeBook.
+ *
+ * Positive tests:
+ * - A storage has the ingredients for a recipe up to the servings its stock is enough for
+ * - The recipe book finds how many servings of every recipe can be made
+ * - Cached servings are only computed again for recipes using an ingredient whose stock changed
+ *
+ * Negative tests:
+ * - A storage does not have the ingredients for more servings than its stock is enough for
+ * - Recipes that can not be made are left out, also after their stock is used up
+ */
+public class ServingsTest {
+
+    @TempDir
+    Path directory;
+
+    private final PersistenceService persistence = new PersistenceService();
+
+    private final boolean metricsWereEnabled = Metrics.isEnabled();
+
+    private static Grocery grocery(String name, double amount) {
+        Calendar nextWeek = Calendar.getInstance();
+        nextWeek.add(Calendar.DAY_OF_MONTH, 7);
+        return new Grocery(name, amount, "grams", nextWeek.getTime(), 0.1);
+    }
+
+    private static Recipe recipe(String name, int servings, Object... ingredients) {
+        Recipe recipe = new Recipe(name);
+        recipe.setServings(servings);
+        for (int i = 0; i < ingredients.length; i += 2) {
+            recipe.addIngredient(new Ingredient((String) ingredients[i],
+                    (Double) ingredients[i + 1], "grams"));
+        }
+        return recipe;
+    }
+
+    private static long misses() {
+        Long misses = Metrics.getValue("catalogue.servingsCache.misses");
+        return misses != null ? misses : 0;
+    }
+
+    @AfterEach
+    public void restoreMetrics() {
+        Metrics.setEnabled(metricsWereEnabled);
+    }
+
+    @AfterEach
+    public void shutdownPersistence() {
+        persistence.shutdown();
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests that a recipe for 2 servings can be scaled up to the servings the stock allows.
+     */
+    @Test
+    public void testHasIngredientsForServings() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        storage.addGrocery(grocery("Flour", 500));
+        storage.addGrocery(grocery("Milk", 600));
+        Recipe pancakes = recipe("Pancakes", 2, "Flour", 200.0, "Milk", 300.0);
+
+        assertTrue(storage.hasIngredients(pancakes));
+        assertTrue(storage.hasIngredients(pancakes, 1));
+        assertTrue(storage.hasIngredients(pancakes, 4));
+    }
+
+    /**
+     * Tests that the servings of each recipe are limited by its scarcest ingredient.
+     */
+    @Test
+    public void testMaxServings() {
+        RecipeBook book = new RecipeBook(persistence, directory);
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        storage.addGrocery(grocery("Flour", 500));
+        storage.addGrocery(grocery("Milk", 600));
+        Recipe pancakes = recipe("Pancakes", 2, "Flour", 200.0, "Milk", 300.0);
+        Recipe porridge = recipe("Porridge", 1, "Milk", 250.0);
+        book.addRecipe(pancakes);
+        book.addRecipe(porridge);
+
+        Map<Recipe, Integer> servings = book.maxServings(storage);
+        assertEquals(2, servings.size());
+        assertEquals(4, servings.get(book.findRecipe("Pancakes")));
+        assertEquals(2, servings.get(book.findRecipe("Porridge")));
+    }
+
+    /**
+     * Tests that a stock change drops only the cached servings of the recipes using it.
+     */
+    @Test
+    public void testServingsCacheInvalidation() {
+        Metrics.setEnabled(true);
+        RecipeBook book = new RecipeBook(persistence, directory);
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        storage.addGrocery(grocery("Flour", 500));
+        storage.addGrocery(grocery("Milk", 600));
+        storage.addGrocery(grocery("Bread", 100));
+        book.addRecipe(recipe("Pancakes", 2, "Flour", 200.0, "Milk", 300.0));
+        book.addRecipe(recipe("Toast", 1, "Bread", 50.0));
+
+        long before = misses();
+        book.maxServings(storage);
+        assertEquals(2, misses() - before);
+        book.maxServings(storage);
+        assertEquals(2, misses() - before, "An unchanged storage should be answered from cache");
+
+        storage.addGrocery(grocery("Milk", 300));
+        Map<Recipe, Integer> servings = book.maxServings(storage);
+        assertEquals(3, misses() - before, "Only the recipe using milk should be computed again");
+        assertEquals(5, servings.get(book.findRecipe("Pancakes")));
+        assertEquals(2, servings.get(book.findRecipe("Toast")));
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that a recipe can not be scaled beyond the servings the stock is enough for.
+     */
+    @Test
+    public void testNotEnoughForServings() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        storage.addGrocery(grocery("Flour", 500));
+        storage.addGrocery(grocery("Milk", 600));
+        Recipe pancakes = recipe("Pancakes", 2, "Flour", 200.0, "Milk", 300.0);
+
+        assertFalse(storage.hasIngredients(pancakes, 5));
+        assertFalse(storage.hasIngredients(recipe("Crepes", 1, "Flour", 100.0, "Eggs", 50.0), 1));
+    }
+
+    /**
+     * Tests that recipes that can not be made are left out, also after their stock is used up.
+     */
+    @Test
+    public void testUsedUpStockIsLeftOut() {
+        RecipeBook book = new RecipeBook(persistence, directory);
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        storage.addGrocery(grocery("Bread", 100));
+        book.addRecipe(recipe("Toast", 1, "Bread", 50.0));
+        book.addRecipe(recipe("Omelette", 1, "Eggs", 120.0));
+        assertEquals(2, book.maxServings(storage).get(book.findRecipe("Toast")));
+        assertFalse(book.maxServings(storage).containsKey(book.findRecipe("Omelette")));
+
+        assertTrue(storage.removeGrocery("Bread", 60));
+        assertTrue(book.maxServings(storage).isEmpty());
+    }
+}
@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.List;
+import edu.ntnu.iir.bidata.Ingredient;
+import edu.ntnu.iir.bidata.Page;
+import edu.ntnu.iir.bidata.ShoppingList;
+
+/**
+ * Tests listing the items of a ShoppingList in pages.
+ *
+ * Positive tests:
+ * - Paging with the cursor visits every item once, in alphabetical order
+ * - Items with the same name are all listed, in the order they were added, across pages
+ *
+ * Negative tests:
+ * - The items returned by getItems can not be changed
+ */
+public class ShoppingListTest {
+
+    private static List<Ingredient> listAll(ShoppingList list, int limit) {
+        List<Ingredient> items = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page<Ingredient> page = list.listItems(cursor, limit);
+            assertTrue(page.getItems().size() <= limit, "A page should not exceed the limit");
+            items.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return items;
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests that paging past the first page lists every item once, in alphabetical order.
+     */
+    @Test
+    public void testPagesInOrder() {
+        ShoppingList list = new ShoppingList();
+        for (String name : new String[] {"Milk", "eggs", "Butter", "Yeast", "flour"}) {
+            list.addItem(new Ingredient(name, 1, "pieces"));
+        }
+        Page<Ingredient> first = list.listItems(null, 2);
+        assertEquals(2, first.getItems().size());
+        assertNotNull(first.getNextCursor());
+        List<String> names = listAll(list, 2).stream().map(Ingredient::getName).toList();
+        assertEquals(List.of("Butter", "eggs", "flour", "Milk", "Yeast"), names);
+    }
+
+    /**
+     * Tests that items with the same name are listed in the order they were added,
+     * including when they are split over pages.
+     */
+    @Test
+    public void testDuplicateNamesAcrossPages() {
+        ShoppingList list = new ShoppingList();
+        list.addItem(new Ingredient("Eggs", 1, "pieces"));
+        for (int i = 1; i <= 12; i++) {
+            list.addItem(new Ingredient(i % 2 == 0 ? "Milk" : "milk", i, "dl"));
+        }
+        list.addItem(new Ingredient("Sugar", 1, "kg"));
+        for (int limit : new int[] {1, 3, 5, 20}) {
+            List<Ingredient> items = listAll(list, limit);
+            assertEquals(14, items.size());
+            assertEquals("Eggs", items.get(0).getName());
+            for (int i = 1; i <= 12; i++) {
+                assertEquals(i, items.get(i).getAmount(), 1e-9, "Limit " + limit);
+            }
+            assertEquals("Sugar", items.get(13).getName());
+        }
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that the list returned by getItems can not be changed.
+     */
+    @Test
+    public void testItemsCannotBeChanged() {
+        ShoppingList list = new ShoppingList();
+        list.addItem(new Ingredient("Milk", 1, "dl"));
+        List<Ingredient> items = list.getItems();
+        assertThrows(UnsupportedOperationException.class,
+                () -> items.add(new Ingredient("Eggs", 1, "pieces")));
+        assertThrows(UnsupportedOperationException.class, items::clear);
+        assertEquals(1, list.listItems(null, 10).getItems().size());
+    }
+}
@@ -0,0 +1,22 @@
+import org.junit.jupiter.api.BeforeEach;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import edu.ntnu.iir.bidata.SqlBackend;
+import edu.ntnu.iir.bidata.StorageBackend;
+
+/**
+ * Runs the storage backend conformance tests against the SQL backend.
+ * The tests are skipped unless a JDBC driver is on the class path, as when built
+ * with the sql profile.
+ */
+public class SqlBackendTest extends StorageBackendConformanceTest {
+
+    @BeforeEach
+    public void requireDriver() {
+        assumeTrue(new SqlBackend().isAvailable(), "No JDBC driver on the class path");
+    }
+
+    @Override
+    protected StorageBackend createBackend() {
+        return StorageBackend.find(SqlBackend.NAME);
+    }
+}
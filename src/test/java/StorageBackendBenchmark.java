@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.GroceryStore;
+import edu.ntnu.iir.bidata.Ingredient;
+import edu.ntnu.iir.bidata.LatencyHistogram;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.Recipe;
+import edu.ntnu.iir.bidata.RecipeCatalogue;
+import edu.ntnu.iir.bidata.StorageBackend;
+
+/**
+ * Runs the same workload against every storage backend on the class path, or the one
+ * named as the first argument, and prints the latency of each kind of operation.
+ * Run the main method from the IDE; it is not a JUnit test.
+ */
+public class StorageBackendBenchmark {
+
+    private static final int GROCERIES = 2_000;
+    private static final int RECIPES = 2_000;
+    private static final int OPERATIONS = 20_000;
+    private static final String[] UNITS = {"grams", "pieces", "liters", "kg"};
+
+    /**
+     * Runs the benchmark and prints the latencies.
+     *
+     * @param args the name of the backend to run, or none to run all backends
+     * @throws IOException if the temporary directory could not be created or removed
+     */
+    public static void main(String[] args) throws IOException {
+        List<StorageBackend> backends = args.length > 0
+                ? List.of(StorageBackend.find(args[0])) : StorageBackend.available();
+        for (StorageBackend backend : backends) {
+            for (int round = 0; round < 3; round++) {
+                System.out.println(backend.getName() + ", round " + (round + 1));
+                run(backend);
+            }
+        }
+    }
+
+    private static void run(StorageBackend backend) throws IOException {
+        Path directory = Files.createTempDirectory("backend-benchmark");
+        PersistenceService persistence = new PersistenceService();
+        try {
+            LatencyHistogram open = new LatencyHistogram("open");
+            LatencyHistogram add = new LatencyHistogram("addGrocery");
+            LatencyHistogram search = new LatencyHistogram("searchGrocery");
+            LatencyHistogram remove = new LatencyHistogram("removeGrocery");
+            LatencyHistogram list = new LatencyHistogram("listGroceries");
+            LatencyHistogram addRecipe = new LatencyHistogram("addRecipe");
+            LatencyHistogram findRecipe = new LatencyHistogram("findRecipe");
+            LatencyHistogram suggest = new LatencyHistogram("suggestRecipes");
+            LatencyHistogram save = new LatencyHistogram("save");
+
+            long start = System.nanoTime();
+            GroceryStore storage = backend.openGroceryStore(persistence, directory);
+            RecipeCatalogue catalogue = backend.openRecipeCatalogue(persistence, directory);
+            open.stop(start);
+
+            Random random = new Random(1);
+            for (int i = 0; i < GROCERIES; i++) {
+                Grocery grocery = new Grocery("Item" + i, 1 + random.nextInt(1000),
+                        UNITS[i % UNITS.length],
+                        TestFixtures.daysFromNow(1 + random.nextInt(60)), 1.0);
+                start = System.nanoTime();
+                storage.addGrocery(grocery);
+                add.stop(start);
+            }
+            for (int i = 0; i < RECIPES; i++) {
+                Recipe recipe = new Recipe("Recipe" + i);
+                for (int j = 0; j < 3 + random.nextInt(6); j++) {
+                    int item = random.nextInt(GROCERIES * 2);
+                    recipe.addIngredient(new Ingredient("Item" + item, 1 + random.nextInt(20),
+                            UNITS[item % UNITS.length]));
+                }
+                start = System.nanoTime();
+                catalogue.addRecipe(recipe);
+                addRecipe.stop(start);
+            }
+
+            for (int i = 0; i < OPERATIONS; i++) {
+                int operation = random.nextInt(100);
+                start = System.nanoTime();
+                if (operation < 50) {
+                    storage.searchGrocery("item" + random.nextInt(GROCERIES * 2));
+                    search.stop(start);
+                } else if (operation < 70) {
+                    storage.removeGrocery("Item" + random.nextInt(GROCERIES), 1);
+                    remove.stop(start);
+                } else if (operation < 85) {
+                    storage.listGroceries("Item" + random.nextInt(GROCERIES), 20);
+                    list.stop(start);
+                } else if (operation < 99) {
+                    catalogue.findRecipe("recipe" + random.nextInt(RECIPES));
+                    findRecipe.stop(start);
+                } else {
+                    catalogue.suggestRecipes(storage);
+                    suggest.stop(start);
+                }
+            }
+            start = System.nanoTime();
+            storage.saveToFile();
+            persistence.flush();
+            save.stop(start);
+
+            for (LatencyHistogram histogram : List.of(open, add, search, remove, list, addRecipe,
+                    findRecipe, suggest, save)) {
+                print(histogram);
+            }
+        } finally {
+            persistence.shutdown();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private static void print(LatencyHistogram histogram) {
+        System.out.printf("  %-15s %7d ops, mean %9.1f us, p50 %9.1f us, p99 %9.1f us%n",
+                histogram.getName(), histogram.getCount(), histogram.getMeanNanos() / 1e3,
+                histogram.getPercentileNanos(50) / 1e3, histogram.getPercentileNanos(99) / 1e3);
+    }
+}
@@ -0,0 +1,322 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.GroceryStore;
+import edu.ntnu.iir.bidata.IngredientDictionary;
+import edu.ntnu.iir.bidata.Ingredient;
+import edu.ntnu.iir.bidata.Lot;
+import edu.ntnu.iir.bidata.Page;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.Recipe;
+import edu.ntnu.iir.bidata.RecipeCatalogue;
+import edu.ntnu.iir.bidata.RecipeRollups;
+import edu.ntnu.iir.bidata.RecipeVector;
+import edu.ntnu.iir.bidata.StorageBackend;
+import edu.ntnu.iir.bidata.StorageSnapshot;
+
+/**
+ * The tests every storage backend must pass. A backend is tested by a subclass
+ * that creates it; the tests only use the GroceryStore and RecipeCatalogue interfaces.
+ *
+ * Positive tests:
+ * - Groceries are added, merged and found ignoring case, in alphabetical order
+ * - Removing and using groceries lowers their amount, tells the listeners and bumps the version
+ * - Groceries are listed in pages, and expired lots are found and removed
+ * - A snapshot does not change when the storage does
+ * - Groceries, recipes and the recipe search index are kept when the storage is opened again
+ * - Backups are written and read back
+ * - Recipes get ids and are found, listed, searched and suggested, also by ingredient
+ * - Recipe costs follow the prices of the groceries in the storage
+ *
+ * Negative tests:
+ * - Unknown groceries and recipes are not found or removed
+ * - A backup that is not a backup is rejected
+ */
+public abstract class StorageBackendConformanceTest {
+
+    @TempDir
+    Path directory;
+
+    private PersistenceService persistence;
+
+    /**
+     * Creates the backend under test.
+     *
+     * @return the StorageBackend to test.
+     */
+    protected abstract StorageBackend createBackend();
+
+    @BeforeEach
+    public void setUp() {
+        persistence = new PersistenceService();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        persistence.shutdown();
+    }
+
+    private GroceryStore openStorage() {
+        return createBackend().openGroceryStore(persistence, directory);
+    }
+
+    private RecipeCatalogue openCatalogue() {
+        return createBackend().openRecipeCatalogue(persistence, directory);
+    }
+
+    private static List<String> names(List<Grocery> groceries) {
+        List<String> names = new ArrayList<>();
+        for (Grocery grocery : groceries) {
+            names.add(grocery.getName());
+        }
+        return names;
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests adding, merging and finding groceries.
+     */
+    @Test
+    public void testAddAndSearch() {
+        GroceryStore storage = openStorage();
+        storage.addGrocery(TestFixtures.grocery("Milk", 2, 5));
+        storage.addGrocery(TestFixtures.grocery("Eggs", 6, 10));
+        storage.addGrocery(TestFixtures.grocery("milk", 1, 8));
+
+        assertEquals(List.of("Eggs", "Milk"), names(storage.getGroceries()));
+        assertEquals(3, storage.searchGrocery("MILK").getAmount(), 1e-9);
+        assertEquals(2, storage.searchGrocery("milk").getLots().size());
+        assertEquals(18, storage.getTotalValue(), 1e-9);
+        assertEquals(2, storage.snapshot().size());
+    }
+
+    /**
+     * Tests removing and using groceries, and that every change is announced.
+     */
+    @Test
+    public void testRemoveAndUse() {
+        GroceryStore storage = openStorage();
+        List<Integer> changed = new ArrayList<>();
+        storage.addStockListener(changed::add);
+        storage.addGrocery(TestFixtures.grocery("Flour", 10, 30));
+        long version = storage.getVersion();
+
+        assertTrue(storage.removeGrocery("flour", 4));
+        assertEquals(6, storage.searchGrocery("Flour").getAmount(), 1e-9);
+        storage.useIngredient(new Ingredient("Flour", 1, "pieces"));
+        assertEquals(5, storage.searchGrocery("Flour").getAmount(), 1e-9);
+        assertTrue(storage.getVersion() > version);
+        assertTrue(storage.removeGrocery("Flour", 5));
+        assertNull(storage.searchGrocery("Flour"));
+        assertTrue(changed.size() >= 3);
+        int flour = IngredientDictionary.idOf("Flour");
+        assertTrue(changed.stream().allMatch(id -> id == flour));
+        assertEquals(10, storage.getConsumptionHistory().getSeries("Flour").getWindowTotal(), 1e-9);
+    }
+
+    /**
+     * Tests paging through groceries and removing expired lots.
+     */
+    @Test
+    public void testPagingAndExpiry() {
+        GroceryStore storage = openStorage();
+        for (int i = 0; i < 5; i++) {
+            storage.addGrocery(TestFixtures.grocery("Item" + i, 1, 1 + i * 10));
+        }
+        Grocery apples = TestFixtures.grocery("Apples", 3, 2);
+        apples.addLot(new Lot(2, TestFixtures.daysFromNow(40), 1.0));
+        storage.addGrocery(apples);
+
+        Page<Grocery> first = storage.listGroceries(null, 4);
+        assertEquals(List.of("Apples", "Item0", "Item1", "Item2"), names(first.getItems()));
+        assertTrue(first.hasNext());
+        Page<Grocery> second = storage.listGroceries(first.getNextCursor(), 4);
+        assertEquals(List.of("Item3", "Item4"), names(second.getItems()));
+        assertFalse(second.hasNext());
+
+        Date cutoff = TestFixtures.daysFromNow(15);
+        assertEquals(List.of("Item0", "Apples", "Item1"), names(storage.getExpiredGroceries(cutoff)));
+        assertEquals(List.of("Item2", "Item3", "Item4"),
+                names(storage.getGroceriesExpiringFrom(cutoff)));
+        assertEquals(3, storage.removeExpired(cutoff).size());
+        assertNull(storage.searchGrocery("Item0"));
+        assertEquals(2, storage.searchGrocery("Apples").getAmount(), 1e-9);
+        assertTrue(storage.getExpiredGroceries(cutoff).isEmpty());
+    }
+
+    /**
+     * Tests that a snapshot keeps showing the storage as it was.
+     */
+    @Test
+    public void testSnapshotIsolation() {
+        GroceryStore storage = openStorage();
+        storage.addGrocery(TestFixtures.grocery("Rice", 5, 30));
+        StorageSnapshot snapshot = storage.snapshot();
+        storage.removeGrocery("Rice", 2);
+        storage.addGrocery(TestFixtures.grocery("Pasta", 1, 30));
+
+        assertEquals(5, snapshot.searchGrocery("Rice").getAmount(), 1e-9);
+        assertNull(snapshot.searchGrocery("Pasta"));
+        assertTrue(storage.snapshot().getVersion() > snapshot.getVersion());
+        assertEquals(3, storage.snapshot().searchGrocery("Rice").getAmount(), 1e-9);
+    }
+
+    /**
+     * Tests that groceries and recipes are kept when they are opened again.
+     */
+    @Test
+    public void testKeptAcrossSessions() {
+        GroceryStore storage = openStorage();
+        storage.addGrocery(TestFixtures.grocery("Butter", 2, 20));
+        storage.saveToFile();
+        RecipeCatalogue catalogue = openCatalogue();
+        catalogue.addRecipe(TestFixtures.recipe("Toast", "Toast the bread.", "Bread", "Butter"));
+        persistence.flush();
+
+        GroceryStore reopened = openStorage();
+        assertEquals(2, reopened.searchGrocery("Butter").getAmount(), 1e-9);
+        RecipeCatalogue reloaded = openCatalogue();
+        Recipe toast = reloaded.findRecipe("toast");
+        assertNotNull(toast);
+        assertEquals("Toast the bread.", toast.getDescription());
+        assertEquals(2, toast.getIngredients().size());
+        assertEquals("Toast", reloaded.searchRecipes("bread", 5).get(0).getName());
+    }
+
+    /**
+     * Tests writing and reading backups of groceries and recipes.
+     */
+    @Test
+    public void testBackupRoundTrip() throws IOException {
+        GroceryStore storage = openStorage();
+        storage.addGrocery(TestFixtures.grocery("Cheese", 1, 10));
+        storage.addGrocery(TestFixtures.grocery("Ham", 3, 5));
+        RecipeCatalogue catalogue = openCatalogue();
+        catalogue.addRecipe(TestFixtures.recipe("Sandwich", null, "Bread", "Cheese", "Ham"));
+
+        ByteArrayOutputStream groceries = new ByteArrayOutputStream();
+        assertEquals(2, storage.exportBackup(groceries));
+        ByteArrayOutputStream recipes = new ByteArrayOutputStream();
+        assertEquals(1, catalogue.exportBackup(recipes));
+
+        storage.clearAllGroceries();
+        assertTrue(storage.getGroceries().isEmpty());
+        assertEquals(2, storage.importBackup(new ByteArrayInputStream(groceries.toByteArray())));
+        assertEquals(List.of("Cheese", "Ham"), names(storage.getGroceries()));
+        assertEquals(0, catalogue.importBackup(new ByteArrayInputStream(recipes.toByteArray())));
+        assertEquals(1, catalogue.getRecipes().size());
+    }
+
+    /**
+     * Tests finding, listing, searching and suggesting recipes.
+     */
+    @Test
+    public void testRecipes() {
+        RecipeCatalogue catalogue = openCatalogue();
+        long version = catalogue.getVersion();
+        catalogue.addRecipe(TestFixtures.recipe("Pancakes", "Fry thin pancakes.",
+                "Flour", "Milk", "Eggs"));
+        catalogue.addRecipe(TestFixtures.recipe("Omelette", "Whisk the eggs.", "Eggs", "Milk"));
+        catalogue.addRecipe(TestFixtures.recipe("Bread", "Knead the dough.", "Flour", "Yeast"));
+        assertTrue(catalogue.getVersion() > version);
+        assertEquals(3, catalogue.getRecipes().size());
+        assertNotEquals(catalogue.findRecipe("Pancakes").getId(),
+                catalogue.findRecipe("Omelette").getId());
+
+        Page<Recipe> page = catalogue.listRecipes(null, 2);
+        assertEquals("Bread", page.getItems().get(0).getName());
+        assertEquals("Omelette", page.getItems().get(1).getName());
+        assertEquals("Pancakes", catalogue.listRecipes(page.getNextCursor(), 2)
+                .getItems().get(0).getName());
+        assertEquals("Omelette", catalogue.searchRecipes("whisk", 5).get(0).getName());
+
+        GroceryStore storage = openStorage();
+        storage.addGrocery(TestFixtures.grocery("Eggs", 4, 10));
+        storage.addGrocery(TestFixtures.grocery("Milk", 4, 10));
+        List<Recipe> suggested = catalogue.suggestRecipes(storage);
+        assertEquals(1, suggested.size());
+        assertEquals("Omelette", suggested.get(0).getName());
+        assertTrue(catalogue.suggestPartialRecipes(storage).stream()
+                .anyMatch(recipe -> recipe.getName().equals("Pancakes")));
+        Map<Recipe, Integer> servings = catalogue.maxServings(storage);
+        assertEquals(1, servings.size());
+        assertEquals(2, servings.values().iterator().next());
+
+        int flour = IngredientDictionary.idOf("Flour");
+        assertEquals(2, catalogue.recipesUsing(flour).size());
+        Map<Integer, RecipeVector> vectors = catalogue.vectorsUsing(flour);
+        assertEquals(2, vectors.size());
+        RecipeVector pancakes = vectors.get(catalogue.findRecipe("Pancakes").getId());
+        assertEquals(3, pancakes.size());
+        assertEquals(catalogue.findRecipe("Pancakes").getVector().toString(), pancakes.toString());
+        assertTrue(catalogue.vectorsUsing(IngredientDictionary.idOf("Saffron")).isEmpty());
+    }
+
+    /**
+     * Tests that recipes are rolled up when added, and again when a price they use changes.
+     */
+    @Test
+    public void testRollupsFollowPrices() {
+        RecipeCatalogue catalogue = openCatalogue();
+        GroceryStore storage = openStorage();
+        storage.addGrocery(TestFixtures.grocery("Eggs", 6, 10));
+        RecipeRollups rollups = new RecipeRollups(catalogue, storage);
+        Recipe omelette = TestFixtures.recipe("Omelette", null, "Eggs", "Milk");
+        Recipe bread = TestFixtures.recipe("Bread", null, "Flour");
+        catalogue.addRecipe(omelette);
+        catalogue.addRecipe(bread);
+        assertEquals(4.0, rollups.getRollup(omelette).getCost(), 1e-9);
+        assertEquals(1, rollups.getRollup(omelette).getUnpriced());
+
+        storage.addGrocery(new Grocery("Eggs", 6, "pieces", TestFixtures.daysFromNow(12), 3.0));
+        storage.addGrocery(new Grocery("Milk", 1, "pieces", TestFixtures.daysFromNow(5), 10.0));
+        assertEquals(26.0, rollups.getRollup(omelette).getCost(), 1e-9);
+        assertEquals(0, rollups.getRollup(omelette).getUnpriced());
+        assertEquals(1, rollups.getRollup(bread).getUnpriced());
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that unknown groceries and recipes are not found or removed.
+     */
+    @Test
+    public void testUnknownNames() {
+        GroceryStore storage = openStorage();
+        long version = storage.getVersion();
+        assertFalse(storage.removeGrocery("Caviar", 1));
+        assertNull(storage.searchGrocery("Caviar"));
+        assertFalse(storage.hasIngredients(TestFixtures.recipe("Blini", null, "Caviar")));
+        assertEquals(version, storage.getVersion());
+        assertNull(openCatalogue().findRecipe("Blini"));
+        if (storage.undo()) {
+            assertTrue(storage.getRedoCount() > 0);
+        }
+    }
+
+    /**
+     * Tests that a backup that is not a backup is rejected.
+     */
+    @Test
+    public void testInvalidBackup() {
+        GroceryStore storage = openStorage();
+        byte[] garbage = "not a backup".getBytes();
+        assertThrows(IOException.class,
+                () -> storage.importBackup(new ByteArrayInputStream(garbage)));
+        assertThrows(IOException.class,
+                () -> openCatalogue().importBackup(new ByteArrayInputStream(garbage)));
+        assertTrue(storage.getGroceries().isEmpty());
+    }
+}
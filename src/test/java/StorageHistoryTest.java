@@ -0,0 +1,144 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import java.util.Calendar;
+import java.util.Date;
+import edu.ntnu.iir.bidata.FoodStorage;
+import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.StorageSnapshot;
+
+/**
+ * Tests undo, redo and looking at earlier versions of FoodStorage.
+ *
+ * Positive tests:
+ * - Clearing the storage can be undone and redone, and the version keeps increasing
+ * - The storage can be looked at as it was earlier in the session
+ * - Earlier sessions are answered from the checkpoints on disk
+ *
+ * Negative tests:
+ * - Undo and redo with nothing to undo or redo return false
+ * - A new change drops the changes that could be redone
+ * - Times before the history starts give null
+ */
+public class StorageHistoryTest {
+
+    @TempDir
+    Path directory;
+
+    private final PersistenceService persistence = new PersistenceService();
+
+    private static Grocery grocery(String name, double amount) {
+        Calendar date = Calendar.getInstance();
+        date.add(Calendar.DAY_OF_MONTH, 7);
+        return new Grocery(name, amount, "pieces", date.getTime(), 10.0);
+    }
+
+    private static Date later(Date time) throws InterruptedException {
+        Thread.sleep(5);
+        return new Date(time.getTime() + 2);
+    }
+
+    @AfterEach
+    public void shutdownPersistence() {
+        persistence.shutdown();
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests that clearing all groceries can be undone and redone.
+     */
+    @Test
+    public void testUndoAndRedoClear() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        storage.addGrocery(grocery("Milk", 2));
+        storage.addGrocery(grocery("Bread", 1));
+        storage.clearAllGroceries();
+        long cleared = storage.getVersion();
+
+        assertTrue(storage.undo());
+        assertEquals(2, storage.getGroceries().size());
+        assertTrue(storage.getVersion() > cleared, "Undo should give a new version");
+        assertEquals(1, storage.getRedoCount());
+
+        assertTrue(storage.redo());
+        assertTrue(storage.getGroceries().isEmpty());
+        assertTrue(storage.undo());
+        assertTrue(storage.undo());
+        assertEquals(2, storage.searchGrocery("milk").getAmount(), 1e-9);
+        assertNull(storage.searchGrocery("bread"));
+    }
+
+    /**
+     * Tests that the storage can be looked at as it was before a change in this session.
+     */
+    @Test
+    public void testSnapshotAtEarlierTime() throws InterruptedException {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        storage.addGrocery(grocery("Milk", 2));
+        Date beforeRemove = later(new Date());
+        storage.removeGrocery("Milk", 2);
+
+        StorageSnapshot earlier = storage.snapshotAt(beforeRemove);
+        assertEquals(2, earlier.searchGrocery("milk").getAmount(), 1e-9);
+        assertNull(storage.snapshotAt(new Date()).searchGrocery("milk"));
+    }
+
+    /**
+     * Tests that a time before this session is answered from a checkpoint of the last one.
+     */
+    @Test
+    public void testCheckpointFromEarlierSession() throws InterruptedException {
+        FoodStorage first = new FoodStorage(persistence, directory);
+        first.addGrocery(grocery("Eggs", 12));
+        first.saveToFile();
+        persistence.flush();
+        Date afterSave = later(new Date());
+        Thread.sleep(5);
+
+        FoodStorage second = new FoodStorage(persistence, directory);
+        second.clearAllGroceries();
+        StorageSnapshot earlier = second.snapshotAt(afterSave);
+        assertNotNull(earlier, "The checkpoint should cover the earlier session");
+        assertEquals(12, earlier.searchGrocery("eggs").getAmount(), 1e-9);
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that undo and redo return false when there is nothing to undo or redo.
+     */
+    @Test
+    public void testNothingToUndo() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        assertFalse(storage.undo());
+        assertFalse(storage.redo());
+        assertFalse(storage.removeGrocery("Missing", 1));
+        assertEquals(0, storage.getUndoCount(), "A change that did nothing should not be kept");
+    }
+
+    /**
+     * Tests that a new change after an undo drops the change that could be redone.
+     */
+    @Test
+    public void testNewChangeDropsRedo() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        storage.addGrocery(grocery("Milk", 2));
+        storage.undo();
+        storage.addGrocery(grocery("Bread", 1));
+        assertFalse(storage.redo());
+        assertNull(storage.searchGrocery("milk"));
+    }
+
+    /**
+     * Tests that a time before the history starts gives null.
+     */
+    @Test
+    public void testTimeBeforeHistory() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        assertNull(storage.snapshotAt(new Date(0)));
+    }
+}
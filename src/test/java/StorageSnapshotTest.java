@@ -0,0 +1,151 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import edu.ntnu.iir.bidata.FoodStorage;
+import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.Lot;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.StorageSnapshot;
+
+/**
+ * Tests the StorageSnapshot class through FoodStorage.
+ *
+ * Positive tests:
+ * - A copy of a grocery from a snapshot can be changed and added back
+ * - Groceries expiring from a date are found in expiry order, with ties by name
+ *
+ * Negative tests:
+ * - Groceries in a snapshot can not be changed, and the snapshot stays as it was
+ * - The list of groceries can not be changed
+ * - Changing a date that was passed in or handed out does not change a grocery
+ */
+public class StorageSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    private final PersistenceService persistence = new PersistenceService();
+
+    private static List<String> names(List<Grocery> groceries) {
+        List<String> names = new ArrayList<>();
+        for (Grocery grocery : groceries) {
+            names.add(grocery.getName());
+        }
+        return names;
+    }
+
+    @AfterEach
+    public void shutdownPersistence() {
+        persistence.shutdown();
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests that a copy of a frozen grocery can be changed without changing the snapshot.
+     */
+    @Test
+    public void testCopyCanBeChanged() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        storage.addGrocery(new Grocery("Milk", 2, "liters", TestFixtures.daysFromNow(5), 20.0));
+        Grocery frozen = storage.searchGrocery("Milk");
+        assertTrue(frozen.isFrozen());
+
+        Grocery copy = frozen.copy();
+        assertFalse(copy.isFrozen());
+        copy.consume(1.5);
+        assertEquals(0.5, copy.getAmount(), 1e-9);
+        assertEquals(2.0, storage.searchGrocery("Milk").getAmount(), 1e-9);
+
+        storage.addGrocery(copy);
+        assertEquals(2.5, storage.searchGrocery("Milk").getAmount(), 1e-9);
+        assertFalse(copy.isFrozen(), "The caller's grocery should not be frozen");
+    }
+
+    /**
+     * Tests that groceries expiring from a date are found from that date, earliest first.
+     */
+    @Test
+    public void testGroceriesExpiringFrom() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        Date sameDay = TestFixtures.daysFromNow(10);
+        storage.addGrocery(new Grocery("Yoghurt", 1, "pieces", TestFixtures.daysFromNow(2), 10.0));
+        storage.addGrocery(new Grocery("Cheese", 1, "kg", sameDay, 100.0));
+        storage.addGrocery(new Grocery("Butter", 1, "pieces", sameDay, 40.0));
+        storage.addGrocery(new Grocery("Rice", 1, "kg", TestFixtures.daysFromNow(90), 30.0));
+        StorageSnapshot snapshot = storage.snapshot();
+
+        assertEquals(List.of("Butter", "Cheese", "Rice"),
+                names(snapshot.getGroceriesExpiringFrom(sameDay)));
+        assertEquals(List.of("Yoghurt"), names(snapshot.getExpiredGroceries(sameDay)));
+        assertEquals(List.of("Rice"),
+                names(snapshot.getGroceriesExpiringFrom(new Date(sameDay.getTime() + 1))));
+        assertEquals(4, snapshot.getGroceriesExpiringFrom(TestFixtures.daysFromNow(-1)).size());
+        assertTrue(snapshot.getGroceriesExpiringFrom(TestFixtures.daysFromNow(100)).isEmpty());
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that changing a grocery in a snapshot throws IllegalStateException.
+     */
+    @Test
+    public void testSnapshotGroceriesAreFrozen() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        storage.addGrocery(new Grocery("Eggs", 6, "pieces", TestFixtures.daysFromNow(10), 4.0));
+        StorageSnapshot snapshot = storage.snapshot();
+        Grocery eggs = snapshot.searchGrocery("Eggs");
+
+        assertThrows(IllegalStateException.class, () -> eggs.consume(2));
+        assertThrows(IllegalStateException.class,
+                () -> eggs.addLot(new Lot(6, TestFixtures.daysFromNow(1), 4.0)));
+        assertThrows(IllegalStateException.class, () -> eggs.addLots(eggs.copy()));
+        assertThrows(IllegalStateException.class,
+                () -> eggs.removeExpiredLots(TestFixtures.daysFromNow(20)));
+        assertThrows(IllegalStateException.class, () -> eggs.setName("Hens"));
+        assertThrows(IllegalStateException.class, () -> eggs.setUnit("dozen"));
+
+        assertEquals(6.0, eggs.getAmount(), 1e-9);
+        assertEquals(List.of("Eggs"),
+                names(snapshot.getGroceriesExpiringFrom(TestFixtures.daysFromNow(9))));
+        assertTrue(snapshot.getExpiredGroceries(TestFixtures.daysFromNow(9)).isEmpty());
+    }
+
+    /**
+     * Tests that the list of groceries is read-only.
+     */
+    @Test
+    public void testGroceryListIsReadOnly() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        storage.addGrocery(new Grocery("Tea", 1, "pieces", TestFixtures.daysFromNow(100), 30.0));
+        List<Grocery> groceries = storage.snapshot().getGroceries();
+
+        assertThrows(UnsupportedOperationException.class, () -> groceries.remove(0));
+        assertThrows(UnsupportedOperationException.class, () -> groceries.clear());
+        assertEquals(1, storage.snapshot().size());
+    }
+
+    /**
+     * Tests that dates given to or taken from a grocery are copies.
+     */
+    @Test
+    public void testDatesAreCopied() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        Date bestBefore = TestFixtures.daysFromNow(10);
+        long time = bestBefore.getTime();
+        storage.addGrocery(new Grocery("Ham", 1, "pieces", bestBefore, 50.0));
+        bestBefore.setTime(0);
+        Grocery ham = storage.searchGrocery("Ham");
+        ham.getBestBeforeDate().setTime(0);
+        ham.getLots().get(0).getBestBeforeDate().setTime(0);
+
+        assertEquals(time, ham.getBestBeforeDate().getTime());
+        assertEquals(time, ham.getLots().get(0).getBestBeforeDate().getTime());
+        assertTrue(storage.snapshot().getExpiredGroceries(TestFixtures.daysFromNow(1)).isEmpty());
+    }
+}
@@ -0,0 +1,209 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Path;
+import java.util.Calendar;
+import java.util.List;
+import edu.ntnu.iir.bidata.FoodStorage;
+import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.Ingredient;
+import edu.ntnu.iir.bidata.PantryVector;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.Recipe;
+import edu.ntnu.iir.bidata.ShoppingList;
+import edu.ntnu.iir.bidata.Substitution;
+import edu.ntnu.iir.bidata.SubstitutionGraph;
+
+/**
+ * Tests the SubstitutionGraph class.
+ *
+ * Positive tests:
+ * - Chains of substitutions are found, with ratios multiplied and penalties added
+ * - Candidates are ordered by penalty, keeping the cheapest chain to each substitute
+ * - Substitutions are saved and loaded again
+ * - A substitute with stock for every shortfall of a recipe covers it
+ *
+ * Negative tests:
+ * - Cycles in the graph do not make an ingredient its own substitute
+ * - Invalid substitutions are rejected
+ * - Two ingredients sharing one substitute can not both use the same stock
+ * - A substitute can not use stock the recipe already uses directly
+ */
+public class SubstitutionGraphTest {
+
+    @TempDir
+    Path directory;
+
+    private final PersistenceService persistence = new PersistenceService();
+
+    private SubstitutionGraph createGraph() {
+        return new SubstitutionGraph(persistence,
+                directory.resolve("substitutions.dat"));
+    }
+
+    private FoodStorage createStorage(Object... groceries) {
+        Calendar nextWeek = Calendar.getInstance();
+        nextWeek.add(Calendar.DAY_OF_MONTH, 7);
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        for (int i = 0; i < groceries.length; i += 2) {
+            storage.addGrocery(new Grocery((String) groceries[i], (Double) groceries[i + 1],
+                    "grams", nextWeek.getTime(), 0.1));
+        }
+        return storage;
+    }
+
+    private static Recipe recipe(Object... ingredients) {
+        Recipe recipe = new Recipe("Cake");
+        recipe.setServings(1);
+        for (int i = 0; i < ingredients.length; i += 2) {
+            recipe.addIngredient(new Ingredient((String) ingredients[i],
+                    (Double) ingredients[i + 1], "grams"));
+        }
+        return recipe;
+    }
+
+    @AfterEach
+    public void shutdownPersistence() {
+        persistence.shutdown();
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests that a chain of two substitutions gives a combined candidate.
+     */
+    @Test
+    public void testChainedSubstitution() {
+        SubstitutionGraph graph = new SubstitutionGraph(persistence,
+                directory.resolve("substitutions.dat"));
+        graph.addSubstitution(new Substitution("Butter", "Margarine", 1.0, 1.0));
+        graph.addSubstitution(new Substitution("Margarine", "Oil", 0.8, 2.0));
+        List<Substitution> candidates = graph.getCandidates("butter");
+        assertEquals(2, candidates.size());
+        assertEquals("Oil", candidates.get(1).getSubstitute());
+        assertEquals(0.8, candidates.get(1).getRatio(), 1e-9);
+        assertEquals(3.0, candidates.get(1).getPenalty(), 1e-9);
+    }
+
+    /**
+     * Tests that the cheapest chain to a substitute is kept and candidates are sorted by penalty.
+     */
+    @Test
+    public void testCheapestChainFirst() {
+        SubstitutionGraph graph = new SubstitutionGraph(persistence,
+                directory.resolve("substitutions.dat"));
+        graph.addSubstitution(new Substitution("Cream", "Milk", 1.0, 5.0));
+        graph.addSubstitution(new Substitution("Cream", "Yoghurt", 1.0, 1.0));
+        graph.addSubstitution(new Substitution("Yoghurt", "Milk", 1.0, 1.0));
+        List<Substitution> candidates = graph.getCandidates("Cream");
+        assertEquals(2, candidates.size());
+        assertEquals("Yoghurt", candidates.get(0).getSubstitute());
+        assertEquals("Milk", candidates.get(1).getSubstitute());
+        assertEquals(2.0, candidates.get(1).getPenalty(), 1e-9);
+    }
+
+    /**
+     * Tests that substitutions are read back from the file.
+     */
+    @Test
+    public void testSaveAndLoad() {
+        Path file = directory.resolve("substitutions.dat");
+        new SubstitutionGraph(persistence, file)
+                .addSubstitution(new Substitution("Sugar", "Honey", 0.75, 1.0));
+        persistence.shutdown();
+        SubstitutionGraph loaded = new SubstitutionGraph(persistence, file);
+        assertEquals(1, loaded.getSubstitutions().size());
+        assertEquals("Honey", loaded.getCandidates("Sugar").get(0).getSubstitute());
+    }
+
+    /**
+     * Tests that a substitute with stock for both shortfalls of a recipe covers them.
+     */
+    @Test
+    public void testSharedSubstituteWithEnoughStock() {
+        SubstitutionGraph graph = createGraph();
+        graph.addSubstitution(new Substitution("Butter", "Margarine", 1.0, 1.0));
+        graph.addSubstitution(new Substitution("Cream", "Margarine", 1.0, 1.0));
+        Recipe cake = recipe("Butter", 100.0, "Cream", 100.0);
+        FoodStorage storage = createStorage("Margarine", 200.0);
+
+        assertTrue(graph.covers(storage.snapshot().pantry(), cake.getVector()));
+        assertEquals(2, graph.chooseSubstitutes(storage.snapshot().pantry(),
+                cake.getVector(), 1).size());
+        ShoppingList list = new ShoppingList();
+        list.generateShoppingList(cake, storage, 1, graph);
+        assertTrue(list.getItems().isEmpty());
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that a cycle does not list an ingredient as a substitute for itself.
+     */
+    @Test
+    public void testCycleIsIgnored() {
+        SubstitutionGraph graph = new SubstitutionGraph(persistence,
+                directory.resolve("substitutions.dat"));
+        graph.addSubstitution(new Substitution("Lemon", "Lime", 1.0, 0.5));
+        graph.addSubstitution(new Substitution("Lime", "Lemon", 1.0, 0.5));
+        List<Substitution> candidates = graph.getCandidates("Lemon");
+        assertEquals(1, candidates.size());
+        assertEquals("Lime", candidates.get(0).getSubstitute());
+    }
+
+    /**
+     * Tests that invalid substitutions throw IllegalArgumentException.
+     */
+    @Test
+    public void testInvalidSubstitution() {
+        assertThrows(IllegalArgumentException.class, () -> new Substitution("Salt", "salt", 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new Substitution("Salt", "Soy", 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new Substitution("Salt", "Soy", 1, -1));
+        assertThrows(IllegalArgumentException.class, () -> new Substitution(" ", "Soy", 1, 0));
+    }
+
+    /**
+     * Tests that two short ingredients can not both be made up by the same substitute stock.
+     */
+    @Test
+    public void testSharedSubstituteIsReserved() {
+        SubstitutionGraph graph = createGraph();
+        graph.addSubstitution(new Substitution("Butter", "Margarine", 1.0, 1.0));
+        graph.addSubstitution(new Substitution("Cream", "Margarine", 1.0, 1.0));
+        Recipe cake = recipe("Butter", 100.0, "Cream", 100.0);
+        FoodStorage storage = createStorage("Margarine", 150.0);
+        PantryVector pantry = storage.snapshot().pantry();
+
+        assertFalse(graph.covers(pantry, cake.getVector()));
+        List<Substitution> chosen = graph.chooseSubstitutes(pantry, cake.getVector(), 1);
+        assertEquals(1, chosen.size());
+        assertEquals("Butter", chosen.get(0).getOriginal());
+        ShoppingList list = new ShoppingList();
+        list.generateShoppingList(cake, storage, 1, graph);
+        assertEquals(1, list.getItems().size());
+        assertEquals("Cream", list.getItems().get(0).getName());
+        assertEquals(100.0, list.getItems().get(0).getAmount(), 1e-9);
+    }
+
+    /**
+     * Tests that stock used directly by a recipe is not also used as a substitute.
+     */
+    @Test
+    public void testSubstituteUsedDirectly() {
+        SubstitutionGraph graph = createGraph();
+        graph.addSubstitution(new Substitution("Butter", "Margarine", 1.0, 1.0));
+        Recipe cake = recipe("Butter", 100.0, "Margarine", 100.0);
+        FoodStorage storage = createStorage("Butter", 60.0, "Margarine", 130.0);
+        PantryVector pantry = storage.snapshot().pantry();
+
+        assertFalse(graph.covers(pantry, cake.getVector()),
+                "Only 30 margarine is left for the 40 butter that is missing");
+        assertTrue(graph.chooseSubstitutes(pantry, cake.getVector(), 1).isEmpty());
+        ShoppingList list = new ShoppingList();
+        list.generateShoppingList(cake, storage, 1, graph);
+        assertEquals(1, list.getItems().size());
+        assertEquals("Butter", list.getItems().get(0).getName());
+        assertEquals(40.0, list.getItems().get(0).getAmount(), 1e-9);
+    }
+}
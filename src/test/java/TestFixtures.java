@@ -0,0 +1,43 @@
+import java.util.Calendar;
+import java.util.Date;
+import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.Ingredient;
+import edu.ntnu.iir.bidata.Recipe;
+
+/**
+ * The dates, groceries and recipes the storage backend tests and the tests of the
+ * parts behind them are built from.
+ */
+final class TestFixtures {
+
+    private TestFixtures() {
+    }
+
+    /**
+     * Gets the date a number of days from now, at the current time of day.
+     */
+    static Date daysFromNow(int days) {
+        Calendar date = Calendar.getInstance();
+        date.add(Calendar.DAY_OF_MONTH, days);
+        return date.getTime();
+    }
+
+    /**
+     * Creates a grocery counted in pieces, at 2 NOK a piece, with one lot expiring in some days.
+     */
+    static Grocery grocery(String name, double amount, int days) {
+        return new Grocery(name, amount, "pieces", daysFromNow(days), 2.0);
+    }
+
+    /**
+     * Creates a recipe that needs two pieces of each ingredient.
+     */
+    static Recipe recipe(String name, String description, String... ingredients) {
+        Recipe recipe = new Recipe(name);
+        recipe.setDescription(description);
+        for (String ingredient : ingredients) {
+            recipe.addIngredient(new Ingredient(ingredient, 2, "pieces"));
+        }
+        return recipe;
+    }
+}
@@ -0,0 +1,192 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import edu.ntnu.iir.bidata.FoodStorage;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.Recipe;
+import edu.ntnu.iir.bidata.RecipeBook;
+
+/**
+ * Tests keeping whole recipes on disk and only their compact parts in memory.
+ *
+ * Positive tests:
+ * - Recipes and their descriptions are read back from the store after loading
+ * - Suggestions read only the recipes that match, and later lookups hit the cache
+ * - Recipes saved in the old recipes file are copied into the store shards once
+ *
+ * Negative tests:
+ * - A recipe cut short at the end of the store is dropped, and new recipes can be added
+ * - Files that are not recipe store shards are not overwritten
+ */
+public class TieredCatalogueTest {
+
+    @TempDir
+    Path directory;
+
+    private RecipeBook createBook(PersistenceService persistence) {
+        RecipeBook book = new RecipeBook(persistence, directory);
+        book.addRecipe(TestFixtures.recipe("Omelette", "Whisk the eggs.", "Eggs", "Milk"));
+        book.addRecipe(TestFixtures.recipe("Pancakes", "Fry thin pancakes.",
+                "Flour", "Milk", "Eggs"));
+        book.addRecipe(TestFixtures.recipe("Toast", null, "Bread"));
+        persistence.flush();
+        return book;
+    }
+
+    private Map<Path, Long> storeSizes() throws IOException {
+        Map<Path, Long> sizes = new HashMap<>();
+        try (DirectoryStream<Path> stores = Files.newDirectoryStream(directory.resolve("recipes"),
+                "catalogue-*.dat")) {
+            for (Path store : stores) {
+                sizes.put(store, Files.size(store));
+            }
+        }
+        return sizes;
+    }
+
+    private static Path grown(Map<Path, Long> before, Map<Path, Long> after) {
+        List<Path> grown = new ArrayList<>();
+        after.forEach((store, size) -> {
+            if (size > before.getOrDefault(store, 0L)) {
+                grown.add(store);
+            }
+        });
+        assertEquals(1, grown.size(), "Adding a recipe should write to one shard only");
+        return grown.get(0);
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests that recipes are read back whole from the store after loading.
+     */
+    @Test
+    public void testReadBackAfterLoading() {
+        PersistenceService persistence = new PersistenceService();
+        createBook(persistence);
+        RecipeBook loaded = new RecipeBook(persistence, directory);
+        assertEquals(3, loaded.getRecipes().size());
+        assertEquals(0, loaded.getCacheMisses(), "Loading should not read whole recipes");
+
+        Recipe pancakes = loaded.findRecipe("pancakes");
+        assertEquals("Fry thin pancakes.", pancakes.getDescription());
+        assertEquals(3, pancakes.getIngredients().size());
+        assertEquals("Flour", pancakes.getIngredients().get(0).getName());
+        assertNull(loaded.findRecipe("Toast").getDescription());
+        assertEquals(List.of("Omelette", "Pancakes", "Toast"),
+                loaded.listRecipes(null, 10).getItems().stream().map(Recipe::getName).toList());
+        persistence.shutdown();
+    }
+
+    /**
+     * Tests that suggestions read only the matching recipes, as they are got, and that they
+     * are cached.
+     */
+    @Test
+    public void testSuggestionsReadOnlyMatches() {
+        PersistenceService persistence = new PersistenceService();
+        createBook(persistence);
+        RecipeBook loaded = new RecipeBook(persistence, directory);
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        storage.addGrocery(TestFixtures.grocery("Eggs", 6, 7));
+        storage.addGrocery(TestFixtures.grocery("Milk", 2, 7));
+
+        List<Recipe> suggested = loaded.suggestRecipes(storage);
+        assertEquals(1, suggested.size());
+        assertEquals(2, loaded.suggestPartialRecipes(storage).size());
+        assertEquals(0, loaded.getCacheMisses(), "Suggesting should not read whole recipes");
+        assertEquals(List.of("Omelette"), suggested.stream().map(Recipe::getName).toList());
+        assertEquals(1, loaded.getCacheMisses());
+        assertEquals(1, loaded.maxServings(storage).size());
+        assertEquals(1, loaded.getCacheHits());
+        assertEquals("Whisk the eggs.", loaded.findRecipe("Omelette").getDescription());
+        assertEquals(1, loaded.getCacheMisses());
+        persistence.shutdown();
+    }
+
+    /**
+     * Tests that recipes saved in the old recipes.dat are copied into the store shards once.
+     */
+    @Test
+    public void testMigratesLegacyFile() throws IOException {
+        Path legacy = directory.resolve("recipes.dat");
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(legacy))) {
+            out.writeObject(new ArrayList<>(List.of(
+                    TestFixtures.recipe("Soup", "Simmer for an hour.", "Carrots", "Onions"),
+                    TestFixtures.recipe("Salad", null, "Lettuce"))));
+        }
+        long legacySize = Files.size(legacy);
+        PersistenceService persistence = new PersistenceService();
+        RecipeBook book = new RecipeBook(persistence, directory);
+        assertEquals(List.of(1, 2), book.getRecipes().stream().map(Recipe::getId).toList());
+        assertFalse(storeSizes().isEmpty());
+
+        RecipeBook loaded = new RecipeBook(persistence, directory);
+        assertEquals(List.of("Soup", "Salad"),
+                loaded.getRecipes().stream().map(Recipe::getName).toList());
+        assertEquals("Simmer for an hour.", loaded.findRecipe("Soup").getDescription());
+        assertEquals(2, loaded.findRecipe("Soup").getIngredients().size());
+        assertEquals(1, loaded.searchRecipes("carrots", 5).size());
+        Recipe toast = TestFixtures.recipe("Toast", null, "Bread");
+        loaded.addRecipe(toast);
+        assertEquals(3, toast.getId());
+        assertEquals(legacySize, Files.size(legacy));
+        persistence.shutdown();
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that a recipe cut short by a crash is dropped, and that adding goes on after it.
+     */
+    @Test
+    public void testTruncatedStore() throws IOException {
+        PersistenceService persistence = new PersistenceService();
+        RecipeBook book = createBook(persistence);
+        Map<Path, Long> before = storeSizes();
+        book.addRecipe(TestFixtures.recipe("Waffles", "Bake until golden.", "Flour", "Eggs"));
+        Path store = grown(before, storeSizes());
+        byte[] bytes = Files.readAllBytes(store);
+        Files.write(store, Arrays.copyOf(bytes, bytes.length - 3));
+
+        RecipeBook loaded = new RecipeBook(persistence, directory);
+        assertEquals(3, loaded.getRecipes().size());
+        assertNull(loaded.findRecipe("Waffles"));
+        loaded.addRecipe(TestFixtures.recipe("Porridge", "Stir often.", "Oats", "Milk"));
+        RecipeBook reloaded = new RecipeBook(persistence, directory);
+        assertEquals(4, reloaded.getRecipes().size());
+        assertEquals("Stir often.", reloaded.findRecipe("Porridge").getDescription());
+        assertEquals("Whisk the eggs.", reloaded.findRecipe("Omelette").getDescription());
+        persistence.shutdown();
+    }
+
+    /**
+     * Tests that files that are not recipe store shards are left as they are.
+     */
+    @Test
+    public void testCorruptStoreNotOverwritten() throws IOException {
+        Path recipes = Files.createDirectories(directory.resolve("recipes"));
+        for (int i = 0; i < 8; i++) {
+            Path store = recipes.resolve(String.format("catalogue-%02d.dat", i));
+            Files.write(store, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+        }
+        PersistenceService persistence = new PersistenceService();
+        RecipeBook book = new RecipeBook(persistence, directory);
+        book.addRecipe(TestFixtures.recipe("Toast", null, "Bread"));
+        assertEquals(0, book.getRecipes().size());
+        for (long size : storeSizes().values()) {
+            assertEquals(9, size);
+        }
+        persistence.shutdown();
+    }
+}
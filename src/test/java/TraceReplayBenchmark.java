@@ -0,0 +1,38 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import edu.ntnu.iir.bidata.FoodStorage;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.RecipeBook;
+import edu.ntnu.iir.bidata.TraceReplayer;
+
+/**
+ * Plays back a trace recorded with {@code -Dwasteless.trace=<file>} against a new, empty
+ * storage and recipe book in a temporary directory, and prints the report.
+ * The trace is played once to warm up and once to measure.
+ * Run the main method from the IDE with the trace file as the first argument, and
+ * "paced" as the second to keep the recorded time between calls; it is not a JUnit test.
+ */
+public class TraceReplayBenchmark {
+
+    /**
+     * Runs the benchmark and prints the report of the measured replay.
+     *
+     * @param args the trace file, and optionally "paced"
+     * @throws IOException if the trace could not be read
+     */
+    public static void main(String[] args) throws IOException {
+        Path trace = Path.of(args[0]);
+        boolean paced = args.length > 1 && args[1].equals("paced");
+        PersistenceService persistence = new PersistenceService();
+        TraceReplayer.Report report = null;
+        for (int run = 0; run < 2; run++) {
+            Path directory = Files.createTempDirectory("replay");
+            FoodStorage storage = new FoodStorage(persistence, directory);
+            RecipeBook recipeBook = new RecipeBook(persistence, directory);
+            report = new TraceReplayer(storage, recipeBook).replay(trace, paced);
+        }
+        System.out.print(report);
+        persistence.shutdown();
+    }
+}
@@ -0,0 +1,134 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import edu.ntnu.iir.bidata.FoodStorage;
+import edu.ntnu.iir.bidata.Grocery;
+import edu.ntnu.iir.bidata.Ingredient;
+import edu.ntnu.iir.bidata.PersistenceService;
+import edu.ntnu.iir.bidata.Recipe;
+import edu.ntnu.iir.bidata.RecipeBook;
+import edu.ntnu.iir.bidata.TraceRecorder;
+import edu.ntnu.iir.bidata.TraceReplayer;
+
+/**
+ * Tests recording calls to FoodStorage and RecipeBook and playing them back.
+ *
+ * Positive tests:
+ * - Playing a trace back against an empty storage gives the same groceries and recipes
+ * - The report counts every call by kind, with latencies and allocations
+ * - A trace cut short is played back up to the last whole call
+ *
+ * Negative tests:
+ * - A file that is not a trace is rejected
+ */
+public class TraceReplayTest {
+
+    @TempDir
+    Path directory;
+
+    private final PersistenceService persistence = new PersistenceService();
+
+    private static List<String> contents(FoodStorage storage) {
+        List<String> contents = new ArrayList<>();
+        for (Grocery grocery : storage.getGroceries()) {
+            contents.add(grocery.getName() + "=" + grocery.getAmount() + "/" + grocery.getLots().size());
+        }
+        return contents;
+    }
+
+    private Path record(Path trace) throws IOException {
+        Files.createDirectories(directory.resolve("recorded"));
+        FoodStorage storage = new FoodStorage(persistence, directory.resolve("recorded"));
+        RecipeBook book = new RecipeBook(persistence, directory.resolve("recorded"));
+        try (TraceRecorder recorder = new TraceRecorder(trace)) {
+            storage.setTraceRecorder(recorder);
+            book.setTraceRecorder(recorder);
+            storage.addGrocery(TestFixtures.grocery("Milk", 2, 5));
+            storage.addGrocery(TestFixtures.grocery("Eggs", 12, 10));
+            storage.addGrocery(TestFixtures.grocery("Milk", 1, 2));
+            storage.removeGrocery("Eggs", 4);
+            Recipe omelette = new Recipe("Omelette");
+            omelette.setDescription("Quick eggs with milk.");
+            omelette.addIngredient(new Ingredient("Eggs", 3, "pieces"));
+            omelette.addIngredient(new Ingredient("Milk", 0.5, "pieces"));
+            book.addRecipe(omelette);
+            book.suggestRecipes(storage);
+            storage.hasIngredients(omelette, 2);
+            storage.useIngredient(new Ingredient("Milk", 0.5, "pieces"));
+            storage.searchGrocery("milk");
+            book.searchRecipes("quick eggs", 5);
+            storage.clearAllGroceries();
+            storage.undo();
+            assertEquals(12, recorder.getCount());
+        }
+        storage.searchGrocery("not recorded after close");
+        persistence.shutdown();
+        return trace;
+    }
+
+    @AfterEach
+    public void shutdownPersistence() {
+        persistence.shutdown();
+    }
+
+    // Positive Tests
+
+    /**
+     * Tests that playing a trace back gives the same storage and recipe book.
+     */
+    @Test
+    public void testReplayGivesSameState() throws IOException {
+        Path trace = record(directory.resolve("calls.trace"));
+        Files.createDirectories(directory.resolve("replayed"));
+        FoodStorage storage = new FoodStorage(persistence, directory.resolve("replayed"));
+        RecipeBook book = new RecipeBook(persistence, directory.resolve("replayed"));
+        TraceReplayer.Report report = new TraceReplayer(storage, book).replay(trace, false);
+
+        assertEquals(List.of("Eggs=8.0/1", "Milk=2.5/2"), contents(storage));
+        assertEquals(2, storage.searchGrocery("milk").getLots().size());
+        assertEquals(1, book.getRecipes().size());
+        assertEquals(12, report.getCount());
+        assertEquals(3, report.getLatency("ADD_GROCERY").getCount());
+        assertNull(report.getLatency("REDO"));
+        assertTrue(report.getCallsPerSecond() > 0);
+        assertTrue(report.getBytesPerCall("ADD_GROCERY") != 0);
+        assertTrue(report.toString().contains("SEARCH_RECIPES"));
+    }
+
+    /**
+     * Tests that a trace cut short is played back up to the last whole call.
+     */
+    @Test
+    public void testTruncatedTrace() throws IOException {
+        byte[] bytes = Files.readAllBytes(record(directory.resolve("calls.trace")));
+        byte[] cut = Arrays.copyOf(bytes, bytes.length / 2);
+        Files.createDirectories(directory.resolve("replayed"));
+        FoodStorage storage = new FoodStorage(persistence, directory.resolve("replayed"));
+        RecipeBook book = new RecipeBook(persistence, directory.resolve("replayed"));
+        TraceReplayer.Report report = new TraceReplayer(storage, book)
+                .replay(new ByteArrayInputStream(cut), false);
+        assertTrue(report.getCount() > 0 && report.getCount() < 12);
+    }
+
+    // Negative Tests
+
+    /**
+     * Tests that a file that is not a trace is rejected.
+     */
+    @Test
+    public void testNotATrace() {
+        FoodStorage storage = new FoodStorage(persistence, directory);
+        RecipeBook book = new RecipeBook(persistence, directory);
+        TraceReplayer replayer = new TraceReplayer(storage, book);
+        assertThrows(IOException.class,
+                () -> replayer.replay(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5}), false));
+    }
+}